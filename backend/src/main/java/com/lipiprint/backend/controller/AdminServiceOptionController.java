@@ -3,14 +3,13 @@ package com.lipiprint.backend.controller;
 import com.lipiprint.backend.entity.ServiceCombination;
 import com.lipiprint.backend.entity.DiscountRule;
 import com.lipiprint.backend.entity.BindingOption;
-import com.lipiprint.backend.entity.User;
 import com.lipiprint.backend.repository.ServiceCombinationRepository;
 import com.lipiprint.backend.repository.DiscountRuleRepository;
 import com.lipiprint.backend.repository.BindingOptionRepository;
-import com.lipiprint.backend.service.UserService;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 
@@ -23,12 +22,9 @@ public class AdminServiceOptionController {
     private DiscountRuleRepository discountRuleRepository;
     @Autowired
     private BindingOptionRepository bindingOptionRepository;
-    @Autowired
-    private UserService userService;
 
-    private void checkCanEdit(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        if (!user.isCanEdit()) {
+    private void checkCanEdit(CustomUserDetails principal) {
+        if (!principal.isCanEdit()) {
             throw new RuntimeException("You don't have permission to edit services and discounts");
         }
     }
@@ -41,21 +37,21 @@ public class AdminServiceOptionController {
     }
     @PostMapping("/service-combinations")
     @PreAuthorize("hasRole('ADMIN')")
-    public ServiceCombination createCombination(@RequestBody ServiceCombination combo, Authentication authentication) {
-        checkCanEdit(authentication);
+    public ServiceCombination createCombination(@RequestBody ServiceCombination combo, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         return serviceCombinationRepository.save(combo);
     }
     @PutMapping("/service-combinations/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ServiceCombination updateCombination(@PathVariable Long id, @RequestBody ServiceCombination combo, Authentication authentication) {
-        checkCanEdit(authentication);
+    public ServiceCombination updateCombination(@PathVariable Long id, @RequestBody ServiceCombination combo, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         combo.setId(id);
         return serviceCombinationRepository.save(combo);
     }
     @DeleteMapping("/service-combinations/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public void deleteCombination(@PathVariable Long id, Authentication authentication) {
-        checkCanEdit(authentication);
+    public void deleteCombination(@PathVariable Long id, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         serviceCombinationRepository.deleteById(id);
     }
 
@@ -67,29 +63,29 @@ public class AdminServiceOptionController {
     }
     @PostMapping("/discount-rules")
     @PreAuthorize("hasRole('ADMIN')")
-    public DiscountRule createDiscount(@RequestBody DiscountRule rule, Authentication authentication) {
-        checkCanEdit(authentication);
+    public DiscountRule createDiscount(@RequestBody DiscountRule rule, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         return discountRuleRepository.save(rule);
     }
     @PutMapping("/discount-rules/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public DiscountRule updateDiscount(@PathVariable Long id, @RequestBody DiscountRule rule, Authentication authentication) {
-        checkCanEdit(authentication);
+    public DiscountRule updateDiscount(@PathVariable Long id, @RequestBody DiscountRule rule, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         rule.setId(id);
         return discountRuleRepository.save(rule);
     }
     @DeleteMapping("/discount-rules/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public void deleteDiscount(@PathVariable Long id, Authentication authentication) {
-        checkCanEdit(authentication);
+    public void deleteDiscount(@PathVariable Long id, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         discountRuleRepository.deleteById(id);
     }
 
     // Binding Options CRUD
     @PutMapping("/binding-options/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public BindingOption updateBindingOption(@PathVariable Long id, @RequestBody BindingOption option, Authentication authentication) {
-        checkCanEdit(authentication);
+    public BindingOption updateBindingOption(@PathVariable Long id, @RequestBody BindingOption option, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         return bindingOptionRepository.findById(id)
             .map(existing -> {
                 existing.setType(option.getType());
@@ -101,14 +97,14 @@ public class AdminServiceOptionController {
     }
     @PostMapping("/binding-options")
     @PreAuthorize("hasRole('ADMIN')")
-    public BindingOption createBindingOption(@RequestBody BindingOption option, Authentication authentication) {
-        checkCanEdit(authentication);
+    public BindingOption createBindingOption(@RequestBody BindingOption option, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         return bindingOptionRepository.save(option);
     }
     @DeleteMapping("/binding-options/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public void deleteBindingOption(@PathVariable Long id, Authentication authentication) {
-        checkCanEdit(authentication);
+    public void deleteBindingOption(@PathVariable Long id, @CurrentUser CustomUserDetails principal) {
+        checkCanEdit(principal);
         bindingOptionRepository.deleteById(id);
     }
 } 
\ No newline at end of file
@@ -1,14 +1,18 @@
 package com.lipiprint.backend.controller;
 
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
+import com.lipiprint.backend.service.AnalyticsSeriesService;
 import com.lipiprint.backend.service.OrderService;
+import com.lipiprint.backend.service.OrderStatsRollup;
+import com.lipiprint.backend.service.RecentActivityFeed;
 import com.lipiprint.backend.service.UserService;
-import com.lipiprint.backend.entity.Order;
 
 @RestController
 @RequestMapping("/api/analytics")
@@ -17,6 +21,12 @@ public class AnalyticsController {
     private OrderService orderService;
     @Autowired
     private UserService userService;
+    @Autowired
+    private OrderStatsRollup orderStatsRollup;
+    @Autowired
+    private AnalyticsSeriesService analyticsSeriesService;
+    @Autowired
+    private RecentActivityFeed recentActivityFeed;
 
     @GetMapping("/{type}")
     @PreAuthorize("hasRole('ADMIN')")
@@ -42,19 +52,43 @@ public class AnalyticsController {
         return ResponseEntity.ok(data);
     }
 
+    // Metric per hour/day/week/month bucket over any range, optionally one series per status, paper, color or delivery type
+    @GetMapping("/series")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getSeries(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                       @RequestParam(defaultValue = "day") String bucket,
+                                       @RequestParam(defaultValue = "orders") String metric,
+                                       @RequestParam(defaultValue = "none") String groupBy) {
+        try {
+            LocalDate end = to != null ? to : LocalDate.now();
+            AnalyticsSeriesService.Query query = new AnalyticsSeriesService.Query(
+                from != null ? from : end.minusDays(29), end,
+                AnalyticsSeriesService.option(AnalyticsSeriesService.Bucket.class, bucket),
+                AnalyticsSeriesService.option(AnalyticsSeriesService.Metric.class, metric),
+                AnalyticsSeriesService.option(AnalyticsSeriesService.GroupBy.class, groupBy));
+            return ResponseEntity.ok(analyticsSeriesService.series(query));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/recent-activities")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> getRecentActivities() {
-        // In a real app, aggregate from orders, users, payments, etc.
-        // For now, use the 10 most recent orders as activities
-        var activities = orderService.findAll().stream()
-            .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-            .limit(10)
-            .map(Order::toActivityMap)
+    public ResponseEntity<?> getRecentActivities(@RequestParam(defaultValue = "10") int limit) {
+        // Newest order events from the in-memory feed; no order entities are loaded
+        var activities = recentActivityFeed.recent(limit).stream()
+            .map(RecentActivityFeed.Activity::toMap)
             .toList();
         return ResponseEntity.ok(activities);
     }
 
+    @GetMapping("/regions")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getRegionalBreakdown() {
+        return ResponseEntity.ok(orderService.getOrderStatsByDeliveryState());
+    }
+
     @GetMapping("/trends/orders")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getOrderTrends() {
@@ -66,4 +100,16 @@ public class AnalyticsController {
     public ResponseEntity<?> getRevenueTrends() {
         return ResponseEntity.ok(orderService.getRevenueTrendsLast7Days());
     }
-} 
\ No newline at end of file
+
+    // Rebuilds the dashboard rollups from orders, for the last `days` days or all history
+    @PostMapping("/rollups/reconcile")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> reconcileRollups(@RequestParam(required = false) Integer days) {
+        if (days != null && days < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error", "days must be at least 1"));
+        }
+        long start = System.currentTimeMillis();
+        int rows = orderStatsRollup.reconcile(days != null ? java.time.LocalDate.now().minusDays(days) : null);
+        return ResponseEntity.ok(Map.of("rows", rows, "millis", System.currentTimeMillis() - start));
+    }
+}
\ No newline at end of file
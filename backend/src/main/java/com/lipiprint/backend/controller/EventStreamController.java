@@ -0,0 +1,58 @@
+package com.lipiprint.backend.controller;
+
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
+import com.lipiprint.backend.service.EventStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/events")
+public class EventStreamController {
+    @Autowired
+    private EventStreamService eventStreamService;
+
+    // Order status and notification changes for the caller (and admin events for admins).
+    // Browsers resend Last-Event-ID on reconnect; clients that cannot set headers may pass lastEventId.
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@CurrentUser CustomUserDetails principal,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                             @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        String raw = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        Long lastEventId = null;
+        if (raw != null && !raw.isBlank()) {
+            try {
+                lastEventId = Long.parseLong(raw.trim());
+            } catch (NumberFormatException e) {
+                // Treated as a fresh connection; the client reloads its state anyway
+            }
+        }
+        SseEmitter emitter = eventStreamService.open(principal.getId(), principal.isAdmin(), lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "30").build();
+        }
+        return ResponseEntity.ok()
+            // Stops nginx and similar proxies from buffering the stream
+            .header("X-Accel-Buffering", "no")
+            .header("Cache-Control", "no-cache")
+            .body(emitter);
+    }
+
+    // Admin: Open streams and event bus counters
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(eventStreamService.stats());
+    }
+}
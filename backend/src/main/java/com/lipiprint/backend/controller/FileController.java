@@ -3,15 +3,15 @@ package com.lipiprint.backend.controller;
 import com.lipiprint.backend.dto.FileDTO;
 import com.lipiprint.backend.entity.File;
 import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.security.CurrentUser;
 import com.lipiprint.backend.service.FileService;
-import com.lipiprint.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import java.util.List;
@@ -27,8 +27,6 @@ import java.io.IOException;
 public class FileController {
     @Autowired
     private FileService fileService;
-    @Autowired
-    private UserService userService;
 
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFile(
@@ -38,8 +36,7 @@ public class FileController {
         @RequestParam(value = "quality", required = false) String quality,
         @RequestParam(value = "side", required = false) String side,
         @RequestParam(value = "binding", required = false) String binding,
-        Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+        @CurrentUser User user) {
         // File validation
         if (file == null || file.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "No file uploaded."));
@@ -71,22 +68,16 @@ public class FileController {
     }
 
     @GetMapping("")
-    public ResponseEntity<List<FileDTO>> listFiles(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+    public ResponseEntity<List<FileDTO>> listFiles(@CurrentUser User user) {
         List<FileDTO> files = fileService.findByUser(user).stream()
                 .map(f -> new FileDTO(f.getId(), f.getFilename(), f.getOriginalFilename(), f.getContentType(), f.getSize(), f.getUrl(), null, f.getCreatedAt(), f.getUpdatedAt(), f.getPages()))
                 .collect(Collectors.toList());
         return ResponseEntity.ok(files);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/admin")
-    public ResponseEntity<List<FileDTO>> listAllFiles(Authentication authentication) {
-        // Check if user is admin
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        if (user.getRole() != User.Role.ADMIN) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        }
-        
+    public ResponseEntity<List<FileDTO>> listAllFiles() {
         List<FileDTO> files = fileService.findAll().stream()
                 .map(f -> new FileDTO(f.getId(), f.getFilename(), f.getOriginalFilename(), f.getContentType(), f.getSize(), f.getUrl(), 
                     f.getUploadedBy() != null ? new UserDTO(f.getUploadedBy().getId(), f.getUploadedBy().getName(), f.getUploadedBy().getPhone(), f.getUploadedBy().getEmail(), f.getUploadedBy().getRole() != null ? f.getUploadedBy().getRole().name() : null, f.getUploadedBy().isBlocked(), f.getUploadedBy().isCanEdit(), f.getUploadedBy().getCreatedAt(), f.getUploadedBy().getUpdatedAt(), false) : null, 
@@ -95,12 +86,9 @@ public class FileController {
         return ResponseEntity.ok(files);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/admin/delivered")
-    public ResponseEntity<List<FileDTO>> listDeliveredFiles(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        if (user.getRole() != User.Role.ADMIN) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        }
+    public ResponseEntity<List<FileDTO>> listDeliveredFiles() {
         List<FileDTO> files = fileService.findDeliveredFiles().stream()
                 .map(f -> new FileDTO(f.getId(), f.getFilename(), f.getOriginalFilename(), f.getContentType(), f.getSize(), f.getUrl(),
                     f.getUploadedBy() != null ? new UserDTO(f.getUploadedBy().getId(), f.getUploadedBy().getName(), f.getUploadedBy().getPhone(), f.getUploadedBy().getEmail(), f.getUploadedBy().getRole() != null ? f.getUploadedBy().getRole().name() : null, f.getUploadedBy().isBlocked(), f.getUploadedBy().isCanEdit(), f.getUploadedBy().getCreatedAt(), f.getUploadedBy().getUpdatedAt(), false) : null,
@@ -139,14 +127,9 @@ public class FileController {
         }
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
     @DeleteMapping("/admin/{id}")
-    public ResponseEntity<?> deleteFileFromFirebaseOnly(@PathVariable Long id, Authentication authentication) {
-        // Check if user is admin
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        if (user.getRole() != User.Role.ADMIN) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-        }
-        
+    public ResponseEntity<?> deleteFileFromFirebaseOnly(@PathVariable Long id) {
         try {
             fileService.deleteFileFromFirebaseOnly(id);
             return ResponseEntity.noContent().build();
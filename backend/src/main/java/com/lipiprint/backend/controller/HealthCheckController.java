@@ -1,5 +1,14 @@
 package com.lipiprint.backend.controller;
 
+import com.lipiprint.backend.service.AnalyticsSeriesService;
+import com.lipiprint.backend.service.InvoiceService;
+import com.lipiprint.backend.service.MailQueue;
+import com.lipiprint.backend.service.PaymentGateway;
+import com.lipiprint.backend.service.PushDispatcher;
+import com.lipiprint.backend.service.RazorpayWebhookService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -9,10 +18,61 @@ import java.util.Map;
 @RestController
 @RequestMapping("/api/health")
 public class HealthCheckController {
+    @Autowired
+    private MailQueue mailQueue;
+    @Autowired
+    private PaymentGateway paymentGateway;
+    @Autowired
+    private RazorpayWebhookService webhookService;
+    @Autowired
+    private PushDispatcher pushDispatcher;
+    @Autowired
+    private InvoiceService invoiceService;
+    @Autowired
+    private AnalyticsSeriesService analyticsSeriesService;
+
     @GetMapping
     public Map<String, String> health() {
         Map<String, String> status = new HashMap<>();
         status.put("status", "UP");
         return status;
     }
-} 
\ No newline at end of file
+
+    // Outbound mail delivery counters; only the plain health ping is public
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/mail")
+    public ResponseEntity<Map<String, Object>> mail() {
+        return ResponseEntity.ok(mailQueue.stats());
+    }
+
+    // Gateway call latency and webhook ingestion counters; admin only
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/payments")
+    public ResponseEntity<Map<String, Object>> payments() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("gateway", paymentGateway.stats());
+        stats.put("webhooks", webhookService.stats());
+        return ResponseEntity.ok(stats);
+    }
+
+    // Push delivery counters; admin only
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/push")
+    public ResponseEntity<Map<String, Object>> push() {
+        return ResponseEntity.ok(pushDispatcher.stats());
+    }
+
+    // Invoice render pool and store counters; admin only
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/invoices")
+    public ResponseEntity<Map<String, Object>> invoices() {
+        return ResponseEntity.ok(invoiceService.stats());
+    }
+
+    // Analytics series cache counters; admin only
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/analytics")
+    public ResponseEntity<Map<String, Object>> analytics() {
+        return ResponseEntity.ok(analyticsSeriesService.stats());
+    }
+}
\ No newline at end of file
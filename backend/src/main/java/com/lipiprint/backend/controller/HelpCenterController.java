@@ -5,12 +5,12 @@ import com.lipiprint.backend.dto.SupportTicketDTO;
 // Removed unused import
 import com.lipiprint.backend.entity.SupportTicket;
 import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
 import com.lipiprint.backend.service.HelpCenterService;
 import com.lipiprint.backend.service.SupportTicketService;
-import com.lipiprint.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -22,8 +22,6 @@ public class HelpCenterController {
     private HelpCenterService helpCenterService;
     @Autowired
     private SupportTicketService supportTicketService;
-    @Autowired
-    private UserService userService;
 
     @GetMapping("/articles")
     public ResponseEntity<List<HelpCenterArticleDTO>> listArticles() {
@@ -34,18 +32,16 @@ public class HelpCenterController {
     }
 
     @GetMapping("/tickets")
-    public ResponseEntity<List<SupportTicketDTO>> listTickets(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+    public ResponseEntity<List<SupportTicketDTO>> listTickets(@CurrentUser CustomUserDetails principal) {
         List<SupportTicketDTO> tickets = supportTicketService.findAll().stream()
-                .filter(t -> t.getUser().getId().equals(user.getId()))
+                .filter(t -> t.getUser().getId().equals(principal.getId()))
                 .map(t -> new SupportTicketDTO(t.getId(), null, t.getSubject(), t.getDescription(), t.getStatus().name(), t.getCreatedAt(), t.getUpdatedAt()))
                 .collect(Collectors.toList());
         return ResponseEntity.ok(tickets);
     }
 
     @PostMapping("/tickets")
-    public ResponseEntity<SupportTicketDTO> createTicket(@RequestBody SupportTicket ticket, Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+    public ResponseEntity<SupportTicketDTO> createTicket(@RequestBody SupportTicket ticket, @CurrentUser User user) {
         ticket.setUser(user);
         SupportTicket saved = supportTicketService.save(ticket);
         SupportTicketDTO dto = new SupportTicketDTO(saved.getId(), null, saved.getSubject(), saved.getDescription(), saved.getStatus().name(), saved.getCreatedAt(), saved.getUpdatedAt());
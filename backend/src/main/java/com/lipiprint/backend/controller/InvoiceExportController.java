@@ -0,0 +1,77 @@
+package com.lipiprint.backend.controller;
+
+import com.lipiprint.backend.service.InvoiceExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// Bulk GST invoice exports: start one for a date range, poll it, then download the ZIP
+@RestController
+@RequestMapping("/api/admin/invoice-exports")
+public class InvoiceExportController {
+    @Autowired
+    private InvoiceExportService invoiceExportService;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("")
+    public ResponseEntity<?> start(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            InvoiceExportService.Export export = invoiceExportService.start(from, to);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(export.snapshot());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("")
+    public ResponseEntity<List<Map<String, Object>>> list() {
+        return ResponseEntity.ok(invoiceExportService.list());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String id) {
+        InvoiceExportService.Export export = invoiceExportService.get(id);
+        return export != null ? ResponseEntity.ok(export.snapshot()) : ResponseEntity.notFound().build();
+    }
+
+    // Streams the finished ZIP from disk; 409 while the export is still running
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/{id}/download")
+    public ResponseEntity<?> download(@PathVariable String id) {
+        InvoiceExportService.Export export = invoiceExportService.get(id);
+        if (export == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Path file = export.getFile();
+        if (file == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(export.snapshot());
+        }
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(export.filename()).build().toString())
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .body(new FileSystemResource(file));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        return invoiceExportService.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
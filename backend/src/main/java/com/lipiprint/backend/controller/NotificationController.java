@@ -1,12 +1,18 @@
 package com.lipiprint.backend.controller;
 
 import com.lipiprint.backend.dto.NotificationDTO;
-import com.lipiprint.backend.entity.Notification;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
+import com.lipiprint.backend.service.DeviceTokenStore;
+import com.lipiprint.backend.service.NotificationCampaignService;
 import com.lipiprint.backend.service.NotificationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
@@ -14,26 +20,108 @@ import java.util.stream.Collectors;
 public class NotificationController {
     @Autowired
     private NotificationService notificationService;
+    @Autowired
+    private NotificationCampaignService campaignService;
+    @Autowired
+    private DeviceTokenStore deviceTokenStore;
 
+    // The caller's notifications, newest first; pass X-Next-Cursor back as ?cursor= for the next page
     @GetMapping("")
-    public ResponseEntity<List<NotificationDTO>> listNotifications() {
-        List<NotificationDTO> notifications = notificationService.findAll().stream()
+    public ResponseEntity<?> listNotifications(@CurrentUser CustomUserDetails principal,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "20") int limit) {
+        NotificationService.InboxPage page;
+        try {
+            page = notificationService.findForUser(principal.getId(), cursor, Math.max(1, Math.min(limit, 100)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        List<NotificationDTO> notifications = page.items().stream()
                 .map(n -> new NotificationDTO(n.getId(), null, n.getMessage(), n.isRead(), n.getCreatedAt()))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(notifications);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header("X-Unread-Count", String.valueOf(notificationService.countUnread(principal.getId())));
+        if (page.nextCursor() != null) {
+            response.header("X-Next-Cursor", page.nextCursor());
+        }
+        return response.body(notifications);
+    }
+
+    @GetMapping("/unread-count")
+    public ResponseEntity<Map<String, Long>> unreadCount(@CurrentUser CustomUserDetails principal) {
+        return ResponseEntity.ok(Map.of("unread", notificationService.countUnread(principal.getId())));
     }
 
     @PostMapping("/read/{id}")
-    public ResponseEntity<Void> markAsRead(@PathVariable Long id) {
-        Notification notification = notificationService.findById(id).orElseThrow();
-        notification.setRead(true);
-        notificationService.save(notification);
+    public ResponseEntity<Void> markAsRead(@CurrentUser CustomUserDetails principal, @PathVariable Long id) {
+        if (!notificationService.markRead(principal.getId(), id)) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/read-all")
+    public ResponseEntity<Map<String, Integer>> markAllAsRead(@CurrentUser CustomUserDetails principal) {
+        return ResponseEntity.ok(Map.of("updated", notificationService.markAllRead(principal.getId())));
+    }
+
     @DeleteMapping("")
-    public ResponseEntity<Void> clearNotifications() {
-        notificationService.findAll().forEach(n -> notificationService.save(n));
+    public ResponseEntity<Void> clearNotifications(@CurrentUser CustomUserDetails principal) {
+        notificationService.clearForUser(principal.getId());
         return ResponseEntity.noContent().build();
     }
-} 
\ No newline at end of file
+
+    // Registers the caller's device for push notifications (FCM registration token)
+    @PostMapping("/devices")
+    public ResponseEntity<?> registerDevice(@CurrentUser CustomUserDetails principal, @RequestBody Map<String, String> body) {
+        String token = body.get("token");
+        if (token == null || token.isBlank() || token.length() > 512) {
+            return ResponseEntity.badRequest().body("A device token is required");
+        }
+        deviceTokenStore.register(principal.getId(), token.trim(), body.get("platform"));
+        return ResponseEntity.noContent().build();
+    }
+
+    // Called on sign-out so the device stops receiving this user's pushes
+    @DeleteMapping("/devices")
+    public ResponseEntity<Void> unregisterDevice(@CurrentUser CustomUserDetails principal, @RequestParam String token) {
+        return deviceTokenStore.unregister(principal.getId(), token) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    // Admin: Send a message to all customers, or to the users with the given phone numbers, in the background
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/campaigns")
+    public ResponseEntity<?> startCampaign(@RequestBody Map<String, Object> body) {
+        Object message = body.get("message");
+        Object phoneNumbers = body.get("phoneNumbers");
+        try {
+            List<String> phones = phoneNumbers instanceof List<?> list ? list.stream().map(String::valueOf).toList() : null;
+            NotificationCampaignService.Campaign campaign =
+                notificationService.sendBulkPromotionalMessage(phones, message != null ? message.toString() : null);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(campaign.snapshot());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/campaigns")
+    public ResponseEntity<List<Map<String, Object>>> listCampaigns() {
+        return ResponseEntity.ok(campaignService.list());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/campaigns/{id}")
+    public ResponseEntity<Map<String, Object>> getCampaign(@PathVariable String id) {
+        NotificationCampaignService.Campaign campaign = campaignService.get(id);
+        return campaign != null ? ResponseEntity.ok(campaign.snapshot()) : ResponseEntity.notFound().build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/campaigns/{id}/cancel")
+    public ResponseEntity<Void> cancelCampaign(@PathVariable String id) {
+        return campaignService.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
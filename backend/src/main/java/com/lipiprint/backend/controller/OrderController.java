@@ -1,6 +1,7 @@
 package com.lipiprint.backend.controller;
 
 import com.lipiprint.backend.dto.OrderDTO;
+import com.lipiprint.backend.entity.DeliveryAddress;
 import com.lipiprint.backend.entity.Order;
 import com.lipiprint.backend.entity.User;
 import com.lipiprint.backend.entity.UserAddress;
@@ -10,7 +11,8 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Map;
@@ -27,10 +29,10 @@ import com.lipiprint.backend.entity.PrintJob;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.core.io.ByteArrayResource;
-import java.io.ByteArrayOutputStream;
-import org.springframework.security.core.GrantedAuthority;
 import com.lipiprint.backend.service.PricingService;
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import com.lipiprint.backend.service.InvoiceService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import com.lipiprint.backend.repository.FileRepository;
 import jakarta.validation.Valid;
 import com.lipiprint.backend.dto.MessageResponse;
@@ -38,8 +40,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import com.lipiprint.backend.dto.OrderListDTO;
-import org.springframework.core.io.ClassPathResource;
-import java.nio.charset.StandardCharsets;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -50,14 +50,17 @@ public class OrderController {
     private UserService userService;
     private PricingService pricingService;
     private FileRepository fileRepository;
+    private InvoiceService invoiceService;
     
     @Autowired
     public OrderController(OrderService orderService, UserService userService, 
-                          PricingService pricingService, FileRepository fileRepository) {
+                          PricingService pricingService, FileRepository fileRepository,
+                          InvoiceService invoiceService) {
         this.orderService = orderService;
         this.userService = userService;
         this.pricingService = pricingService;
         this.fileRepository = fileRepository;
+        this.invoiceService = invoiceService;
     }
     
     // Helper method for custom rounding: > 0.50 rounds up, <= 0.49 stays down
@@ -73,14 +76,13 @@ public class OrderController {
     }
 
     @PostMapping("")
-    public ResponseEntity<?> createOrder(@Valid @RequestBody OrderDTO orderDTO, Authentication authentication) {
+    public ResponseEntity<?> createOrder(@Valid @RequestBody OrderDTO orderDTO, @CurrentUser User user) {
         logger.info("========================================");
         logger.info("ORDER CREATION STARTING");
         logger.info("OrderDTO: {}", orderDTO);
         logger.info("========================================");
         
         try {
-            User user = userService.findByPhone(authentication.getName()).orElseThrow();
             logger.info("✅ User validated: {} (ID: {})", user.getName(), user.getId());
             
             if (orderDTO.getPrintJobs() == null || orderDTO.getPrintJobs().isEmpty()) {
@@ -139,6 +141,7 @@ public class OrderController {
             order.setUser(user);
             order.setDeliveryType(Order.DeliveryType.valueOf(orderDTO.getDeliveryType().toUpperCase()));
             order.setDeliveryAddress(deliveryAddressDisplay);
+            order.setStructuredAddress(DeliveryAddress.from(deliveryAddress));
             order.setStatus(Order.Status.PENDING);
             order.setTotalAmount(orderDTO.getTotalAmount());
 
@@ -189,10 +192,9 @@ public class OrderController {
 
             if (order.getPrintJobs() != null && !order.getPrintJobs().isEmpty()) {
                 // ✅ Use new method with delivery address for state-based GST calculation
-                PricingService.PriceSummary summary = pricingService.calculatePriceSummaryForPrintJobs(
-                    order.getPrintJobs(), 
-                    order.getDeliveryAddress()
-                );
+                PricingService.PriceSummary summary = order.getStructuredAddress() != null
+                    ? pricingService.calculatePriceSummaryForPrintJobs(order.getPrintJobs(), order.getStructuredAddress())
+                    : pricingService.calculatePriceSummaryForPrintJobs(order.getPrintJobs(), order.getDeliveryAddress());
                 double delivery = order.getDeliveryType() != null && order.getDeliveryType() == Order.DeliveryType.PICKUP ? 0.0 : 30.0;
                 
                 order.setSubtotal(summary.subtotal);
@@ -434,7 +436,8 @@ public class OrderController {
 
     @GetMapping("")
     public ResponseEntity<?> listOrders(
-        Authentication authentication,
+        @CurrentUser CustomUserDetails principal,
+        @CurrentUser User user,
         @RequestParam(required = false) String status,
         @RequestParam(required = false, defaultValue = "0") int page,
         @RequestParam(required = false, defaultValue = "20") int limit
@@ -442,8 +445,7 @@ public class OrderController {
         logger.info("[OrderController] listOrders called: page={}, limit={}, status={}", page, limit, status);
         long startTime = System.currentTimeMillis();
         try {
-            User user = userService.findByPhone(authentication.getName()).orElseThrow();
-            boolean isAdmin = authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).anyMatch(a -> a.equals("ROLE_ADMIN"));
+            boolean isAdmin = principal.isAdmin();
             Pageable pageable = PageRequest.of(page, limit);
             Page<OrderListDTO> dtoPage;
             if (isAdmin && status == null) {
@@ -475,10 +477,8 @@ public class OrderController {
     public ResponseEntity<?> getOrder(@PathVariable Long id) {
         return orderService.findById(id)
             .<ResponseEntity<?>>map(order -> {
-                if (order.getPrintJobs() != null && !order.getPrintJobs().isEmpty()) {
-                    PricingService.PriceSummary summary = pricingService.calculatePriceSummaryForPrintJobs(order.getPrintJobs());
-                    order.setBreakdown(summary.breakdown);
-                }
+                // Served from the snapshot taken at checkout rather than repriced at today's rates
+                order.setBreakdown(orderService.priceBreakdown(order));
                 OrderDTO dto = convertToDTO(order);
                 return ResponseEntity.ok(dto);
             })
@@ -486,10 +486,9 @@ public class OrderController {
     }
 
     @PutMapping("/{id}/status")
-    public ResponseEntity<?> updateOrderStatus(@PathVariable Long id, @RequestParam String status, Authentication authentication) {
+    public ResponseEntity<?> updateOrderStatus(@PathVariable Long id, @RequestParam String status, @CurrentUser User currentUser) {
         try {
             Order order = orderService.findById(id).orElseThrow();
-            User currentUser = userService.findByPhone(authentication.getName()).orElseThrow();
             Order.Status newStatus;
             try {
                 newStatus = Order.Status.valueOf(status.toUpperCase());
@@ -519,10 +518,10 @@ public class OrderController {
     }
 
     @PostMapping("/{id}/print")
-    public ResponseEntity<?> markAsPrinted(@PathVariable Long id, Authentication authentication) {
+    public ResponseEntity<?> markAsPrinted(@PathVariable Long id, @CurrentUser User currentUser) {
         try {
             Order order = orderService.findById(id).orElseThrow();
-            User currentUser = userService.findByPhone(authentication.getName()).orElseThrow();
+            Order.Status oldStatus = order.getStatus();
             
             // Track admin who printed
             order.setPrintedByAdmin(currentUser);
@@ -536,6 +535,7 @@ public class OrderController {
             }
             
             orderService.save(order, null);
+            orderService.publishStatusChange(order, oldStatus);
             return ResponseEntity.ok(new MessageResponse("Order marked as printed successfully"));
         } catch (Exception e) {
             logger.error("[OrderController] Error marking order as printed: ", e);
@@ -544,17 +544,13 @@ public class OrderController {
     }
 
     @PostMapping("/create-razorpay-order")
-    public ResponseEntity<?> createRazorpayOrder(@RequestBody Map<String, Object> payload, Authentication authentication) {
+    public ResponseEntity<?> createRazorpayOrder(@RequestBody Map<String, Object> payload, @CurrentUser(required = false) CustomUserDetails principal) {
         logger.info("[OrderController] createRazorpayOrder called with payload: {}", payload);
         try {
             int amount = (int) payload.getOrDefault("amount", 0);
             String currency = (String) payload.getOrDefault("currency", "INR");
             String receipt = (String) payload.getOrDefault("receipt", "receipt#1");
-            Long userId = null;
-            if (authentication != null) {
-                User user = userService.findByPhone(authentication.getName()).orElse(null);
-                if (user != null) userId = user.getId();
-            }
+            Long userId = principal != null ? principal.getId() : null;
             JSONObject order = orderService.createRazorpayOrder(amount, currency, receipt, userId);
             logger.info("[OrderController] Razorpay order created: {}", order);
             return ResponseEntity.ok(order.toMap());
@@ -565,10 +561,9 @@ public class OrderController {
     }
 
     @PostMapping("/validate")
-    public ResponseEntity<?> validateOrder(@RequestBody Order order, Authentication authentication) {
+    public ResponseEntity<?> validateOrder(@RequestBody Order order, @CurrentUser User user) {
         logger.info("[OrderController] validateOrder called with payload: {}", order);
         try {
-            User user = userService.findByPhone(authentication.getName()).orElseThrow();
             order.setUser(user);
             if (order.getPrintJobs() == null || order.getPrintJobs().isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of("valid", false, "error", "No print jobs attached to order."));
@@ -596,22 +591,16 @@ public class OrderController {
     }
 
     @GetMapping("/{id}/invoice")
-    public ResponseEntity<OrderDTO> getInvoiceData(@PathVariable Long id, Authentication authentication) {
+    public ResponseEntity<OrderDTO> getInvoiceData(@PathVariable Long id, @CurrentUser(required = false) CustomUserDetails currentUser) {
         try {
             Order order = orderService.findById(id).orElseThrow(() -> 
                 new RuntimeException("Order not found with id: " + id));
             
-            User currentUser = null;
             boolean isAdmin = false;
-            if (authentication != null) {
-                currentUser = userService.findByPhone(authentication.getName()).orElse(null);
+            if (currentUser != null) {
                 logger.info("[INVOICE] Current user: {} (id: {}), authorities: {}", 
-                    currentUser != null ? currentUser.getEmail() : null, 
-                    currentUser != null ? currentUser.getId() : null, 
-                    authentication.getAuthorities());
-                isAdmin = authentication.getAuthorities().stream()
-                    .map(a -> a.getAuthority())
-                    .anyMatch(a -> a.equals("ROLE_ADMIN"));
+                    currentUser.getEmail(), currentUser.getId(), currentUser.getAuthorities());
+                isAdmin = currentUser.isAdmin();
             }
             
             if (!isAdmin && (currentUser == null || order.getUser() == null || !order.getUser().getId().equals(currentUser.getId()))) {
@@ -633,151 +622,40 @@ public class OrderController {
         }
     }
 
-    // OLD PDF GENERATION METHOD - REMOVED
-    // Frontend now handles PDF generation
-    /*
-    private byte[] generateInvoicePdfHtml(Order order) {
-        try {
-            if (order == null) {
-                throw new IllegalArgumentException("Order cannot be null");
-            }
-            
-            logger.info("[PDF] Starting invoice generation for order: {}", order.getId());
-            
-            ClassPathResource resource;
-            try {
-                resource = new ClassPathResource("invoice-template.html");
-                if (!resource.exists()) {
-                    logger.error("[PDF] Invoice template file not found");
-                    throw new RuntimeException("Invoice template file not found");
-                }
-                logger.info("[PDF] Template file found, size: {} bytes", resource.contentLength());
-            } catch (Exception e) {
-                logger.error("[PDF] Error loading invoice template: {}", e.getMessage(), e);
-                throw new RuntimeException("Error loading invoice template", e);
-            }
-            
-            byte[] templateBytes;
-            try {
-                templateBytes = resource.getInputStream().readAllBytes();
-                logger.info("[PDF] Template loaded successfully, {} bytes", templateBytes.length);
-            } catch (Exception e) {
-                logger.error("[PDF] Error reading template file: {}", e.getMessage(), e);
-                throw new RuntimeException("Error reading template file", e);
-            }
-            
-            String html = new String(templateBytes, StandardCharsets.UTF_8);
-            
-            html = html.replace("${customerName}", order.getUser() != null && order.getUser().getName() != null ? 
-                order.getUser().getName() : "-");
-            html = html.replace("${customerEmail}", order.getUser() != null && order.getUser().getEmail() != null ? 
-                order.getUser().getEmail() : "-");
-            html = html.replace("${customerPhone}", order.getUser() != null && order.getUser().getPhone() != null ? 
-                order.getUser().getPhone() : "-");
-            html = html.replace("${customerAddress}", order.getDeliveryAddress() != null ? 
-                order.getDeliveryAddress() : "-");
-            html = html.replace("${orderId}", String.valueOf(order.getId()));
-            html = html.replace("${orderDate}", order.getCreatedAt() != null ? 
-                order.getCreatedAt().toLocalDate().toString() : "-");
-            html = html.replace("${orderStatus}", order.getStatus() != null ? 
-                order.getStatus().name() : "-");
-            html = html.replace("${deliveryType}", order.getDeliveryType() != null ? 
-                order.getDeliveryType().name() : "-");
-            html = html.replace("${customerGSTIN}", order.getUser() != null && order.getUser().getGstin() != null ? 
-                order.getUser().getGstin() : "-");
-
-            StringBuilder orderItemsBlock = new StringBuilder();
-            if (order.getPrintJobs() != null) {
-                for (var pj : order.getPrintJobs()) {
-                    try {
-                        var file = pj.getFile();
-                        if (file == null) continue;
-                        
-                        String fileName = file.getOriginalFilename() != null ? 
-                            file.getOriginalFilename() : file.getFilename();
-                        int pages = file.getPages() != null ? file.getPages() : 1;
-                        
-                        String printOptions = "";
-                        if (pj.getOptions() != null) {
-                            try {
-                                ObjectMapper mapper = new ObjectMapper();
-                                java.util.Map<String, Object> opts = mapper.convertValue(
-                                    mapper.readTree(pj.getOptions()), new TypeReference<Map<String, Object>>() {});
-                                printOptions = opts.entrySet().stream()
-                                    .map(e -> "<b>" + escapeHtml(e.getKey().replace("_", " ")) + ":</b> " + 
-                                        escapeHtml(String.valueOf(e.getValue())))
-                                    .reduce((a, b) -> a + "<br>" + b).orElse("");
-                            } catch (Exception e) {
-                                logger.warn("[PDF] Error parsing print options: {}", e.getMessage());
-                                printOptions = "Error parsing options";
-                            }
-                        }
-                        
-                        double price = pj.getPrice() != null ? pj.getPrice() : 0.0;
-                        
-                        orderItemsBlock.append("<tr>")
-                            .append("<td style='padding:8px 6px;'>").append(escapeHtml(fileName)).append("</td>")
-                            .append("<td style='padding:8px 6px;'>").append(printOptions).append("</td>")
-                            .append("<td style='padding:8px 6px;'>").append(pages).append("</td>")
-                            .append("<td style='padding:8px 6px;'>INR ").append(String.format("%.2f", price)).append("</td>")
-                            .append("</tr>");
-                    } catch (Exception e) {
-                        logger.error("[PDF] Error processing print job: {}", e.getMessage(), e);
-                    }
-                }
-            }
-            html = html.replace("${orderItemsBlock}", orderItemsBlock.toString());
+    // Invoice PDF, rendered once per version of the invoice content and then served from the store.
+    // The ETag is known before any PDF is read, so an unchanged invoice costs no download at all.
+    @GetMapping("/{id}/invoice/pdf")
+    public ResponseEntity<?> getInvoicePdf(@PathVariable Long id,
+                                           @CurrentUser(required = false) CustomUserDetails currentUser,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Order order = orderService.findById(id).orElse(null);
+        if (order == null) {
+            return ResponseEntity.status(404).body(Map.of("error", "Order not found"));
+        }
+        boolean isAdmin = currentUser != null && currentUser.isAdmin();
+        if (!isAdmin && (currentUser == null || order.getUser() == null || !order.getUser().getId().equals(currentUser.getId()))) {
+            return ResponseEntity.status(403).build();
+        }
 
-            String orderNoteBlock = "";
-            if (order.getOrderNote() != null && !order.getOrderNote().isBlank()) {
-                orderNoteBlock = "<div class='order-note-block'><b>Order Note:</b> " + 
-                    escapeHtml(order.getOrderNote()) + "</div>";
-            }
-            html = html.replace("${orderNoteBlock}", orderNoteBlock);
-            
-            double subtotal = order.getSubtotal() != null ? order.getSubtotal() : 0.0;
-            double discount = order.getDiscount() != null ? order.getDiscount() : 0.0;
-            double gst = order.getGst() != null ? order.getGst() : 0.0;
-            double delivery = order.getDelivery() != null ? order.getDelivery() : 0.0;
-            double grandTotal = order.getGrandTotal() != null ? order.getGrandTotal() : 0.0;
-            
-            html = html.replace("${subtotal}", String.format("%.2f", subtotal));
-            html = html.replace("${discount}", String.format("%.2f", discount));
-            html = html.replace("${gst}", String.format("%.2f", gst));
-            html = html.replace("${delivery}", String.format("%.2f", delivery));
-            html = html.replace("${grandTotal}", String.format("%.2f", grandTotal));
-            
-            try {
-                logger.info("[PDF] Starting PDF rendering...");
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                PdfRendererBuilder builder = new PdfRendererBuilder();
-                builder.withHtmlContent(html, null);
-                builder.toStream(baos);
-                builder.run();
-                byte[] pdfBytes = baos.toByteArray();
-                logger.info("[PDF] PDF generated successfully, {} bytes", pdfBytes.length);
-                return pdfBytes;
-            } catch (Exception e) {
-                logger.error("[PDF] Error rendering HTML to PDF: {}", e.getMessage(), e);
-                logger.error("[PDF] HTML content length: {}", html.length());
-                logger.error("[PDF] Order details - ID: {}, User: {}, PrintJobs: {}", 
-                    order.getId(), 
-                    order.getUser() != null ? order.getUser().getId() : "null",
-                    order.getPrintJobs() != null ? order.getPrintJobs().size() : "null");
-                throw new RuntimeException("Error rendering PDF: " + e.getMessage(), e);
-            }
+        InvoiceService.Invoice invoice = invoiceService.prepare(order);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(invoice.etag()) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(invoice.etag()).build();
+        }
+        try {
+            byte[] pdf = invoiceService.pdf(invoice);
+            return ResponseEntity.ok()
+                .eTag(invoice.etag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + invoice.filename() + "\"")
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(pdf);
+        } catch (InvoiceService.RenderUnavailableException e) {
+            logger.warn("[INVOICE] {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5")
+                .body(Map.of("error", "Invoice is being generated, please retry shortly"));
         } catch (Exception e) {
-            logger.error("[PDF] Exception during HTML PDF generation: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to generate invoice PDF: " + e.getMessage(), e);
+            logger.error("[INVOICE] Error generating invoice PDF for order {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(500).body(Map.of("error", "Failed to generate invoice"));
         }
     }
-    */
-
-    private String escapeHtml(String s) {
-        return s == null ? "" : s.replace("&", "&amp;")
-                                 .replace("<", "&lt;")
-                                 .replace(">", "&gt;")
-                                 .replace("\"", "&quot;")
-                                 .replace("'", "&#39;");
-    }
 }
\ No newline at end of file
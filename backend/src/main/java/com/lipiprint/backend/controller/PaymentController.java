@@ -3,20 +3,17 @@ package com.lipiprint.backend.controller;
 import com.lipiprint.backend.entity.Payment;
 import com.lipiprint.backend.entity.Order;
 // Removed unused import
+import com.lipiprint.backend.service.PaymentReconciliationService;
 import com.lipiprint.backend.service.PaymentService;
-import com.lipiprint.backend.service.OrderService;
+import com.lipiprint.backend.service.RazorpayWebhookService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import jakarta.servlet.http.HttpServletRequest;
-import java.io.BufferedReader;
-import java.security.SignatureException;
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.util.Base64;
 
 @RestController
 @RequestMapping("/api/payments")
@@ -24,87 +21,32 @@ public class PaymentController {
     @Autowired
     private PaymentService paymentService;
     @Autowired
-    private OrderService orderService;
+    private RazorpayWebhookService webhookService;
     @Autowired
-    // Removed unused field
+    private PaymentReconciliationService reconciliationService;
 
-    @Value("${razorpay.key_secret}")
-    private String razorpayKeySecret;
-
-    // Razorpay webhook endpoint
+    // Razorpay webhook endpoint: verified and recorded here, applied asynchronously
     @PostMapping("/webhook")
-    public ResponseEntity<?> handleRazorpayWebhook(HttpServletRequest request, @RequestHeader(value = "X-Razorpay-Signature", required = false) String signature) {
+    public ResponseEntity<?> handleRazorpayWebhook(@RequestBody(required = false) byte[] body,
+                                                   @RequestHeader(value = "X-Razorpay-Signature", required = false) String signature,
+                                                   @RequestHeader(value = "X-Razorpay-Event-Id", required = false) String eventId) {
         try {
-            // Read raw body
-            StringBuilder sb = new StringBuilder();
-            try (BufferedReader reader = request.getReader()) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line);
-                }
-            }
-            String payload = sb.toString();
-            // Verify signature
-            if (signature == null || !verifyRazorpaySignature(payload, signature, razorpayKeySecret)) {
-                return ResponseEntity.status(400).body("Invalid or missing Razorpay signature");
+            RazorpayWebhookService.Result result = webhookService.accept(body != null ? body : new byte[0], signature, eventId);
+            switch (result) {
+                case INVALID_SIGNATURE:
+                    return ResponseEntity.status(400).body("Invalid or missing Razorpay signature");
+                case MALFORMED:
+                    return ResponseEntity.badRequest().body("Malformed webhook payload");
+                case DUPLICATE:
+                    return ResponseEntity.ok("Webhook already processed");
+                default:
+                    return ResponseEntity.ok("Webhook accepted");
             }
-            // Parse payload as JSON
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>> typeRef = new com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>>() {};
-            Map<String, Object> body = mapper.readValue(payload, typeRef);
-            // Unused variable removed
-            Map<String, Object> paymentEntity = mapper.convertValue(body.get("payload"), typeRef);
-            if (paymentEntity == null) return ResponseEntity.badRequest().body("Missing payload");
-            Map<String, Object> payment = mapper.convertValue(paymentEntity.get("payment"), typeRef);
-            if (payment == null) return ResponseEntity.badRequest().body("Missing payment");
-            Map<String, Object> paymentData = mapper.convertValue(payment.get("entity"), typeRef);
-            if (paymentData == null) return ResponseEntity.badRequest().body("Missing payment entity");
-            String razorpayOrderId = (String) paymentData.get("order_id");
-            String razorpayPaymentId = (String) paymentData.get("id");
-            Double amount = paymentData.get("amount") != null ? Double.valueOf(paymentData.get("amount").toString()) / 100.0 : null;
-            String status = (String) paymentData.get("status");
-            Payment paymentRecord = paymentService.findByRazorpayOrderId(razorpayOrderId).orElseGet(Payment::new);
-            paymentRecord.setRazorpayOrderId(razorpayOrderId);
-            paymentRecord.setRazorpayPaymentId(razorpayPaymentId);
-            paymentRecord.setAmount(amount);
-            if ("captured".equals(status)) {
-                paymentRecord.setStatus(Payment.Status.SUCCESS);
-                // Update order status if linked
-                if (paymentRecord.getOrder() != null) {
-                    Order order = paymentRecord.getOrder();
-                    order.setStatus(Order.Status.PROCESSING);
-                    orderService.save(order, razorpayOrderId);
-                }
-            } else if ("failed".equals(status)) {
-                paymentRecord.setStatus(Payment.Status.FAILED);
-                if (paymentRecord.getOrder() != null) {
-                    Order order = paymentRecord.getOrder();
-                    order.setStatus(Order.Status.OUT_FOR_DELIVERY);
-                    orderService.save(order, razorpayOrderId);
-                }
-            } else {
-                paymentRecord.setStatus(Payment.Status.PENDING);
-            }
-            paymentService.save(paymentRecord);
-            return ResponseEntity.ok("Webhook processed");
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Webhook error: " + e.getMessage());
         }
     }
 
-    private boolean verifyRazorpaySignature(String payload, String actualSignature, String secret) throws SignatureException {
-        try {
-            Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secret_key = new SecretKeySpec(secret.getBytes(), "HmacSHA256");
-            sha256_HMAC.init(secret_key);
-            byte[] hash = sha256_HMAC.doFinal(payload.getBytes());
-            String generatedSignature = new String(Base64.getEncoder().encode(hash));
-            return generatedSignature.equals(actualSignature);
-        } catch (Exception e) {
-            throw new SignatureException("Failed to verify Razorpay signature", e);
-        }
-    }
-
     // Admin: Orders with failed/missing payments
     @GetMapping("/orders-with-failed-payments")
     public ResponseEntity<List<Order>> getOrdersWithFailedPayments() {
@@ -119,4 +61,32 @@ public class PaymentController {
         List<Payment> payments = paymentService.findPaymentsWithNoOrder(Payment.Status.SUCCESS);
         return ResponseEntity.ok(payments);
     }
-}
\ No newline at end of file
+
+    // Admin: Unresolved gateway/local mismatches and the last reconciliation run
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/reconciliation")
+    public ResponseEntity<Map<String, Object>> getReconciliation(@RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("lastRun", reconciliationService.getLastRun());
+        result.put("mismatches", reconciliationService.findUnresolved(Math.max(1, Math.min(limit, 1000))));
+        return ResponseEntity.ok(result);
+    }
+
+    // Admin: Reconcile now instead of waiting for the hourly job
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/reconciliation/run")
+    public ResponseEntity<Map<String, Object>> runReconciliation() {
+        Map<String, Object> summary = reconciliationService.run();
+        if (summary.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.ok(summary);
+    }
+
+    // Admin: Mark a mismatch as handled
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/reconciliation/{id}/resolve")
+    public ResponseEntity<?> resolveMismatch(@PathVariable Long id) {
+        return reconciliationService.markResolved(id) ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -3,12 +3,11 @@ package com.lipiprint.backend.controller;
 import com.lipiprint.backend.dto.PrintJobDTO;
 import com.lipiprint.backend.entity.PrintJob;
 import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.security.CurrentUser;
 import com.lipiprint.backend.service.PrintJobService;
-import com.lipiprint.backend.service.UserService;
 import com.lipiprint.backend.service.PricingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -30,8 +29,6 @@ public class PrintJobController {
     @Autowired
     private PrintJobService printJobService;
     @Autowired
-    private UserService userService;
-    @Autowired
     private PricingService pricingService;
     @Autowired
     private BindingOptionRepository bindingOptionRepository;
@@ -39,10 +36,9 @@ public class PrintJobController {
     private DiscountRuleRepository discountRuleRepository;
 
     @PostMapping("")
-    public ResponseEntity<PrintJobDTO> createPrintJob(@RequestBody PrintJob printJob, Authentication authentication) {
+    public ResponseEntity<PrintJobDTO> createPrintJob(@RequestBody PrintJob printJob, @CurrentUser User user) {
         try {
             logger.info("[PrintJobController] Incoming print job payload: {}", printJob);
-            User user = userService.findByPhone(authentication.getName()).orElseThrow();
             printJob.setUser(user);
             PrintJob saved = printJobService.save(printJob);
             PrintJobDTO dto = new PrintJobDTO(saved.getId(), null, null, saved.getStatus().name(), saved.getOptions(), saved.getCreatedAt(), saved.getUpdatedAt());
@@ -2,13 +2,12 @@ package com.lipiprint.backend.controller;
 
 import com.lipiprint.backend.dto.SettingsDTO;
 import com.lipiprint.backend.entity.Settings;
-import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
 import com.lipiprint.backend.service.SettingsService;
-import com.lipiprint.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -18,8 +17,6 @@ import java.util.stream.Collectors;
 public class SettingsController {
     @Autowired
     private SettingsService settingsService;
-    @Autowired
-    private UserService userService;
 
     @GetMapping("")
     public ResponseEntity<List<SettingsDTO>> getSettings() {
@@ -44,9 +41,8 @@ public class SettingsController {
 
     @PutMapping("/accepting-orders")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> setAcceptingOrders(@RequestParam boolean accepting, Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        if (!user.isCanEdit()) {
+    public ResponseEntity<?> setAcceptingOrders(@RequestParam boolean accepting, @CurrentUser CustomUserDetails principal) {
+        if (!principal.isCanEdit()) {
             throw new RuntimeException("You don't have permission to toggle accepting orders");
         }
         settingsService.setAcceptingOrders(accepting);
@@ -3,11 +3,13 @@ package com.lipiprint.backend.controller;
 import com.lipiprint.backend.dto.TrackingResponse;
 import com.lipiprint.backend.service.OrderService;
 import com.lipiprint.backend.service.NimbusPostService;
+import com.lipiprint.backend.service.ShipmentDispatcher;
 import com.lipiprint.backend.dto.ShipmentRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -28,6 +30,9 @@ public class ShippingController {
     @Autowired
     private NimbusPostService nimbusPostService;
     
+    @Autowired
+    private ShipmentDispatcher shipmentDispatcher;
+    
     @PostMapping("/estimate-delivery")
     public ResponseEntity<?> estimateDelivery(@RequestBody Map<String, Object> request) {
         try {
@@ -95,6 +100,14 @@ public class ShippingController {
         }
     }
     
+    // Orders whose bulk shipment request failed after it was sent; look each order number up in
+    // NimbusPost, then retry the ones that have no shipment there
+    @GetMapping("/unconfirmed")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> unconfirmedShipments() {
+        return ResponseEntity.ok(Map.of("orders", shipmentDispatcher.getUnconfirmed()));
+    }
+    
     @PostMapping("/retry/{orderId}")
     public ResponseEntity<?> retryShipmentCreation(@PathVariable Long orderId) {
         try {
@@ -3,10 +3,11 @@ package com.lipiprint.backend.controller;
 import com.lipiprint.backend.entity.User;
 import com.lipiprint.backend.entity.UserAddress;
 import com.lipiprint.backend.repository.UserAddressRepository;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
 import com.lipiprint.backend.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,21 +29,21 @@ public class UserAddressController {
     private static final Pattern PINCODE_PATTERN = Pattern.compile("^\\d{6}$");
 
     @GetMapping
-    public List<UserAddress> getAddresses(Authentication auth) {
-        User user = userService.findByPhone(auth.getName()).orElseThrow();
-        return repo.findByUserId(user.getId());
+    public List<UserAddress> getAddresses(@CurrentUser CustomUserDetails principal) {
+        return repo.findByUserId(principal.getId());
     }
 
     // ✅ CRITICAL FIX: Change from UserAddress to Map<String, Object>
     @PostMapping
-    public ResponseEntity<?> addAddress(@RequestBody Map<String, Object> addressData, Authentication auth) {
+    public ResponseEntity<?> addAddress(@RequestBody Map<String, Object> addressData, @CurrentUser CustomUserDetails principal) {
         logger.info("========================================");
         logger.info("ADD ADDRESS REQUEST");
         logger.info("Address Data: {}", addressData);
         logger.info("========================================");
         
         try {
-            User user = userService.findByPhone(auth.getName()).orElseThrow();
+            // The saved address is returned as-is, so attach a loaded user rather than a lazy reference
+            User user = userService.findById(principal.getId()).orElseThrow();
             logger.info("✅ User found: {} (ID: {})", user.getName(), user.getId());
             
             // ✅ EXTRACT: Convert JSON to UserAddress object
@@ -87,10 +88,9 @@ address.setAddressType((String) addressData.getOrDefault("addressType", "home"))
 
     // ✅ ALSO FIX: Update method to handle JSON
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateAddress(@PathVariable Long id, @RequestBody Map<String, Object> addressData, Authentication auth) {
+    public ResponseEntity<?> updateAddress(@PathVariable Long id, @RequestBody Map<String, Object> addressData, @CurrentUser CustomUserDetails principal) {
         try {
-            User user = userService.findByPhone(auth.getName()).orElseThrow();
-            UserAddress existing = repo.findByIdAndUserId(id, user.getId()).orElseThrow();
+            UserAddress existing = repo.findByIdAndUserId(id, principal.getId()).orElseThrow();
             
             // ✅ UPDATE: Set fields from JSON data
             if (addressData.containsKey("line1")) existing.setLine1((String) addressData.get("line1"));
@@ -118,10 +118,9 @@ address.setAddressType((String) addressData.getOrDefault("addressType", "home"))
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteAddress(@PathVariable Long id, Authentication auth) {
+    public ResponseEntity<?> deleteAddress(@PathVariable Long id, @CurrentUser CustomUserDetails principal) {
         try {
-            User user = userService.findByPhone(auth.getName()).orElseThrow();
-            UserAddress existing = repo.findByIdAndUserId(id, user.getId()).orElse(null);
+            UserAddress existing = repo.findByIdAndUserId(id, principal.getId()).orElse(null);
             
             if (existing == null) {
                 return ResponseEntity.notFound().build();
@@ -137,10 +136,9 @@ address.setAddressType((String) addressData.getOrDefault("addressType", "home"))
     }
 
     @PutMapping("/{id}/default")
-    public ResponseEntity<?> setDefault(@PathVariable Long id, Authentication auth) {
+    public ResponseEntity<?> setDefault(@PathVariable Long id, @CurrentUser CustomUserDetails principal) {
         try {
-            User user = userService.findByPhone(auth.getName()).orElseThrow();
-            repo.findByUserId(user.getId()).forEach(addr -> {
+            repo.findByUserId(principal.getId()).forEach(addr -> {
                 addr.setIsDefault(addr.getId().equals(id));
                 repo.save(addr);
             });
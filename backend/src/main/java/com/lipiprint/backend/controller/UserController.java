@@ -5,12 +5,13 @@ import com.lipiprint.backend.dto.UserCreateRequest;
 import com.lipiprint.backend.dto.UserUpdateRequest;
 import com.lipiprint.backend.dto.UserDTO;
 import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.security.CurrentUser;
+import com.lipiprint.backend.security.CustomUserDetails;
 import com.lipiprint.backend.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Map;
@@ -23,22 +24,19 @@ public class UserController {
     private UserService userService;
 
     @GetMapping("/profile")
-    public ResponseEntity<UserDTO> getProfile(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+    public ResponseEntity<UserDTO> getProfile(@CurrentUser User user) {
         UserDTO userDTO = new UserDTO(user.getId(), user.getName(), user.getPhone(), user.getEmail(), user.getRole().name(), user.isBlocked(), user.isCanEdit(), user.getCreatedAt(), user.getUpdatedAt(), false);
         return ResponseEntity.ok(userDTO);
     }
 
     @GetMapping("/statistics")
-    public ResponseEntity<Map<String, Object>> getUserStatistics(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        Map<String, Object> stats = userService.getUserStatistics(user.getId());
+    public ResponseEntity<Map<String, Object>> getUserStatistics(@CurrentUser CustomUserDetails principal) {
+        Map<String, Object> stats = userService.getUserStatistics(principal.getId());
         return ResponseEntity.ok(stats);
     }
 
     @PutMapping("/profile")
-    public ResponseEntity<UserDTO> updateProfile(Authentication authentication, @Valid @RequestBody UserUpdateRequest updateRequest) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+    public ResponseEntity<UserDTO> updateProfile(@CurrentUser User user, @Valid @RequestBody UserUpdateRequest updateRequest) {
         
         // Check if email is already in use by another user
         if (!user.getEmail().equals(updateRequest.getEmail())) {
@@ -64,9 +62,8 @@ public class UserController {
     }
 
     @DeleteMapping("/profile")
-    public ResponseEntity<?> deleteOwnAccount(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
-        userService.deleteUser(user.getId());
+    public ResponseEntity<?> deleteOwnAccount(@CurrentUser CustomUserDetails principal) {
+        userService.deleteUser(principal.getId());
         return ResponseEntity.noContent().build();
     }
 
@@ -101,10 +98,9 @@ public class UserController {
     }
 
     @GetMapping("/can-edit")
-    public ResponseEntity<Map<String, Boolean>> checkCanEdit(Authentication authentication) {
-        User user = userService.findByPhone(authentication.getName()).orElseThrow();
+    public ResponseEntity<Map<String, Boolean>> checkCanEdit(@CurrentUser CustomUserDetails principal) {
         Map<String, Boolean> response = new java.util.HashMap<>();
-        response.put("canEdit", user.isCanEdit());
+        response.put("canEdit", principal.isCanEdit());
         return ResponseEntity.ok(response);
     }
 } 
\ No newline at end of file
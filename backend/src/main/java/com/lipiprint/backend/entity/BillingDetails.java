@@ -0,0 +1,50 @@
+package com.lipiprint.backend.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * The customer's billing details as they were when the order was placed. The invoice is built from
+ * these rather than the live {@link User}, so editing a profile does not change an issued invoice.
+ * Null for orders placed before it existed and not yet backfilled by setup-database.sql.
+ */
+@Embeddable
+public class BillingDetails {
+
+    @Column(name = "billing_name", updatable = false)
+    private String name;
+
+    @Column(name = "billing_email", updatable = false)
+    private String email;
+
+    @Column(name = "billing_phone", updatable = false)
+    private String phone;
+
+    @Column(name = "billing_gstin", updatable = false)
+    private String gstin;
+
+    public BillingDetails() {}
+
+    public static BillingDetails from(User user) {
+        if (user == null) {
+            return null;
+        }
+        BillingDetails billing = new BillingDetails();
+        billing.setName(user.getName());
+        billing.setEmail(user.getEmail());
+        billing.setPhone(user.getPhone());
+        billing.setGstin(user.getGstin());
+        return billing;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public String getPhone() { return phone; }
+    public void setPhone(String phone) { this.phone = phone; }
+
+    public String getGstin() { return gstin; }
+    public void setGstin(String gstin) { this.gstin = gstin; }
+}
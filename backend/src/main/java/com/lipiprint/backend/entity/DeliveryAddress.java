@@ -0,0 +1,84 @@
+package com.lipiprint.backend.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * Structured delivery address stored on the order itself, so shipping, GST and regional
+ * analytics read columns instead of re-parsing the display string in {@code orders.delivery_address}.
+ */
+@Embeddable
+public class DeliveryAddress {
+
+    @Column(name = "delivery_line1")
+    private String line1;
+
+    @Column(name = "delivery_line2")
+    private String line2;
+
+    @Column(name = "delivery_city")
+    private String city;
+
+    @Column(name = "delivery_state")
+    private String state;
+
+    @Column(name = "delivery_pincode", length = 6)
+    private String pincode;
+
+    @Column(name = "delivery_phone")
+    private String phone;
+
+    public DeliveryAddress() {}
+
+    public static DeliveryAddress from(UserAddress address) {
+        if (address == null) {
+            return null;
+        }
+        DeliveryAddress delivery = new DeliveryAddress();
+        delivery.setLine1(trim(address.getLine1()));
+        delivery.setLine2(trim(address.getLine2()));
+        delivery.setCity(trim(address.getCity()));
+        delivery.setState(trim(address.getState()));
+        delivery.setPincode(trim(address.getPincode()));
+        delivery.setPhone(trim(address.getPhone()));
+        return delivery;
+    }
+
+    // Detached UserAddress for the shipping code, which works in terms of UserAddress
+    public UserAddress toUserAddress() {
+        UserAddress address = new UserAddress();
+        address.setLine1(line1);
+        address.setLine2(line2);
+        address.setCity(city);
+        address.setState(state);
+        address.setPincode(pincode);
+        address.setPhone(phone);
+        address.setAddressType("delivery");
+        return address;
+    }
+
+    public boolean hasValidPincode() {
+        return pincode != null && pincode.matches("\\d{6}");
+    }
+
+    private static String trim(String value) {
+        return value != null ? value.trim() : null;
+    }
+
+    public String getLine1() { return line1; }
+    public void setLine1(String line1) { this.line1 = line1; }
+
+    public String getLine2() { return line2; }
+    public void setLine2(String line2) { this.line2 = line2; }
+
+    public String getCity() { return city; }
+    public void setCity(String city) { this.city = city; }
+
+    public String getState() { return state; }
+    public void setState(String state) { this.state = state; }
+
+    public String getPincode() { return pincode; }
+    public void setPincode(String pincode) { this.pincode = pincode; }
+
+    public String getPhone() { return phone; }
+    public void setPhone(String phone) { this.phone = phone; }
+}
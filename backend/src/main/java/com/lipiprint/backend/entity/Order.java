@@ -1,12 +1,16 @@
 package com.lipiprint.backend.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_delivery_pincode", columnList = "delivery_pincode"),
+    @Index(name = "idx_orders_delivery_state", columnList = "delivery_state"),
+    @Index(name = "idx_orders_created_at", columnList = "created_at")
+})
 public class Order {
     
     public enum Status {
@@ -56,7 +60,10 @@ public class Order {
     private Double delivery;
     private Double grandTotal;
     
-    @Transient
+    // Line items as priced when the order was placed; never rewritten by JPA, so later catalog
+    // changes do not alter what the customer was charged. Null for orders placed before it existed.
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "price_breakdown", columnDefinition = "jsonb", updatable = false)
     private java.util.List<com.lipiprint.backend.service.PricingService.BreakdownItem> breakdown;
 
     private LocalDateTime createdAt;
@@ -68,6 +75,14 @@ public class Order {
     
     @Column(name = "delivery_address")
     private String deliveryAddress;
+
+    // Structured copy of the delivery address; null for pickup orders
+    @Embedded
+    private DeliveryAddress structuredAddress;
+
+    // Customer details for the invoice, captured when the order is placed
+    @Embedded
+    private BillingDetails billing;
     
     @Column(name = "order_note")
     private String orderNote;
@@ -188,6 +203,12 @@ public class Order {
     public String getDeliveryAddress() { return deliveryAddress; }
     public void setDeliveryAddress(String deliveryAddress) { this.deliveryAddress = deliveryAddress; }
 
+    public DeliveryAddress getStructuredAddress() { return structuredAddress; }
+    public void setStructuredAddress(DeliveryAddress structuredAddress) { this.structuredAddress = structuredAddress; }
+
+    public BillingDetails getBilling() { return billing; }
+    public void setBilling(BillingDetails billing) { this.billing = billing; }
+
     public java.util.List<PrintJob> getPrintJobs() { return printJobs; }
     public void setPrintJobs(java.util.List<PrintJob> printJobs) { 
         this.printJobs = printJobs != null ? printJobs : new java.util.ArrayList<>(); 
@@ -340,24 +361,6 @@ public class Order {
         return status == Status.COMPLETED || status == Status.DELIVERED;
     }
 
-    // *** ACTIVITY MAPPING FOR ADMIN DASHBOARD ***
-    public Map<String, Object> toActivityMap() {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", id);
-        map.put("type", "order");
-        map.put("action", status != null ? status.name() : "PENDING");
-        map.put("user", user != null ? user.getName() : "Unknown");
-        map.put("amount", totalAmount);
-        map.put("delivery_type", deliveryType != null ? deliveryType.name() : "UNKNOWN");
-        map.put("payment_method", paymentMethod != null ? paymentMethod.name() : "UNKNOWN");
-        map.put("time", createdAt != null ? createdAt.toString() : "");
-        map.put("awb_number", awbNumber);
-        map.put("courier_name", courierName);
-        map.put("phone", phone);
-        map.put("address", deliveryAddress);
-        return map;
-    }
-
     // *** BUSINESS CALCULATION METHODS ***
     public Double getCodAmountForShipping() {
         return isCodOrder() ? totalAmount : 0.0;
@@ -5,6 +5,7 @@ import com.lipiprint.backend.dto.OrderListDTO;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -14,17 +15,18 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     Page<Order> findByUserId(Long userId, Pageable pageable);
     Page<Order> findByStatus(Order.Status status, Pageable pageable);
 
-    long count();
-    long countByStatus(Order.Status status);
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.user WHERE o.id IN :ids")
+    List<Order> findAllWithUserByIdIn(@Param("ids") Collection<Long> ids);
 
-    @Query("SELECT COALESCE(SUM(o.totalAmount), 0) FROM Order o WHERE o.status IN :statuses")
-    Double sumTotalAmountByStatuses(@Param("statuses") List<Order.Status> statuses);
+    // Everything an invoice shows, in one query per batch of orders; customer details are on the order itself
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.printJobs pj LEFT JOIN FETCH pj.file WHERE o.id IN :ids")
+    List<Order> findAllForInvoicesByIdIn(@Param("ids") Collection<Long> ids);
 
-    @Query(value = "SELECT DATE(o.created_at) as day, COUNT(*) as count FROM orders o WHERE o.created_at >= CURRENT_DATE - INTERVAL '7 days' GROUP BY day ORDER BY day", nativeQuery = true)
-    List<Object[]> getOrderCountByDayLast7Days();
+    long count();
+    long countByStatus(Order.Status status);
 
-    @Query(value = "SELECT DATE(o.created_at) as day, COALESCE(SUM(o.total_amount),0) as revenue FROM orders o WHERE o.created_at >= CURRENT_DATE - INTERVAL '7 days' AND o.status IN (:statuses) GROUP BY day ORDER BY day", nativeQuery = true)
-    List<Object[]> getRevenueByDayLast7Days(@Param("statuses") List<String> statuses);
+    @Query("SELECT o.structuredAddress.state, COUNT(o), COALESCE(SUM(o.totalAmount), 0) FROM Order o WHERE o.structuredAddress.state IS NOT NULL AND o.status IN :statuses GROUP BY o.structuredAddress.state ORDER BY COUNT(o) DESC")
+    List<Object[]> getOrderStatsByDeliveryState(@Param("statuses") List<Order.Status> statuses);
 
     @Query("SELECT new com.lipiprint.backend.dto.OrderListDTO(o.id, u.name, CAST(o.status AS string), o.totalAmount, o.createdAt, o.deliveryType, o.awbNumber, o.courierName, o.trackingUrl, o.expectedDeliveryDate, pAdmin.name, prAdmin.name, cAdmin.name, o.printedAt, o.processedAt, o.completedAt) FROM Order o JOIN o.user u LEFT JOIN o.printedByAdmin pAdmin LEFT JOIN o.processedByAdmin prAdmin LEFT JOIN o.completedByAdmin cAdmin ORDER BY o.createdAt DESC")
     Page<OrderListDTO> findAllForList(Pageable pageable);
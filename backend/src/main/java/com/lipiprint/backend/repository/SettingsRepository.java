@@ -2,6 +2,8 @@ package com.lipiprint.backend.repository;
 
 import com.lipiprint.backend.entity.Settings;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.List;
 
 public interface SettingsRepository extends JpaRepository<Settings, Long> {
-} 
\ No newline at end of file
+    List<Settings> findByKeyOrderByIdAsc(String key);
+}
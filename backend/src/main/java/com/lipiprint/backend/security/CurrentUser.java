@@ -0,0 +1,25 @@
+package com.lipiprint.backend.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Injects the authenticated user into a controller method parameter.
+ *
+ * Declare the parameter as {@link CustomUserDetails} to get the cached principal with no database
+ * access, or as {@link com.lipiprint.backend.entity.User} to get a lazy reference that is only loaded
+ * (by primary key) when a field other than the id is read.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+
+    /**
+     * When false, anonymous requests resolve to null instead of failing.
+     */
+    boolean required() default true;
+}
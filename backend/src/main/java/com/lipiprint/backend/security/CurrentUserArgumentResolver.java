@@ -0,0 +1,71 @@
+package com.lipiprint.backend.security;
+
+import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves {@link CurrentUser} parameters from the principal {@link JwtAuthFilter} already put in the
+ * security context, instead of each handler looking the user up again by phone.
+ */
+@Component
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private static final String USER_ATTRIBUTE = CurrentUserArgumentResolver.class.getName() + ".user";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        if (!parameter.hasParameterAnnotation(CurrentUser.class)) {
+            return false;
+        }
+        Class<?> type = parameter.getParameterType();
+        return type == User.class || type == CustomUserDetails.class;
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        CustomUserDetails principal = currentPrincipal();
+        if (principal == null) {
+            CurrentUser annotation = parameter.getParameterAnnotation(CurrentUser.class);
+            if (annotation != null && !annotation.required()) {
+                return null;
+            }
+            throw new AuthenticationCredentialsNotFoundException("No authenticated user");
+        }
+
+        if (parameter.getParameterType() == CustomUserDetails.class) {
+            return principal;
+        }
+
+        // One reference per request, however many parameters ask for it
+        Object cached = webRequest.getAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (cached instanceof User) {
+            return cached;
+        }
+        User user = userRepository.getReferenceById(principal.getId());
+        webRequest.setAttribute(USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        return user;
+    }
+
+    private CustomUserDetails currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof CustomUserDetails) {
+            return (CustomUserDetails) authentication.getPrincipal();
+        }
+        return null;
+    }
+}
@@ -14,6 +14,7 @@ public class CustomUserDetails implements UserDetails {
     private final String email;
     private final String role;
     private final boolean blocked;
+    private final boolean canEdit;
 
     public CustomUserDetails(User user) {
         this.id = user.getId();
@@ -22,6 +23,7 @@ public class CustomUserDetails implements UserDetails {
         this.email = user.getEmail();
         this.role = user.getRole().name();
         this.blocked = user.isBlocked();
+        this.canEdit = user.isCanEdit();
     }
 
     public Long getId() { return id; }
@@ -29,6 +31,8 @@ public class CustomUserDetails implements UserDetails {
     public String getPhone() { return phone; }
     public String getEmail() { return email; }
     public boolean isBlocked() { return blocked; }
+    public boolean isCanEdit() { return canEdit; }
+    public boolean isAdmin() { return "ADMIN".equals(role); }
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
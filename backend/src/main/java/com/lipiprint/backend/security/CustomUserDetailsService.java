@@ -12,11 +12,22 @@ import org.springframework.stereotype.Service;
 public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private PrincipalCache principalCache;
 
     @Override
     public UserDetails loadUserByUsername(String id) throws UsernameNotFoundException {
-        User user = userRepository.findById(Long.parseLong(id))
+        return loadUserById(Long.parseLong(id));
+    }
+
+    // Served from the principal cache; only a miss reads the users table
+    public CustomUserDetails loadUserById(Long id) throws UsernameNotFoundException {
+        return principalCache.get(id, this::loadFromDatabase);
+    }
+
+    private CustomUserDetails loadFromDatabase(Long id) {
+        User user = userRepository.findById(id)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with id: " + id));
         return new CustomUserDetails(user);
     }
-} 
\ No newline at end of file
+} 
@@ -7,7 +7,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -16,6 +15,8 @@ import java.io.IOException;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
+    private static final String EVENT_STREAM_PATH = "/api/events/stream";
+
     @Autowired
     private JwtUtils jwtUtils;
     @Autowired
@@ -25,34 +26,29 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String header = request.getHeader("Authorization");
-        String token = null;
-        String userId = null;
+        Long userId = null;
         if (header != null && header.startsWith("Bearer ")) {
-            token = header.substring(7);
-            try {
-                userId = jwtUtils.getUserIdFromToken(token).toString();
-            } catch (Exception ignored) {}
+            // Signature and expiry are checked by the same parse that extracts the user id
+            userId = jwtUtils.getValidatedUserId(header.substring(7));
+        } else if (EVENT_STREAM_PATH.equals(request.getRequestURI()) && request.getParameter("access_token") != null) {
+            // Browser EventSource cannot set headers, so the event stream also takes the token as a parameter
+            userId = jwtUtils.getValidatedUserId(request.getParameter("access_token"));
         }
         if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(userId);
+            CustomUserDetails userDetails = userDetailsService.loadUserById(userId);
             
             // Check if user is blocked
-            if (userDetails instanceof CustomUserDetails) {
-                CustomUserDetails customUserDetails = (CustomUserDetails) userDetails;
-                if (customUserDetails.isBlocked()) {
-                    // User is blocked, don't set authentication
-                    response.setStatus(HttpServletResponse.SC_FORBIDDEN);
-                    response.getWriter().write("{\"message\":\"Account is blocked. Please contact administrator.\"}");
-                    return;
-                }
+            if (userDetails.isBlocked()) {
+                // User is blocked, don't set authentication
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                response.getWriter().write("{\"message\":\"Account is blocked. Please contact administrator.\"}");
+                return;
             }
             
-            if (jwtUtils.validateToken(token)) {
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authentication);
-            }
+            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                    userDetails, null, userDetails.getAuthorities());
+            authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authentication);
         }
         filterChain.doFilter(request, response);
     }
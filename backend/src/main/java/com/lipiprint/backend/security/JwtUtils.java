@@ -2,9 +2,15 @@ package com.lipiprint.backend.security;
 
 import com.lipiprint.backend.entity.User;
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.impl.TextCodec;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
 import java.util.Date;
+import java.util.Map;
 
 @Component
 public class JwtUtils {
@@ -14,29 +20,72 @@ public class JwtUtils {
     @Value("${lipiprint.jwt.expirationMs}")
     private int jwtExpirationMs;
 
+    @Value("${lipiprint.jwt.verified-cache.max-entries:10000}")
+    private int verifiedCacheMaxEntries;
+
+    // Decoded once; the secret is base64, exactly as Jwts.parser().setSigningKey(String) reads it
+    private Key signingKey;
+    // Only configured here, so sharing it between request threads is safe
+    private JwtParser parser;
+    private VerifiedTokenCache verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = new SecretKeySpec(TextCodec.BASE64.decode(jwtSecret), SignatureAlgorithm.HS512.getJcaName());
+        parser = Jwts.parser().setSigningKey(signingKey);
+        verifiedTokens = new VerifiedTokenCache(verifiedCacheMaxEntries, System::currentTimeMillis);
+    }
+
     public String generateToken(User user) {
         return Jwts.builder()
                 .setSubject(user.getId().toString())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
+                .signWith(SignatureAlgorithm.HS512, signingKey)
                 .compact();
     }
 
     public Long getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(jwtSecret)
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = parser.parseClaimsJws(token).getBody();
         return Long.parseLong(claims.getSubject());
     }
 
+    /**
+     * Verifies the signature and expiry and returns the user id in one parse, or null if the token
+     * is not valid. Tokens verified before are answered from a memo until they expire.
+     */
+    public Long getValidatedUserId(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        Long cached = verifiedTokens.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Long userId = Long.parseLong(claims.getSubject());
+            Date expiration = claims.getExpiration();
+            // Tokens without an expiry are still accepted, they just are not memoised
+            if (expiration != null) {
+                verifiedTokens.put(token, userId, expiration.getTime());
+            }
+            return userId;
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public boolean validateToken(String authToken) {
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
+            parser.parseClaimsJws(authToken);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
         }
     }
-} 
\ No newline at end of file
+
+    public Map<String, Object> verifiedCacheStats() {
+        return verifiedTokens.stats();
+    }
+}
@@ -0,0 +1,121 @@
+package com.lipiprint.backend.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded TTL cache of authenticated principals keyed by user id, so {@link JwtAuthFilter} does not
+ * load the user row on every request.
+ *
+ * {@link CustomUserDetails} is immutable, so a cached instance can be shared across threads. Changes
+ * to a user's role, blocked flag or profile must call {@link #invalidate(Long)}; the TTL only bounds
+ * how long a change made outside this application (e.g. directly in the database) can go unnoticed.
+ */
+@Component
+public class PrincipalCache {
+
+    private static final class Entry {
+        final CustomUserDetails principal;
+        final long expireAt;
+
+        Entry(CustomUserDetails principal, long expireAt) {
+            this.principal = principal;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    // Bumped by every invalidation so a load that raced with it does not re-insert the old principal
+    private final AtomicLong generation = new AtomicLong();
+    private final LongSupplier clock;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public PrincipalCache(@Value("${lipiprint.security.principal-cache.ttl-seconds:300}") long ttlSeconds,
+                          @Value("${lipiprint.security.principal-cache.max-entries:10000}") int maxEntries) {
+        this(ttlSeconds, maxEntries, System::currentTimeMillis);
+    }
+
+    PrincipalCache(long ttlSeconds, int maxEntries, LongSupplier clock) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached principal for the user, loading it through {@code loader} when missing or
+     * expired. Loader exceptions (e.g. user not found) propagate and nothing is cached.
+     */
+    public CustomUserDetails get(Long userId, Function<Long, CustomUserDetails> loader) {
+        long now = clock.getAsLong();
+        Entry entry = entries.get(userId);
+        if (entry != null && now < entry.expireAt) {
+            hits.incrementAndGet();
+            return entry.principal;
+        }
+        misses.incrementAndGet();
+
+        long startGeneration = generation.get();
+        CustomUserDetails principal = loader.apply(userId);
+        if (principal != null && ttlMillis > 0) {
+            if (entries.size() >= maxEntries) {
+                evict(now);
+            }
+            entries.put(userId, new Entry(principal, now + ttlMillis));
+            if (generation.get() != startGeneration) {
+                // An invalidation happened while loading; the value may predate it
+                entries.remove(userId);
+            }
+        }
+        return principal;
+    }
+
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        entries.remove(userId);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+            "size", entries.size(),
+            "maxEntries", maxEntries,
+            "hits", hits.get(),
+            "misses", misses.get());
+    }
+
+    // Drops expired entries, then arbitrary ones until we are back under 90% of capacity
+    private void evict(long now) {
+        entries.values().removeIf(e -> now >= e.expireAt);
+        int target = (int) (maxEntries * 0.9);
+        Iterator<Long> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
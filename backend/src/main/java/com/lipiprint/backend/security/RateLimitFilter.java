@@ -0,0 +1,244 @@
+package com.lipiprint.backend.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throttles the unauthenticated auth endpoints (login, signup and the email OTP flow), which are the
+ * cheapest way to make this server send mail or run BCrypt.
+ *
+ * Each route has its own policies, written as {@code key:capacity/period} pairs, e.g.
+ * {@code ip:10/10m,email:3/10m}. {@code ip} limits by client address; any other key names a field of
+ * the JSON request body ({@code email}, {@code phone}), so one address cannot be targeted from many
+ * IPs. A request must pass every policy of its route; otherwise it gets 429 with Retry-After, and
+ * the policies after the one that rejected it are not charged.
+ *
+ * The client address is resolved by Tomcat's RemoteIpValve ({@code server.forward-headers-strategy=native}):
+ * it is the rightmost {@code X-Forwarded-For} entry that is not one of the trusted
+ * {@code server.tomcat.remoteip.internal-proxies}, so forged entries added by the client are ignored.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private static final String AUTH_PREFIX = "/api/auth/";
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+
+    private record Rule(String key, RateLimiter.Policy policy) {}
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${lipiprint.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${lipiprint.rate-limit.login:ip:20/5m,phone:10/15m}")
+    private String loginPolicy;
+
+    @Value("${lipiprint.rate-limit.signup:ip:10/1h}")
+    private String signupPolicy;
+
+    @Value("${lipiprint.rate-limit.send-email-otp:ip:10/10m,email:3/10m}")
+    private String sendOtpPolicy;
+
+    @Value("${lipiprint.rate-limit.verify-email-otp:ip:30/10m,email:10/10m}")
+    private String verifyOtpPolicy;
+
+    private final Map<String, List<Rule>> rules = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        rules.put("login", parseRules(loginPolicy));
+        rules.put("signup", parseRules(signupPolicy));
+        rules.put("send-email-otp", parseRules(sendOtpPolicy));
+        // Resetting a password checks the same OTP, so it shares the verify budget
+        List<Rule> verify = parseRules(verifyOtpPolicy);
+        rules.put("verify-email-otp", verify);
+        rules.put("reset-password-email", verify);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || route(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String route = route(request);
+        List<Rule> routeRules = rules.get(route);
+
+        HttpServletRequest effective = request;
+        JsonNode body = null;
+        if (routeRules.stream().anyMatch(r -> !r.key().equals("ip"))) {
+            CachedBodyRequest cached = new CachedBodyRequest(request);
+            effective = cached;
+            body = cached.json(objectMapper);
+        }
+
+        long retryAfterMillis = 0;
+        for (Rule rule : routeRules) {
+            String value = rule.key().equals("ip") ? request.getRemoteAddr() : bodyValue(body, rule.key());
+            if (value == null) {
+                continue;
+            }
+            retryAfterMillis = rateLimiter.tryAcquire(route + ":" + rule.key() + ":" + value, rule.policy());
+            if (retryAfterMillis > 0) {
+                // Rejected; a throttled client must not also drain the later (per-email, per-phone) buckets
+                break;
+            }
+        }
+
+        if (retryAfterMillis > 0) {
+            logger.warn("[RateLimitFilter] Throttled {} from {}", request.getRequestURI(), request.getRemoteAddr());
+            response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+            response.setContentType("application/json");
+            response.getWriter().write("{\"message\":\"Too many requests. Please try again later.\"}");
+            return;
+        }
+        filterChain.doFilter(effective, response);
+    }
+
+    private String route(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(AUTH_PREFIX)) {
+            return null;
+        }
+        String route = path.substring(AUTH_PREFIX.length());
+        if (route.endsWith("/")) {
+            route = route.substring(0, route.length() - 1);
+        }
+        return rules.containsKey(route) ? route : null;
+    }
+
+    // Normalised so "A@x.com " and "a@x.com" or "+91 98765 43210" and "9876543210" share a bucket
+    private static String bodyValue(JsonNode body, String field) {
+        if (body == null || !body.hasNonNull(field)) {
+            return null;
+        }
+        String value = body.get(field).asText().trim().toLowerCase(Locale.ROOT);
+        if (field.equals("phone")) {
+            String digits = value.replaceAll("\\D", "");
+            value = digits.length() > 10 ? digits.substring(digits.length() - 10) : digits;
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    private static List<Rule> parseRules(String spec) {
+        List<Rule> parsed = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            int colon = part.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Rate limit rule must look like ip:10/10m: " + part);
+            }
+            parsed.add(new Rule(part.substring(0, colon).trim(), RateLimiter.Policy.parse(part.substring(colon + 1))));
+        }
+        return parsed;
+    }
+
+    /**
+     * Reads the (small) body up front so the identity fields can be inspected and then replays it to
+     * the controller. Bodies over {@link #MAX_BODY_BYTES} are passed on but not inspected.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private final boolean complete;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            byte[] head = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+            this.complete = head.length <= MAX_BODY_BYTES;
+            this.body = complete ? head : concat(head, request.getInputStream().readAllBytes());
+        }
+
+        JsonNode json(ObjectMapper objectMapper) {
+            if (!complete || body.length == 0) {
+                return null;
+            }
+            try {
+                return objectMapper.readTree(body);
+            } catch (IOException e) {
+                // Malformed JSON; the controller will reject it, the IP limit still applies
+                return null;
+            }
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+
+        private static byte[] concat(byte[] a, byte[] b) {
+            byte[] result = new byte[a.length + b.length];
+            System.arraycopy(a, 0, result, 0, a.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.lipiprint.backend.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process token buckets keyed by arbitrary strings (e.g. {@code "login:ip:1.2.3.4"}).
+ *
+ * Keys are spread over a fixed number of stripes, each an access-ordered map guarded by its own lock,
+ * so unrelated keys rarely contend. Each stripe holds at most {@code max-keys / stripes} buckets and
+ * evicts the least recently used one when full, and buckets idle long enough to have refilled are
+ * dropped as they are passed over, so memory stays bounded even when an attacker sprays random keys.
+ * An evicted bucket simply starts full again.
+ */
+@Component
+public class RateLimiter {
+
+    /** {@code capacity} requests in a burst, refilled evenly over {@code period}. */
+    public record Policy(int capacity, Duration period) {
+
+        /** Parses {@code "5/10m"}, {@code "30/1h"}, {@code "10/30s"}. */
+        public static Policy parse(String spec) {
+            String[] parts = spec.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Rate limit must look like 5/10m: " + spec);
+            }
+            int capacity = Integer.parseInt(parts[0].trim());
+            String period = parts[1].trim().toLowerCase(Locale.ROOT);
+            long amount = Long.parseLong(period.substring(0, period.length() - 1));
+            Duration duration = switch (period.charAt(period.length() - 1)) {
+                case 's' -> Duration.ofSeconds(amount);
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                default -> throw new IllegalArgumentException("Unknown rate limit period unit: " + spec);
+            };
+            if (capacity <= 0 || duration.isZero() || duration.isNegative()) {
+                throw new IllegalArgumentException("Rate limit must be positive: " + spec);
+            }
+            return new Policy(capacity, duration);
+        }
+
+        double tokensPerNano() {
+            return (double) capacity / period.toNanos();
+        }
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long updatedAt;
+
+        Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private final Stripe[] stripes;
+    private final int maxKeysPerStripe;
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public RateLimiter(@Value("${lipiprint.rate-limit.stripes:64}") int stripes,
+                       @Value("${lipiprint.rate-limit.max-keys:100000}") int maxKeys) {
+        this(stripes, maxKeys, System::nanoTime);
+    }
+
+    RateLimiter(int stripes, int maxKeys, LongSupplier nanoClock) {
+        // Power of two so the stripe index is a mask
+        int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxKeysPerStripe = Math.max(1, maxKeys / count);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Takes one token from the bucket for {@code key}. Returns 0 if the request is allowed, otherwise
+     * how many milliseconds until a token will be available.
+     */
+    public long tryAcquire(String key, Policy policy) {
+        long now = nanoClock.getAsLong();
+        double rate = policy.tokensPerNano();
+        Stripe stripe = stripes[spread(key.hashCode()) & (stripes.length - 1)];
+        stripe.lock.lock();
+        try {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                if (stripe.buckets.size() >= maxKeysPerStripe) {
+                    evict(stripe, now, policy);
+                }
+                bucket = new Bucket(policy.capacity(), now);
+                stripe.buckets.put(key, bucket);
+            } else {
+                bucket.tokens = Math.min(policy.capacity(), bucket.tokens + (now - bucket.updatedAt) * rate);
+                bucket.updatedAt = now;
+            }
+
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                allowed.incrementAndGet();
+                return 0;
+            }
+            rejected.incrementAndGet();
+            long waitNanos = (long) Math.ceil((1 - bucket.tokens) / rate);
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.buckets.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+            "keys", size(),
+            "maxKeys", maxKeysPerStripe * stripes.length,
+            "allowed", allowed.get(),
+            "rejected", rejected.get());
+    }
+
+    // Walks from the least recently used end: drops buckets that would be full again by now, and the
+    // oldest one if none are
+    private void evict(Stripe stripe, long now, Policy policy) {
+        long refillNanos = policy.period().toNanos();
+        Iterator<Bucket> it = stripe.buckets.values().iterator();
+        boolean removed = false;
+        while (it.hasNext()) {
+            Bucket bucket = it.next();
+            if (now - bucket.updatedAt < refillNanos) {
+                break;
+            }
+            it.remove();
+            removed = true;
+        }
+        if (!removed) {
+            it = stripe.buckets.values().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
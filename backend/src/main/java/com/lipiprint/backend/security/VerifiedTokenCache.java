@@ -0,0 +1,107 @@
+package com.lipiprint.backend.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded memo of JWTs whose signature has already been checked, so a client repeating the same
+ * bearer token skips the base64/JSON decoding and HMAC on every request.
+ *
+ * Entries are keyed by the first 128 bits of the token's SHA-256, not the token itself, so the raw
+ * credentials are not kept on the heap; a forged token would need a SHA-256 second preimage to hit
+ * someone else's entry. An entry never outlives the token's own {@code exp}.
+ */
+class VerifiedTokenCache {
+
+    private record TokenKey(long high, long low) {}
+
+    private record Entry(long userId, long expiresAt) {}
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ConcurrentHashMap<TokenKey, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final LongSupplier clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    VerifiedTokenCache(int maxEntries, LongSupplier clock) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.clock = clock;
+    }
+
+    /** Returns the user id for a previously verified, unexpired token, or null. */
+    Long get(String token) {
+        TokenKey key = keyOf(token);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (clock.getAsLong() >= entry.expiresAt()) {
+            entries.remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.userId();
+    }
+
+    void put(String token, long userId, long expiresAt) {
+        long now = clock.getAsLong();
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(keyOf(token), new Entry(userId, expiresAt));
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    Map<String, Object> stats() {
+        return Map.of(
+            "size", entries.size(),
+            "maxEntries", maxEntries,
+            "hits", hits.get(),
+            "misses", misses.get());
+    }
+
+    // Drops expired entries, then arbitrary ones until we are back under 90% of capacity
+    private void evict(long now) {
+        entries.values().removeIf(e -> now >= e.expiresAt());
+        int target = (int) (maxEntries * 0.9);
+        Iterator<TokenKey> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static TokenKey keyOf(String token) {
+        MessageDigest digest = SHA256.get();
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        return new TokenKey(hash.getLong(), hash.getLong());
+    }
+}
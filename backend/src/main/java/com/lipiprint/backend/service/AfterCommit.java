@@ -0,0 +1,56 @@
+package com.lipiprint.backend.service;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Consumer;
+
+/**
+ * Defers work until the current transaction commits, or runs it right away outside a transaction.
+ *
+ * Reads are fine in an after-commit callback, but writes are not: the finished transaction's
+ * connection is still bound to the thread, so a plain {@code jdbcTemplate.update} there joins a
+ * transaction that has already committed and the change is rolled back when the connection returns to
+ * the pool. Callbacks that write go through {@link #inNewTransaction}, which runs them in a transaction
+ * of their own. An exception thrown after commit would surface from the caller's commit even though
+ * its changes are saved, so failures of that work are handed to a callback instead.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /** Runs the action once the current transaction commits (never if it rolls back), or now if there is none. */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Like {@link #run}, but the action runs in a transaction of its own, which is rolled back and its
+     * exception passed to {@code onFailure} if the action fails.
+     */
+    public static void inNewTransaction(PlatformTransactionManager transactionManager, Runnable action,
+                                        Consumer<RuntimeException> onFailure) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        run(() -> {
+            try {
+                template.executeWithoutResult(status -> action.run());
+            } catch (RuntimeException e) {
+                onFailure.accept(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,260 @@
+package com.lipiprint.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Time-bucketed order metrics for any date range, read from the {@link OrderStatsRollup} tables.
+ *
+ * Series grouped by status or delivery type at day, week or month buckets come from
+ * {@code daily_order_stats}; hourly buckets and paper or color groupings come from
+ * {@code hourly_order_stats}. Every group has a point for every bucket in the range, zero where there
+ * were no orders; the first and last week or month bucket only cover the days inside the range.
+ *
+ * Results are kept in a small LRU cache keyed by the query. When a rollup row changes the rollup calls
+ * {@link #invalidate} with its day, which drops the cached ranges containing that day, so closed
+ * ranges such as last year stay cached while today's keep up with new orders.
+ */
+@Service
+public class AnalyticsSeriesService {
+
+    public enum Bucket {
+        HOUR, DAY, WEEK, MONTH;
+
+        // Start of the bucket containing the day, as Postgres date_trunc computes it (weeks start on Monday)
+        LocalDateTime align(LocalDate day) {
+            switch (this) {
+                case WEEK:
+                    return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+                case MONTH:
+                    return day.withDayOfMonth(1).atStartOfDay();
+                default:
+                    return day.atStartOfDay();
+            }
+        }
+
+        LocalDateTime next(LocalDateTime start) {
+            switch (this) {
+                case HOUR:
+                    return start.plusHours(1);
+                case DAY:
+                    return start.plusDays(1);
+                case WEEK:
+                    return start.plusWeeks(1);
+                default:
+                    return start.plusMonths(1);
+            }
+        }
+
+        String unit() {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum Metric {
+        ORDERS, REVENUE, PAGES;
+
+        String column() {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum GroupBy {
+        NONE(null), STATUS("status"), PAPER("paper"), COLOR("color"), DELIVERY_TYPE("delivery_type");
+
+        private final String column;
+
+        GroupBy(String column) {
+            this.column = column;
+        }
+    }
+
+    /** Group name of the single series returned without a group-by. */
+    public static final String ALL = "ALL";
+
+    /** Inclusive date range, bucket size, metric and grouping of one series request. */
+    public record Query(LocalDate from, LocalDate to, Bucket bucket, Metric metric, GroupBy groupBy) {
+        boolean covers(LocalDate day) {
+            return !day.isBefore(from) && !day.isAfter(to);
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<Query, Map<String, Object>> cache;
+    private final int maxBuckets;
+
+    // Bumped by every invalidation so a load that raced one is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public AnalyticsSeriesService(@Value("${lipiprint.analytics.series.cache-entries:200}") int cacheEntries,
+                                  @Value("${lipiprint.analytics.series.max-buckets:2000}") int maxBuckets) {
+        int capacity = Math.max(1, cacheEntries);
+        this.maxBuckets = Math.max(1, maxBuckets);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Map<String, Object>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Parses a request option such as {@code deliveryType}, {@code delivery_type} or {@code DAY} into the enum constant. */
+    public static <E extends Enum<E>> E option(Class<E> type, String value) {
+        String wanted = value == null ? "" : value.replace("_", "").replace("-", "");
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().replace("_", "").equalsIgnoreCase(wanted)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + type.getSimpleName().toLowerCase() + " '" + value + "', expected one of "
+            + Arrays.stream(type.getEnumConstants()).map(c -> c.name().toLowerCase()).collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Returns the series for the query, from the cache when possible. Throws
+     * {@link IllegalArgumentException} for an inverted range or one with more than {@code max-buckets} buckets.
+     */
+    public Map<String, Object> series(Query query) {
+        List<LocalDateTime> buckets = buckets(query);
+        synchronized (this) {
+            Map<String, Object> cached = cache.get(query);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        long loadedAt = generation.get();
+        Map<String, Object> result = assemble(query, buckets, load(query));
+        synchronized (this) {
+            if (generation.get() == loadedAt) {
+                cache.put(query, result);
+            }
+        }
+        return result;
+    }
+
+    List<LocalDateTime> buckets(Query query) {
+        if (query.from().isAfter(query.to())) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        LocalDateTime end = query.to().plusDays(1).atStartOfDay();
+        List<LocalDateTime> buckets = new ArrayList<>();
+        for (LocalDateTime start = query.bucket().align(query.from()); start.isBefore(end); start = query.bucket().next(start)) {
+            if (buckets.size() == maxBuckets) {
+                throw new IllegalArgumentException("Range has more than " + maxBuckets + " " + query.bucket().unit() + " buckets");
+            }
+            buckets.add(start);
+        }
+        return buckets;
+    }
+
+    /** Metric totals per group and bucket start, leaving out empty buckets. */
+    protected Map<String, Map<LocalDateTime, Double>> load(Query query) {
+        boolean hourly = query.bucket() == Bucket.HOUR || query.groupBy() == GroupBy.PAPER || query.groupBy() == GroupBy.COLOR;
+        String time = hourly ? "hour" : "day";
+        String group = query.groupBy().column != null ? query.groupBy().column : "'" + ALL + "'";
+        Object from = hourly ? Timestamp.valueOf(query.from().atStartOfDay()) : Date.valueOf(query.from());
+        Object to = hourly ? Timestamp.valueOf(query.to().plusDays(1).atStartOfDay()) : Date.valueOf(query.to().plusDays(1));
+        Map<String, Map<LocalDateTime, Double>> values = new HashMap<>();
+        jdbcTemplate.query("SELECT date_trunc('" + query.bucket().unit() + "', " + time + "), " + group + ", SUM(" + query.metric().column() + ") "
+            + "FROM " + (hourly ? OrderStatsRollup.HOURLY_TABLE : OrderStatsRollup.TABLE) + " "
+            + "WHERE " + time + " >= ? AND " + time + " < ? GROUP BY 1, 2",
+            (RowCallbackHandler) rs -> values.computeIfAbsent(rs.getString(2), g -> new HashMap<>())
+                .put(rs.getTimestamp(1).toLocalDateTime(), rs.getDouble(3)),
+            from, to);
+        return values;
+    }
+
+    // One series per group, largest total first, each with a point for every bucket
+    private static Map<String, Object> assemble(Query query, List<LocalDateTime> buckets, Map<String, Map<LocalDateTime, Double>> values) {
+        Map<String, Map<LocalDateTime, Double>> groups = new TreeMap<>(values);
+        if (groups.isEmpty() && query.groupBy() == GroupBy.NONE) {
+            groups.put(ALL, Map.of());
+        }
+        List<Map<String, Object>> series = new ArrayList<>();
+        for (Map.Entry<String, Map<LocalDateTime, Double>> group : groups.entrySet()) {
+            List<Map<String, Object>> points = new ArrayList<>(buckets.size());
+            double total = 0;
+            for (LocalDateTime start : buckets) {
+                double value = group.getValue().getOrDefault(start, 0.0);
+                total += value;
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("start", query.bucket() == Bucket.HOUR ? start : start.toLocalDate());
+                point.put("value", number(query.metric(), value));
+                points.add(point);
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("group", group.getKey());
+            entry.put("total", number(query.metric(), total));
+            entry.put("points", points);
+            series.add(entry);
+        }
+        series.sort((a, b) -> Double.compare(((Number) b.get("total")).doubleValue(), ((Number) a.get("total")).doubleValue()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", query.from());
+        result.put("to", query.to());
+        result.put("bucket", query.bucket().unit());
+        result.put("metric", query.metric().column());
+        result.put("groupBy", query.groupBy().name().toLowerCase());
+        result.put("series", series);
+        return result;
+    }
+
+    private static Number number(Metric metric, double value) {
+        if (metric == Metric.REVENUE) {
+            return Math.round(value * 100) / 100.0;
+        }
+        return Math.round(value);
+    }
+
+    /** Drops cached series whose range contains the day. */
+    public synchronized void invalidate(LocalDate day) {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.keySet().removeIf(query -> query.covers(day));
+    }
+
+    public synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.clear();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedSeries", cache.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("maxBuckets", maxBuckets);
+        return stats;
+    }
+}
@@ -0,0 +1,63 @@
+package com.lipiprint.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Push device tokens per user in {@code device_tokens}. A token belongs to one device, so registering
+ * it again (e.g. after another user signs in on that device) moves it to the new user. The table is
+ * created by setup-database.sql.
+ */
+@Component
+public class DeviceTokenStore {
+
+    static final String TABLE = "device_tokens";
+    private static final int LOOKUP_CHUNK = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void register(Long userId, String token, String platform) {
+        jdbcTemplate.update("INSERT INTO " + TABLE + " (token, user_id, platform, updated_at) VALUES (?, ?, ?, ?) "
+                + "ON CONFLICT (token) DO UPDATE SET user_id = EXCLUDED.user_id, platform = EXCLUDED.platform, updated_at = EXCLUDED.updated_at",
+            token, userId, platform, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    public boolean unregister(Long userId, String token) {
+        return jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE token = ? AND user_id = ?", token, userId) > 0;
+    }
+
+    /** Tokens for each of the given users; users without a device are absent from the map. */
+    public Map<Long, List<String>> tokensFor(Collection<Long> userIds) {
+        Map<Long, List<String>> tokens = new HashMap<>();
+        List<Long> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LOOKUP_CHUNK, ids.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT user_id, token FROM " + TABLE + " WHERE user_id IN (" + placeholders + ")",
+                (RowCallbackHandler) rs -> {
+                    tokens.computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>()).add(rs.getString("token"));
+                }, chunk.toArray());
+        }
+        return tokens;
+    }
+
+    public int remove(Collection<String> tokens) {
+        if (tokens.isEmpty()) {
+            return 0;
+        }
+        String placeholders = String.join(",", Collections.nCopies(tokens.size(), "?"));
+        return jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE token IN (" + placeholders + ")", tokens.toArray());
+    }
+}
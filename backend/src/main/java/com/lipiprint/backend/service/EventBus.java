@@ -0,0 +1,221 @@
+package com.lipiprint.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process publish/subscribe for change events (order status, notifications) that are pushed to
+ * clients over SSE.
+ *
+ * Topics are strings: {@link #userTopic} for one user, {@link #ADMIN_TOPIC} for staff and
+ * {@link #BROADCAST_TOPIC} for every signed-in user. Event ids increase across restarts (they start
+ * from the clock), and the last {@code replay-capacity} events are kept so a reconnecting client can
+ * pick up from its {@code Last-Event-ID}. Events published inside a transaction are released after
+ * it commits, so a client never sees a change it cannot read back yet. Delivery to subscribers runs on
+ * a dispatch thread and never blocks the publisher.
+ */
+@Component
+public class EventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventBus.class);
+
+    public static final String ADMIN_TOPIC = "admin";
+    public static final String BROADCAST_TOPIC = "broadcast";
+
+    public record Event(long id, String topic, String type, String data) {}
+
+    public interface Subscriber {
+        /** Called on the dispatch thread, shared by all subscribers, so it must not block; throwing ends the subscription. */
+        void onEvent(Event event) throws Exception;
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final Set<String> topics;
+        private final Subscriber subscriber;
+
+        private Subscription(Set<String> topics, Subscriber subscriber) {
+            this.topics = topics;
+            this.subscriber = subscriber;
+        }
+
+        public Set<String> topics() {
+            return topics;
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ArrayDeque<Event> replay;
+    private final int replayCapacity;
+    private final AtomicLong sequence;
+    private final Executor dispatcher;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public EventBus(@Value("${lipiprint.events.replay-capacity:2000}") int replayCapacity,
+                    @Value("${lipiprint.events.dispatch-queue-capacity:10000}") int queueCapacity) {
+        this(replayCapacity, new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "event-dispatch");
+            t.setDaemon(true);
+            return t;
+        }), System.currentTimeMillis());
+    }
+
+    EventBus(int replayCapacity, Executor dispatcher, long firstId) {
+        this.replayCapacity = Math.max(1, replayCapacity);
+        this.replay = new ArrayDeque<>(this.replayCapacity);
+        this.dispatcher = dispatcher;
+        this.sequence = new AtomicLong(firstId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    public static String userTopic(Long userId) {
+        return "user:" + userId;
+    }
+
+    /** Publishes {@code payload} (serialized as JSON) to a topic, after the current transaction commits if there is one. */
+    public void publish(String topic, String type, Object payload) {
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            logger.error("[EventBus] Cannot serialize {} event: {}", type, e.getMessage());
+            return;
+        }
+        AfterCommit.run(() -> publishNow(topic, type, data));
+    }
+
+    private void publishNow(String topic, String type, String data) {
+        Event event;
+        synchronized (replay) {
+            // Ids are assigned under the same lock as the buffer so it stays in id order
+            event = new Event(sequence.incrementAndGet(), topic, type, data);
+            if (replay.size() == replayCapacity) {
+                replay.removeFirst();
+            }
+            replay.addLast(event);
+        }
+        published.incrementAndGet();
+        Set<Subscription> targets = subscriptions.get(topic);
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        try {
+            dispatcher.execute(() -> deliver(event, targets));
+        } catch (RejectedExecutionException e) {
+            // Subscribers that miss it will see a gap on reconnect and resync
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void deliver(Event event, Set<Subscription> targets) {
+        for (Subscription subscription : targets) {
+            try {
+                subscription.subscriber.onEvent(event);
+            } catch (Exception e) {
+                unsubscribe(subscription);
+            }
+        }
+    }
+
+    public Subscription subscribe(Set<String> topics, Subscriber subscriber) {
+        Subscription subscription = new Subscription(Set.copyOf(topics), subscriber);
+        for (String topic : subscription.topics) {
+            // Added inside compute so a concurrent unsubscribe cannot drop the set we are adding to
+            subscriptions.compute(topic, (t, set) -> {
+                Set<Subscription> target = set != null ? set : new CopyOnWriteArraySet<>();
+                target.add(subscription);
+                return target;
+            });
+        }
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        for (String topic : subscription.topics) {
+            subscriptions.computeIfPresent(topic, (t, set) -> {
+                set.remove(subscription);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    /**
+     * Events on {@code topics} after {@code lastEventId}, oldest first, or null if some of them have
+     * already left the buffer and the client has to reload instead.
+     */
+    public List<Event> replaySince(long lastEventId, Set<String> topics) {
+        List<Event> events = new ArrayList<>();
+        synchronized (replay) {
+            if (lastEventId > sequence.get()) {
+                // An id this server never issued (clock change, another instance); nothing to match it against
+                return null;
+            }
+            Event oldest = replay.peekFirst();
+            long earliest = oldest != null ? oldest.id() : sequence.get() + 1;
+            if (lastEventId + 1 < earliest) {
+                return null;
+            }
+            Iterator<Event> it = replay.descendingIterator();
+            while (it.hasNext()) {
+                Event event = it.next();
+                if (event.id() <= lastEventId) {
+                    break;
+                }
+                if (topics.contains(event.topic())) {
+                    events.add(event);
+                }
+            }
+        }
+        Collections.reverse(events);
+        return events;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("published", published.get());
+        stats.put("dropped", dropped.get());
+        stats.put("topics", subscriptions.size());
+        synchronized (replay) {
+            stats.put("buffered", replay.size());
+        }
+        stats.put("lastEventId", sequence.get());
+        return stats;
+    }
+}
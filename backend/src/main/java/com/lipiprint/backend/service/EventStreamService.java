@@ -0,0 +1,291 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events connections on top of {@link EventBus}. Each connection is an async
+ * {@link SseEmitter}, so an idle listener holds a socket but no request thread. Connections get
+ * their user's topic, the broadcast topic and, for admins, the admin topic; a comment line is sent
+ * every {@code heartbeat-ms} to keep proxies from closing them and to notice dead clients.
+ *
+ * Writes never happen on the bus's dispatch thread: each connection has a bounded outbox that a small
+ * pool of sender threads drains, so one slow client cannot hold up delivery to the others. A client
+ * whose outbox fills up is disconnected and catches up through {@code Last-Event-ID} on reconnect.
+ * Heartbeats run on their own scheduler rather than Spring's shared one, where long jobs
+ * (reconciliation, rollup rebuilds) would otherwise delay them past the proxies' idle timeout.
+ */
+@Service
+public class EventStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventStreamService.class);
+
+    /** Tells the client its Last-Event-ID can no longer be replayed and it should refetch state. */
+    public static final String RESYNC_EVENT = "resync";
+
+    @Autowired
+    private EventBus eventBus;
+
+    @Value("${lipiprint.events.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${lipiprint.events.max-connections:10000}")
+    private int maxConnections;
+
+    @Value("${lipiprint.events.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    @Value("${lipiprint.events.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${lipiprint.events.outbox-capacity:256}")
+    private int outboxCapacity;
+
+    @Value("${lipiprint.events.send-threads:4}")
+    private int sendThreads;
+
+    // Queued in an outbox in place of an event to write a heartbeat comment
+    private static final EventBus.Event HEARTBEAT = new EventBus.Event(0, null, null, null);
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Integer> perUser = new ConcurrentHashMap<>();
+    private final AtomicLong slowClientsClosed = new AtomicLong();
+
+    private ExecutorService senders;
+    private ScheduledExecutorService heartbeats;
+
+    private final class Connection implements EventBus.Subscriber {
+        private final Long userId;
+        private final SseEmitter emitter;
+        private EventBus.Subscription subscription;
+        // Live events are held back until the replay has been written, then deduplicated by id
+        private List<EventBus.Event> pending = new ArrayList<>();
+        private final ArrayDeque<EventBus.Event> outbox = new ArrayDeque<>();
+        private boolean draining;
+        private long lastSentId;
+
+        Connection(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        // On the dispatch thread: only queues, never writes
+        @Override
+        public void onEvent(EventBus.Event event) {
+            enqueue(event);
+        }
+
+        void enqueue(EventBus.Event event) {
+            synchronized (this) {
+                if (pending != null) {
+                    if (event != HEARTBEAT) {
+                        pending.add(event);
+                    }
+                    return;
+                }
+                if (outbox.size() < outboxCapacity) {
+                    outbox.addLast(event);
+                    if (draining) {
+                        return;
+                    }
+                    draining = true;
+                } else {
+                    event = null;
+                }
+            }
+            if (event == null) {
+                // Too far behind to catch up in order; it reconnects and replays from its Last-Event-ID
+                slowClientsClosed.incrementAndGet();
+                logger.warn("[EventStreamService] Closing stream of user {}: {} events unsent", userId, outboxCapacity);
+                close();
+                emitter.complete();
+                return;
+            }
+            startDrain();
+        }
+
+        private void startDrain() {
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close();
+                emitter.complete();
+            }
+        }
+
+        // One drain per connection at a time, so events go out in order
+        private void drain() {
+            while (true) {
+                EventBus.Event event;
+                synchronized (this) {
+                    event = outbox.pollFirst();
+                    if (event == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    send(event);
+                } catch (Exception e) {
+                    close();
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+
+        // The replay goes out ahead of what arrived meanwhile; it may exceed the outbox capacity once
+        void startLive(List<EventBus.Event> replayed) {
+            synchronized (this) {
+                outbox.addAll(replayed);
+                outbox.addAll(pending);
+                pending = null;
+                if (outbox.isEmpty() || draining) {
+                    return;
+                }
+                draining = true;
+            }
+            startDrain();
+        }
+
+        private void send(EventBus.Event event) throws IOException {
+            if (event == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("ping"));
+                return;
+            }
+            if (event.id() <= lastSentId) {
+                return;
+            }
+            emitter.send(SseEmitter.event().id(Long.toString(event.id())).name(event.type())
+                .data(event.data(), MediaType.APPLICATION_JSON));
+            lastSentId = event.id();
+        }
+
+        void close() {
+            if (!connections.remove(this)) {
+                return;
+            }
+            if (subscription != null) {
+                subscription.close();
+            }
+            releaseSlot(userId);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger senderNumber = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(Math.max(1, sendThreads), r -> {
+            Thread t = new Thread(r, "sse-send-" + senderNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sse-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (heartbeats != null) {
+            heartbeats.shutdownNow();
+        }
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens a stream for a user, replaying what they missed after {@code lastEventId} if it is still
+     * buffered. Returns null if the server or the user is at the connection limit.
+     */
+    public SseEmitter open(Long userId, boolean admin, Long lastEventId) {
+        if (connections.size() >= maxConnections) {
+            logger.warn("[EventStreamService] Refusing stream for user {}: {} connections open", userId, connections.size());
+            return null;
+        }
+        if (perUser.merge(userId, 1, Integer::sum) > maxConnectionsPerUser) {
+            releaseSlot(userId);
+            return null;
+        }
+
+        SseEmitter emitter = createEmitter(userId);
+        Connection connection = new Connection(userId, emitter);
+        connections.add(connection);
+        emitter.onCompletion(connection::close);
+        emitter.onTimeout(connection::close);
+        emitter.onError(e -> connection.close());
+
+        Set<String> topics = admin
+            ? Set.of(EventBus.userTopic(userId), EventBus.BROADCAST_TOPIC, EventBus.ADMIN_TOPIC)
+            : Set.of(EventBus.userTopic(userId), EventBus.BROADCAST_TOPIC);
+        connection.subscription = eventBus.subscribe(topics, connection);
+        try {
+            List<EventBus.Event> replayed = List.of();
+            if (lastEventId != null) {
+                replayed = eventBus.replaySince(lastEventId, topics);
+                if (replayed == null) {
+                    emitter.send(SseEmitter.event().name(RESYNC_EVENT).data("{}", MediaType.APPLICATION_JSON));
+                    replayed = List.of();
+                }
+            } else {
+                // Flushes the response headers so the client knows the stream is open
+                emitter.send(SseEmitter.event().comment("connected"));
+            }
+            connection.startLive(replayed);
+        } catch (IOException e) {
+            connection.close();
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    SseEmitter createEmitter(Long userId) {
+        return new SseEmitter(timeoutMs);
+    }
+
+    private void releaseSlot(Long userId) {
+        perUser.computeIfPresent(userId, (id, count) -> count <= 1 ? null : count - 1);
+    }
+
+    // Queued like an event, so a stalled client is noticed without blocking the heartbeat thread
+    void heartbeat() {
+        for (Connection connection : connections) {
+            connection.enqueue(HEARTBEAT);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(eventBus.stats());
+        stats.put("connections", connections.size());
+        stats.put("users", perUser.size());
+        stats.put("slowClientsClosed", slowClientsClosed.get());
+        return stats;
+    }
+}
@@ -0,0 +1,59 @@
+package com.lipiprint.backend.service;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.Storage;
+import com.google.firebase.cloud.StorageClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link InvoiceStore} in the Firebase Storage bucket that also holds uploaded files, under the
+ * {@code invoices/} prefix.
+ */
+@Component
+@ConditionalOnProperty(name = "lipiprint.invoices.store", havingValue = "firebase", matchIfMissing = true)
+public class FirebaseInvoiceStore implements InvoiceStore {
+
+    private static final String PREFIX = "invoices/";
+
+    @Override
+    public byte[] get(String key) {
+        Blob blob = bucket().get(PREFIX + key);
+        return blob != null ? blob.getContent() : null;
+    }
+
+    @Override
+    public void put(String key, byte[] pdf) {
+        bucket().create(PREFIX + key, pdf, "application/pdf");
+    }
+
+    @Override
+    public List<String> keys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (Blob blob : bucket().list(Storage.BlobListOption.prefix(PREFIX + prefix)).iterateAll()) {
+            keys.add(blob.getName().substring(PREFIX.length()));
+        }
+        return keys;
+    }
+
+    @Override
+    public void delete(String key) {
+        Blob blob = bucket().get(PREFIX + key);
+        if (blob != null) {
+            blob.delete();
+        }
+    }
+
+    @Override
+    public String name() {
+        return "firebase";
+    }
+
+    private static Bucket bucket() {
+        return StorageClient.getInstance().bucket();
+    }
+}
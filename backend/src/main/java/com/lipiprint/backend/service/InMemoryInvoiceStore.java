@@ -0,0 +1,59 @@
+package com.lipiprint.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link InvoiceStore} that keeps the most recently used PDFs in memory
+ * ({@code lipiprint.invoices.store=memory}), for tests and for running without a storage bucket.
+ */
+@Component
+@ConditionalOnProperty(name = "lipiprint.invoices.store", havingValue = "memory")
+public class InMemoryInvoiceStore implements InvoiceStore {
+
+    private final Map<String, byte[]> pdfs;
+
+    public InMemoryInvoiceStore(@Value("${lipiprint.invoices.memory-entries:500}") int maxEntries) {
+        int capacity = Math.max(1, maxEntries);
+        this.pdfs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public synchronized byte[] get(String key) {
+        return pdfs.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] pdf) {
+        pdfs.put(key, pdf);
+    }
+
+    @Override
+    public synchronized List<String> keys(String prefix) {
+        return pdfs.keySet().stream().filter(key -> key.startsWith(prefix)).toList();
+    }
+
+    @Override
+    public synchronized void delete(String key) {
+        pdfs.remove(key);
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    public synchronized int size() {
+        return pdfs.size();
+    }
+}
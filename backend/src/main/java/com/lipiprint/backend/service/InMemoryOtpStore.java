@@ -0,0 +1,171 @@
+package com.lipiprint.backend.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Single-node {@link OtpStore} backed by a ConcurrentHashMap.
+ *
+ * Each entry carries its own expiry and attempt counter, so verification needs no locking: the
+ * counter is an atomic increment and consuming a code is a conditional {@code remove(key, entry)},
+ * which only one of several concurrent verifiers can win. Expired entries are swept by a hashed timer
+ * wheel: every put drops a reference into the slot for its expiry time, and each tick only looks at
+ * the one slot that is due instead of scanning the whole map.
+ */
+@Component
+@ConditionalOnProperty(name = "lipiprint.otp.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryOtpStore implements OtpStore {
+
+    static final long TICK_MILLIS = 1000;
+    static final int WHEEL_SIZE = 512; // ~8.5 minutes per revolution; longer TTLs wait extra rounds
+
+    private static final class Entry {
+        final String code;
+        final long expiresAt;
+        final AtomicInteger attempts = new AtomicInteger();
+
+        Entry(String code, long expiresAt) {
+            this.code = code;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private record WheelRef(String key, Entry entry) {}
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final Queue<WheelRef>[] wheel = new Queue[WHEEL_SIZE];
+    private final LongSupplier clock;
+    private final ScheduledExecutorService sweeper;
+    private long lastTick;
+
+    public InMemoryOtpStore() {
+        this(System::currentTimeMillis, true);
+    }
+
+    InMemoryOtpStore(LongSupplier clock, boolean startSweeper) {
+        this.clock = clock;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.lastTick = clock.getAsLong() / TICK_MILLIS;
+        if (startSweeper) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "otp-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleAtFixedRate(this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    @Override
+    public void put(String key, String code, Duration ttl) {
+        Entry entry = new Entry(code, clock.getAsLong() + ttl.toMillis());
+        entries.put(key, entry);
+        schedule(new WheelRef(key, entry));
+    }
+
+    @Override
+    public VerifyResult verify(String key, String code, int maxAttempts) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return VerifyResult.NOT_FOUND;
+        }
+        if (clock.getAsLong() >= entry.expiresAt) {
+            entries.remove(key, entry);
+            return VerifyResult.EXPIRED;
+        }
+        int attempt = entry.attempts.incrementAndGet();
+        if (attempt > maxAttempts) {
+            entries.remove(key, entry);
+            return VerifyResult.TOO_MANY_ATTEMPTS;
+        }
+        if (matches(entry.code, code)) {
+            // Only one concurrent verifier can remove the entry, so a code is never accepted twice
+            return entries.remove(key, entry) ? VerifyResult.VALID : VerifyResult.NOT_FOUND;
+        }
+        if (attempt == maxAttempts) {
+            entries.remove(key, entry);
+        }
+        return VerifyResult.INVALID;
+    }
+
+    @Override
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public int purgeExpired() {
+        return advance();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    // Processes every slot between the last tick and now; safe to call from any thread
+    synchronized int advance() {
+        long now = clock.getAsLong();
+        long currentTick = now / TICK_MILLIS;
+        int removed = 0;
+        long from = Math.max(lastTick, currentTick - WHEEL_SIZE + 1);
+        for (long tick = from; tick <= currentTick; tick++) {
+            Queue<WheelRef> slot = wheel[(int) (tick % WHEEL_SIZE)];
+            int pending = slot.size();
+            for (int i = 0; i < pending; i++) {
+                WheelRef ref = slot.poll();
+                if (ref == null) {
+                    break;
+                }
+                if (entries.get(ref.key()) != ref.entry()) {
+                    continue; // already verified, replaced or removed
+                }
+                if (now >= ref.entry().expiresAt) {
+                    if (entries.remove(ref.key(), ref.entry())) {
+                        removed++;
+                    }
+                } else {
+                    slot.offer(ref); // expires on a later revolution
+                }
+            }
+        }
+        lastTick = currentTick;
+        return removed;
+    }
+
+    private void schedule(WheelRef ref) {
+        long tick = (ref.entry().expiresAt + TICK_MILLIS - 1) / TICK_MILLIS;
+        wheel[(int) (tick % WHEEL_SIZE)].offer(ref);
+    }
+
+    private static boolean matches(String expected, String actual) {
+        if (actual == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+}
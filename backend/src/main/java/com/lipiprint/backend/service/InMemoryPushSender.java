@@ -0,0 +1,82 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link PushSender} that keeps what it was asked to send in memory ({@code lipiprint.push.provider=memory}),
+ * for tests and for running without Firebase credentials. Tokens can be marked invalid, or made to
+ * fail transiently a number of times, to exercise pruning and retries.
+ */
+@Component
+@ConditionalOnProperty(name = "lipiprint.push.provider", havingValue = "memory")
+public class InMemoryPushSender implements PushSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryPushSender.class);
+
+    private final List<Delivery> sent = new ArrayList<>();
+    private final Set<String> invalidTokens = new HashSet<>();
+    private final Map<String, Integer> transientFailures = new HashMap<>();
+    private int calls;
+
+    public InMemoryPushSender() {
+        logger.warn("[InMemoryPushSender] Push messages are kept in memory and not delivered to devices");
+    }
+
+    @Override
+    public synchronized List<Outcome> send(List<Delivery> deliveries) {
+        calls++;
+        List<Outcome> outcomes = new ArrayList<>(deliveries.size());
+        for (Delivery delivery : deliveries) {
+            String token = delivery.token();
+            if (invalidTokens.contains(token)) {
+                outcomes.add(Outcome.INVALID_TOKEN);
+            } else if (transientFailures.getOrDefault(token, 0) > 0) {
+                transientFailures.merge(token, -1, Integer::sum);
+                outcomes.add(Outcome.RETRY);
+            } else {
+                sent.add(delivery);
+                outcomes.add(Outcome.SENT);
+            }
+        }
+        return outcomes;
+    }
+
+    public synchronized void markInvalid(String token) {
+        invalidTokens.add(token);
+    }
+
+    public synchronized void failTransiently(String token, int times) {
+        transientFailures.put(token, times);
+    }
+
+    public synchronized List<Delivery> sent() {
+        return new ArrayList<>(sent);
+    }
+
+    /** Number of {@link #send} calls, i.e. batches that would have been HTTP requests. */
+    public synchronized int calls() {
+        return calls;
+    }
+
+    public synchronized void clear() {
+        sent.clear();
+        invalidTokens.clear();
+        transientFailures.clear();
+        calls = 0;
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+}
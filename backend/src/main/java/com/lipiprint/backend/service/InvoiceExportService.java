@@ -0,0 +1,458 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.BillingDetails;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports every invoice in a date range as one ZIP of PDFs plus {@code gst-summary.csv}, for GST
+ * filing.
+ *
+ * Exports run one at a time in the background and report progress through {@link Export} snapshots.
+ * Orders are taken in id order, {@code chunk-size} at a time. Each chunk is loaded in one read-only
+ * transaction and its invoices are filled there. The PDFs are then fetched from the invoice store, or
+ * rendered if missing, across a fork-join pool sized to the cores, and written to the ZIP in order.
+ * The ZIP and the CSV are written straight to temporary files, so heap use is one chunk of PDFs no
+ * matter how long the range is. Finished files are kept for {@code retention-ms} for download.
+ */
+@Service
+public class InvoiceExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceExportService.class);
+
+    private static final int MAX_TRACKED_EXPORTS = 20;
+    private static final long MAX_RANGE_DAYS = 366;
+
+    static final String SUMMARY_ENTRY = "gst-summary.csv";
+    static final String CSV_HEADER = "invoice_number,order_id,invoice_date,customer_name,customer_gstin,place_of_supply,"
+        + "intra_state,taxable_value,cgst,sgst,igst,total_gst,delivery,grand_total,pdf";
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /** Progress of one export; counters are updated by the export thread while it runs. */
+    public static final class Export {
+        private final String id;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile long total;
+        private volatile State state = State.QUEUED;
+        private volatile boolean cancelRequested;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+        private volatile Path file;
+
+        Export(String id, LocalDate from, LocalDate to) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getId() { return id; }
+        public State getState() { return state; }
+
+        /** The finished ZIP, or null until the export has completed. */
+        public Path getFile() {
+            return state == State.COMPLETED ? file : null;
+        }
+
+        public String filename() {
+            return "invoices-" + from + "-to-" + to + ".zip";
+        }
+
+        public Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("id", id);
+            snapshot.put("from", from);
+            snapshot.put("to", to);
+            snapshot.put("state", state.name());
+            snapshot.put("total", total);
+            snapshot.put("processed", processed.get());
+            snapshot.put("failed", failed.get());
+            snapshot.put("percent", total > 0 ? processed.get() * 100 / total : (state == State.COMPLETED ? 100 : 0));
+            snapshot.put("createdAt", createdAt);
+            snapshot.put("startedAt", startedAt);
+            snapshot.put("finishedAt", finishedAt);
+            if (startedAt != null) {
+                LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+                snapshot.put("elapsedMs", Duration.between(startedAt, end).toMillis());
+            }
+            Path ready = getFile();
+            if (ready != null) {
+                try {
+                    snapshot.put("sizeBytes", Files.size(ready));
+                } catch (IOException e) {
+                    snapshot.put("sizeBytes", null);
+                }
+            }
+            snapshot.put("downloadReady", ready != null);
+            snapshot.put("error", error);
+            return snapshot;
+        }
+    }
+
+    /** One order of a chunk: its filled invoice and its summary line, minus the PDF column. */
+    private record Item(InvoiceService.Invoice invoice, String csvLine) {}
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @Value("${lipiprint.invoices.export.parallelism:0}")
+    private int parallelism;
+
+    @Value("${lipiprint.invoices.export.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${lipiprint.invoices.export.queue-capacity:3}")
+    private int queueCapacity;
+
+    @Value("${lipiprint.invoices.export.retention-ms:86400000}")
+    private long retentionMs;
+
+    @Value("${lipiprint.invoices.export.dir:}")
+    private String directory;
+
+    private ThreadPoolExecutor executor;
+    private ForkJoinPool pdfPool;
+    private Path exportDir;
+
+    // Most recent exports, oldest evicted first (and its file with it)
+    private final Map<String, Export> exports = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Export> eldest) {
+            Export export = eldest.getValue();
+            if (size() > MAX_TRACKED_EXPORTS && export.state != State.QUEUED && export.state != State.RUNNING) {
+                deleteFile(export);
+                return true;
+            }
+            return false;
+        }
+    });
+
+    @PostConstruct
+    public void init() throws IOException {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        exportDir = Files.createDirectories(directory == null || directory.isBlank()
+            ? Paths.get(System.getProperty("java.io.tmpdir"), "lipiprint-invoice-exports")
+            : Paths.get(directory));
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pdfPool = new ForkJoinPool(threads);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "invoice-export");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("[InvoiceExportService] {} PDF threads, exports written to {}", threads, exportDir);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (exports) {
+            exports.values().forEach(e -> e.cancelRequested = true);
+        }
+        executor.shutdownNow();
+        pdfPool.shutdownNow();
+    }
+
+    /**
+     * Queues an export of the invoices for orders created from {@code from} to {@code to}, both
+     * inclusive. Throws IllegalStateException if too many exports are already queued.
+     */
+    public Export start(LocalDate from, LocalDate to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("A date range with from <= to is required");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Date range is limited to " + MAX_RANGE_DAYS + " days");
+        }
+        Export export = new Export(UUID.randomUUID().toString(), from, to);
+        exports.put(export.getId(), export);
+        try {
+            executor.execute(() -> run(export));
+        } catch (RejectedExecutionException e) {
+            exports.remove(export.getId());
+            throw new IllegalStateException("Too many invoice exports in progress, try again later");
+        }
+        logger.info("[InvoiceExportService] Queued export {} for {} to {}", export.getId(), from, to);
+        return export;
+    }
+
+    public Export get(String id) {
+        return exports.get(id);
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Export> snapshot;
+        synchronized (exports) {
+            snapshot = new ArrayList<>(exports.values());
+        }
+        List<Map<String, Object>> result = new ArrayList<>(snapshot.size());
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            result.add(snapshot.get(i).snapshot());
+        }
+        return result;
+    }
+
+    /** Stops a queued or running export after its current chunk. */
+    public boolean cancel(String id) {
+        Export export = exports.get(id);
+        if (export == null || export.state == State.COMPLETED || export.state == State.FAILED) {
+            return false;
+        }
+        export.cancelRequested = true;
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${lipiprint.invoices.export.cleanup-ms:3600000}")
+    public void cleanup() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(retentionMs));
+        List<Export> expired = new ArrayList<>();
+        synchronized (exports) {
+            exports.values().removeIf(export -> {
+                if (export.finishedAt != null && export.finishedAt.isBefore(cutoff)) {
+                    expired.add(export);
+                    return true;
+                }
+                return false;
+            });
+        }
+        expired.forEach(InvoiceExportService::deleteFile);
+    }
+
+    private void run(Export export) {
+        if (export.cancelRequested) {
+            export.state = State.CANCELLED;
+            export.finishedAt = LocalDateTime.now();
+            return;
+        }
+        export.state = State.RUNNING;
+        export.startedAt = LocalDateTime.now();
+        Path zip = exportDir.resolve(export.getId() + ".zip");
+        Path csv = exportDir.resolve(export.getId() + ".csv");
+        try {
+            List<Long> orderIds = jdbcTemplate.queryForList(
+                "SELECT id FROM orders WHERE created_at >= ? AND created_at < ? AND status <> 'CANCELLED' ORDER BY id",
+                Long.class, Timestamp.valueOf(export.from.atStartOfDay()), Timestamp.valueOf(export.to.plusDays(1).atStartOfDay()));
+            export.total = orderIds.size();
+            write(export, orderIds, zip, csv);
+            if (export.cancelRequested) {
+                export.state = State.CANCELLED;
+                Files.deleteIfExists(zip);
+            } else {
+                export.file = zip;
+                export.state = State.COMPLETED;
+            }
+            logger.info("[InvoiceExportService] Export {} {}: {} invoices ({} failed) in {} ms", export.getId(), export.state,
+                export.processed.get(), export.failed.get(), Duration.between(export.startedAt, LocalDateTime.now()).toMillis());
+        } catch (Exception e) {
+            export.state = State.FAILED;
+            export.error = e.getMessage();
+            logger.error("[InvoiceExportService] Export {} failed after {} invoices: {}",
+                export.getId(), export.processed.get(), e.getMessage(), e);
+            try {
+                Files.deleteIfExists(zip);
+            } catch (IOException ignored) {
+                // Swept with the directory
+            }
+        } finally {
+            export.finishedAt = LocalDateTime.now();
+            try {
+                Files.deleteIfExists(csv);
+            } catch (IOException ignored) {
+                // Swept with the directory
+            }
+        }
+    }
+
+    private void write(Export export, List<Long> orderIds, Path zipPath, Path csvPath) throws IOException, InterruptedException {
+        double[] totals = new double[7];
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(zipPath), 256 * 1024);
+             ZipOutputStream zip = new ZipOutputStream(file);
+             BufferedWriter csv = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8)) {
+            // PDF content streams are already compressed; a harder deflate costs CPU for little gain
+            zip.setLevel(Deflater.BEST_SPEED);
+            csv.write(CSV_HEADER);
+            csv.newLine();
+
+            int size = Math.max(1, chunkSize);
+            for (int from = 0; from < orderIds.size() && !export.cancelRequested; from += size) {
+                List<Long> chunk = orderIds.subList(from, Math.min(from + size, orderIds.size()));
+                List<Item> items = readOnlyTransaction.execute(status -> prepare(chunk, totals));
+
+                List<Callable<byte[]>> tasks = new ArrayList<>(items.size());
+                for (Item item : items) {
+                    tasks.add(() -> invoiceService.pdfOnCaller(item.invoice()));
+                }
+                List<Future<byte[]>> pdfs = pdfPool.invokeAll(tasks);
+
+                for (int i = 0; i < items.size(); i++) {
+                    Item item = items.get(i);
+                    String entry = "invoices/" + item.invoice().filename();
+                    try {
+                        byte[] pdf = pdfs.get(i).get();
+                        zip.putNextEntry(new ZipEntry(entry));
+                        zip.write(pdf);
+                        zip.closeEntry();
+                    } catch (ExecutionException e) {
+                        export.failed.incrementAndGet();
+                        entry = "ERROR";
+                        logger.warn("[InvoiceExportService] Export {}: invoice for order {} failed: {}", export.getId(),
+                            item.invoice().orderId(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    }
+                    csv.write(item.csvLine());
+                    csv.write(',');
+                    csv.write(csvField(entry));
+                    csv.newLine();
+                    export.processed.incrementAndGet();
+                }
+            }
+            if (export.cancelRequested) {
+                return;
+            }
+
+            csv.write(csvLine(List.of("TOTAL", "", "", "", "", "", "", amount(totals[0]), amount(totals[1]), amount(totals[2]),
+                amount(totals[3]), amount(totals[4]), amount(totals[5]), amount(totals[6]), "")));
+            csv.newLine();
+            csv.flush();
+            zip.putNextEntry(new ZipEntry(SUMMARY_ENTRY));
+            Files.copy(csvPath, zip);
+            zip.closeEntry();
+        }
+    }
+
+    // Runs inside the read-only transaction so the invoice can walk the order's associations
+    private List<Item> prepare(List<Long> chunk, double[] totals) {
+        List<Order> orders = new ArrayList<>(orderRepository.findAllForInvoicesByIdIn(chunk));
+        orders.sort(Comparator.comparing(Order::getId));
+        List<Item> items = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            items.add(new Item(invoiceService.prepare(order), summaryLine(order, totals)));
+        }
+        return items;
+    }
+
+    // Customer fields come from the order's billing snapshot, like the invoice PDF, not the current profile
+    static String summaryLine(Order order, double[] totals) {
+        BillingDetails billing = order.getBilling();
+        double taxable = value(order.getDiscountedSubtotal());
+        double cgst = value(order.getCgst());
+        double sgst = value(order.getSgst());
+        double igst = value(order.getIgst());
+        double gst = value(order.getGst());
+        double delivery = value(order.getDelivery());
+        double grandTotal = value(order.getGrandTotal());
+        double[] values = {taxable, cgst, sgst, igst, gst, delivery, grandTotal};
+        for (int i = 0; i < values.length; i++) {
+            totals[i] += values[i];
+        }
+        String placeOfSupply = order.getStructuredAddress() != null ? order.getStructuredAddress().getState() : null;
+        return csvLine(List.of(
+            "LP" + order.getId(),
+            String.valueOf(order.getId()),
+            order.getCreatedAt() != null ? order.getCreatedAt().toLocalDate().toString() : "",
+            billing != null && billing.getName() != null ? billing.getName() : "",
+            billing != null && billing.getGstin() != null ? billing.getGstin() : "",
+            placeOfSupply != null ? placeOfSupply : "",
+            order.getIsIntraState() != null ? order.getIsIntraState().toString() : "",
+            amount(taxable), amount(cgst), amount(sgst), amount(igst), amount(gst), amount(delivery), amount(grandTotal)));
+    }
+
+    private static double value(Double value) {
+        return value != null ? value : 0.0;
+    }
+
+    private static String amount(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String csvLine(List<String> fields) {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append(',');
+            }
+            line.append(csvField(field));
+        }
+        return line.toString();
+    }
+
+    static String csvField(String field) {
+        // Leading =, +, - or @ would be read as a formula by spreadsheet apps
+        String value = !field.isEmpty() && "=+-@".indexOf(field.charAt(0)) >= 0 && !field.matches("-?\\d+(\\.\\d+)?")
+            ? "'" + field : field;
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    private static void deleteFile(Export export) {
+        if (export.file != null) {
+            try {
+                Files.deleteIfExists(export.file);
+            } catch (IOException e) {
+                logger.warn("[InvoiceExportService] Could not delete {}: {}", export.file, e.getMessage());
+            }
+        }
+    }
+}
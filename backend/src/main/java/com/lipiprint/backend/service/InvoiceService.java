@@ -0,0 +1,379 @@
+package com.lipiprint.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lipiprint.backend.entity.BillingDetails;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.entity.PrintJob;
+import com.openhtmltopdf.extend.FSCacheEx;
+import com.openhtmltopdf.extend.FSCacheValue;
+import com.openhtmltopdf.extend.impl.FSDefaultCacheStore;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders order invoices to PDF from {@code invoice-template.html}.
+ *
+ * The template is compiled once at startup. Filling it for an order is cheap and happens on the
+ * caller's thread; the SHA-256 of the resulting HTML is the invoice version, so the PDF is stored in
+ * the {@link InvoiceStore} under {@code <orderId>/<version>.pdf} and the version doubles as the
+ * ETag. The invoice is filled only from what was fixed when the order was placed (its billing details,
+ * items and amounts), so status changes and profile edits keep serving the stored bytes; once a new
+ * version is stored the order's older ones are deleted. Only a missing PDF is rendered, on a small
+ * bounded pool whose threads share one font metrics cache, and concurrent requests for the same
+ * version wait on a single render.
+ */
+@Service
+public class InvoiceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceService.class);
+
+    private static final String TEMPLATE = "invoice-template.html";
+
+    /** One rendering of an order's invoice, identified by the hash of its HTML. */
+    public record Invoice(Long orderId, String version, String html) {
+        public String key() {
+            return prefix(orderId) + version + ".pdf";
+        }
+
+        public String etag() {
+            return "\"" + orderId + "-" + version + "\"";
+        }
+
+        public String filename() {
+            return "LP" + orderId + ".pdf";
+        }
+    }
+
+    /** The render pool is full or the render did not finish in time; worth retrying shortly. */
+    public static class RenderUnavailableException extends RuntimeException {
+        public RenderUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    private final InvoiceStore store;
+    private final int threads;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FSCacheEx<String, FSCacheValue> fontMetricsCache = new FSDefaultCacheStore();
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private InvoiceTemplate template;
+    private ThreadPoolExecutor renderPool;
+
+    private final AtomicLong storeHits = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong renderFailures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong storeFailures = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+
+    @Autowired
+    public InvoiceService(InvoiceStore store,
+                          @Value("${lipiprint.invoices.render-threads:2}") int threads,
+                          @Value("${lipiprint.invoices.queue-capacity:50}") int queueCapacity,
+                          @Value("${lipiprint.invoices.render-timeout-ms:30000}") long timeoutMillis) {
+        this(store, null, threads, queueCapacity, timeoutMillis);
+    }
+
+    InvoiceService(InvoiceStore store, InvoiceTemplate template, int threads, int queueCapacity, long timeoutMillis) {
+        this.store = store;
+        this.template = template;
+        this.threads = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (template == null) {
+            try (InputStream in = new ClassPathResource(TEMPLATE).getInputStream()) {
+                template = InvoiceTemplate.compile(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        renderPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "invoice-render-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.info("[InvoiceService] Template compiled with placeholders {}; {} render threads, {} store",
+            template.placeholders(), threads, store.name());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (renderPool != null) {
+            renderPool.shutdownNow();
+        }
+    }
+
+    /** Fills the template for an order. Reads the order's associations, so call it where they can load. */
+    public Invoice prepare(Order order) {
+        String html = template.render(values(order), "-");
+        return new Invoice(order.getId(), version(html), html);
+    }
+
+    /** The stored PDF for this version, rendering and storing it first if there is none. */
+    public byte[] pdf(Invoice invoice) {
+        return pdf(invoice, false);
+    }
+
+    /**
+     * Like {@link #pdf(Invoice)}, but a missing PDF is rendered on the calling thread rather than the
+     * render pool. For bulk work that brings its own threads, so it does not crowd out single views.
+     */
+    public byte[] pdfOnCaller(Invoice invoice) {
+        return pdf(invoice, true);
+    }
+
+    private byte[] pdf(Invoice invoice, boolean onCaller) {
+        String key = invoice.key();
+        byte[] stored = fetch(key);
+        if (stored != null) {
+            storeHits.incrementAndGet();
+            return stored;
+        }
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, mine);
+        CompletableFuture<byte[]> future = existing != null ? existing : mine;
+        if (existing == null) {
+            if (onCaller) {
+                renderAndStore(invoice, mine);
+            } else {
+                submit(invoice, mine);
+            }
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The render carries on and stores its result for the retry
+            throw new RenderUnavailableException("Invoice for order " + invoice.orderId() + " is still rendering");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderUnavailableException("Interrupted while rendering invoice for order " + invoice.orderId());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                throw new RenderUnavailableException("Invoice renderer is busy");
+            }
+            throw new IllegalStateException("Failed to render invoice for order " + invoice.orderId(), e.getCause());
+        }
+    }
+
+    private void submit(Invoice invoice, CompletableFuture<byte[]> future) {
+        try {
+            renderPool.execute(() -> renderAndStore(invoice, future));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            inFlight.remove(invoice.key(), future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void renderAndStore(Invoice invoice, CompletableFuture<byte[]> future) {
+        String key = invoice.key();
+        try {
+            long start = System.nanoTime();
+            byte[] pdf = renderPdf(invoice.html());
+            rendered.incrementAndGet();
+            logger.info("[InvoiceService] Rendered invoice {} ({} bytes) in {} ms", key, pdf.length,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            try {
+                store.put(key, pdf);
+            } catch (Exception e) {
+                storeFailures.incrementAndGet();
+                logger.warn("[InvoiceService] Could not store invoice {}: {}", key, e.getMessage());
+            }
+            try {
+                deleteSuperseded(invoice);
+            } catch (Exception e) {
+                storeFailures.incrementAndGet();
+                logger.warn("[InvoiceService] Could not delete superseded invoices of order {}: {}", invoice.orderId(), e.getMessage());
+            }
+            future.complete(pdf);
+        } catch (Throwable e) {
+            renderFailures.incrementAndGet();
+            logger.error("[InvoiceService] Failed to render invoice {}: {}", key, e.getMessage(), e);
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    // Older versions of the order's invoice are no longer served; a request that still names one renders it again
+    private void deleteSuperseded(Invoice invoice) {
+        for (String key : store.keys(prefix(invoice.orderId()))) {
+            if (!key.equals(invoice.key())) {
+                store.delete(key);
+                superseded.incrementAndGet();
+                logger.info("[InvoiceService] Deleted superseded invoice {}", key);
+            }
+        }
+    }
+
+    private static String prefix(Long orderId) {
+        return orderId + "/";
+    }
+
+    private byte[] fetch(String key) {
+        try {
+            return store.get(key);
+        } catch (Exception e) {
+            storeFailures.incrementAndGet();
+            logger.warn("[InvoiceService] Could not read invoice {} from the {} store: {}", key, store.name(), e.getMessage());
+            return null;
+        }
+    }
+
+    /** Runs on a render thread, or the caller's for {@link #pdfOnCaller}. */
+    protected byte[] renderPdf(String html) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        PdfRendererBuilder builder = new PdfRendererBuilder();
+        builder.useFastMode();
+        builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetricsCache);
+        builder.withHtmlContent(html, null);
+        builder.toStream(out);
+        builder.run();
+        return out.toByteArray();
+    }
+
+    static String version(String html) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(html.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 10);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Only fields fixed when the order was placed, so the version changes only if the invoice does
+    Map<String, String> values(Order order) {
+        Map<String, String> values = new HashMap<>();
+        BillingDetails billing = order.getBilling();
+        values.put("customerName", text(billing != null ? billing.getName() : null));
+        values.put("customerEmail", text(billing != null ? billing.getEmail() : null));
+        values.put("customerPhone", text(billing != null ? billing.getPhone() : null));
+        values.put("customerGSTIN", text(billing != null ? billing.getGstin() : null));
+        values.put("customerAddress", text(order.getDeliveryAddress()));
+        values.put("orderId", String.valueOf(order.getId()));
+        values.put("orderDate", order.getCreatedAt() != null ? order.getCreatedAt().toLocalDate().toString() : "-");
+        values.put("deliveryType", order.getDeliveryType() != null ? order.getDeliveryType().name() : "-");
+        values.put("orderItemsBlock", itemsBlock(order));
+        values.put("orderNoteBlock", order.getOrderNote() != null && !order.getOrderNote().isBlank()
+            ? "<div class='order-note-block'><b>Order Note:</b> " + escapeHtml(order.getOrderNote()) + "</div>"
+            : "");
+        values.put("subtotal", amount(order.getSubtotal()));
+        values.put("discount", amount(order.getDiscount()));
+        values.put("gst", amount(order.getGst()));
+        values.put("delivery", amount(order.getDelivery()));
+        values.put("grandTotal", amount(order.getGrandTotal()));
+        return values;
+    }
+
+    private String itemsBlock(Order order) {
+        if (order.getPrintJobs() == null) {
+            return "";
+        }
+        StringBuilder block = new StringBuilder();
+        for (PrintJob pj : order.getPrintJobs()) {
+            var file = pj.getFile();
+            if (file == null) {
+                continue;
+            }
+            String fileName = file.getOriginalFilename() != null ? file.getOriginalFilename() : file.getFilename();
+            int pages = file.getPages() != null ? file.getPages() : 1;
+            block.append("<tr>")
+                .append("<td style='padding:8px 6px;'>").append(escapeHtml(fileName)).append("</td>")
+                .append("<td style='padding:8px 6px;'>").append(printOptions(pj.getOptions())).append("</td>")
+                .append("<td style='padding:8px 6px;'>").append(pages).append("</td>")
+                .append("<td style='padding:8px 6px;'>INR ").append(amount(pj.getPrice())).append("</td>")
+                .append("</tr>");
+        }
+        return block.toString();
+    }
+
+    private String printOptions(String options) {
+        if (options == null) {
+            return "";
+        }
+        try {
+            Map<String, Object> opts = objectMapper.readValue(options, new TypeReference<LinkedHashMap<String, Object>>() {});
+            StringBuilder out = new StringBuilder();
+            for (Map.Entry<String, Object> e : opts.entrySet()) {
+                if (out.length() > 0) {
+                    out.append("<br/>");
+                }
+                out.append("<b>").append(escapeHtml(e.getKey().replace("_", " "))).append(":</b> ")
+                    .append(escapeHtml(String.valueOf(e.getValue())));
+            }
+            return out.toString();
+        } catch (Exception e) {
+            logger.warn("[InvoiceService] Error parsing print options: {}", e.getMessage());
+            return "-";
+        }
+    }
+
+    // Fixed locale so the same order always produces the same HTML, and so the same version
+    private static String amount(Double value) {
+        return String.format(Locale.ROOT, "%.2f", value != null ? value : 0.0);
+    }
+
+    private static String text(String value) {
+        return value != null ? escapeHtml(value) : "-";
+    }
+
+    static String escapeHtml(String s) {
+        return s == null ? "" : s.replace("&", "&amp;")
+                                 .replace("<", "&lt;")
+                                 .replace(">", "&gt;")
+                                 .replace("\"", "&quot;")
+                                 .replace("'", "&#39;");
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("store", store.name());
+        stats.put("storeHits", storeHits.get());
+        stats.put("rendered", rendered.get());
+        stats.put("renderFailures", renderFailures.get());
+        stats.put("rejected", rejected.get());
+        stats.put("storeFailures", storeFailures.get());
+        stats.put("superseded", superseded.get());
+        stats.put("rendering", inFlight.size());
+        stats.put("queued", renderPool != null ? renderPool.getQueue().size() : 0);
+        return stats;
+    }
+}
@@ -0,0 +1,23 @@
+package com.lipiprint.backend.service;
+
+import java.util.List;
+
+/**
+ * Where rendered invoice PDFs are kept ({@link FirebaseInvoiceStore} in the storage bucket,
+ * {@link InMemoryInvoiceStore} for tests and local runs). Keys name one immutable rendering, so an
+ * entry is never overwritten with different bytes.
+ */
+public interface InvoiceStore {
+
+    /** The stored PDF, or null if this key has not been rendered yet. */
+    byte[] get(String key);
+
+    void put(String key, byte[] pdf);
+
+    /** Keys of the stored PDFs that start with the prefix. */
+    List<String> keys(String prefix);
+
+    void delete(String key);
+
+    String name();
+}
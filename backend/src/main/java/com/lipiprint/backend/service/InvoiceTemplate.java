@@ -0,0 +1,62 @@
+package com.lipiprint.backend.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An HTML template with {@code ${name}} placeholders, split once into literal text and placeholder
+ * slots. Rendering walks the slots and appends into one builder, instead of scanning the whole
+ * document once per placeholder as chained {@code String.replace} calls do.
+ *
+ * Values are inserted as given; callers escape anything that is not meant to be markup.
+ */
+public final class InvoiceTemplate {
+
+    private final String[] literals;
+    private final String[] names;
+    private final int sizeHint;
+
+    private InvoiceTemplate(String[] literals, String[] names, int sizeHint) {
+        this.literals = literals;
+        this.names = names;
+        this.sizeHint = sizeHint;
+    }
+
+    public static InvoiceTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int from = 0;
+        while (true) {
+            int start = source.indexOf("${", from);
+            int end = start < 0 ? -1 : source.indexOf('}', start + 2);
+            if (end < 0) {
+                literals.add(source.substring(from));
+                break;
+            }
+            literals.add(source.substring(from, start));
+            names.add(source.substring(start + 2, end).trim());
+            from = end + 1;
+        }
+        return new InvoiceTemplate(literals.toArray(new String[0]), names.toArray(new String[0]), source.length());
+    }
+
+    /** Placeholder names in order of first appearance. */
+    public Set<String> placeholders() {
+        return new LinkedHashSet<>(List.of(names));
+    }
+
+    /** Fills every placeholder; ones without a value render as {@code missing}. */
+    public String render(Map<String, String> values, String missing) {
+        StringBuilder out = new StringBuilder(sizeHint + 2048);
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            String value = values.get(names[i]);
+            out.append(value != null ? value : missing);
+        }
+        out.append(literals[names.length]);
+        return out.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link OtpStore} in a shared database table, for running more than one backend instance.
+ *
+ * Attempts are counted with a single conditional UPDATE, so concurrent guesses against the same key
+ * on different nodes cannot exceed the limit, and a code is consumed by a DELETE that only one caller
+ * can win. Expired rows are purged periodically. The table is created by setup-database.sql.
+ */
+@Component
+@ConditionalOnProperty(name = "lipiprint.otp.store", havingValue = "jdbc")
+public class JdbcOtpStore implements OtpStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcOtpStore.class);
+
+    static final String TABLE = "otp_codes";
+
+    private record Row(String code, long expiresAt, int attempts) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LongSupplier clock;
+
+    @Autowired
+    public JdbcOtpStore(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, System::currentTimeMillis);
+    }
+
+    JdbcOtpStore(JdbcTemplate jdbcTemplate, LongSupplier clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+    }
+
+    @Override
+    public void put(String key, String code, Duration ttl) {
+        long expiresAt = clock.getAsLong() + ttl.toMillis();
+        String update = "UPDATE " + TABLE + " SET code = ?, expires_at = ?, attempts = 0 WHERE otp_key = ?";
+        if (jdbcTemplate.update(update, code, expiresAt, key) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO " + TABLE + " (otp_key, code, expires_at, attempts) VALUES (?, ?, ?, 0)",
+                key, code, expiresAt);
+        } catch (DuplicateKeyException e) {
+            // Another node inserted the same key in between; the latest code wins
+            jdbcTemplate.update(update, code, expiresAt, key);
+        }
+    }
+
+    @Override
+    public VerifyResult verify(String key, String code, int maxAttempts) {
+        long now = clock.getAsLong();
+        int counted = jdbcTemplate.update(
+            "UPDATE " + TABLE + " SET attempts = attempts + 1 WHERE otp_key = ? AND expires_at > ? AND attempts < ?",
+            key, now, maxAttempts);
+
+        Row row = find(key);
+        if (row == null) {
+            return VerifyResult.NOT_FOUND;
+        }
+        if (counted == 0) {
+            // Either expired or out of attempts; the row is useless from here on
+            jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE otp_key = ? AND code = ?", key, row.code());
+            return now >= row.expiresAt() ? VerifyResult.EXPIRED : VerifyResult.TOO_MANY_ATTEMPTS;
+        }
+
+        if (matches(row.code(), code)) {
+            int consumed = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE otp_key = ? AND code = ?", key, row.code());
+            return consumed > 0 ? VerifyResult.VALID : VerifyResult.NOT_FOUND;
+        }
+        if (row.attempts() >= maxAttempts) {
+            jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE otp_key = ? AND code = ?", key, row.code());
+        }
+        return VerifyResult.INVALID;
+    }
+
+    @Override
+    public void remove(String key) {
+        jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE otp_key = ?", key);
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void scheduledPurge() {
+        purgeExpired();
+    }
+
+    @Override
+    public int purgeExpired() {
+        int removed = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE expires_at <= ?", clock.getAsLong());
+        if (removed > 0) {
+            logger.debug("[JdbcOtpStore] Purged {} expired OTPs", removed);
+        }
+        return removed;
+    }
+
+    private Row find(String key) {
+        List<Row> rows = jdbcTemplate.query(
+            "SELECT code, expires_at, attempts FROM " + TABLE + " WHERE otp_key = ?",
+            (rs, i) -> new Row(rs.getString("code"), rs.getLong("expires_at"), rs.getInt("attempts")),
+            key);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private static boolean matches(String expected, String actual) {
+        if (actual == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,115 @@
+package com.lipiprint.backend.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, error count and mean/p50/p99/max latency per operation name, for the outbound API
+ * clients. The project has no metrics library; these end up in the admin health endpoints.
+ *
+ * Percentiles come from a fixed log-scale histogram of microseconds: exact below 16us, then eight
+ * buckets per power of two, so a reported percentile is at most 12.5% above the true value.
+ */
+class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below this get a bucket each
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int FIRST_OCTAVE = SUB_BUCKET_BITS + 1;
+    // 2^40 us is about 12 days; anything longer lands in the last bucket
+    private static final int LAST_OCTAVE = 39;
+    static final int BUCKETS = LINEAR_LIMIT + (LAST_OCTAVE - FIRST_OCTAVE + 1) * SUB_BUCKETS;
+
+    private static final class Op {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    }
+
+    private final ConcurrentHashMap<String, Op> ops = new ConcurrentHashMap<>();
+
+    void record(String operation, long startNanos, boolean success) {
+        recordElapsed(operation, System.nanoTime() - startNanos, success);
+    }
+
+    void recordElapsed(String operation, long elapsedNanos, boolean success) {
+        long elapsed = Math.max(0, elapsedNanos);
+        Op op = ops.computeIfAbsent(operation, k -> new Op());
+        op.calls.increment();
+        if (!success) {
+            op.errors.increment();
+        }
+        op.totalNanos.add(elapsed);
+        op.maxNanos.accumulateAndGet(elapsed, Math::max);
+        op.histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(elapsed)));
+    }
+
+    static int bucket(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        if (octave > LAST_OCTAVE) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (octave - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (octave - FIRST_OCTAVE) * SUB_BUCKETS + sub;
+    }
+
+    // Largest value in the bucket, in microseconds
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int octave = FIRST_OCTAVE + (bucket - LINEAR_LIMIT) / SUB_BUCKETS;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (octave - SUB_BUCKET_BITS)) - 1;
+    }
+
+    // The value at or below which the given fraction of calls fall, capped by the largest seen
+    private static long percentileMillis(Op op, double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = op.histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long micros = Math.min(upperBound(i), TimeUnit.NANOSECONDS.toMicros(op.maxNanos.get()));
+                return TimeUnit.MICROSECONDS.toMillis(micros);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(op.maxNanos.get());
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        ops.forEach((name, op) -> {
+            long calls = op.calls.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", calls);
+            stats.put("errors", op.errors.sum());
+            stats.put("avgMillis", calls > 0 ? TimeUnit.NANOSECONDS.toMillis(op.totalNanos.sum() / calls) : 0);
+            stats.put("p50Millis", percentileMillis(op, 0.50));
+            stats.put("p99Millis", percentileMillis(op, 0.99));
+            stats.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(op.maxNanos.get()));
+            result.put(name, stats);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,412 @@
+package com.lipiprint.backend.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound mail queue, so request threads (e.g. {@code /api/auth/send-email-otp}) never wait on an
+ * SMTP handshake.
+ *
+ * Messages go into a bounded in-memory buffer drained by a small pool of sender threads. Each sender
+ * keeps its own SMTP {@link Transport} connected between messages and closes it after
+ * {@code idle-seconds} without work, so a burst of OTPs costs one STARTTLS/AUTH handshake per sender
+ * instead of one per message. Transient failures are retried with exponential backoff; recipients the
+ * server rejects outright are not.
+ *
+ * With {@code lipiprint.mail.durable=true} every message is also written to {@code outbound_mail}
+ * before it is queued and deleted once delivered, so a restart does not lose it. Rows carry a lease
+ * ({@code claimed_until}); rows whose lease ran out, or that did not fit in the buffer, are picked up
+ * again by {@link #recoverDurable()}. Delivery is at-least-once in that mode. The table is created
+ * by setup-database.sql.
+ */
+@Service
+public class MailQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailQueue.class);
+
+    static final String TABLE = "outbound_mail";
+    private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int RECOVERY_BATCH = 100;
+
+    private static final class Envelope {
+        final Long id;
+        final SimpleMailMessage message;
+        int attempts;
+
+        Envelope(Long id, SimpleMailMessage message, int attempts) {
+            this.id = id;
+            this.message = message;
+            this.attempts = attempts;
+        }
+    }
+
+    private final JavaMailSender mailSender;
+    private final JdbcTemplate jdbcTemplate;
+    private final int capacity;
+    private final int senders;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long idleMillis;
+    private final boolean durable;
+
+    private BlockingQueue<Envelope> queue;
+    private ScheduledExecutorService retryScheduler;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+
+    @Autowired
+    public MailQueue(JavaMailSender mailSender,
+                     JdbcTemplate jdbcTemplate,
+                     @Value("${lipiprint.mail.queue-capacity:1000}") int capacity,
+                     @Value("${lipiprint.mail.senders:2}") int senders,
+                     @Value("${lipiprint.mail.max-attempts:5}") int maxAttempts,
+                     @Value("${lipiprint.mail.idle-seconds:60}") long idleSeconds,
+                     @Value("${lipiprint.mail.durable:false}") boolean durable) {
+        this(mailSender, jdbcTemplate, capacity, senders, maxAttempts, 2000, TimeUnit.SECONDS.toMillis(idleSeconds), durable);
+    }
+
+    MailQueue(JavaMailSender mailSender, JdbcTemplate jdbcTemplate, int capacity, int senders, int maxAttempts,
+              long initialBackoffMillis, long idleMillis, boolean durable) {
+        this.mailSender = mailSender;
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = Math.max(1, capacity);
+        this.senders = Math.max(1, senders);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.idleMillis = Math.max(1, idleMillis);
+        this.durable = durable && jdbcTemplate != null;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mail-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for (int i = 0; i < senders; i++) {
+            Thread worker = new Thread(this::runSender, "mail-sender-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        logger.info("[MailQueue] Started {} senders (capacity {}, durable {})", senders, capacity, durable);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        workers.forEach(Thread::interrupt);
+        if (queue != null && !queue.isEmpty()) {
+            logger.warn("[MailQueue] Stopping with {} messages still queued{}", queue.size(),
+                durable ? "; they will be resent from " + TABLE : " and they will be lost");
+        }
+    }
+
+    public boolean enqueue(String to, String subject, String body) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(to);
+        message.setSubject(subject);
+        message.setText(body);
+        return enqueue(message);
+    }
+
+    /**
+     * Accepts a message for delivery and returns immediately. Returns false if it could not be
+     * accepted (queue full and no durable table), in which case nothing will be sent.
+     */
+    public boolean enqueue(SimpleMailMessage message) {
+        if (!running) {
+            return false;
+        }
+        Long id = durable ? insertDurable(message) : null;
+        Envelope envelope = new Envelope(id, message, 0);
+        if (queue.offer(envelope)) {
+            enqueued.incrementAndGet();
+            return true;
+        }
+        if (id != null) {
+            // Already persisted; make it immediately recoverable instead of dropping it
+            jdbcTemplate.update("UPDATE " + TABLE + " SET claimed_until = 0 WHERE id = ?", id);
+            enqueued.incrementAndGet();
+            logger.warn("[MailQueue] Buffer full, message {} left in {} for recovery", id, TABLE);
+            return true;
+        }
+        dropped.incrementAndGet();
+        logger.warn("[MailQueue] Buffer full ({} messages), dropping mail to {}", capacity, recipient(message));
+        return false;
+    }
+
+    public int getQueuedCount() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    public Map<String, Object> stats() {
+        long sentCount = sent.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", getQueuedCount());
+        stats.put("capacity", capacity);
+        stats.put("pendingRetries", pendingRetries.get());
+        stats.put("enqueued", enqueued.get());
+        stats.put("sent", sentCount);
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        stats.put("dropped", dropped.get());
+        stats.put("connectionsOpened", connectionsOpened.get());
+        stats.put("avgSendMillis", sentCount > 0 ? TimeUnit.NANOSECONDS.toMillis(sendNanos.get() / sentCount) : 0);
+        stats.put("durable", durable);
+        return stats;
+    }
+
+    private void runSender() {
+        SmtpConnection connection = new SmtpConnection();
+        try {
+            while (running) {
+                Envelope envelope = queue.poll(idleMillis, TimeUnit.MILLISECONDS);
+                if (envelope == null) {
+                    connection.close();
+                    continue;
+                }
+                deliver(envelope, connection);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void deliver(Envelope envelope, SmtpConnection connection) {
+        envelope.attempts++;
+        long start = System.nanoTime();
+        try {
+            connection.send(envelope.message);
+            sendNanos.addAndGet(System.nanoTime() - start);
+            sent.incrementAndGet();
+            if (envelope.id != null) {
+                jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE id = ?", envelope.id);
+            }
+        } catch (Exception e) {
+            // The connection may be mid-transaction; start the next message on a fresh one
+            connection.close();
+            handleFailure(envelope, e);
+        }
+    }
+
+    private void handleFailure(Envelope envelope, Exception e) {
+        String to = recipient(envelope.message);
+        if (isPermanent(e) || envelope.attempts >= maxAttempts) {
+            failed.incrementAndGet();
+            logger.error("[MailQueue] Giving up on mail to {} after {} attempts: {}", to, envelope.attempts, e.getMessage());
+            if (envelope.id != null) {
+                jdbcTemplate.update("UPDATE " + TABLE + " SET status = 'FAILED', attempts = ?, last_error = ? WHERE id = ?",
+                    envelope.attempts, truncate(e.getMessage()), envelope.id);
+            }
+            return;
+        }
+
+        long delay = backoffMillis(envelope.attempts);
+        retried.incrementAndGet();
+        logger.warn("[MailQueue] Mail to {} failed (attempt {}), retrying in {} ms: {}", to, envelope.attempts, delay, e.getMessage());
+        if (envelope.id != null) {
+            jdbcTemplate.update("UPDATE " + TABLE + " SET attempts = ?, claimed_until = ?, last_error = ? WHERE id = ?",
+                envelope.attempts, System.currentTimeMillis() + delay + LEASE_MILLIS, truncate(e.getMessage()), envelope.id);
+        }
+        pendingRetries.incrementAndGet();
+        retryScheduler.schedule(() -> requeue(envelope), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void requeue(Envelope envelope) {
+        if (!running) {
+            pendingRetries.decrementAndGet();
+            return;
+        }
+        if (queue.offer(envelope)) {
+            pendingRetries.decrementAndGet();
+        } else {
+            // Buffer is full of fresh mail; try again later without counting an attempt
+            retryScheduler.schedule(() -> requeue(envelope), backoffMillis(envelope.attempts), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    long backoffMillis(int attempts) {
+        long delay = initialBackoffMillis << Math.min(attempts - 1, 20);
+        return Math.min(delay, MAX_BACKOFF_MILLIS);
+    }
+
+    // A rejected address will be rejected again; anything else (4xx, dropped connection) is worth a retry
+    private static boolean isPermanent(Exception e) {
+        Throwable t = e;
+        while (t != null) {
+            if (t instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null && sendFailed.getInvalidAddresses().length > 0) {
+                return true;
+            }
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    private Long insertDurable(SimpleMailMessage message) {
+        long now = System.currentTimeMillis();
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO " + TABLE + " (recipient, subject, body, status, attempts, claimed_until, created_at) "
+                    + "VALUES (?, ?, ?, 'QUEUED', 0, ?, ?)", new String[] {"id"});
+            ps.setString(1, recipient(message));
+            ps.setString(2, message.getSubject());
+            ps.setString(3, message.getText());
+            ps.setLong(4, now + LEASE_MILLIS);
+            ps.setLong(5, now);
+            return ps;
+        }, keys);
+        Number id = keys.getKey();
+        return id != null ? id.longValue() : null;
+    }
+
+    /**
+     * Re-queues durable rows whose lease has run out: messages left over from a previous run, or ones
+     * that did not fit in the buffer. Each row is claimed with a conditional UPDATE so two instances
+     * sharing the table do not both take it.
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 10000)
+    public void recoverDurable() {
+        if (!durable || !running) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int free = queue.remainingCapacity();
+        if (free == 0) {
+            return;
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+            "SELECT id, recipient, subject, body, attempts, claimed_until FROM " + TABLE
+                + " WHERE status = 'QUEUED' AND claimed_until < ? ORDER BY id LIMIT ?",
+            now, Math.min(free, RECOVERY_BATCH));
+
+        int recovered = 0;
+        for (Map<String, Object> row : rows) {
+            long id = ((Number) row.get("id")).longValue();
+            int claimed = jdbcTemplate.update(
+                "UPDATE " + TABLE + " SET claimed_until = ? WHERE id = ? AND claimed_until = ?",
+                now + LEASE_MILLIS, id, ((Number) row.get("claimed_until")).longValue());
+            if (claimed == 0) {
+                continue;
+            }
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo((String) row.get("recipient"));
+            message.setSubject((String) row.get("subject"));
+            message.setText((String) row.get("body"));
+            if (!queue.offer(new Envelope(id, message, ((Number) row.get("attempts")).intValue()))) {
+                jdbcTemplate.update("UPDATE " + TABLE + " SET claimed_until = 0 WHERE id = ?", id);
+                break;
+            }
+            recovered++;
+        }
+        if (recovered > 0) {
+            logger.info("[MailQueue] Recovered {} messages from {}", recovered, TABLE);
+        }
+    }
+
+    private static String recipient(SimpleMailMessage message) {
+        String[] to = message.getTo();
+        return to != null && to.length > 0 ? String.join(",", to) : "";
+    }
+
+    private static String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > 1000 ? value.substring(0, 1000) : value;
+    }
+
+    /**
+     * One sender's SMTP connection. Only used from its own sender thread. When the configured sender
+     * is not a {@link JavaMailSenderImpl} there is no session to hold, so messages go through
+     * {@link JavaMailSender#send(SimpleMailMessage)} as before.
+     */
+    private final class SmtpConnection {
+        private Transport transport;
+
+        void send(SimpleMailMessage message) throws MessagingException {
+            if (!(mailSender instanceof JavaMailSenderImpl impl)) {
+                mailSender.send(message);
+                return;
+            }
+            MimeMessage mime = impl.createMimeMessage();
+            message.copyTo(new MimeMailMessage(mime));
+            mime.saveChanges();
+            connect(impl).sendMessage(mime, mime.getAllRecipients());
+        }
+
+        private Transport connect(JavaMailSenderImpl impl) throws MessagingException {
+            if (transport != null && transport.isConnected()) {
+                return transport;
+            }
+            close();
+            Transport fresh = impl.getSession().getTransport(impl.getProtocol() != null ? impl.getProtocol() : "smtp");
+            fresh.connect(impl.getHost(), impl.getPort(), impl.getUsername(), impl.getPassword());
+            connectionsOpened.incrementAndGet();
+            transport = fresh;
+            return fresh;
+        }
+
+        void close() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                logger.debug("[MailQueue] Error closing SMTP connection: {}", e.getMessage());
+            }
+            transport = null;
+        }
+    }
+}
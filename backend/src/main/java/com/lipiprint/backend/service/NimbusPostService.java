@@ -14,11 +14,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
 
 import javax.annotation.PostConstruct;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -28,7 +31,6 @@ public class NimbusPostService {
     private static final Logger logger = LoggerFactory.getLogger(NimbusPostService.class);
     
     // ✅ VERIFIED: Official NimbusPost API endpoints
-    private static final String LOGIN_ENDPOINT = "/users/login";
     private static final String SERVICEABILITY_ENDPOINT = "/courier/serviceability";
     private static final String SHIPMENT_ENDPOINT = "/shipments";
     private static final String TRACKING_ENDPOINT = "/shipments/track/";
@@ -45,9 +47,26 @@ public class NimbusPostService {
     @Autowired
     private RestTemplate restTemplate;
     
-    private String authToken;
-    private LocalDateTime tokenExpiry;
+    @Autowired
+    private ShippingQuoteCache quoteCache;
+    
+    @Autowired
+    private NimbusPostTokenProvider tokenProvider;
+
+    @Autowired
+    private PincodeDirectory pincodeDirectory;
+    
     private ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * A bulk shipment request that failed before it reached NimbusPost (disabled, no token, no
+     * connection), so no shipment can have been created and the orders are safe to submit again.
+     */
+    public static class ShipmentNotSentException extends RuntimeException {
+        public ShipmentNotSentException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
     
     @PostConstruct
     public void authenticate() {
@@ -61,138 +80,26 @@ public class NimbusPostService {
             return;
         }
         
-        try {
-            String authUrl = config.getBaseUrl() + LOGIN_ENDPOINT;
-            logger.info("🔐 Auth URL: {}", authUrl);
-            logger.info("📧 Email: {}", config.getEmail());
-            logger.info("🔑 Password length: {}", config.getPassword() != null ? config.getPassword().length() : 0);
-            
-            // ✅ ENHANCED: Validate configuration
-            if (config.getEmail() == null || config.getEmail().trim().isEmpty()) {
-                logger.error("❌ NimbusPost email is not configured");
-                return;
-            }
-            
-            if (config.getPassword() == null || config.getPassword().trim().isEmpty()) {
-                logger.error("❌ NimbusPost password is not configured");
-                return;
-            }
-            
-            if (config.getBaseUrl() == null || config.getBaseUrl().trim().isEmpty()) {
-                logger.error("❌ NimbusPost base URL is not configured");
-                return;
-            }
-            
-            Map<String, String> authRequest = new HashMap<>();
-            authRequest.put("email", config.getEmail().trim());
-            authRequest.put("password", config.getPassword().trim());
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
-            headers.set("User-Agent", "LipiPrint-NagpalPrintHouse/1.0");
-            
-            HttpEntity<Map<String, String>> entity = new HttpEntity<>(authRequest, headers);
-            
-            logger.info("🚀 Sending authentication request to NimbusPost...");
-            
-            try {
-                ResponseEntity<String> response = restTemplate.postForEntity(authUrl, entity, String.class);
-                
-                logger.info("📡 Response Status: {}", response.getStatusCode());
-                logger.info("📦 Response Body: {}", response.getBody());
-                
-                if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                    Map<String, Object> responseBody = objectMapper.readValue(response.getBody(), 
-                        new TypeReference<Map<String, Object>>() {});
-                    
-                    // Log the full response structure for debugging
-                    logger.info("📊 Full Response Structure: {}", responseBody);
-                    
-                    // ✅ ENHANCED: Extract token from response with multiple fallbacks
-                    if (responseBody.containsKey("data")) {
-                        Object data = responseBody.get("data");
-                        if (data instanceof String) {
-                            this.authToken = (String) data;
-                        } else if (data instanceof Map) {
-                            @SuppressWarnings("unchecked")
-                            Map<String, Object> dataMap = (Map<String, Object>) data;
-                            this.authToken = (String) dataMap.get("token");
-                        }
-                    } else if (responseBody.containsKey("token")) {
-                        this.authToken = (String) responseBody.get("token");
-                    } else if (responseBody.containsKey("access_token")) {
-                        this.authToken = (String) responseBody.get("access_token");
-                    } else if (responseBody.containsKey("auth_token")) {
-                        this.authToken = (String) responseBody.get("auth_token");
-                    }
-                    
-                    if (this.authToken != null && !this.authToken.trim().isEmpty()) {
-                        this.tokenExpiry = LocalDateTime.now().plusHours(23); // Token valid for 23 hours
-                        logger.info("✅ NimbusPost authentication SUCCESSFUL for Nagpal Print House");
-                        logger.info("🎫 Token length: {} characters", this.authToken.length());
-                        logger.info("⏰ Token expires at: {}", this.tokenExpiry);
-                        logger.info("=====================================");
-                    } else {
-                        logger.error("❌ Authentication failed - No token found in response");
-                        logger.error("Response keys: {}", responseBody.keySet());
-                        logger.error("Full response: {}", responseBody);
-                    }
-                } else {
-                    logger.error("❌ Authentication failed with HTTP status: {}", response.getStatusCode());
-                    logger.error("Response body: {}", response.getBody());
-                }
-                
-            } catch (HttpClientErrorException e) {
-                logger.error("❌ HTTP Client Error during authentication: {}", e.getStatusCode());
-                logger.error("Error body: {}", e.getResponseBodyAsString());
-                logger.error("Possible causes: Invalid credentials, account suspended, or API endpoint changed");
-            } catch (HttpServerErrorException e) {
-                logger.error("❌ HTTP Server Error during authentication: {}", e.getStatusCode());
-                logger.error("Error body: {}", e.getResponseBodyAsString());
-                logger.error("Possible causes: NimbusPost server issues or maintenance");
-            } catch (Exception e) {
-                logger.error("❌ Network/Parse error during authentication: {}", e.getMessage(), e);
-                logger.error("Possible causes: Network connectivity, JSON parsing, or timeout issues");
-            }
-            
-        } catch (Exception e) {
-            logger.error("❌ Configuration error for NimbusPost: {}", e.getMessage(), e);
+        // Warm the token at startup; later refreshes happen in the background
+        if (!tokenProvider.refreshNow()) {
+            logger.error("❌ NimbusPost authentication failed at startup, will retry on first use");
         }
     }
     
-    // ✅ ENHANCED: Token validation with expiry check and better logging
     private boolean isTokenValid() {
-        if (authToken == null || authToken.trim().isEmpty()) {
-            logger.debug("🔍 Token validation failed: Token is null or empty");
-            return false;
-        }
-        
-        if (tokenExpiry != null && LocalDateTime.now().isAfter(tokenExpiry)) {
-            logger.warn("⏰ Token validation failed: Token has expired at {}", tokenExpiry);
-            return false;
-        }
-        
-        logger.debug("✅ Token validation passed: Token is valid until {}", tokenExpiry);
-        return true;
+        return tokenProvider.hasValidToken();
     }
     
-    // ✅ ENHANCED: Automatic re-authentication with retry logic
-    private void ensureAuthenticated() {
-        if (!isTokenValid()) {
-            logger.info("🔄 Re-authenticating with NimbusPost...");
-            authenticate();
-            if (!isTokenValid()) {
-                throw new RuntimeException("NimbusPost authentication failed after retry. Please check credentials and network connectivity.");
-            }
-        }
+    // ✅ ENHANCED: Returns a valid token; only blocks when no usable token exists
+    private String ensureAuthenticated() {
+        return tokenProvider.getToken();
     }
     
     public boolean isEnabled() {
         return config != null && config.isEnabled();
     }
     
-    // ✅ NEW: Comprehensive serviceability check
+    // ✅ NEW: Comprehensive serviceability check (served from the quote cache when possible)
     public Map<String, Object> checkServiceability(String pickupPincode, String deliveryPincode, Double weight) {
         logger.info("🔍 Checking serviceability from {} to {}", pickupPincode, deliveryPincode);
         
@@ -200,11 +107,7 @@ public class NimbusPostService {
             throw new RuntimeException("NimbusPost is not enabled");
         }
         
-        ensureAuthenticated();
-        
         try {
-            String serviceabilityUrl = config.getBaseUrl() + SERVICEABILITY_ENDPOINT;
-            
             // ✅ VALIDATION: Ensure pincodes are valid
             if (pickupPincode == null || !pickupPincode.matches("\\d{6}")) {
                 throw new RuntimeException("Invalid pickup pincode: " + pickupPincode);
@@ -214,12 +117,36 @@ public class NimbusPostService {
                 throw new RuntimeException("Invalid delivery pincode: " + deliveryPincode);
             }
             
+            int weightGrams = ShippingQuoteCache.weightBucketGrams(weight != null ? weight : 0.2);
+            ShippingQuoteCache.Key key = new ShippingQuoteCache.Key(
+                "serviceability", pickupPincode, deliveryPincode, weightGrams, "prepaid");
+            
+            // Only positive answers are cached; failures may be auth or transient courier errors
+            return quoteCache.get(key,
+                () -> requestServiceability(pickupPincode, deliveryPincode, weightGrams),
+                result -> Boolean.TRUE.equals(result.get("serviceable")));
+            
+        } catch (Exception e) {
+            logger.error("❌ Serviceability check failed: {}", e.getMessage(), e);
+            Map<String, Object> result = new HashMap<>();
+            result.put("serviceable", false);
+            result.put("message", "Serviceability check failed: " + e.getMessage());
+            return result;
+        }
+    }
+    
+    private Map<String, Object> requestServiceability(String pickupPincode, String deliveryPincode, int weightGrams) {
+        String authToken = ensureAuthenticated();
+        
+        try {
+            String serviceabilityUrl = config.getBaseUrl() + SERVICEABILITY_ENDPOINT;
+            
             Map<String, Object> serviceabilityRequest = new HashMap<>();
             serviceabilityRequest.put("origin", pickupPincode);
             serviceabilityRequest.put("destination", deliveryPincode);
             serviceabilityRequest.put("payment_type", "prepaid");
             serviceabilityRequest.put("order_amount", "100.00");
-            serviceabilityRequest.put("weight", String.valueOf((int)(weight * 1000)));
+            serviceabilityRequest.put("weight", String.valueOf(weightGrams));
             serviceabilityRequest.put("length", "30");
             serviceabilityRequest.put("breadth", "25");
             serviceabilityRequest.put("height", "2");
@@ -275,11 +202,7 @@ public class NimbusPostService {
             }
             
         } catch (Exception e) {
-            logger.error("❌ Serviceability check failed: {}", e.getMessage(), e);
-            Map<String, Object> result = new HashMap<>();
-            result.put("serviceable", false);
-            result.put("message", "Serviceability check failed: " + e.getMessage());
-            return result;
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
     
@@ -404,7 +327,7 @@ public class NimbusPostService {
             throw new RuntimeException("NimbusPost is not enabled");
         }
         
-        ensureAuthenticated();
+        String authToken = ensureAuthenticated();
         
         try {
             String shipmentUrl = config.getBaseUrl() + SHIPMENT_ENDPOINT;
@@ -459,8 +382,8 @@ public class NimbusPostService {
     }
     
     // ✅ FIXED: Build shipment request with proper validation and debugging
-    private ShipmentRequest buildShipmentRequest(Order order, UserAddress deliveryAddress, 
-                                               String customerName, String customerEmail) {
+    public ShipmentRequest buildShipmentRequest(Order order, UserAddress deliveryAddress, 
+                                              String customerName, String customerEmail) {
         ShipmentRequest request = new ShipmentRequest();
         
         // ✅ VALIDATION: Check required fields
@@ -529,6 +452,15 @@ public class NimbusPostService {
         // ✅ FIXED: Use address fields with fallback parsing and pincode validation
         String deliveryCity = deliveryAddress.getCity();
         String deliveryState = deliveryAddress.getState();
+
+        // Prefer the pincode directory over guessing from free text
+        Optional<PincodeDirectory.Location> location = pincodeDirectory.lookup(deliveryPincode);
+        if ((deliveryCity == null || deliveryCity.trim().isEmpty()) && location.isPresent()) {
+            deliveryCity = location.get().district();
+        }
+        if ((deliveryState == null || deliveryState.trim().isEmpty()) && location.isPresent()) {
+            deliveryState = location.get().state();
+        }
         
         // If city/state are null, try to extract from address
         if (deliveryCity == null || deliveryCity.trim().isEmpty()) {
@@ -703,9 +635,7 @@ public class NimbusPostService {
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
-            if (isTokenValid()) {
-                headers.setBearerAuth(authToken);
-            }
+            tokenProvider.currentToken().ifPresent(headers::setBearerAuth);
             
             HttpEntity<?> entity = new HttpEntity<>(headers);
             
@@ -747,7 +677,7 @@ public class NimbusPostService {
         }
         
         awbNumber = awbNumber.trim();
-        ensureAuthenticated();
+        String authToken = ensureAuthenticated();
         
         try {
             String cancelUrl = config.getBaseUrl() + CANCEL_ENDPOINT;
@@ -842,6 +772,37 @@ if (data != null) {
         return response;
     }
     
+    // ✅ NEW: Split a bulk shipment response into per-order results keyed by order number
+    public Map<String, ShipmentResponse> parseBulkShipmentResponse(Map<String, Object> responseBody) {
+        Map<String, ShipmentResponse> results = new HashMap<>();
+        if (responseBody == null || !(responseBody.get("data") instanceof List)) {
+            logger.warn("⚠️ Bulk shipment response has no per-shipment data: {}", responseBody);
+            return results;
+        }
+        
+        @SuppressWarnings("unchecked")
+        List<Object> entries = (List<Object>) responseBody.get("data");
+        for (Object raw : entries) {
+            if (!(raw instanceof Map)) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> entry = (Map<String, Object>) raw;
+            Object orderNumber = entry.containsKey("order_number") ? entry.get("order_number") : entry.get("order_id");
+            if (orderNumber == null) {
+                continue;
+            }
+            
+            // Each entry looks like the data block of a single shipment response
+            Map<String, Object> single = new HashMap<>();
+            single.put("status", entry.getOrDefault("status", responseBody.get("status")));
+            single.put("message", entry.get("message"));
+            single.put("data", entry);
+            results.put(String.valueOf(orderNumber), parseShipmentResponse(single));
+        }
+        return results;
+    }
+    
     // ✅ ENHANCED: Parse tracking response with comprehensive data extraction
     private TrackingResponse parseTrackingResponse(Map<String, Object> responseBody) {
         TrackingResponse response = new TrackingResponse();
@@ -1004,7 +965,8 @@ if (data != null) {
             health.put("authenticated", isTokenValid());
             health.put("baseUrl", config != null ? config.getBaseUrl() : "null");
             health.put("email", config != null ? config.getEmail() : "null");
-            health.put("tokenExpiry", tokenExpiry);
+            health.put("tokenExpiry", tokenProvider.getTokenExpiry());
+            health.put("quoteCache", quoteCache.stats());
             health.put("timestamp", LocalDateTime.now());
             
             if (isEnabled() && isTokenValid()) {
@@ -1025,17 +987,19 @@ if (data != null) {
     }
     
     // ✅ NEW: Bulk shipment creation for multiple orders
+    // Throws ShipmentNotSentException when the request never reached NimbusPost; any other failure
+    // (timeout, error status, unreadable body) may come after some shipments were created
     public Map<String, Object> createBulkShipments(List<ShipmentRequest> shipmentRequests) {
         logger.info("[NimbusPostService] Creating bulk shipments for {} orders", shipmentRequests.size());
         
         if (!isEnabled()) {
-            throw new RuntimeException("NimbusPost is not enabled");
+            throw new ShipmentNotSentException("NimbusPost is not enabled", null);
         }
         
-        ensureAuthenticated();
-        
+        String bulkUrl = config.getBaseUrl() + BULK_SHIPMENT_ENDPOINT;
+        HttpEntity<Map<String, Object>> entity;
         try {
-            String bulkUrl = config.getBaseUrl() + BULK_SHIPMENT_ENDPOINT;
+            String authToken = ensureAuthenticated();
             
             List<Map<String, Object>> bulkRequest = new ArrayList<>();
             for (ShipmentRequest request : shipmentRequests) {
@@ -1050,8 +1014,13 @@ if (data != null) {
             headers.setBearerAuth(authToken);
             headers.set("User-Agent", "LipiPrint-NagpalPrintHouse/1.0");
             
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-            
+            entity = new HttpEntity<>(payload, headers);
+        } catch (Exception e) {
+            logger.error("❌ Bulk shipment request could not be prepared: {}", e.getMessage(), e);
+            throw new ShipmentNotSentException("Bulk shipment request not sent: " + e.getMessage(), e);
+        }
+        
+        try {
             logger.info("🚀 Sending bulk shipment request to: {}", bulkUrl);
             ResponseEntity<String> response = restTemplate.postForEntity(bulkUrl, entity, String.class);
             
@@ -1064,12 +1033,30 @@ if (data != null) {
                 throw new RuntimeException("Failed to create bulk shipments: " + response.getStatusCode());
             }
             
+        } catch (ResourceAccessException e) {
+            if (isConnectFailure(e)) {
+                logger.error("❌ Bulk shipment request could not connect: {}", e.getMessage());
+                throw new ShipmentNotSentException("Bulk shipment request not sent: " + e.getMessage(), e);
+            }
+            logger.error("❌ Bulk shipment creation failed: {}", e.getMessage(), e);
+            throw new RuntimeException("Bulk shipment creation failed: " + e.getMessage(), e);
         } catch (Exception e) {
             logger.error("❌ Bulk shipment creation failed: {}", e.getMessage(), e);
             throw new RuntimeException("Bulk shipment creation failed: " + e.getMessage(), e);
         }
     }
     
+    // The connection was never established, as opposed to a read timeout after the request was sent
+    private static boolean isConnectFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     // ✅ NEW: Generate manifest for multiple shipments
     public Map<String, Object> generateManifest(List<String> awbNumbers) {
         logger.info("[NimbusPostService] Generating manifest for {} shipments", awbNumbers.size());
@@ -1078,7 +1065,7 @@ if (data != null) {
             throw new RuntimeException("NimbusPost is not enabled");
         }
         
-        ensureAuthenticated();
+        String authToken = ensureAuthenticated();
         
         try {
             String manifestUrl = config.getBaseUrl() + MANIFEST_ENDPOINT;
@@ -1119,7 +1106,7 @@ if (data != null) {
             throw new RuntimeException("NimbusPost is not enabled");
         }
         
-        ensureAuthenticated();
+        String authToken = ensureAuthenticated();
         
         try {
             String ndrUrl = config.getBaseUrl() + NDR_ENDPOINT;
@@ -1161,7 +1148,7 @@ if (data != null) {
             throw new RuntimeException("NimbusPost is not enabled");
         }
         
-        ensureAuthenticated();
+        String authToken = ensureAuthenticated();
         
         try {
             String returnUrl = config.getBaseUrl() + RETURN_ENDPOINT;
@@ -1195,7 +1182,7 @@ if (data != null) {
         }
     }
     
-    // ✅ NEW: Get detailed shipping rates
+    // ✅ NEW: Get detailed shipping rates (served from the quote cache when possible)
     public Map<String, Object> getDetailedRates(String pickupPincode, String deliveryPincode, double weight, String paymentType) {
         logger.info("[NimbusPostService] Getting detailed rates for {} to {} ({} kg, {})", 
             pickupPincode, deliveryPincode, weight, paymentType);
@@ -1204,7 +1191,17 @@ if (data != null) {
             throw new RuntimeException("NimbusPost is not enabled");
         }
         
-        ensureAuthenticated();
+        int weightGrams = ShippingQuoteCache.weightBucketGrams(weight);
+        ShippingQuoteCache.Key key = new ShippingQuoteCache.Key(
+            "rates", pickupPincode, deliveryPincode, weightGrams, paymentType != null ? paymentType.toLowerCase() : null);
+        
+        return quoteCache.get(key,
+            () -> requestDetailedRates(pickupPincode, deliveryPincode, weightGrams / 1000.0, paymentType),
+            result -> Boolean.TRUE.equals(result.get("status")));
+    }
+    
+    private Map<String, Object> requestDetailedRates(String pickupPincode, String deliveryPincode, double weight, String paymentType) {
+        String authToken = ensureAuthenticated();
         
         try {
             String ratesUrl = config.getBaseUrl() + RATES_ENDPOINT;
@@ -0,0 +1,289 @@
+package com.lipiprint.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lipiprint.backend.config.NimbusPostConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.*;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the NimbusPost auth token for every caller (request threads, webhooks, the tracking scheduler).
+ *
+ * The token is published as one immutable snapshot, so readers never see a token paired with another
+ * token's expiry. Only one login request is ever in flight. While the current token is still valid,
+ * callers get it immediately and any refresh happens in the background; callers only wait when there
+ * is no usable token at all.
+ */
+@Component
+public class NimbusPostTokenProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(NimbusPostTokenProvider.class);
+
+    private static final String LOGIN_ENDPOINT = "/users/login";
+    private static final long TOKEN_LIFETIME_HOURS = 23;
+    private static final long REFRESH_AHEAD_MINUTES = 60;
+    private static final long FAILURE_COOLDOWN_SECONDS = 10;
+
+    private static final class Token {
+        final String value;
+        final LocalDateTime expiresAt;
+
+        Token(String value, LocalDateTime expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(LocalDateTime now) {
+            return !now.isBefore(expiresAt);
+        }
+
+        boolean needsRefresh(LocalDateTime now) {
+            return !now.isBefore(expiresAt.minusMinutes(REFRESH_AHEAD_MINUTES));
+        }
+    }
+
+    @Autowired
+    private NimbusPostConfig config;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicReference<Token> current = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Token>> inFlight = new AtomicReference<>();
+    private volatile LocalDateTime lastFailureAt;
+
+    private final ExecutorService loginExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "nimbuspost-login");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Returns a valid token, logging in only if there is none. Triggers a background refresh when the
+     * token is close to expiry but never blocks on it.
+     */
+    public String getToken() {
+        LocalDateTime now = LocalDateTime.now();
+        Token token = current.get();
+        if (token != null && !token.isExpired(now)) {
+            if (token.needsRefresh(now)) {
+                login();
+            }
+            return token.value;
+        }
+
+        if (lastFailureAt != null && now.isBefore(lastFailureAt.plusSeconds(FAILURE_COOLDOWN_SECONDS))) {
+            throw new RuntimeException("NimbusPost authentication failed recently. Please check credentials and network connectivity.");
+        }
+
+        logger.info("🔄 Re-authenticating with NimbusPost...");
+        Token fresh = await(login());
+        if (fresh == null) {
+            throw new RuntimeException("NimbusPost authentication failed after retry. Please check credentials and network connectivity.");
+        }
+        return fresh.value;
+    }
+
+    /**
+     * Logs in now and waits for the result; used at startup. Returns false if no token was obtained.
+     */
+    public boolean refreshNow() {
+        try {
+            return await(login()) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public Optional<String> currentToken() {
+        Token token = current.get();
+        if (token == null || token.isExpired(LocalDateTime.now())) {
+            return Optional.empty();
+        }
+        return Optional.of(token.value);
+    }
+
+    public boolean hasValidToken() {
+        return currentToken().isPresent();
+    }
+
+    public LocalDateTime getTokenExpiry() {
+        Token token = current.get();
+        return token != null ? token.expiresAt : null;
+    }
+
+    // Proactive refresh so request threads normally never see an expired token
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void refreshIfExpiring() {
+        if (config == null || !config.isEnabled()) {
+            return;
+        }
+        Token token = current.get();
+        if (token == null || token.needsRefresh(LocalDateTime.now())) {
+            login();
+        }
+    }
+
+    // Starts a login unless one is already running; every caller shares the same future
+    private CompletableFuture<Token> login() {
+        while (true) {
+            CompletableFuture<Token> existing = inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<Token> own = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, own)) {
+                try {
+                    loginExecutor.execute(() -> {
+                        try {
+                            Token token = requestToken();
+                            if (token != null) {
+                                current.set(token);
+                                lastFailureAt = null;
+                            } else {
+                                lastFailureAt = LocalDateTime.now();
+                            }
+                            own.complete(token);
+                        } catch (Throwable e) {
+                            lastFailureAt = LocalDateTime.now();
+                            own.completeExceptionally(e);
+                        } finally {
+                            inFlight.compareAndSet(own, null);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.compareAndSet(own, null);
+                    own.completeExceptionally(e);
+                }
+                return own;
+            }
+        }
+    }
+
+    private Token await(CompletableFuture<Token> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            logger.error("❌ NimbusPost login failed: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            return null;
+        }
+    }
+
+    private Token requestToken() {
+        if (config.getEmail() == null || config.getEmail().trim().isEmpty()) {
+            logger.error("❌ NimbusPost email is not configured");
+            return null;
+        }
+
+        if (config.getPassword() == null || config.getPassword().trim().isEmpty()) {
+            logger.error("❌ NimbusPost password is not configured");
+            return null;
+        }
+
+        if (config.getBaseUrl() == null || config.getBaseUrl().trim().isEmpty()) {
+            logger.error("❌ NimbusPost base URL is not configured");
+            return null;
+        }
+
+        String authUrl = config.getBaseUrl() + LOGIN_ENDPOINT;
+        logger.info("🔐 Auth URL: {}", authUrl);
+        logger.info("📧 Email: {}", config.getEmail());
+
+        Map<String, String> authRequest = new HashMap<>();
+        authRequest.put("email", config.getEmail().trim());
+        authRequest.put("password", config.getPassword().trim());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
+        headers.set("User-Agent", "LipiPrint-NagpalPrintHouse/1.0");
+
+        HttpEntity<Map<String, String>> entity = new HttpEntity<>(authRequest, headers);
+
+        logger.info("🚀 Sending authentication request to NimbusPost...");
+
+        try {
+            ResponseEntity<String> response = restTemplate.postForEntity(authUrl, entity, String.class);
+
+            logger.info("📡 Response Status: {}", response.getStatusCode());
+
+            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
+                Map<String, Object> responseBody = objectMapper.readValue(response.getBody(),
+                    new TypeReference<Map<String, Object>>() {});
+
+                String authToken = extractToken(responseBody);
+
+                if (authToken != null && !authToken.trim().isEmpty()) {
+                    Token token = new Token(authToken, LocalDateTime.now().plusHours(TOKEN_LIFETIME_HOURS));
+                    logger.info("✅ NimbusPost authentication SUCCESSFUL for Nagpal Print House");
+                    logger.info("🎫 Token length: {} characters", authToken.length());
+                    logger.info("⏰ Token expires at: {}", token.expiresAt);
+                    return token;
+                }
+
+                logger.error("❌ Authentication failed - No token found in response");
+                logger.error("Response keys: {}", responseBody.keySet());
+            } else {
+                logger.error("❌ Authentication failed with HTTP status: {}", response.getStatusCode());
+                logger.error("Response body: {}", response.getBody());
+            }
+
+        } catch (HttpClientErrorException e) {
+            logger.error("❌ HTTP Client Error during authentication: {}", e.getStatusCode());
+            logger.error("Error body: {}", e.getResponseBodyAsString());
+            logger.error("Possible causes: Invalid credentials, account suspended, or API endpoint changed");
+        } catch (HttpServerErrorException e) {
+            logger.error("❌ HTTP Server Error during authentication: {}", e.getStatusCode());
+            logger.error("Error body: {}", e.getResponseBodyAsString());
+            logger.error("Possible causes: NimbusPost server issues or maintenance");
+        } catch (Exception e) {
+            logger.error("❌ Network/Parse error during authentication: {}", e.getMessage(), e);
+            logger.error("Possible causes: Network connectivity, JSON parsing, or timeout issues");
+        }
+        return null;
+    }
+
+    // ✅ ENHANCED: Extract token from response with multiple fallbacks
+    private String extractToken(Map<String, Object> responseBody) {
+        if (responseBody.containsKey("data")) {
+            Object data = responseBody.get("data");
+            if (data instanceof String) {
+                return (String) data;
+            } else if (data instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> dataMap = (Map<String, Object>) data;
+                return (String) dataMap.get("token");
+            }
+        } else if (responseBody.containsKey("token")) {
+            return (String) responseBody.get("token");
+        } else if (responseBody.containsKey("access_token")) {
+            return (String) responseBody.get("access_token");
+        } else if (responseBody.containsKey("auth_token")) {
+            return (String) responseBody.get("auth_token");
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loginExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,277 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans a message out to many users as {@code notifications} rows, in the background.
+ *
+ * Recipients are resolved a page at a time (keyset on {@code users.id}, or a chunk of the given phone
+ * numbers), and each page is written with one JDBC batch insert, so memory stays bounded by the page
+ * size and no transaction is held open across the whole audience. Campaigns run one at a time on a
+ * dedicated thread; progress is exposed through {@link Campaign} snapshots.
+ */
+@Service
+public class NotificationCampaignService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCampaignService.class);
+
+    private static final int MAX_TRACKED_CAMPAIGNS = 50;
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /** Progress of one campaign; counters are updated by the campaign thread while it runs. */
+    public static final class Campaign {
+        private final String id;
+        private final String message;
+        private final List<String> phoneNumbers;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final AtomicLong recipients = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private volatile State state = State.QUEUED;
+        private volatile boolean cancelRequested;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        Campaign(String id, String message, List<String> phoneNumbers) {
+            this.id = id;
+            this.message = message;
+            this.phoneNumbers = phoneNumbers;
+        }
+
+        public String getId() { return id; }
+        public State getState() { return state; }
+
+        public Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("id", id);
+            snapshot.put("state", state.name());
+            snapshot.put("audience", phoneNumbers == null ? "ALL_USERS" : "PHONE_NUMBERS");
+            snapshot.put("requestedPhoneNumbers", phoneNumbers == null ? null : phoneNumbers.size());
+            snapshot.put("recipients", recipients.get());
+            snapshot.put("delivered", delivered.get());
+            snapshot.put("createdAt", createdAt);
+            snapshot.put("startedAt", startedAt);
+            snapshot.put("finishedAt", finishedAt);
+            if (startedAt != null) {
+                LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+                snapshot.put("elapsedMs", Duration.between(startedAt, end).toMillis());
+            }
+            snapshot.put("error", error);
+            return snapshot;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NotificationUnreadCounts unreadCounts;
+
+    @Autowired
+    private EventBus eventBus;
+
+    @Autowired
+    private PushDispatcher pushDispatcher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${lipiprint.notifications.campaign.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${lipiprint.notifications.campaign.queue-capacity:20}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // Most recent campaigns, oldest evicted first
+    private final Map<String, Campaign> campaigns = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Campaign> eldest) {
+            return size() > MAX_TRACKED_CAMPAIGNS && eldest.getValue().getState() != State.QUEUED
+                && eldest.getValue().getState() != State.RUNNING;
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "notification-campaign");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (campaigns) {
+            campaigns.values().forEach(c -> c.cancelRequested = true);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a campaign to every active customer ({@code phoneNumbers == null}) or to the users with the
+     * given phone numbers. Throws IllegalStateException if too many campaigns are already queued.
+     */
+    public Campaign start(String message, List<String> phoneNumbers) {
+        if (message == null || message.isBlank()) {
+            throw new IllegalArgumentException("Message is required");
+        }
+        Campaign campaign = new Campaign(UUID.randomUUID().toString(), message,
+            phoneNumbers == null ? null : List.copyOf(new LinkedHashSet<>(phoneNumbers)));
+        campaigns.put(campaign.getId(), campaign);
+        try {
+            executor.execute(() -> run(campaign));
+        } catch (RejectedExecutionException e) {
+            campaigns.remove(campaign.getId());
+            throw new IllegalStateException("Too many notification campaigns in progress, try again later");
+        }
+        logger.info("[NotificationCampaignService] Queued campaign {}", campaign.getId());
+        return campaign;
+    }
+
+    public Campaign get(String id) {
+        return campaigns.get(id);
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Campaign> snapshot;
+        synchronized (campaigns) {
+            snapshot = new ArrayList<>(campaigns.values());
+        }
+        List<Map<String, Object>> result = new ArrayList<>(snapshot.size());
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            result.add(snapshot.get(i).snapshot());
+        }
+        return result;
+    }
+
+    /** Stops a queued or running campaign after its current batch. */
+    public boolean cancel(String id) {
+        Campaign campaign = campaigns.get(id);
+        if (campaign == null || campaign.state == State.COMPLETED || campaign.state == State.FAILED) {
+            return false;
+        }
+        campaign.cancelRequested = true;
+        return true;
+    }
+
+    private void run(Campaign campaign) {
+        if (campaign.cancelRequested) {
+            campaign.state = State.CANCELLED;
+            campaign.finishedAt = LocalDateTime.now();
+            return;
+        }
+        campaign.state = State.RUNNING;
+        campaign.startedAt = LocalDateTime.now();
+        Timestamp createdAt = Timestamp.valueOf(campaign.startedAt);
+        try {
+            if (campaign.phoneNumbers == null) {
+                fanOutToAllUsers(campaign, createdAt);
+            } else {
+                fanOutToPhoneNumbers(campaign, createdAt);
+            }
+            campaign.state = campaign.cancelRequested ? State.CANCELLED : State.COMPLETED;
+            if (campaign.phoneNumbers == null && campaign.delivered.get() > 0) {
+                // One broadcast instead of an event per user, which would also flush the replay buffer
+                eventBus.publish(EventBus.BROADCAST_TOPIC, "notification", Map.of("message", campaign.message));
+            }
+            logger.info("[NotificationCampaignService] Campaign {} {}: {} notifications in {} ms", campaign.getId(),
+                campaign.state, campaign.delivered.get(), Duration.between(campaign.startedAt, LocalDateTime.now()).toMillis());
+        } catch (Exception e) {
+            campaign.state = State.FAILED;
+            campaign.error = e.getMessage();
+            logger.error("[NotificationCampaignService] Campaign {} failed after {} notifications: {}",
+                campaign.getId(), campaign.delivered.get(), e.getMessage(), e);
+        } finally {
+            campaign.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private void fanOutToAllUsers(Campaign campaign, Timestamp createdAt) {
+        long lastId = 0;
+        while (!campaign.cancelRequested) {
+            List<Long> userIds = jdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE role = 'USER' AND blocked = FALSE AND id > ? ORDER BY id LIMIT ?",
+                Long.class, lastId, batchSize);
+            if (userIds.isEmpty()) {
+                return;
+            }
+            insert(campaign, userIds, createdAt);
+            lastId = userIds.get(userIds.size() - 1);
+        }
+    }
+
+    private void fanOutToPhoneNumbers(Campaign campaign, Timestamp createdAt) {
+        List<String> phones = campaign.phoneNumbers;
+        for (int from = 0; from < phones.size() && !campaign.cancelRequested; from += batchSize) {
+            List<String> chunk = phones.subList(from, Math.min(from + batchSize, phones.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            List<Long> userIds = jdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE blocked = FALSE AND phone IN (" + placeholders + ") ORDER BY id",
+                Long.class, chunk.toArray());
+            if (!userIds.isEmpty()) {
+                insert(campaign, userIds, createdAt);
+            }
+        }
+    }
+
+    private void insert(Campaign campaign, List<Long> userIds, Timestamp createdAt) {
+        campaign.recipients.addAndGet(userIds.size());
+        List<Object[]> rows = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            rows.add(new Object[] {userId, campaign.message, createdAt});
+        }
+        // Rows and their unread counts commit together, one page per transaction
+        int[] counts = transactionTemplate.execute(status -> {
+            int[] inserted = jdbcTemplate.batchUpdate(
+                "INSERT INTO notifications (user_id, message, read, created_at) VALUES (?, ?, FALSE, ?)", rows);
+            unreadCounts.incrementEach(userIds);
+            pushDispatcher.enqueue(userIds, new PushSender.PushMessage("LipiPrint", campaign.message,
+                Map.of("type", "notification")));
+            if (campaign.phoneNumbers != null) {
+                for (Long userId : userIds) {
+                    eventBus.publish(EventBus.userTopic(userId), "notification", Map.of("message", campaign.message));
+                }
+            }
+            return inserted;
+        });
+        long inserted = 0;
+        for (int count : counts) {
+            // The driver may report SUCCESS_NO_INFO (-2) for rewritten batches
+            inserted += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        campaign.delivered.addAndGet(inserted);
+    }
+}
@@ -2,11 +2,20 @@ package com.lipiprint.backend.service;
 
 import com.lipiprint.backend.entity.Notification;
 import com.lipiprint.backend.repository.NotificationRepository;
+import com.lipiprint.backend.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -17,8 +26,57 @@ public class NotificationService {
     @Autowired
     private NotificationRepository notificationRepository;
 
+    @Autowired
+    private NotificationCampaignService campaignService;
+
+    @Autowired
+    private NotificationUnreadCounts unreadCounts;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EventBus eventBus;
+
+    @Autowired
+    private PushDispatcher pushDispatcher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    /** One page of a user's notifications, newest first; {@code nextCursor} is null on the last page. */
+    public record InboxPage(List<Notification> items, String nextCursor) {}
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     public Notification save(Notification notification) {
-        return notificationRepository.save(notification);
+        boolean newUnread = notification.getId() == null && !notification.isRead() && notification.getUser() != null;
+        return transactionTemplate.execute(status -> {
+            Notification saved = notificationRepository.save(notification);
+            if (newUnread) {
+                unreadCounts.increment(saved.getUser().getId(), 1);
+                publishCreated(saved.getUser().getId(), saved);
+            }
+            return saved;
+        });
+    }
+
+    private void publishCreated(Long userId, Notification notification) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("id", notification.getId());
+        payload.put("message", notification.getMessage());
+        payload.put("createdAt", notification.getCreatedAt() != null ? notification.getCreatedAt().toString() : null);
+        eventBus.publish(EventBus.userTopic(userId), "notification", payload);
+        pushDispatcher.enqueue(userId, new PushSender.PushMessage("LipiPrint", notification.getMessage(),
+            Map.of("type", "notification", "id", String.valueOf(notification.getId()))));
     }
 
     public Optional<Notification> findById(Long id) {
@@ -29,6 +87,90 @@ public class NotificationService {
         return notificationRepository.findAll();
     }
 
+    /** Position in a user's inbox: the (created_at, id) of the last notification on a page. */
+    record Cursor(LocalDateTime createdAt, long id) {
+
+        static Cursor of(Notification notification) {
+            return new Cursor(notification.getCreatedAt(), notification.getId());
+        }
+
+        static Cursor parse(String cursor) {
+            int separator = cursor.lastIndexOf('_');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            try {
+                return new Cursor(LocalDateTime.parse(cursor.substring(0, separator)), Long.parseLong(cursor.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+
+        String encode() {
+            return createdAt + "_" + id;
+        }
+    }
+
+    /**
+     * Keyset page of a user's notifications. {@code cursor} is the {@code nextCursor} of the previous
+     * page, or null for the newest.
+     */
+    public InboxPage findForUser(Long userId, String cursor, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        List<Notification> items;
+        if (cursor == null || cursor.isBlank()) {
+            items = notificationRepository.findLatestForUser(userId, page);
+        } else {
+            Cursor after = Cursor.parse(cursor);
+            items = notificationRepository.findForUserBefore(userId, after.createdAt(), after.id(), page);
+        }
+        String next = null;
+        if (items.size() == limit) {
+            next = Cursor.of(items.get(items.size() - 1)).encode();
+        }
+        return new InboxPage(items, next);
+    }
+
+    public long countUnread(Long userId) {
+        return unreadCounts.get(userId);
+    }
+
+    /** Marks one of the user's notifications read; false if it is not theirs. */
+    public boolean markRead(Long userId, Long notificationId) {
+        Boolean found = transactionTemplate.execute(status -> {
+            int changed = jdbcTemplate.update(
+                "UPDATE notifications SET read = TRUE WHERE id = ? AND user_id = ? AND read = FALSE", notificationId, userId);
+            if (changed > 0) {
+                unreadCounts.increment(userId, -changed);
+                return true;
+            }
+            Integer owned = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM notifications WHERE id = ? AND user_id = ?", Integer.class, notificationId, userId);
+            return owned != null && owned > 0;
+        });
+        return Boolean.TRUE.equals(found);
+    }
+
+    /** Marks all of the user's notifications read in one statement; returns how many changed. */
+    public int markAllRead(Long userId) {
+        Integer changed = transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update("UPDATE notifications SET read = TRUE WHERE user_id = ? AND read = FALSE", userId);
+            // Relative, so notifications inserted concurrently stay counted
+            unreadCounts.increment(userId, -updated);
+            return updated;
+        });
+        return changed != null ? changed : 0;
+    }
+
+    public int clearForUser(Long userId) {
+        Integer deleted = transactionTemplate.execute(status -> {
+            int unread = jdbcTemplate.update("DELETE FROM notifications WHERE user_id = ? AND read = FALSE", userId);
+            unreadCounts.increment(userId, -unread);
+            return unread + jdbcTemplate.update("DELETE FROM notifications WHERE user_id = ?", userId);
+        });
+        return deleted != null ? deleted : 0;
+    }
+
     /**
      * Send order status notification to database
      */
@@ -36,8 +178,9 @@ public class NotificationService {
         try {
             // Save to database
             Notification notification = new Notification();
-            // Note: We need to set the user through the user relationship, not directly set userId
-            // For now, we'll just save the message without user association
+            if (userId != null) {
+                notification.setUser(userRepository.getReferenceById(userId));
+            }
             notification.setMessage(String.format("Your order #%s is now %s", orderNumber, status));
             notification.setCreatedAt(java.time.LocalDateTime.now());
             save(notification);
@@ -92,17 +235,10 @@ public class NotificationService {
     }
 
     /**
-     * Send bulk promotional messages (database only)
+     * Send bulk promotional messages (database only). Runs in the background; poll the returned
+     * campaign for progress.
      */
-    public void sendBulkPromotionalMessage(List<String> phoneNumbers, String message) {
-        for (String phoneNumber : phoneNumbers) {
-            try {
-                sendPromotionalMessage(phoneNumber, message);
-                // Add small delay to avoid overwhelming the database
-                Thread.sleep(100);
-            } catch (Exception e) {
-                logger.error("❌ Failed to send bulk promotional message to: {}", phoneNumber);
-            }
-        }
+    public NotificationCampaignService.Campaign sendBulkPromotionalMessage(List<String> phoneNumbers, String message) {
+        return campaignService.start(message, phoneNumbers);
     }
 }
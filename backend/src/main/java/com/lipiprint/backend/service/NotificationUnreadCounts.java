@@ -0,0 +1,75 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-user unread notification counts kept in {@code notification_unread_counts}, so the app badge is
+ * a primary-key read instead of a COUNT over the user's notifications.
+ *
+ * Every change is a relative update done in the same transaction as the notification write it
+ * accounts for; callers run these inside their transaction. {@link #recount} rebuilds one user's
+ * count from the notifications table if it ever drifts. The table is created by setup-database.sql
+ * and seeded from the stored notifications on the first start that finds it empty.
+ */
+@Component
+public class NotificationUnreadCounts {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationUnreadCounts.class);
+
+    static final String TABLE = "notification_unread_counts";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT 1 FROM " + TABLE + " LIMIT 1) t", Integer.class);
+        if (existing != null && existing == 0) {
+            // First start with counters: seed them from the notifications already stored
+            int seeded = jdbcTemplate.update("INSERT INTO " + TABLE + " (user_id, unread) "
+                + "SELECT user_id, COUNT(*) FROM notifications WHERE user_id IS NOT NULL AND read = FALSE "
+                + "GROUP BY user_id ON CONFLICT (user_id) DO NOTHING");
+            logger.info("[NotificationUnreadCounts] Seeded unread counts for {} users", seeded);
+        }
+    }
+
+    public long get(Long userId) {
+        List<Long> rows = jdbcTemplate.queryForList("SELECT unread FROM " + TABLE + " WHERE user_id = ?", Long.class, userId);
+        return rows.isEmpty() ? 0 : Math.max(0, rows.get(0));
+    }
+
+    public void increment(Long userId, long delta) {
+        if (userId == null || delta == 0) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO " + TABLE + " (user_id, unread) VALUES (?, GREATEST(?, 0)) "
+            + "ON CONFLICT (user_id) DO UPDATE SET unread = GREATEST(" + TABLE + ".unread + ?, 0)", userId, delta, delta);
+    }
+
+    /** One new unread notification for each user; {@code userIds} should be sorted to keep lock order stable. */
+    public void incrementEach(List<Long> userIds) {
+        List<Object[]> rows = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            rows.add(new Object[] {userId});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO " + TABLE + " (user_id, unread) VALUES (?, 1) "
+            + "ON CONFLICT (user_id) DO UPDATE SET unread = " + TABLE + ".unread + 1", rows);
+    }
+
+    public long recount(Long userId) {
+        Long unread = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM notifications WHERE user_id = ? AND read = FALSE", Long.class, userId);
+        long count = unread != null ? unread : 0;
+        jdbcTemplate.update("INSERT INTO " + TABLE + " (user_id, unread) VALUES (?, ?) "
+            + "ON CONFLICT (user_id) DO UPDATE SET unread = EXCLUDED.unread", userId, count);
+        return count;
+    }
+}
@@ -1,5 +1,7 @@
 package com.lipiprint.backend.service;
 
+import com.lipiprint.backend.entity.BillingDetails;
+import com.lipiprint.backend.entity.DeliveryAddress;
 import com.lipiprint.backend.entity.Order;
 import com.lipiprint.backend.entity.UserAddress;
 import com.lipiprint.backend.repository.OrderRepository;
@@ -10,10 +12,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.Optional;
-import com.razorpay.RazorpayClient;
 import com.razorpay.RazorpayException;
 import org.json.JSONObject;
-import org.springframework.beans.factory.annotation.Value;
+import java.util.HashMap;
 import java.util.Map;
 import com.lipiprint.backend.entity.Payment;
 import com.lipiprint.backend.repository.PaymentRepository;
@@ -28,6 +29,8 @@ import com.lipiprint.backend.service.ScheduledStatusUpdateService;
 import com.lipiprint.backend.dto.OrderListDTO;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 @Service
 public class OrderService {
@@ -49,15 +52,47 @@ public class OrderService {
     @Autowired
     private NimbusPostService nimbusPostService;
 
-    @Value("${razorpay.key_id}")
-    private String razorpayKeyId;
+    @Autowired
+    private ShipmentDispatcher shipmentDispatcher;
+
+    @Autowired
+    private PincodeDirectory pincodeDirectory;
+
+    // Shared, pooled Razorpay client (or the offline stub with razorpay.gateway=stub)
+    @Autowired
+    private PaymentGateway paymentGateway;
+
+    @Autowired
+    private EventBus eventBus;
+
+    @Autowired
+    private PushDispatcher pushDispatcher;
 
-    @Value("${razorpay.key_secret}")
-    private String razorpayKeySecret;
+    @Autowired
+    private PricingService pricingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderStatsRollup orderStatsRollup;
+
+    @Autowired
+    private RecentActivityFeed recentActivityFeed;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public Order save(Order order, String razorpayOrderId) {
         logger.info("[OrderService] save called with order: {}, razorpayOrderId: {}", order, razorpayOrderId);
+        boolean created = order.getId() == null;
+        if (created && order.getBilling() == null) {
+            order.setBilling(BillingDetails.from(order.getUser()));
+        }
         Order savedOrder = orderRepository.save(order);
+        if (created) {
+            orderStatsRollup.orderCreated(savedOrder.getId());
+            recentActivityFeed.orderCreated(savedOrder.getId());
+        }
         
         if (razorpayOrderId != null) {
             paymentRepository.findByRazorpayOrderId(razorpayOrderId).ifPresent(payment -> {
@@ -75,7 +110,15 @@ public class OrderService {
     public Order save(Order order, String razorpayOrderId, String razorpayPaymentId) {
         logger.info("[OrderService] save called with order: {}, razorpayOrderId: {}, razorpayPaymentId: {}", 
                    order, razorpayOrderId, razorpayPaymentId);
+        boolean created = order.getId() == null;
+        if (created && order.getBilling() == null) {
+            order.setBilling(BillingDetails.from(order.getUser()));
+        }
         Order savedOrder = orderRepository.save(order);
+        if (created) {
+            orderStatsRollup.orderCreated(savedOrder.getId());
+            recentActivityFeed.orderCreated(savedOrder.getId());
+        }
         
         if (razorpayOrderId != null) {
             Payment payment = paymentRepository.findByRazorpayOrderId(razorpayOrderId)
@@ -88,6 +131,9 @@ public class OrderService {
             
             // Update payment with payment ID if available
             if (razorpayPaymentId != null) {
+                if (payment.getStatus() != Payment.Status.SUCCESS) {
+                    recentActivityFeed.paymentCaptured(savedOrder.getId());
+                }
                 payment.setRazorpayPaymentId(razorpayPaymentId);
                 payment.setStatus(Payment.Status.SUCCESS);
             }
@@ -102,7 +148,7 @@ public class OrderService {
     }
 
     // *** NEW NIMBUSPOST INTEGRATION METHODS ***
-    private void processShipment(Order order) {
+    public void processShipment(Order order) {
         // Only create shipment for delivery orders and if not already created
         if (order.isDeliveryOrder() && !Boolean.TRUE.equals(order.getShippingCreated()) && nimbusPostService.isEnabled()) {
             try {
@@ -122,24 +168,7 @@ public class OrderService {
                     order, deliveryAddress, customerName, customerEmail);
                 
                 if (shipmentResponse != null && shipmentResponse.isStatus()) {
-                    // Update order with shipping details
-                    order.setAwbNumber(shipmentResponse.getAwbNumber());
-                    order.setCourierName(shipmentResponse.getCourierName());
-                    order.setTrackingUrl(shipmentResponse.getLabelUrl());
-                    order.setShipmentId(shipmentResponse.getShipmentId());
-                    order.setCourierId(shipmentResponse.getCourierId());
-                    order.setShippingCreated(true);
-                    
-                    // Parse expected delivery date if available
-                    if (shipmentResponse.getExpectedDeliveryDate() != null && !shipmentResponse.getExpectedDeliveryDate().isEmpty()) {
-                        try {
-                            LocalDateTime expectedDate = parseDeliveryDate(shipmentResponse.getExpectedDeliveryDate());
-                            order.setExpectedDeliveryDate(expectedDate);
-                        } catch (Exception e) {
-                            logger.warn("Failed to parse expected delivery date '{}': {}", 
-                                shipmentResponse.getExpectedDeliveryDate(), e.getMessage());
-                        }
-                    }
+                    applyShipmentResponse(order, shipmentResponse);
                     
                     // Save updated order
                     orderRepository.save(order);
@@ -159,7 +188,38 @@ public class OrderService {
         }
     }
 
-    private UserAddress parseDeliveryAddress(Order order) {
+    // Copies courier details onto the order; the caller is responsible for saving it
+    public void applyShipmentResponse(Order order, ShipmentResponse shipmentResponse) {
+        order.setAwbNumber(shipmentResponse.getAwbNumber());
+        order.setCourierName(shipmentResponse.getCourierName());
+        order.setTrackingUrl(shipmentResponse.getLabelUrl());
+        order.setShipmentId(shipmentResponse.getShipmentId());
+        order.setCourierId(shipmentResponse.getCourierId());
+        order.setShippingCreated(true);
+        
+        // Parse expected delivery date if available
+        if (shipmentResponse.getExpectedDeliveryDate() != null && !shipmentResponse.getExpectedDeliveryDate().isEmpty()) {
+            try {
+                LocalDateTime expectedDate = parseDeliveryDate(shipmentResponse.getExpectedDeliveryDate());
+                order.setExpectedDeliveryDate(expectedDate);
+            } catch (Exception e) {
+                logger.warn("Failed to parse expected delivery date '{}': {}", 
+                    shipmentResponse.getExpectedDeliveryDate(), e.getMessage());
+            }
+        }
+    }
+
+    public UserAddress parseDeliveryAddress(Order order) {
+        // Orders placed with a structured address need no parsing
+        DeliveryAddress structured = order.getStructuredAddress();
+        if (structured != null && structured.hasValidPincode()) {
+            UserAddress address = structured.toUserAddress();
+            if (address.getPhone() == null || address.getPhone().isEmpty()) {
+                address.setPhone(resolveDeliveryPhone(order));
+            }
+            return address;
+        }
+
         if (order.getDeliveryAddress() == null || order.getDeliveryAddress().trim().isEmpty()) {
             return null;
         }
@@ -170,6 +230,8 @@ public class OrderService {
         
         // Split the address into parts (assuming comma-separated format)
         String[] parts = fullAddress.split(",");
+        // Whether city, state and pincode were read from the order rather than defaulted
+        boolean fromOrder = false;
         
         if (parts.length >= 3) {
             address.setLine1(parts[0].trim());
@@ -182,9 +244,10 @@ public class OrderService {
                 address.setCity(parts[3].trim());
                 address.setState(parts[4].trim());
                 address.setPincode(parts[5].trim());
+                fromOrder = true;
             } else {
                 // ✅ BETTER: Parse from line3 or extract from order if available
-                extractLocationFromLine3(address, parts[2].trim());
+                fromOrder = extractLocationFromLine3(address, parts[2].trim());
             }
         } else {
             // Handle insufficient parts
@@ -196,29 +259,49 @@ public class OrderService {
             address.setPincode("247001");
         }
         
-        // Set phone from order
-        if (order.getPhone() != null && !order.getPhone().trim().isEmpty()) {
-            address.setPhone(order.getPhone());
-        } else if (order.getUser() != null && order.getUser().getPhone() != null) {
-            address.setPhone(order.getUser().getPhone());
-        } else {
-            address.setPhone("9999999999"); // Default phone
+        // Older orders only have the display string; when it really names the location, keep the parsed
+        // result on the order so it is stored with the next save and later retries read the columns.
+        // Guessed defaults are only used for this call and never stored.
+        DeliveryAddress parsed = DeliveryAddress.from(address);
+        if (fromOrder && parsed.hasValidPincode()) {
+            order.setStructuredAddress(parsed);
         }
+
+        address.setPhone(resolveDeliveryPhone(order));
         
         return address;
     }
 
+    // Set phone from order
+    private String resolveDeliveryPhone(Order order) {
+        if (order.getPhone() != null && !order.getPhone().trim().isEmpty()) {
+            return order.getPhone();
+        } else if (order.getUser() != null && order.getUser().getPhone() != null) {
+            return order.getUser().getPhone();
+        }
+        return "9999999999"; // Default phone
+    }
+
     // ✅ NEW HELPER METHOD
-    private void extractLocationFromLine3(UserAddress address, String line3) {
+    // Returns true when the pincode is in line3 and the directory knows it, i.e. nothing was guessed
+    private boolean extractLocationFromLine3(UserAddress address, String line3) {
         // Extract pincode using regex
         java.util.regex.Pattern pincodePattern = java.util.regex.Pattern.compile("\\b(\\d{6})\\b");
         java.util.regex.Matcher matcher = pincodePattern.matcher(line3);
         
-        if (matcher.find()) {
+        boolean found = matcher.find();
+        if (found) {
             address.setPincode(matcher.group(1));
         } else {
             address.setPincode("247001"); // Default to Saharanpur
         }
+
+        Optional<PincodeDirectory.Location> location = pincodeDirectory.lookup(address.getPincode());
+        if (location.isPresent()) {
+            address.setCity(location.get().district());
+            address.setState(location.get().state());
+            return found;
+        }
         
         // Extract state and city from line3
         String line3Lower = line3.toLowerCase();
@@ -239,6 +322,7 @@ public class OrderService {
         } else {
             address.setCity("Saharanpur"); // Default
         }
+        return false;
     }
 
     private LocalDateTime parseDeliveryDate(String dateString) {
@@ -315,6 +399,9 @@ public class OrderService {
                 return false;
             }
             
+            // An admin retry is the reconciliation of an order a failed bulk request left unconfirmed
+            shipmentDispatcher.confirmed(orderId);
+            
             // Reset shipping flags for retry
             order.setShippingCreated(false);
             order.setAwbNumber(null);
@@ -356,6 +443,31 @@ public class OrderService {
         return orderRepository.findById(id);
     }
 
+    /**
+     * The price breakdown captured when the order was placed. Orders placed before snapshots existed
+     * are priced once from their print jobs and the result is stored, so later reads never reprice.
+     */
+    public List<PricingService.BreakdownItem> priceBreakdown(Order order) {
+        if (order.getBreakdown() != null) {
+            return order.getBreakdown();
+        }
+        if (order.getPrintJobs() == null || order.getPrintJobs().isEmpty()) {
+            return null;
+        }
+        PricingService.PriceSummary summary = order.getStructuredAddress() != null
+            ? pricingService.calculatePriceSummaryForPrintJobs(order.getPrintJobs(), order.getStructuredAddress())
+            : pricingService.calculatePriceSummaryForPrintJobs(order.getPrintJobs(), order.getDeliveryAddress());
+        order.setBreakdown(summary.breakdown);
+        try {
+            // The column is not updatable through JPA; only a missing snapshot is ever filled in
+            jdbcTemplate.update("UPDATE orders SET price_breakdown = CAST(? AS jsonb) WHERE id = ? AND price_breakdown IS NULL",
+                objectMapper.writeValueAsString(summary.breakdown), order.getId());
+        } catch (Exception e) {
+            logger.warn("[OrderService] Could not store price breakdown for order {}: {}", order.getId(), e.getMessage());
+        }
+        return summary.breakdown;
+    }
+
     public List<Order> findAll() {
         return orderRepository.findAll();
     }
@@ -423,15 +535,47 @@ public class OrderService {
         Order.Status oldStatus = order.getStatus();
         order.setStatus(newStatus);
         orderRepository.save(order);
+        publishStatusChange(order, oldStatus);
         
-        // Trigger shipment only when transitioning to COMPLETED for delivery orders
-        if (newStatus == Order.Status.COMPLETED && order.canBeShipped()) {
-            processShipment(order);
+        // Trigger shipment only when transitioning to COMPLETED for delivery orders.
+        // Shipments are created in micro-batches by the dispatcher, inline only if its queue is full.
+        if (newStatus == Order.Status.COMPLETED && order.canBeShipped() && nimbusPostService.isEnabled()) {
+            if (!shipmentDispatcher.enqueue(order.getId())) {
+                processShipment(order);
+            }
         }
         
         logger.info("[OrderService] Order {} status updated: {} -> {}", orderId, oldStatus, newStatus);
     }
     
+    /**
+     * Pushes an order's status change to its owner and to admins over the event stream, and to the
+     * owner's devices, moves the order between status rows of the dashboard rollups and adds it to
+     * the recent activity feed.
+     */
+    public void publishStatusChange(Order order, Order.Status oldStatus) {
+        if (order.getStatus() == oldStatus) {
+            return;
+        }
+        orderStatsRollup.statusChanged(order.getId(), oldStatus, order.getStatus());
+        recentActivityFeed.statusChanged(order.getId());
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("orderId", order.getId());
+        payload.put("status", order.getStatus() != null ? order.getStatus().name() : null);
+        payload.put("previousStatus", oldStatus != null ? oldStatus.name() : null);
+        if (order.getUser() != null) {
+            eventBus.publish(EventBus.userTopic(order.getUser().getId()), "order.status", payload);
+            pushDispatcher.enqueue(order.getUser().getId(), new PushSender.PushMessage("LipiPrint",
+                String.format("Your order #%d is now %s", order.getId(), statusLabel(order.getStatus())),
+                Map.of("type", "order.status", "orderId", String.valueOf(order.getId()), "status", String.valueOf(order.getStatus()))));
+        }
+        eventBus.publish(EventBus.ADMIN_TOPIC, "order.status", payload);
+    }
+    
+    private static String statusLabel(Order.Status status) {
+        return status == null ? "updated" : status.name().replace('_', ' ').toLowerCase();
+    }
+    
     // ✅ NEW: Update order status from NimbusPost webhook/API
     public boolean updateOrderStatusFromNimbusPost(String awbNumber, String nimbusStatus, String activity, 
                                                    String currentLocation, String eventTime) {
@@ -463,6 +607,7 @@ public class OrderService {
             // Update order status
             order.setStatus(newStatus);
             orderRepository.save(order);
+            publishStatusChange(order, oldStatus);
             
             logger.info("[OrderService] Order {} (AWB: {}) status updated from NimbusPost: {} -> {} (NimbusPost: {})", 
                 order.getId(), awbNumber, oldStatus, newStatus, nimbusStatus);
@@ -607,13 +752,7 @@ public class OrderService {
 
     public JSONObject createRazorpayOrder(int amount, String currency, String receipt, Long userId) throws RazorpayException {
         logger.info("[OrderService] createRazorpayOrder called with amount={}, currency={}, receipt={}, userId={}", amount, currency, receipt, userId);
-        RazorpayClient razorpay = new RazorpayClient(razorpayKeyId, razorpayKeySecret);
-        JSONObject orderRequest = new JSONObject();
-        orderRequest.put("amount", amount);
-        orderRequest.put("currency", currency);
-        orderRequest.put("receipt", receipt);
-        orderRequest.put("payment_capture", 1);
-        JSONObject razorpayOrder = razorpay.orders.create(orderRequest).toJson();
+        JSONObject razorpayOrder = paymentGateway.createOrder(amount, currency, receipt);
         logger.info("[OrderService] Razorpay order created: {}", razorpayOrder);
         
         Payment payment = new Payment();
@@ -628,12 +767,15 @@ public class OrderService {
         return razorpayOrder;
     }
 
+    // Dashboard totals and trends read the daily_order_stats rollups rather than aggregating orders
+    private static final List<Order.Status> REVENUE_STATUSES = List.of(Order.Status.COMPLETED, Order.Status.DELIVERED);
+
     public List<Map<String, Object>> getOrderTrendsLast7Days() {
         List<Map<String, Object>> result = new java.util.ArrayList<>();
-        for (Object[] row : orderRepository.getOrderCountByDayLast7Days()) {
+        for (OrderStatsRollup.DayStats day : orderStatsRollup.daily(java.time.LocalDate.now().minusDays(7), List.of())) {
             Map<String, Object> map = new java.util.HashMap<>();
-            map.put("date", row[0]);
-            map.put("count", row[1]);
+            map.put("date", day.day());
+            map.put("count", day.orders());
             result.add(map);
         }
         return result;
@@ -641,26 +783,39 @@ public class OrderService {
 
     public List<Map<String, Object>> getRevenueTrendsLast7Days() {
         List<Map<String, Object>> result = new java.util.ArrayList<>();
-        var statuses = java.util.Arrays.asList("COMPLETED", "DELIVERED");
-        for (Object[] row : orderRepository.getRevenueByDayLast7Days(statuses)) {
+        for (OrderStatsRollup.DayStats day : orderStatsRollup.daily(java.time.LocalDate.now().minusDays(7), REVENUE_STATUSES)) {
             Map<String, Object> map = new java.util.HashMap<>();
-            map.put("date", row[0]);
-            map.put("revenue", row[1]);
+            map.put("date", day.day());
+            map.put("revenue", day.revenue());
+            result.add(map);
+        }
+        return result;
+    }
+
+    // Order count and revenue per delivery state, straight from the indexed delivery_state column
+    public List<Map<String, Object>> getOrderStatsByDeliveryState() {
+        List<Map<String, Object>> result = new java.util.ArrayList<>();
+        var statuses = java.util.Arrays.asList(Order.Status.COMPLETED, Order.Status.DELIVERED);
+        for (Object[] row : orderRepository.getOrderStatsByDeliveryState(statuses)) {
+            Map<String, Object> map = new java.util.HashMap<>();
+            map.put("state", row[0]);
+            map.put("count", row[1]);
+            map.put("revenue", row[2]);
             result.add(map);
         }
         return result;
     }
 
     public long getTotalOrderCount() {
-        return orderRepository.count();
+        return orderStatsRollup.countOrders();
     }
 
     public long getPendingOrderCount() {
-        return orderRepository.countByStatus(com.lipiprint.backend.entity.Order.Status.PENDING);
+        return orderStatsRollup.countOrders(Order.Status.PENDING);
     }
 
     public double getTotalRevenue() {
-        return orderRepository.sumTotalAmountByStatuses(java.util.Arrays.asList(com.lipiprint.backend.entity.Order.Status.COMPLETED, com.lipiprint.backend.entity.Order.Status.DELIVERED));
+        return orderStatsRollup.revenue(REVENUE_STATUSES);
     }
 
     public Page<OrderListDTO> findAllListPaged(Pageable pageable) {
@@ -0,0 +1,292 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Per-day order counts, revenue and pages in {@code daily_order_stats}, one row per
+ * (day, status, delivery type), so dashboard totals and trends read a few rollup rows instead of
+ * aggregating {@code orders}. {@code hourly_order_stats} holds the same totals per hour and also per
+ * paper and color of the print jobs, for {@link AnalyticsSeriesService}. There an order's count and
+ * revenue are attributed to the options of its first print job, and pages to each job's own options,
+ * so every grouping still sums to the daily totals.
+ *
+ * Rows are kept current incrementally. After an order's transaction commits, its contribution is
+ * brought in line with the committed row: {@code order_stats_applied} records the status each order is
+ * counted under, and only the difference is applied, computed in SQL the same way the reconciliation
+ * computes it. Increments are therefore keyed by order id and idempotent: a repeated or late one finds
+ * the order already counted and does nothing. Anything they miss (a failed update, an edited total, a
+ * deleted order) is corrected by the nightly {@link #reconcile} of the last {@code reconcile-days},
+ * which rebuilds those days and their ledger rows from {@code orders}. The tables are created by
+ * setup-database.sql and backfilled from all history on the first start that finds one of them empty.
+ */
+@Component
+public class OrderStatsRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderStatsRollup.class);
+
+    static final String TABLE = "daily_order_stats";
+    static final String HOURLY_TABLE = "hourly_order_stats";
+    static final String APPLIED_TABLE = "order_stats_applied";
+
+    /** Delivery type, paper or color recorded for orders that have none. */
+    public static final String NO_DELIVERY_TYPE = "NONE";
+
+    // Pages are the file pages of the order's print jobs, as priced; shift() counts them the same way
+    private static final String PAGES_BY_ORDER = "SELECT pj.order_id, SUM(COALESCE(f.pages, 1)) AS pages "
+        + "FROM print_jobs pj JOIN files f ON f.id = pj.file_id GROUP BY pj.order_id";
+
+    // One row per print job with its paper, color and pages, and whether it is the order's first job.
+    // Options are read with a regex rather than a jsonb cast so one malformed row cannot fail the statement.
+    private static final String JOB_OPTIONS = "SELECT pj.order_id, "
+        + "substring(pj.options from '\"paper\"\\s*:\\s*\"([^\"]*)\"') AS paper, "
+        + "substring(pj.options from '\"color\"\\s*:\\s*\"([^\"]*)\"') AS color, "
+        + "COALESCE(f.pages, 1) AS pages, ROW_NUMBER() OVER (PARTITION BY pj.order_id ORDER BY pj.id) = 1 AS lead "
+        + "FROM print_jobs pj JOIN files f ON f.id = pj.file_id";
+
+    private static final String HOURLY_COLUMNS = " (hour, status, delivery_type, paper, color, orders, revenue, pages) ";
+
+    // Paper, color and totals of the rows joined from JOB_OPTIONS, each total prefixed by factor.
+    // Orders without print jobs count under NONE/NONE; only a lead job carries the order count and revenue.
+    private static String hourlyValues(String factor) {
+        return "LEFT(COALESCE(j.paper, '" + NO_DELIVERY_TYPE + "'), 64), LEFT(COALESCE(j.color, '" + NO_DELIVERY_TYPE + "'), 64), "
+            + factor + "SUM(CASE WHEN COALESCE(j.lead, TRUE) THEN 1 ELSE 0 END), "
+            + factor + "SUM(CASE WHEN COALESCE(j.lead, TRUE) THEN COALESCE(o.total_amount, 0) ELSE 0 END), "
+            + factor + "COALESCE(SUM(j.pages), 0) ";
+    }
+
+    /** One day of totals, optionally restricted to some statuses. */
+    public record DayStats(LocalDate day, long orders, double revenue, long pages) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final AnalyticsSeriesService analyticsSeriesService;
+    // Repeatable read, so the rollups and the ledger are rebuilt from the same snapshot of orders
+    private final TransactionTemplate rebuildTemplate;
+    private final int reconcileDays;
+
+    @Autowired
+    public OrderStatsRollup(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            AnalyticsSeriesService analyticsSeriesService,
+                            @Value("${lipiprint.analytics.rollup.reconcile-days:60}") int reconcileDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.analyticsSeriesService = analyticsSeriesService;
+        this.rebuildTemplate = new TransactionTemplate(transactionManager);
+        this.rebuildTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.reconcileDays = reconcileDays;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (isEmpty(TABLE) || isEmpty(HOURLY_TABLE) || isEmpty(APPLIED_TABLE)) {
+            int rows = reconcile(null);
+            logger.info("[OrderStatsRollup] Backfilled {} rollup rows from order history", rows);
+        }
+    }
+
+    private boolean isEmpty(String table) {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT 1 FROM " + table + " LIMIT 1) t", Integer.class);
+        return existing != null && existing == 0;
+    }
+
+    /** Counts a newly saved order under its current status. */
+    public void orderCreated(Long orderId) {
+        if (orderId != null) {
+            apply(orderId, () -> sync(orderId));
+        }
+    }
+
+    /** Moves an order's totals from the status it is counted under to its current one. */
+    public void statusChanged(Long orderId, Order.Status oldStatus, Order.Status newStatus) {
+        if (orderId != null && oldStatus != newStatus) {
+            apply(orderId, () -> sync(orderId));
+        }
+    }
+
+    // Counts the order under its committed status and nothing else. The order row lock serializes syncs of
+    // one order, and the ledger makes a repeat, or one arriving after a rebuild that saw the order, a no-op.
+    private List<LocalDate> sync(Long orderId) {
+        List<String> current = jdbcTemplate.queryForList(
+            "SELECT status FROM orders WHERE id = ? AND created_at IS NOT NULL FOR UPDATE", String.class, orderId);
+        String status = current.isEmpty() ? null : current.get(0);
+        List<String> applied = jdbcTemplate.queryForList(
+            "SELECT status FROM " + APPLIED_TABLE + " WHERE order_id = ?", String.class, orderId);
+        String counted = applied.isEmpty() ? null : applied.get(0);
+        if (Objects.equals(status, counted)) {
+            return List.of();
+        }
+        List<LocalDate> days = new ArrayList<>();
+        if (counted != null) {
+            days.addAll(shift(orderId, counted, -1));
+        }
+        if (status != null) {
+            days.addAll(shift(orderId, null, 1));
+            jdbcTemplate.update("INSERT INTO " + APPLIED_TABLE + " (order_id, day, status) "
+                + "SELECT id, DATE(created_at), status FROM orders WHERE id = ? "
+                + "ON CONFLICT (order_id) DO UPDATE SET day = EXCLUDED.day, status = EXCLUDED.status", orderId);
+        } else {
+            jdbcTemplate.update("DELETE FROM " + APPLIED_TABLE + " WHERE order_id = ?", orderId);
+        }
+        return days;
+    }
+
+    // Applies an order's adjustments to both tables in a transaction of their own once the order's commits,
+    // then drops cached series covering its day
+    private void apply(Long orderId, Supplier<List<LocalDate>> adjustments) {
+        AfterCommit.inNewTransaction(transactionManager, () -> {
+            List<LocalDate> days = adjustments.get();
+            AfterCommit.run(() -> days.stream().distinct().forEach(analyticsSeriesService::invalidate));
+        }, e -> {
+            // The nightly reconciliation repairs the day
+            logger.warn("[OrderStatsRollup] Could not update rollups for order {}: {}", orderId, e.getMessage());
+        });
+    }
+
+    // Adds sign times the order to the rows of the given status (null = its current one); returns the day touched
+    private List<LocalDate> shift(Long orderId, String status, int sign) {
+        List<LocalDate> days = new ArrayList<>();
+        jdbcTemplate.query("INSERT INTO " + TABLE + " (day, status, delivery_type, orders, revenue, pages) "
+            + "SELECT DATE(o.created_at), COALESCE(CAST(? AS VARCHAR), o.status), COALESCE(o.delivery_type, '" + NO_DELIVERY_TYPE + "'), "
+            + "?, ? * COALESCE(o.total_amount, 0), ? * COALESCE((SELECT SUM(COALESCE(f.pages, 1)) "
+            + "FROM print_jobs pj JOIN files f ON f.id = pj.file_id WHERE pj.order_id = o.id), 0) "
+            + "FROM orders o WHERE o.id = ? AND o.created_at IS NOT NULL AND COALESCE(CAST(? AS VARCHAR), o.status) IS NOT NULL "
+            + "ON CONFLICT (day, status, delivery_type) DO UPDATE SET "
+            + "orders = " + TABLE + ".orders + EXCLUDED.orders, "
+            + "revenue = " + TABLE + ".revenue + EXCLUDED.revenue, "
+            + "pages = " + TABLE + ".pages + EXCLUDED.pages "
+            + "RETURNING day",
+            (RowCallbackHandler) rs -> days.add(rs.getDate(1).toLocalDate()),
+            status, sign, sign, sign, orderId, status);
+        jdbcTemplate.update("INSERT INTO " + HOURLY_TABLE + HOURLY_COLUMNS
+            + "SELECT date_trunc('hour', o.created_at), COALESCE(CAST(? AS VARCHAR), o.status), COALESCE(o.delivery_type, '" + NO_DELIVERY_TYPE + "'), "
+            + hourlyValues("? * ")
+            + "FROM orders o LEFT JOIN (" + JOB_OPTIONS + " WHERE pj.order_id = ?) j ON j.order_id = o.id "
+            + "WHERE o.id = ? AND o.created_at IS NOT NULL AND COALESCE(CAST(? AS VARCHAR), o.status) IS NOT NULL "
+            + "GROUP BY 1, 2, 3, 4, 5 "
+            + "ON CONFLICT (hour, status, delivery_type, paper, color) DO UPDATE SET "
+            + "orders = " + HOURLY_TABLE + ".orders + EXCLUDED.orders, "
+            + "revenue = " + HOURLY_TABLE + ".revenue + EXCLUDED.revenue, "
+            + "pages = " + HOURLY_TABLE + ".pages + EXCLUDED.pages",
+            status, sign, sign, sign, orderId, orderId, status);
+        return days;
+    }
+
+    @Scheduled(cron = "${lipiprint.analytics.rollup.reconcile-cron:0 30 2 * * *}")
+    public void nightlyReconcile() {
+        try {
+            long start = System.currentTimeMillis();
+            int rows = reconcile(LocalDate.now().minusDays(Math.max(1, reconcileDays)));
+            logger.info("[OrderStatsRollup] Reconciled last {} days: {} rows in {} ms", reconcileDays, rows,
+                System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("[OrderStatsRollup] Nightly reconciliation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rebuilds the rollup rows and their ledger from {@code since} (all days if null) out of
+     * {@code orders}, in one transaction that reads a single snapshot. The lock is taken before the
+     * snapshot, so increments already in flight are part of it, and increments arriving meanwhile wait
+     * and then apply only what the snapshot did not count.
+     */
+    public int reconcile(LocalDate since) {
+        Integer rows = rebuildTemplate.execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + TABLE + ", " + HOURLY_TABLE + ", " + APPLIED_TABLE + " IN SHARE ROW EXCLUSIVE MODE");
+            String daily = "INSERT INTO " + TABLE + " (day, status, delivery_type, orders, revenue, pages) "
+                + "SELECT DATE(o.created_at), o.status, COALESCE(o.delivery_type, '" + NO_DELIVERY_TYPE + "'), "
+                + "COUNT(*), COALESCE(SUM(o.total_amount), 0), COALESCE(SUM(p.pages), 0) "
+                + "FROM orders o LEFT JOIN (" + PAGES_BY_ORDER + ") p ON p.order_id = o.id "
+                + "WHERE o.created_at IS NOT NULL AND o.status IS NOT NULL";
+            String hourly = "INSERT INTO " + HOURLY_TABLE + HOURLY_COLUMNS
+                + "SELECT date_trunc('hour', o.created_at), o.status, COALESCE(o.delivery_type, '" + NO_DELIVERY_TYPE + "'), "
+                + hourlyValues("")
+                + "FROM orders o LEFT JOIN (" + JOB_OPTIONS + "%s) j ON j.order_id = o.id "
+                + "WHERE o.created_at IS NOT NULL AND o.status IS NOT NULL";
+            String applied = "INSERT INTO " + APPLIED_TABLE + " (order_id, day, status) "
+                + "SELECT o.id, DATE(o.created_at), o.status FROM orders o "
+                + "WHERE o.created_at IS NOT NULL AND o.status IS NOT NULL";
+            int inserted;
+            if (since == null) {
+                jdbcTemplate.update("DELETE FROM " + TABLE);
+                jdbcTemplate.update("DELETE FROM " + HOURLY_TABLE);
+                jdbcTemplate.update("DELETE FROM " + APPLIED_TABLE);
+                inserted = jdbcTemplate.update(daily + " GROUP BY 1, 2, 3");
+                inserted += jdbcTemplate.update(String.format(hourly, "") + " GROUP BY 1, 2, 3, 4, 5");
+                jdbcTemplate.update(applied);
+            } else {
+                Timestamp from = Timestamp.valueOf(since.atStartOfDay());
+                jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE day >= ?", Date.valueOf(since));
+                jdbcTemplate.update("DELETE FROM " + HOURLY_TABLE + " WHERE hour >= ?", from);
+                jdbcTemplate.update("DELETE FROM " + APPLIED_TABLE + " WHERE day >= ?", Date.valueOf(since));
+                inserted = jdbcTemplate.update(daily + " AND o.created_at >= ? GROUP BY 1, 2, 3", from);
+                inserted += jdbcTemplate.update(String.format(hourly, " WHERE pj.order_id IN (SELECT id FROM orders WHERE created_at >= ?)")
+                    + " AND o.created_at >= ? GROUP BY 1, 2, 3, 4, 5", from, from);
+                jdbcTemplate.update(applied + " AND o.created_at >= ?", from);
+            }
+            return inserted;
+        });
+        analyticsSeriesService.invalidateAll();
+        return rows != null ? rows : 0;
+    }
+
+    public long countOrders() {
+        Long count = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(orders), 0) FROM " + TABLE, Long.class);
+        return count != null ? count : 0;
+    }
+
+    public long countOrders(Order.Status status) {
+        Long count = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(orders), 0) FROM " + TABLE + " WHERE status = ?",
+            Long.class, status.name());
+        return count != null ? count : 0;
+    }
+
+    public double revenue(Collection<Order.Status> statuses) {
+        if (statuses.isEmpty()) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>();
+        statuses.forEach(s -> args.add(s.name()));
+        Double revenue = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(revenue), 0) FROM " + TABLE
+            + " WHERE status IN (" + String.join(",", Collections.nCopies(args.size(), "?")) + ")", Double.class, args.toArray());
+        return revenue != null ? revenue : 0;
+    }
+
+    /** Totals per day from {@code from} through today, for the given statuses (all if empty); days without orders are left out. */
+    public List<DayStats> daily(LocalDate from, Collection<Order.Status> statuses) {
+        List<Object> args = new ArrayList<>();
+        args.add(Date.valueOf(from));
+        String statusFilter = "";
+        if (!statuses.isEmpty()) {
+            statuses.forEach(s -> args.add(s.name()));
+            statusFilter = " AND status IN (" + String.join(",", Collections.nCopies(statuses.size(), "?")) + ")";
+        }
+        List<DayStats> days = new ArrayList<>();
+        jdbcTemplate.query("SELECT day, SUM(orders), SUM(revenue), SUM(pages) FROM " + TABLE
+            + " WHERE day >= ?" + statusFilter + " GROUP BY day ORDER BY day",
+            (RowCallbackHandler) rs -> days.add(new DayStats(rs.getDate(1).toLocalDate(), rs.getLong(2), rs.getDouble(3), rs.getLong(4))),
+            args.toArray());
+        return days;
+    }
+}
@@ -0,0 +1,36 @@
+package com.lipiprint.backend.service;
+
+import java.time.Duration;
+
+/**
+ * Storage for one-time passwords keyed by the identifier they were sent to (email, phone).
+ *
+ * Each key holds at most one code. Verification counts attempts per key: a code is consumed by the
+ * first successful check and discarded once {@code maxAttempts} wrong guesses have been made.
+ * Implementations must be safe for concurrent use; {@link JdbcOtpStore} additionally shares state
+ * between backend instances.
+ */
+public interface OtpStore {
+
+    enum VerifyResult {
+        VALID, INVALID, EXPIRED, NOT_FOUND, TOO_MANY_ATTEMPTS;
+
+        public boolean isValid() {
+            return this == VALID;
+        }
+    }
+
+    /**
+     * Stores a new code for the key, replacing any previous code and resetting its attempt counter.
+     */
+    void put(String key, String code, Duration ttl);
+
+    VerifyResult verify(String key, String code, int maxAttempts);
+
+    void remove(String key);
+
+    /**
+     * Removes expired codes and returns how many were removed.
+     */
+    int purgeExpired();
+}
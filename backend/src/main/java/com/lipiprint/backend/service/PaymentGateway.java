@@ -0,0 +1,26 @@
+package com.lipiprint.backend.service;
+
+import com.razorpay.RazorpayException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The calls this backend makes to Razorpay. {@link RazorpayHttpGateway} talks to the real API over a
+ * pooled connection; {@link StubPaymentGateway} answers locally for offline and load testing
+ * ({@code razorpay.gateway=stub}).
+ */
+public interface PaymentGateway {
+
+    /** Creates a gateway order; the returned JSON is Razorpay's order entity ({@code id}, {@code amount}, ...). */
+    JSONObject createOrder(int amountPaise, String currency, String receipt) throws RazorpayException;
+
+    /**
+     * One page of payment entities created in {@code [fromEpochSeconds, toEpochSeconds]}. A page shorter
+     * than {@code count} is the last one.
+     */
+    List<JSONObject> fetchPayments(long fromEpochSeconds, long toEpochSeconds, int skip, int count) throws RazorpayException;
+
+    Map<String, Object> stats();
+}
@@ -0,0 +1,363 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.Payment;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Reconciles local {@code payments} rows against the payments Razorpay actually holds.
+ *
+ * History is processed in fixed windows from a checkpoint in {@code reconciliation_checkpoints}, so a
+ * run can stop anywhere and the next one resumes, and months of backlog are worked through a window at
+ * a time. For each window the gateway's payments are paged in and reduced to one entry per
+ * {@code razorpay_order_id} (sorted), local rows are streamed from a JDBC cursor ordered by the same
+ * key, and the two are merge-joined. Mismatches are upserted into {@code payment_reconciliation}.
+ *
+ * A gateway payment is made some time after its local row is created, so both sides are read with a
+ * {@code lookback}: gateway payments in {@code [start - lookback, end)} are matched against local rows
+ * created in {@code [start - lookback, end)}. Each gateway payment is judged in the window it was
+ * created in, and each local row in the window where {@code created_at + lookback} falls, which is
+ * when its payment must already be visible.
+ *
+ * Both tables are created by setup-database.sql.
+ */
+@Service
+public class PaymentReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentReconciliationService.class);
+
+    static final String RESULTS_TABLE = "payment_reconciliation";
+    static final String CHECKPOINT_TABLE = "reconciliation_checkpoints";
+    private static final String JOB_NAME = "razorpay-payments";
+    private static final int GATEWAY_PAGE_SIZE = 100;
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    public enum Kind {
+        /** Captured at the gateway, no local payment row at all. */
+        MISSING_LOCAL,
+        /** Captured at the gateway, local row is not SUCCESS. */
+        NOT_MARKED_PAID,
+        /** Local row is SUCCESS, the gateway has no captured payment for the order. */
+        NOT_CAPTURED,
+        /** Both sides paid, amounts differ. */
+        AMOUNT_MISMATCH
+    }
+
+    record GatewayOrder(String orderId, String paymentId, String status, long amountPaise, long createdAt) {
+        boolean captured() {
+            return "captured".equals(status) || "refunded".equals(status);
+        }
+    }
+
+    record LocalPayment(String orderId, String paymentId, String status, long amountPaise, long createdAt) {}
+
+    record Mismatch(Kind kind, String orderId, String paymentId, String gatewayStatus, String localStatus,
+                    Long gatewayAmountPaise, Long localAmountPaise) {}
+
+    @Autowired
+    private PaymentGateway paymentGateway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${lipiprint.reconciliation.window-minutes:60}")
+    private long windowMinutes;
+
+    @Value("${lipiprint.reconciliation.lookback-minutes:30}")
+    private long lookbackMinutes;
+
+    // Leave recent payments alone until their webhooks have had time to arrive
+    @Value("${lipiprint.reconciliation.settle-minutes:15}")
+    private long settleMinutes;
+
+    @Value("${lipiprint.reconciliation.initial-days:7}")
+    private int initialDays;
+
+    @Value("${lipiprint.reconciliation.max-windows-per-run:168}")
+    private int maxWindowsPerRun;
+
+    private JdbcTemplate cursorTemplate;
+    private TransactionTemplate readOnlyTransaction;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    @PostConstruct
+    public void init() {
+        // Postgres only streams a result set inside a transaction with a fetch size set
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(500);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Scheduled(cron = "${lipiprint.reconciliation.cron:0 20 * * * *}")
+    public void scheduledRun() {
+        run();
+    }
+
+    /**
+     * Reconciles every settled window after the checkpoint, up to {@code max-windows-per-run}.
+     * Returns a summary, or an empty map if a run is already in progress.
+     */
+    public Map<String, Object> run() {
+        if (!running.compareAndSet(false, true)) {
+            return Map.of();
+        }
+        long started = System.currentTimeMillis();
+        int windows = 0;
+        int mismatches = 0;
+        try {
+            long windowSeconds = TimeUnit.MINUTES.toSeconds(windowMinutes);
+            long limit = TimeUnit.MILLISECONDS.toSeconds(started) - TimeUnit.MINUTES.toSeconds(settleMinutes);
+            long start = loadCheckpoint(TimeUnit.MILLISECONDS.toSeconds(started) - TimeUnit.DAYS.toSeconds(initialDays));
+            while (windows < maxWindowsPerRun && start + windowSeconds <= limit) {
+                long end = start + windowSeconds;
+                mismatches += reconcileWindow(start, end);
+                saveCheckpoint(end);
+                start = end;
+                windows++;
+            }
+            logger.info("[PaymentReconciliationService] Reconciled {} windows up to {}, {} mismatches",
+                windows, Instant.ofEpochSecond(start), mismatches);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("windows", windows);
+            summary.put("mismatches", mismatches);
+            summary.put("checkpoint", Instant.ofEpochSecond(start).toString());
+            summary.put("durationMs", System.currentTimeMillis() - started);
+            lastRun = summary;
+            return summary;
+        } catch (Exception e) {
+            // The checkpoint only moves past fully reconciled windows, so the next run retries this one
+            logger.error("[PaymentReconciliationService] Reconciliation stopped after {} windows: {}", windows, e.getMessage(), e);
+            lastRun = Map.of("windows", windows, "mismatches", mismatches, "error", String.valueOf(e.getMessage()));
+            return lastRun;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+
+    public List<Map<String, Object>> findUnresolved(int limit) {
+        return jdbcTemplate.queryForList(
+            "SELECT id, razorpay_order_id, kind, razorpay_payment_id, gateway_status, local_status, "
+                + "gateway_amount_paise, local_amount_paise, detected_at FROM " + RESULTS_TABLE
+                + " WHERE resolved = FALSE ORDER BY detected_at DESC LIMIT ?", limit);
+    }
+
+    public boolean markResolved(long id) {
+        return jdbcTemplate.update("UPDATE " + RESULTS_TABLE + " SET resolved = TRUE WHERE id = ?", id) > 0;
+    }
+
+    private int reconcileWindow(long start, long end) throws Exception {
+        long lookback = TimeUnit.MINUTES.toSeconds(lookbackMinutes);
+        TreeMap<String, GatewayOrder> gateway = fetchGatewayOrders(start - lookback, end);
+
+        List<Mismatch> pending = new ArrayList<>();
+        int[] written = {0};
+        Consumer<Mismatch> sink = mismatch -> {
+            pending.add(mismatch);
+            if (pending.size() >= WRITE_BATCH_SIZE) {
+                written[0] += writeMismatches(pending);
+                pending.clear();
+            }
+        };
+        Merger merger = new Merger(gateway.values().iterator(), start, end, lookback, sink);
+
+        readOnlyTransaction.executeWithoutResult(status -> cursorTemplate.query(
+            "SELECT razorpay_order_id, razorpay_payment_id, status, amount, created_at FROM payments "
+                + "WHERE razorpay_order_id IS NOT NULL AND created_at >= ? AND created_at < ? "
+                // Byte order, to match the String ordering of the gateway side
+                + "ORDER BY razorpay_order_id COLLATE \"C\"",
+            (RowCallbackHandler) rs -> {
+                Timestamp createdAt = rs.getTimestamp("created_at");
+                double amount = rs.getDouble("amount");
+                merger.onLocal(new LocalPayment(
+                    rs.getString("razorpay_order_id"),
+                    rs.getString("razorpay_payment_id"),
+                    rs.getString("status"),
+                    Math.round(amount * 100),
+                    toEpochSeconds(createdAt.toLocalDateTime())));
+            },
+            Timestamp.valueOf(toLocalDateTime(start - lookback)), Timestamp.valueOf(toLocalDateTime(end))));
+        merger.finish();
+
+        written[0] += writeMismatches(pending);
+        return written[0];
+    }
+
+    // One entry per gateway order: a captured payment wins over failed attempts for the same order
+    private TreeMap<String, GatewayOrder> fetchGatewayOrders(long from, long to) throws Exception {
+        TreeMap<String, GatewayOrder> orders = new TreeMap<>();
+        int skip = 0;
+        while (true) {
+            List<JSONObject> page = paymentGateway.fetchPayments(from, to - 1, skip, GATEWAY_PAGE_SIZE);
+            for (JSONObject payment : page) {
+                String orderId = payment.optString("order_id", null);
+                if (orderId == null || orderId.isEmpty()) {
+                    continue;
+                }
+                GatewayOrder candidate = new GatewayOrder(orderId, payment.optString("id", null),
+                    payment.optString("status", null), payment.optLong("amount"), payment.optLong("created_at"));
+                orders.merge(orderId, candidate, (a, b) -> a.captured() || (!b.captured() && a.createdAt() >= b.createdAt()) ? a : b);
+            }
+            if (page.size() < GATEWAY_PAGE_SIZE) {
+                return orders;
+            }
+            skip += page.size();
+        }
+    }
+
+    private int writeMismatches(List<Mismatch> mismatches) {
+        if (mismatches.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(mismatches.size());
+        for (Mismatch m : mismatches) {
+            rows.add(new Object[] {m.orderId(), m.kind().name(), m.paymentId(), m.gatewayStatus(), m.localStatus(),
+                m.gatewayAmountPaise(), m.localAmountPaise(), now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO " + RESULTS_TABLE + " (razorpay_order_id, kind, razorpay_payment_id, "
+            + "gateway_status, local_status, gateway_amount_paise, local_amount_paise, detected_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (razorpay_order_id, kind) DO UPDATE SET "
+            + "razorpay_payment_id = EXCLUDED.razorpay_payment_id, gateway_status = EXCLUDED.gateway_status, "
+            + "local_status = EXCLUDED.local_status, gateway_amount_paise = EXCLUDED.gateway_amount_paise, "
+            + "local_amount_paise = EXCLUDED.local_amount_paise, detected_at = EXCLUDED.detected_at", rows);
+        return mismatches.size();
+    }
+
+    private long loadCheckpoint(long defaultStart) {
+        List<Long> rows = jdbcTemplate.queryForList(
+            "SELECT window_end FROM " + CHECKPOINT_TABLE + " WHERE job = ?", Long.class, JOB_NAME);
+        return rows.isEmpty() ? defaultStart : rows.get(0);
+    }
+
+    private void saveCheckpoint(long windowEnd) {
+        jdbcTemplate.update("INSERT INTO " + CHECKPOINT_TABLE + " (job, window_end, updated_at) VALUES (?, ?, ?) "
+                + "ON CONFLICT (job) DO UPDATE SET window_end = EXCLUDED.window_end, updated_at = EXCLUDED.updated_at",
+            JOB_NAME, windowEnd, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // payments.created_at is a LocalDateTime written in the server's zone
+    private static LocalDateTime toLocalDateTime(long epochSeconds) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneId.systemDefault());
+    }
+
+    private static long toEpochSeconds(LocalDateTime value) {
+        return value.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    /**
+     * Merge-join of gateway orders and local rows, both ascending by razorpay_order_id. Local rows are
+     * pushed in from the cursor one at a time, so neither side is held beyond the gateway window.
+     */
+    static final class Merger {
+        private final Iterator<GatewayOrder> gateway;
+        private final long start;
+        private final long end;
+        private final long lookback;
+        private final Consumer<Mismatch> sink;
+        private GatewayOrder current;
+
+        Merger(Iterator<GatewayOrder> gateway, long start, long end, long lookback, Consumer<Mismatch> sink) {
+            this.gateway = gateway;
+            this.start = start;
+            this.end = end;
+            this.lookback = lookback;
+            this.sink = sink;
+            this.current = gateway.hasNext() ? gateway.next() : null;
+        }
+
+        void onLocal(LocalPayment local) {
+            while (current != null && current.orderId().compareTo(local.orderId()) < 0) {
+                gatewayOnly(current);
+                advance();
+            }
+            if (current != null && current.orderId().equals(local.orderId())) {
+                both(current, local);
+                advance();
+            } else {
+                localOnly(local);
+            }
+        }
+
+        void finish() {
+            while (current != null) {
+                gatewayOnly(current);
+                advance();
+            }
+        }
+
+        private void advance() {
+            current = gateway.hasNext() ? gateway.next() : null;
+        }
+
+        private void gatewayOnly(GatewayOrder g) {
+            if (g.captured() && ownsGateway(g)) {
+                sink.accept(new Mismatch(Kind.MISSING_LOCAL, g.orderId(), g.paymentId(), g.status(), null, g.amountPaise(), null));
+            }
+        }
+
+        private void localOnly(LocalPayment l) {
+            if (Payment.Status.SUCCESS.name().equals(l.status()) && ownsLocal(l)) {
+                sink.accept(new Mismatch(Kind.NOT_CAPTURED, l.orderId(), l.paymentId(), null, l.status(), null, l.amountPaise()));
+            }
+        }
+
+        private void both(GatewayOrder g, LocalPayment l) {
+            boolean localPaid = Payment.Status.SUCCESS.name().equals(l.status());
+            if (g.captured() && !localPaid && ownsGateway(g)) {
+                sink.accept(new Mismatch(Kind.NOT_MARKED_PAID, g.orderId(), g.paymentId(), g.status(), l.status(), g.amountPaise(), l.amountPaise()));
+            } else if (!g.captured() && localPaid && ownsLocal(l)) {
+                sink.accept(new Mismatch(Kind.NOT_CAPTURED, l.orderId(), l.paymentId(), g.status(), l.status(), g.amountPaise(), l.amountPaise()));
+            } else if (g.captured() && localPaid && g.amountPaise() != l.amountPaise() && ownsGateway(g)) {
+                sink.accept(new Mismatch(Kind.AMOUNT_MISMATCH, g.orderId(), g.paymentId(), g.status(), l.status(), g.amountPaise(), l.amountPaise()));
+            }
+        }
+
+        // Gateway payments are judged in the window they were created in
+        private boolean ownsGateway(GatewayOrder g) {
+            return g.createdAt() >= start && g.createdAt() < end;
+        }
+
+        // Local rows are judged once their payment has had the full lookback to appear
+        private boolean ownsLocal(LocalPayment l) {
+            long due = l.createdAt() + lookback;
+            return due >= start && due < end;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Offline India pincode -> district/state lookup.
+ *
+ * Backed by the binary file written by PincodeDirectoryBuilder: a sorted int array of pincodes, a
+ * parallel short array of district ids, and small dictionary tables of districts and states. The jar
+ * always carries the seed directory from src/main/resources (head post offices of the main cities);
+ * the {@code pincode-directory} Maven profile swaps in the full India Post directory when its CSV is
+ * present at build time. The file is memory-mapped (or read into one direct buffer when it lives inside the jar),
+ * so only the two dictionaries are on the heap and a lookup is a binary search over the mapped ints.
+ *
+ * Pincodes the directory does not cover return empty, and callers keep their old fallbacks.
+ */
+@Service
+public class PincodeDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(PincodeDirectory.class);
+
+    static final int MAGIC = 0x4C50494E; // "LPIN"
+    static final int VERSION = 1;
+    static final String CLASSPATH_LOCATION = "pincode-directory.bin";
+
+    public record Location(String pincode, String district, String state) {}
+
+    @Value("${lipiprint.pincode.directory-path:}")
+    private String directoryPath;
+
+    private volatile String[] states = new String[0];
+    private volatile String[] districts = new String[0];
+    private volatile short[] districtStates = new short[0];
+    private volatile IntBuffer pincodes = IntBuffer.allocate(0);
+    private volatile ShortBuffer pincodeDistricts = ShortBuffer.allocate(0);
+
+    @PostConstruct
+    public void load() {
+        try {
+            ByteBuffer buffer = openBuffer();
+            if (buffer == null) {
+                logger.warn("[PincodeDirectory] No pincode directory found (classpath:{} or lipiprint.pincode.directory-path); lookups disabled",
+                    CLASSPATH_LOCATION);
+                return;
+            }
+            load(buffer);
+            logger.info("[PincodeDirectory] Loaded {} pincodes, {} districts, {} states",
+                pincodes.limit(), districts.length, states.length);
+        } catch (Exception e) {
+            logger.error("[PincodeDirectory] Failed to load pincode directory: {}", e.getMessage(), e);
+        }
+    }
+
+    void load(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a pincode directory file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported pincode directory version: " + version);
+        }
+
+        String[] stateTable = new String[buffer.getInt()];
+        for (int i = 0; i < stateTable.length; i++) {
+            stateTable[i] = readString(buffer);
+        }
+
+        int districtCount = buffer.getInt();
+        String[] districtTable = new String[districtCount];
+        short[] districtStateTable = new short[districtCount];
+        for (int i = 0; i < districtCount; i++) {
+            districtStateTable[i] = buffer.getShort();
+            districtTable[i] = readString(buffer);
+        }
+
+        int count = buffer.getInt();
+        ByteBuffer pinSection = buffer.slice();
+        pinSection.limit(count * Integer.BYTES);
+        IntBuffer pinView = pinSection.asIntBuffer();
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        ByteBuffer districtSection = buffer.slice();
+        districtSection.limit(count * Short.BYTES);
+        ShortBuffer districtView = districtSection.asShortBuffer();
+
+        // Pincodes are published last; until then lookups see the previous (or empty) table
+        this.states = stateTable;
+        this.districts = districtTable;
+        this.districtStates = districtStateTable;
+        this.pincodeDistricts = districtView;
+        this.pincodes = pinView;
+    }
+
+    public boolean isLoaded() {
+        return pincodes.limit() > 0;
+    }
+
+    public Optional<Location> lookup(String pincode) {
+        if (pincode == null) {
+            return Optional.empty();
+        }
+        String trimmed = pincode.trim();
+        if (trimmed.length() != 6) {
+            return Optional.empty();
+        }
+        int pin = 0;
+        for (int i = 0; i < 6; i++) {
+            char c = trimmed.charAt(i);
+            if (c < '0' || c > '9') {
+                return Optional.empty();
+            }
+            pin = pin * 10 + (c - '0');
+        }
+
+        IntBuffer pins = pincodes;
+        ShortBuffer pinDistricts = pincodeDistricts;
+        int low = 0;
+        int high = pins.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = pins.get(mid);
+            if (value < pin) {
+                low = mid + 1;
+            } else if (value > pin) {
+                high = mid - 1;
+            } else {
+                int district = pinDistricts.get(mid) & 0xFFFF;
+                return Optional.of(new Location(trimmed, districts[district], states[districtStates[district] & 0xFFFF]));
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Optional<String> stateOf(String pincode) {
+        return lookup(pincode).map(Location::state);
+    }
+
+    private ByteBuffer openBuffer() throws IOException {
+        if (directoryPath != null && !directoryPath.isBlank()) {
+            return map(Paths.get(directoryPath.trim()));
+        }
+        ClassPathResource resource = new ClassPathResource(CLASSPATH_LOCATION);
+        if (!resource.exists()) {
+            return null;
+        }
+        if (resource.isFile()) {
+            return map(resource.getFile().toPath());
+        }
+        // Inside the packaged jar: copy once into off-heap memory
+        try (InputStream in = resource.getInputStream()) {
+            byte[] bytes = in.readAllBytes();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            return buffer;
+        }
+    }
+
+    private ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,191 @@
+package com.lipiprint.backend.service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the binary file read by {@link PincodeDirectory} from the India Post "All India Pincode
+ * Directory" CSV (data.gov.in). Only the pincode, district and state columns are used; when several
+ * post offices share a pincode the first district listed wins.
+ *
+ * A build tool rather than a bean. It lives in main scope so the {@code pincode-directory} Maven
+ * profile can run it after compilation even with {@code -Dmaven.test.skip}. The profile is active when
+ * {@code data/all_india_pincode.csv} exists (or with {@code -Ppincode-directory -Dpincode.csv=...}) and
+ * replaces the bundled directory in the jar. The bundled
+ * {@code src/main/resources/pincode-directory.bin} is built from {@code data/pincode-seed.csv}:
+ *
+ *   java -cp target/classes com.lipiprint.backend.service.PincodeDirectoryBuilder \
+ *       data/pincode-seed.csv src/main/resources/pincode-directory.bin
+ */
+public class PincodeDirectoryBuilder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: PincodeDirectoryBuilder <input.csv> <output.bin>");
+        }
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            int count = build(in, out);
+            System.out.println("Wrote " + count + " pincodes to " + args[1]);
+        }
+    }
+
+    public static int build(Reader csv, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(csv);
+        String headerLine = reader.readLine();
+        if (headerLine == null) {
+            throw new IOException("Empty pincode CSV");
+        }
+        List<String> header = parseLine(headerLine);
+        int pincodeCol = indexOf(header, "pincode");
+        int districtCol = indexOf(header, "district", "districtname");
+        int stateCol = indexOf(header, "statename", "state");
+
+        Map<String, Integer> stateIds = new LinkedHashMap<>();
+        Map<String, Integer> districtIds = new LinkedHashMap<>();
+        List<Integer> districtStates = new ArrayList<>();
+        TreeMap<Integer, Integer> pincodeDistricts = new TreeMap<>();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> cols = parseLine(line);
+            if (cols.size() <= Math.max(pincodeCol, Math.max(districtCol, stateCol))) {
+                continue;
+            }
+            String pin = cols.get(pincodeCol).trim();
+            if (!pin.matches("\\d{6}")) {
+                continue;
+            }
+            String state = titleCase(cols.get(stateCol));
+            String district = titleCase(cols.get(districtCol));
+            if (state.isEmpty() || district.isEmpty()) {
+                continue;
+            }
+
+            int stateId = stateIds.computeIfAbsent(state, k -> stateIds.size());
+            // District names repeat across states, so the dictionary key includes the state
+            String districtKey = stateId + "|" + district;
+            Integer districtId = districtIds.get(districtKey);
+            if (districtId == null) {
+                districtId = districtIds.size();
+                districtIds.put(districtKey, districtId);
+                districtStates.add(stateId);
+            }
+            pincodeDistricts.putIfAbsent(Integer.parseInt(pin), districtId);
+        }
+        if (districtIds.size() > 0xFFFF || stateIds.size() > 0xFFFF) {
+            throw new IOException("Too many districts or states for the directory format");
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(PincodeDirectory.MAGIC);
+        data.writeInt(PincodeDirectory.VERSION);
+
+        data.writeInt(stateIds.size());
+        for (String state : stateIds.keySet()) {
+            writeString(data, state);
+        }
+
+        data.writeInt(districtIds.size());
+        int index = 0;
+        for (String key : districtIds.keySet()) {
+            data.writeShort(districtStates.get(index++));
+            writeString(data, key.substring(key.indexOf('|') + 1));
+        }
+
+        data.writeInt(pincodeDistricts.size());
+        for (int pin : pincodeDistricts.keySet()) {
+            data.writeInt(pin);
+        }
+        for (int districtId : pincodeDistricts.values()) {
+            data.writeShort(districtId);
+        }
+        data.flush();
+        return pincodeDistricts.size();
+    }
+
+    private static int indexOf(List<String> header, String... names) throws IOException {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            positions.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String name : names) {
+            Integer position = positions.get(name);
+            if (position != null) {
+                return position;
+            }
+        }
+        throw new IOException("Pincode CSV is missing column: " + names[0]);
+    }
+
+    // Minimal CSV splitting with support for quoted fields
+    private static List<String> parseLine(String line) {
+        List<String> cols = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                cols.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        cols.add(current.toString());
+        return cols;
+    }
+
+    // "UTTAR PRADESH" -> "Uttar Pradesh", "JAMMU AND KASHMIR" -> "Jammu and Kashmir"
+    static String titleCase(String value) {
+        if (value == null) {
+            return "";
+        }
+        String[] words = value.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        StringBuilder result = new StringBuilder();
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            if (word.equals("and") || word.equals("of")) {
+                result.append(word);
+            } else {
+                result.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+        }
+        return result.toString();
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+}
@@ -3,6 +3,7 @@ package com.lipiprint.backend.service;
 import com.lipiprint.backend.entity.ServiceCombination;
 import com.lipiprint.backend.entity.DiscountRule;
 import com.lipiprint.backend.entity.BindingOption;
+import com.lipiprint.backend.entity.DeliveryAddress;
 import com.lipiprint.backend.entity.Order;
 import com.lipiprint.backend.entity.PrintJob;
 import com.lipiprint.backend.repository.ServiceCombinationRepository;
@@ -12,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +27,8 @@ public class PricingService {
     private DiscountRuleRepository discountRuleRepository;
     @Autowired
     private BindingOptionRepository bindingOptionRepository;
+    @Autowired
+    private PincodeDirectory pincodeDirectory;
 
     public BigDecimal calculatePrintCost(String color, String paperSize, String paperQuality, String printOption, int numPages) {
         logger.info("[PricingService] calculatePrintCost called with color={}, paperSize={}, paperQuality={}, printOption={}, numPages={}", color, paperSize, paperQuality, printOption, numPages);
@@ -172,6 +176,7 @@ public class PricingService {
         public double discount;
         public double total;
         public String printOptions;
+        public BreakdownItem() {}
         public BreakdownItem(String description, int quantity, String hsn, double rate, double amount, double discount, double total, String printOptions) {
             this.description = description;
             this.quantity = quantity;
@@ -261,7 +266,13 @@ public class PricingService {
         if (pincode == null || pincode.length() != 6) {
             return false;
         }
+
+        Optional<String> state = pincodeDirectory.stateOf(pincode);
+        if (state.isPresent()) {
+            return "Uttar Pradesh".equalsIgnoreCase(state.get());
+        }
         
+        // Fallback when the directory is unavailable or the pincode is unknown.
         // Uttar Pradesh pincode ranges:
         // 20xxxx, 21xxxx, 22xxxx, 23xxxx, 24xxxx, 25xxxx, 26xxxx, 27xxxx, 28xxxx
         try {
@@ -405,6 +416,21 @@ public class PricingService {
     
     // Overloaded method with delivery address for state-based GST calculation
     public PriceSummary calculatePriceSummaryForPrintJobs(List<PrintJob> printJobs, String deliveryAddress) {
+        return calculatePriceSummaryForPrintJobs(printJobs, isUttarPradeshPincode(extractPincode(deliveryAddress)));
+    }
+
+    // Structured address: the pincode column is used as-is, no parsing of the display string
+    public PriceSummary calculatePriceSummaryForPrintJobs(List<PrintJob> printJobs, DeliveryAddress deliveryAddress) {
+        boolean isIntraState;
+        if (deliveryAddress != null && deliveryAddress.hasValidPincode()) {
+            isIntraState = isUttarPradeshPincode(deliveryAddress.getPincode());
+        } else {
+            isIntraState = deliveryAddress != null && "Uttar Pradesh".equalsIgnoreCase(deliveryAddress.getState());
+        }
+        return calculatePriceSummaryForPrintJobs(printJobs, isIntraState);
+    }
+
+    private PriceSummary calculatePriceSummaryForPrintJobs(List<PrintJob> printJobs, boolean isIntraState) {
         double subtotal = 0.0;
         double discountPercent = 0.0;
         int totalPages = 0;
@@ -506,9 +532,6 @@ public class PricingService {
         double discountedSubtotal = subtotal - discount;
         
         // ✅ NEW: State-based GST calculation
-        String pincode = extractPincode(deliveryAddress);
-        boolean isIntraState = isUttarPradeshPincode(pincode);
-        
         double cgst = 0.0;
         double sgst = 0.0;
         double igst = 0.0;
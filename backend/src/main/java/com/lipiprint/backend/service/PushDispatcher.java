@@ -0,0 +1,268 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects outbound push messages and delivers them in batches through a {@link PushSender}.
+ *
+ * Messages are queued per user and picked up by one flusher thread, which waits {@code linger-ms}
+ * after the first message so a burst (say 500 orders going out for delivery at once) lands in the
+ * same flush. A flush resolves all the users' device tokens in one lookup, drops duplicate
+ * token/message pairs and sends at most {@link PushSender#MAX_BATCH_SIZE} deliveries per call.
+ * Transient failures are retried per token with exponential backoff; tokens reported invalid are
+ * removed from {@link DeviceTokenStore}. Push is best effort: the notification row is the record.
+ */
+@Service
+public class PushDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushDispatcher.class);
+
+    private static final int MAX_DRAIN = 5000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private record Pending(Long userId, PushSender.PushMessage message) {}
+
+    private record Attempt(PushSender.Delivery delivery, int attempts) {}
+
+    private final PushSender sender;
+    private final DeviceTokenStore tokenStore;
+    private final int capacity;
+    private final long lingerMillis;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    private BlockingQueue<Pending> queue;
+    private ScheduledExecutorService retryScheduler;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+    private final AtomicLong noDevice = new AtomicLong();
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+
+    @Autowired
+    public PushDispatcher(PushSender sender,
+                          DeviceTokenStore tokenStore,
+                          @Value("${lipiprint.push.queue-capacity:50000}") int capacity,
+                          @Value("${lipiprint.push.linger-ms:200}") long lingerMillis,
+                          @Value("${lipiprint.push.max-attempts:5}") int maxAttempts) {
+        this(sender, tokenStore, capacity, lingerMillis, maxAttempts, 1000);
+    }
+
+    PushDispatcher(PushSender sender, DeviceTokenStore tokenStore, int capacity, long lingerMillis, int maxAttempts,
+                   long initialBackoffMillis) {
+        this.sender = sender;
+        this.tokenStore = tokenStore;
+        this.capacity = Math.max(1, capacity);
+        this.lingerMillis = Math.max(0, lingerMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "push-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        flusher = new Thread(this::runFlusher, "push-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("[PushDispatcher] Started with {} sender (capacity {}, linger {} ms)", sender.name(), capacity, lingerMillis);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        if (queue != null && !queue.isEmpty()) {
+            logger.warn("[PushDispatcher] Stopping with {} push messages unsent", queue.size());
+        }
+    }
+
+    /** Queues a push to every device of a user; sent after the current transaction commits, if any. */
+    public void enqueue(Long userId, PushSender.PushMessage message) {
+        if (userId == null) {
+            return;
+        }
+        AfterCommit.run(() -> offer(new Pending(userId, message)));
+    }
+
+    public void enqueue(Collection<Long> userIds, PushSender.PushMessage message) {
+        List<Long> ids = List.copyOf(userIds);
+        AfterCommit.run(() -> ids.forEach(id -> offer(new Pending(id, message))));
+    }
+
+    private void offer(Pending pending) {
+        if (running && queue.offer(pending)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void runFlusher() {
+        while (running) {
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (lingerMillis > 0) {
+                    Thread.sleep(lingerMillis);
+                }
+                List<Pending> batch = new ArrayList<>();
+                batch.add(first);
+                queue.drainTo(batch, MAX_DRAIN - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("[PushDispatcher] Flush failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        for (Pending pending : batch) {
+            userIds.add(pending.userId());
+        }
+        Map<Long, List<String>> tokens = tokenStore.tokensFor(userIds);
+
+        // The same message to the same device twice within one flush is sent once
+        Set<PushSender.Delivery> deliveries = new LinkedHashSet<>();
+        for (Pending pending : batch) {
+            List<String> userTokens = tokens.get(pending.userId());
+            if (userTokens == null) {
+                noDevice.incrementAndGet();
+                continue;
+            }
+            for (String token : userTokens) {
+                deliveries.add(new PushSender.Delivery(token, pending.message()));
+            }
+        }
+        List<Attempt> attempts = new ArrayList<>(deliveries.size());
+        for (PushSender.Delivery delivery : deliveries) {
+            attempts.add(new Attempt(delivery, 1));
+        }
+        send(attempts);
+    }
+
+    private void send(List<Attempt> attempts) {
+        Map<Integer, List<Attempt>> retriesByAttempt = new LinkedHashMap<>();
+        List<String> invalid = new ArrayList<>();
+        for (int from = 0; from < attempts.size(); from += PushSender.MAX_BATCH_SIZE) {
+            List<Attempt> chunk = attempts.subList(from, Math.min(from + PushSender.MAX_BATCH_SIZE, attempts.size()));
+            List<PushSender.Delivery> deliveries = new ArrayList<>(chunk.size());
+            for (Attempt attempt : chunk) {
+                deliveries.add(attempt.delivery());
+            }
+            List<PushSender.Outcome> outcomes;
+            try {
+                outcomes = sender.send(deliveries);
+                batches.incrementAndGet();
+            } catch (RuntimeException e) {
+                logger.warn("[PushDispatcher] {} sender failed for a batch of {}: {}", sender.name(), chunk.size(), e.getMessage());
+                outcomes = null;
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                Attempt attempt = chunk.get(i);
+                PushSender.Outcome outcome = outcomes != null && i < outcomes.size() ? outcomes.get(i) : PushSender.Outcome.RETRY;
+                switch (outcome) {
+                    case SENT -> sent.incrementAndGet();
+                    case INVALID_TOKEN -> invalid.add(attempt.delivery().token());
+                    case FAILED -> failed.incrementAndGet();
+                    case RETRY -> {
+                        if (attempt.attempts() < maxAttempts) {
+                            retriesByAttempt.computeIfAbsent(attempt.attempts(), n -> new ArrayList<>()).add(attempt);
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!invalid.isEmpty()) {
+            try {
+                pruned.addAndGet(tokenStore.remove(new LinkedHashSet<>(invalid)));
+            } catch (Exception e) {
+                logger.warn("[PushDispatcher] Could not prune {} invalid tokens: {}", invalid.size(), e.getMessage());
+            }
+        }
+        retriesByAttempt.forEach(this::scheduleRetry);
+    }
+
+    private void scheduleRetry(int attemptsSoFar, List<Attempt> attempts) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attemptsSoFar - 1, 20));
+        List<Attempt> next = new ArrayList<>(attempts.size());
+        for (Attempt attempt : attempts) {
+            next.add(new Attempt(attempt.delivery(), attempt.attempts() + 1));
+        }
+        retried.addAndGet(next.size());
+        pendingRetries.addAndGet(next.size());
+        try {
+            retryScheduler.schedule(() -> {
+                pendingRetries.addAndGet(-next.size());
+                send(next);
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // Shutting down
+            pendingRetries.addAndGet(-next.size());
+            failed.addAndGet(next.size());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sender", sender.name());
+        stats.put("queued", queue != null ? queue.size() : 0);
+        stats.put("enqueued", enqueued.get());
+        stats.put("dropped", dropped.get());
+        stats.put("batches", batches.get());
+        stats.put("sent", sent.get());
+        stats.put("retried", retried.get());
+        stats.put("pendingRetries", pendingRetries.get());
+        stats.put("failed", failed.get());
+        stats.put("prunedTokens", pruned.get());
+        stats.put("usersWithoutDevice", noDevice.get());
+        return stats;
+    }
+}
@@ -0,0 +1,38 @@
+package com.lipiprint.backend.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers push messages to device tokens. Implementations send a whole batch in one call
+ * ({@link FcmPushSender} against Firebase Cloud Messaging, {@link InMemoryPushSender} for tests and
+ * local runs) and report one {@link Outcome} per delivery, in order.
+ */
+public interface PushSender {
+
+    /** Largest batch FCM accepts in one request. */
+    int MAX_BATCH_SIZE = 500;
+
+    enum Outcome {
+        SENT,
+        /** Transient failure (unavailable, quota); worth sending again later. */
+        RETRY,
+        /** The token is no longer registered or was never valid; stop using it. */
+        INVALID_TOKEN,
+        /** Rejected for a reason retrying will not fix. */
+        FAILED
+    }
+
+    record PushMessage(String title, String body, Map<String, String> data) {
+        public PushMessage {
+            data = data == null ? Map.of() : Map.copyOf(data);
+        }
+    }
+
+    record Delivery(String token, PushMessage message) {}
+
+    /** Sends up to {@link #MAX_BATCH_SIZE} deliveries; the result has one outcome per delivery. */
+    List<Outcome> send(List<Delivery> deliveries);
+
+    String name();
+}
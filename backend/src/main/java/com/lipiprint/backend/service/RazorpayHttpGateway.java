@@ -0,0 +1,238 @@
+package com.lipiprint.backend.service;
+
+import com.razorpay.RazorpayException;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.HttpHostConnectException;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.NoHttpResponseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PaymentGateway} over Razorpay's REST API with one long-lived, pooled HTTP client, so checkout
+ * reuses kept-alive TLS connections instead of building a new SDK client per order.
+ *
+ * Every call has explicit pool, connect and response timeouts. Reads (GET) are retried with backoff
+ * on I/O errors, 429 and 5xx. Order creation is not idempotent, so it is only retried when the
+ * connection could not be established and the request therefore never reached Razorpay. A read that
+ * fails on a pooled connection Razorpay already closed is resent on a fresh connection without
+ * counting as a retry, once per attempt.
+ */
+@Component
+@ConditionalOnProperty(name = "razorpay.gateway", havingValue = "http", matchIfMissing = true)
+public class RazorpayHttpGateway implements PaymentGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(RazorpayHttpGateway.class);
+
+    private static final class GatewayResponse {
+        final int status;
+        final String body;
+
+        GatewayResponse(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    @Value("${razorpay.key_id}")
+    private String keyId;
+
+    @Value("${razorpay.key_secret}")
+    private String keySecret;
+
+    @Value("${razorpay.api-base-url:https://api.razorpay.com}")
+    private String baseUrl;
+
+    @Value("${razorpay.http.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${razorpay.http.response-timeout-ms:8000}")
+    private long responseTimeoutMs;
+
+    @Value("${razorpay.http.max-connections:20}")
+    private int maxConnections;
+
+    @Value("${razorpay.http.max-retries:2}")
+    private int maxRetries;
+
+    private CloseableHttpClient httpClient;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private String authorization;
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    @PostConstruct
+    public void init() {
+        connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnections)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .setTimeToLive(TimeValue.ofMinutes(5))
+                // Re-check connections idle this long before reuse; the server may close one after an error
+                .setValidateAfterInactivity(TimeValue.ofSeconds(1))
+                .build())
+            .build();
+        httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .build())
+            // Retries are decided here, per operation
+            .disableAutomaticRetries()
+            .evictIdleConnections(TimeValue.ofSeconds(30))
+            .build();
+        authorization = "Basic " + Base64.getEncoder()
+            .encodeToString((keyId + ":" + keySecret).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    @Override
+    public JSONObject createOrder(int amountPaise, String currency, String receipt) throws RazorpayException {
+        JSONObject request = new JSONObject();
+        request.put("amount", amountPaise);
+        request.put("currency", currency);
+        request.put("receipt", receipt);
+        request.put("payment_capture", 1);
+
+        HttpPost post = new HttpPost(baseUrl + "/v1/orders");
+        post.setEntity(new StringEntity(request.toString(), ContentType.APPLICATION_JSON));
+        return new JSONObject(execute("orders.create", post, false).body);
+    }
+
+    @Override
+    public List<JSONObject> fetchPayments(long fromEpochSeconds, long toEpochSeconds, int skip, int count) throws RazorpayException {
+        HttpGet get = new HttpGet(baseUrl + "/v1/payments?from=" + fromEpochSeconds + "&to=" + toEpochSeconds
+            + "&skip=" + skip + "&count=" + count);
+        JSONArray items = new JSONObject(execute("payments.list", get, true).body).optJSONArray("items");
+        List<JSONObject> payments = new ArrayList<>();
+        if (items != null) {
+            for (int i = 0; i < items.length(); i++) {
+                payments.add(items.getJSONObject(i));
+            }
+        }
+        return payments;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("gateway", "razorpay");
+        stats.put("operations", latency.snapshot());
+        if (connectionManager != null) {
+            var pool = connectionManager.getTotalStats();
+            stats.put("pool", Map.of("leased", pool.getLeased(), "available", pool.getAvailable(),
+                "pending", pool.getPending(), "max", pool.getMax()));
+        }
+        return stats;
+    }
+
+    private GatewayResponse execute(String operation, ClassicHttpRequest request, boolean idempotent) throws RazorpayException {
+        request.setHeader("Authorization", authorization);
+        int attempt = 0;
+        boolean staleResent = false;
+        while (true) {
+            attempt++;
+            long start = System.nanoTime();
+            GatewayResponse response;
+            try {
+                response = httpClient.execute(request, r -> new GatewayResponse(r.getCode(),
+                    r.getEntity() != null ? EntityUtils.toString(r.getEntity(), StandardCharsets.UTF_8) : ""));
+                staleResent = false;
+            } catch (NoHttpResponseException e) {
+                // The pooled connection was closed by the server; the pool drops it, so resend on a new one
+                if (idempotent && !staleResent) {
+                    staleResent = true;
+                    attempt--;
+                    logger.debug("[RazorpayHttpGateway] {} hit a stale connection; resending", operation);
+                    continue;
+                }
+                latency.record(operation, start, false);
+                if (idempotent && attempt <= maxRetries) {
+                    logger.warn("[RazorpayHttpGateway] {} failed (attempt {}): {}; retrying", operation, attempt, e.getMessage());
+                    backoff(attempt);
+                    continue;
+                }
+                throw new RazorpayException(operation + " failed: " + e.getMessage());
+            } catch (IOException e) {
+                latency.record(operation, start, false);
+                boolean notSent = e instanceof ConnectTimeoutException || e instanceof HttpHostConnectException;
+                if ((idempotent || notSent) && attempt <= maxRetries) {
+                    logger.warn("[RazorpayHttpGateway] {} failed (attempt {}): {}; retrying", operation, attempt, e.getMessage());
+                    backoff(attempt);
+                    continue;
+                }
+                throw new RazorpayException(operation + " failed: " + e.getMessage());
+            }
+
+            boolean success = response.status >= 200 && response.status < 300;
+            latency.record(operation, start, success);
+            if (success) {
+                return response;
+            }
+            boolean retryable = response.status == 429 || response.status >= 500;
+            if (idempotent && retryable && attempt <= maxRetries) {
+                logger.warn("[RazorpayHttpGateway] {} returned {} (attempt {}); retrying", operation, response.status, attempt);
+                backoff(attempt);
+                continue;
+            }
+            throw new RazorpayException(errorMessage(response));
+        }
+    }
+
+    private static String errorMessage(GatewayResponse response) {
+        try {
+            JSONObject error = new JSONObject(response.body).optJSONObject("error");
+            if (error != null && error.has("description")) {
+                return error.optString("code", "ERROR") + ": " + error.getString("description");
+            }
+        } catch (Exception ignored) {
+            // Not JSON; fall through to the raw status
+        }
+        return "Razorpay returned HTTP " + response.status;
+    }
+
+    private static void backoff(int attempt) throws RazorpayException {
+        try {
+            Thread.sleep(200L << Math.min(attempt - 1, 4));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RazorpayException("Interrupted while retrying");
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.lipiprint.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.entity.Payment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Razorpay webhook ingestion.
+ *
+ * The request thread only verifies the signature over the raw body, records the event in
+ * {@code razorpay_webhook_events} and hands it to a worker, so Razorpay gets its 200 quickly and a
+ * redelivered event (same {@code X-Razorpay-Event-Id}) is a single no-op INSERT. Payment and order
+ * updates run on one of a few single-threaded lanes chosen by {@code razorpay_order_id}, so events for
+ * the same order are applied in the order they arrived while different orders proceed in parallel.
+ *
+ * The stored payload doubles as a durable inbox: events still RECEIVED after a restart, or that did
+ * not fit in a lane's queue, are picked up again by {@link #recoverPending()}. The table is created by
+ * setup-database.sql.
+ */
+@Service
+public class RazorpayWebhookService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RazorpayWebhookService.class);
+
+    static final String TABLE = "razorpay_webhook_events";
+    private static final long RECOVERY_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long STUCK_PROCESSING_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    public enum Result { ACCEPTED, DUPLICATE, INVALID_SIGNATURE, MALFORMED }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private RecentActivityFeed recentActivityFeed;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Razorpay signs webhooks with the secret set on the webhook in the dashboard
+    @Value("${razorpay.webhook_secret:${razorpay.key_secret}}")
+    private String webhookSecret;
+
+    @Value("${razorpay.webhook.lanes:4}")
+    private int laneCount;
+
+    @Value("${razorpay.webhook.lane-capacity:500}")
+    private int laneCapacity;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ThreadLocal<Mac> macs;
+    private ThreadPoolExecutor[] lanes;
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        // Anything left mid-processing by a crash is retried
+        jdbcTemplate.update("UPDATE " + TABLE + " SET status = 'RECEIVED' WHERE status = 'PROCESSING' AND received_at < ?",
+            System.currentTimeMillis() - STUCK_PROCESSING_MILLIS);
+
+        if (webhookSecret == null || webhookSecret.isBlank()) {
+            logger.warn("[RazorpayWebhookService] No webhook secret configured; all webhooks will be rejected");
+        } else {
+            SecretKeySpec key = new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+            // Mac is not thread-safe; each request thread keeps its own initialised instance
+            macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance("HmacSHA256");
+                    mac.init(key);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("HmacSHA256 unavailable", e);
+                }
+            });
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "razorpay-webhook-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, laneCapacity)), r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (lanes != null) {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Verifies and records a webhook delivery and queues it for processing. Only the signature check,
+     * one JSON parse and one INSERT happen on the caller's thread.
+     */
+    public Result accept(byte[] body, String signature, String eventId) {
+        if (!verifySignature(body, signature)) {
+            rejected.incrementAndGet();
+            return Result.INVALID_SIGNATURE;
+        }
+        JsonNode event;
+        try {
+            event = objectMapper.readTree(body);
+        } catch (Exception e) {
+            return Result.MALFORMED;
+        }
+        if (event == null || !event.isObject()) {
+            return Result.MALFORMED;
+        }
+
+        String id = eventId != null && !eventId.isBlank() ? eventId.trim() : "sha256:" + sha256Hex(body);
+        String orderId = razorpayOrderId(event);
+        String payload = new String(body, StandardCharsets.UTF_8);
+        int inserted = jdbcTemplate.update(
+            "INSERT INTO " + TABLE + " (event_id, event_type, razorpay_order_id, payload, status, received_at) "
+                + "VALUES (?, ?, ?, ?, 'RECEIVED', ?) ON CONFLICT (event_id) DO NOTHING",
+            id, event.path("event").asText(null), orderId, payload, System.currentTimeMillis());
+        if (inserted == 0) {
+            duplicates.incrementAndGet();
+            logger.info("[RazorpayWebhookService] Duplicate webhook event {} ignored", id);
+            return Result.DUPLICATE;
+        }
+
+        accepted.incrementAndGet();
+        dispatch(id, orderId, event);
+        return Result.ACCEPTED;
+    }
+
+    boolean verifySignature(byte[] body, String signature) {
+        if (macs == null || signature == null || signature.isBlank()) {
+            return false;
+        }
+        byte[] expected;
+        try {
+            // Razorpay sends the HMAC-SHA256 of the raw body as lowercase hex
+            expected = HexFormat.of().parseHex(signature.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Mac mac = macs.get();
+        byte[] actual = mac.doFinal(body);
+        return MessageDigest.isEqual(actual, expected);
+    }
+
+    public Map<String, Object> stats() {
+        int queued = 0;
+        if (lanes != null) {
+            for (ThreadPoolExecutor lane : lanes) {
+                queued += lane.getQueue().size();
+            }
+        }
+        return Map.of(
+            "accepted", accepted.get(),
+            "duplicates", duplicates.get(),
+            "rejected", rejected.get(),
+            "processed", processed.get(),
+            "failed", failed.get(),
+            "queued", queued);
+    }
+
+    /**
+     * Re-dispatches events that were recorded but never picked up: left over from a previous run, or
+     * turned away by a full lane.
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 30000)
+    public void recoverPending() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+            "SELECT event_id, razorpay_order_id, payload FROM " + TABLE
+                + " WHERE status = 'RECEIVED' AND received_at < ? ORDER BY received_at LIMIT 200",
+            System.currentTimeMillis() - RECOVERY_AGE_MILLIS);
+        for (Map<String, Object> row : rows) {
+            String id = (String) row.get("event_id");
+            try {
+                dispatch(id, (String) row.get("razorpay_order_id"), objectMapper.readTree((String) row.get("payload")));
+            } catch (Exception e) {
+                markFailed(id, e);
+            }
+        }
+        if (!rows.isEmpty()) {
+            logger.info("[RazorpayWebhookService] Re-dispatched {} pending webhook events", rows.size());
+        }
+    }
+
+    private void dispatch(String eventId, String orderId, JsonNode event) {
+        ThreadPoolExecutor lane = lanes[Math.floorMod(orderId != null ? orderId.hashCode() : eventId.hashCode(), lanes.length)];
+        try {
+            lane.execute(() -> process(eventId, event));
+        } catch (RejectedExecutionException e) {
+            // Stays RECEIVED in the table; recoverPending will submit it again
+            logger.warn("[RazorpayWebhookService] Lane full, event {} deferred to recovery", eventId);
+        }
+    }
+
+    private void process(String eventId, JsonNode event) {
+        // Claim the row so a recovery pass cannot process the same event concurrently
+        int claimed = jdbcTemplate.update(
+            "UPDATE " + TABLE + " SET status = 'PROCESSING' WHERE event_id = ? AND status = 'RECEIVED'", eventId);
+        if (claimed == 0) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> applyPaymentEvent(event));
+            jdbcTemplate.update("UPDATE " + TABLE + " SET status = 'PROCESSED', processed_at = ? WHERE event_id = ?",
+                System.currentTimeMillis(), eventId);
+            processed.incrementAndGet();
+        } catch (Exception e) {
+            markFailed(eventId, e);
+        }
+    }
+
+    private void applyPaymentEvent(JsonNode event) {
+        JsonNode paymentData = event.path("payload").path("payment").path("entity");
+        if (!paymentData.isObject()) {
+            logger.info("[RazorpayWebhookService] Ignoring {} event without a payment entity", event.path("event").asText());
+            return;
+        }
+        String razorpayOrderId = paymentData.path("order_id").asText(null);
+        String razorpayPaymentId = paymentData.path("id").asText(null);
+        Double amount = paymentData.hasNonNull("amount") ? paymentData.get("amount").asDouble() / 100.0 : null;
+        String status = paymentData.path("status").asText(null);
+
+        Payment paymentRecord = paymentService.findByRazorpayOrderId(razorpayOrderId).orElseGet(Payment::new);
+        paymentRecord.setRazorpayOrderId(razorpayOrderId);
+        paymentRecord.setRazorpayPaymentId(razorpayPaymentId);
+        paymentRecord.setAmount(amount);
+        if ("captured".equals(status)) {
+            boolean newlyCaptured = paymentRecord.getStatus() != Payment.Status.SUCCESS;
+            paymentRecord.setStatus(Payment.Status.SUCCESS);
+            // Update order status if linked
+            if (paymentRecord.getOrder() != null) {
+                Order order = paymentRecord.getOrder();
+                if (newlyCaptured) {
+                    recentActivityFeed.paymentCaptured(order.getId());
+                }
+                Order.Status previous = order.getStatus();
+                order.setStatus(Order.Status.PROCESSING);
+                orderService.save(order, razorpayOrderId);
+                orderService.publishStatusChange(order, previous);
+            }
+        } else if ("failed".equals(status)) {
+            paymentRecord.setStatus(Payment.Status.FAILED);
+            if (paymentRecord.getOrder() != null) {
+                Order order = paymentRecord.getOrder();
+                Order.Status previous = order.getStatus();
+                order.setStatus(Order.Status.OUT_FOR_DELIVERY);
+                orderService.save(order, razorpayOrderId);
+                orderService.publishStatusChange(order, previous);
+            }
+        } else {
+            paymentRecord.setStatus(Payment.Status.PENDING);
+        }
+        paymentService.save(paymentRecord);
+    }
+
+    private void markFailed(String eventId, Exception e) {
+        failed.incrementAndGet();
+        logger.error("[RazorpayWebhookService] Failed to process webhook event {}: {}", eventId, e.getMessage(), e);
+        String message = e.getMessage() != null && e.getMessage().length() > 1000 ? e.getMessage().substring(0, 1000) : e.getMessage();
+        jdbcTemplate.update("UPDATE " + TABLE + " SET status = 'FAILED', error = ?, processed_at = ? WHERE event_id = ?",
+            message, System.currentTimeMillis(), eventId);
+    }
+
+    private static String razorpayOrderId(JsonNode event) {
+        JsonNode payload = event.path("payload");
+        String fromPayment = payload.path("payment").path("entity").path("order_id").asText(null);
+        return fromPayment != null ? fromPayment : payload.path("order").path("entity").path("id").asText(null);
+    }
+
+    private static String sha256Hex(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
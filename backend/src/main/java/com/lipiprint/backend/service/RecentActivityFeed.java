@@ -0,0 +1,165 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The admin dashboard's recent activity feed: a fixed-size ring buffer of order events (created,
+ * status changed, payment captured), newest first.
+ *
+ * Each event is recorded after its transaction commits, from a single-row projection of the order and
+ * its user read by id, so the feed never holds entities or triggers lazy loads. On startup the buffer
+ * is filled with the most recently placed orders through the {@code created_at} index (created by
+ * setup-database.sql), so the feed is not empty after a restart.
+ */
+@Component
+public class RecentActivityFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentActivityFeed.class);
+
+    public static final String ORDER_CREATED = "order.created";
+    public static final String ORDER_STATUS = "order.status";
+    public static final String PAYMENT_CAPTURED = "payment.captured";
+
+    private static final String PROJECTION = "SELECT o.id, o.status, u.name, o.total_amount, o.delivery_type, o.payment_method, "
+        + "o.created_at, o.awb_number, o.courier_name, o.phone, o.delivery_address "
+        + "FROM orders o LEFT JOIN users u ON u.id = o.user_id ";
+
+    /** One feed entry; {@code seq} orders entries and is unique, unlike the order id. */
+    public record Activity(long seq, String event, Long orderId, String type, String action, String user, Double amount,
+                           String deliveryType, String paymentMethod, LocalDateTime time, String awbNumber,
+                           String courierName, String phone, String address) {
+
+        // Same keys as the entity-based feed it replaces, plus the event and its sequence number
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("seq", seq);
+            map.put("event", event);
+            map.put("id", orderId);
+            map.put("type", type);
+            map.put("action", action);
+            map.put("user", user != null ? user : "Unknown");
+            map.put("amount", amount);
+            map.put("delivery_type", deliveryType != null ? deliveryType : "UNKNOWN");
+            map.put("payment_method", paymentMethod != null ? paymentMethod : "UNKNOWN");
+            map.put("time", time != null ? time.toString() : "");
+            map.put("awb_number", awbNumber);
+            map.put("courier_name", courierName);
+            map.put("phone", phone);
+            map.put("address", address);
+            return map;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Activity[] ring;
+    private int head; // next slot to write
+    private int size;
+    private long seq;
+
+    @Autowired
+    public RecentActivityFeed(@Value("${lipiprint.analytics.activity.capacity:200}") int capacity) {
+        this.ring = new Activity[Math.max(1, capacity)];
+    }
+
+    @PostConstruct
+    public void init() {
+        List<Activity> latest = new ArrayList<>();
+        try {
+            jdbcTemplate.query(PROJECTION + "WHERE o.created_at IS NOT NULL ORDER BY o.created_at DESC LIMIT ?",
+                (RowCallbackHandler) rs -> latest.add(activity(rs, "order", null, null, null)),
+                ring.length);
+        } catch (Exception e) {
+            // The feed is best effort; it fills up with new events instead
+            logger.warn("[RecentActivityFeed] Could not preload recent orders: {}", e.getMessage());
+        }
+        Collections.reverse(latest);
+        latest.forEach(this::append);
+        logger.info("[RecentActivityFeed] Preloaded {} recent orders", latest.size());
+    }
+
+    public void orderCreated(Long orderId) {
+        recordAfterCommit(orderId, ORDER_CREATED, "order", null);
+    }
+
+    public void statusChanged(Long orderId) {
+        recordAfterCommit(orderId, ORDER_STATUS, "order", null);
+    }
+
+    public void paymentCaptured(Long orderId) {
+        recordAfterCommit(orderId, PAYMENT_CAPTURED, "payment", "PAID");
+    }
+
+    private void recordAfterCommit(Long orderId, String event, String type, String action) {
+        if (orderId == null) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            try {
+                LocalDateTime now = LocalDateTime.now();
+                jdbcTemplate.query(PROJECTION + "WHERE o.id = ?",
+                    (RowCallbackHandler) rs -> append(activity(rs, type, event, action, now)),
+                    orderId);
+            } catch (Exception e) {
+                // The feed is best effort; the order itself is committed
+                logger.warn("[RecentActivityFeed] Could not record {} for order {}: {}", event, orderId, e.getMessage());
+            }
+        });
+    }
+
+    // An event of the given type from the projection row; action defaults to the order status, time to created_at
+    private static Activity activity(ResultSet rs, String type, String event, String action, LocalDateTime time) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        String status = rs.getString("status");
+        Object total = rs.getObject("total_amount");
+        return new Activity(0, event != null ? event : ORDER_CREATED, rs.getLong("id"), type,
+            action != null ? action : (status != null ? status : Order.Status.PENDING.name()),
+            rs.getString("name"), total != null ? ((Number) total).doubleValue() : null, rs.getString("delivery_type"), rs.getString("payment_method"),
+            time != null ? time : (createdAt != null ? createdAt.toLocalDateTime() : null),
+            rs.getString("awb_number"), rs.getString("courier_name"), rs.getString("phone"), rs.getString("delivery_address"));
+    }
+
+    /** Adds an entry, overwriting the oldest once the buffer is full; the entry gets the next sequence number. */
+    synchronized Activity append(Activity activity) {
+        Activity numbered = new Activity(++seq, activity.event(), activity.orderId(), activity.type(), activity.action(),
+            activity.user(), activity.amount(), activity.deliveryType(), activity.paymentMethod(), activity.time(),
+            activity.awbNumber(), activity.courierName(), activity.phone(), activity.address());
+        ring[head] = numbered;
+        head = (head + 1) % ring.length;
+        size = Math.min(size + 1, ring.length);
+        return numbered;
+    }
+
+    /** Up to {@code limit} entries, newest first. */
+    public synchronized List<Activity> recent(int limit) {
+        int count = Math.min(Math.max(0, limit), size);
+        List<Activity> recent = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            recent.add(ring[(head - i + ring.length) % ring.length]);
+        }
+        return recent;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+}
@@ -0,0 +1,206 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.Settings;
+import com.lipiprint.backend.repository.SettingsRepository;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory view of the {@code settings} table. The current values live in one immutable snapshot
+ * held in a volatile field, so reading a setting is a field read and a map lookup; writes go to the
+ * database first and then swap in a freshly loaded snapshot.
+ *
+ * With {@code lipiprint.settings.listen=true} every write also sends a Postgres
+ * {@code NOTIFY settings_changed}, and a listener on its own connection reloads the snapshot when
+ * another instance changes a setting. Without it, instances converge through the periodic refresh.
+ */
+@Component
+public class SettingsRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SettingsRegistry.class);
+
+    static final String CHANNEL = "settings_changed";
+
+    /** A named setting with its parser and the value used when it is missing or unparseable. */
+    public record Key<T>(String name, Function<String, T> parser, T defaultValue) {
+        public static Key<Boolean> bool(String name, boolean defaultValue) {
+            return new Key<>(name, raw -> {
+                String value = raw.trim();
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                    throw new IllegalArgumentException("Not a boolean: " + raw);
+                }
+                return Boolean.parseBoolean(value);
+            }, defaultValue);
+        }
+
+        public static Key<Integer> integer(String name, int defaultValue) {
+            return new Key<>(name, raw -> Integer.parseInt(raw.trim()), defaultValue);
+        }
+
+        public static Key<String> string(String name, String defaultValue) {
+            return new Key<>(name, raw -> raw, defaultValue);
+        }
+    }
+
+    public static final Key<Boolean> ACCEPTING_ORDERS = Key.bool("acceptingOrders", true);
+
+    private record Snapshot(Map<String, String> values, long loadedAt) {}
+
+    @Autowired
+    private SettingsRepository settingsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${lipiprint.settings.listen:false}")
+    private boolean listen;
+
+    @Value("${spring.datasource.url:}")
+    private String datasourceUrl;
+
+    @Value("${spring.datasource.username:}")
+    private String datasourceUsername;
+
+    @Value("${spring.datasource.password:}")
+    private String datasourcePassword;
+
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), 0);
+    private volatile boolean running;
+    private Thread listener;
+
+    @PostConstruct
+    public void init() {
+        reload();
+        if (listen) {
+            running = true;
+            listener = new Thread(this::listenLoop, "settings-listener");
+            listener.setDaemon(true);
+            listener.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    public <T> T get(Key<T> key) {
+        String raw = snapshot.values().get(key.name());
+        if (raw == null) {
+            return key.defaultValue();
+        }
+        try {
+            return key.parser().apply(raw);
+        } catch (RuntimeException e) {
+            return key.defaultValue();
+        }
+    }
+
+    /** All current values by key, for diagnostics. */
+    public Map<String, String> values() {
+        return snapshot.values();
+    }
+
+    /** Writes a setting, then publishes the new snapshot here and, if listening, to other instances. */
+    public synchronized void set(Key<?> key, String value) {
+        // Validates before anything is written
+        key.parser().apply(value);
+        List<Settings> existing = settingsRepository.findByKeyOrderByIdAsc(key.name());
+        Settings setting = existing.isEmpty() ? new Settings() : existing.get(0);
+        setting.setKey(key.name());
+        setting.setValue(value);
+        settingsRepository.save(setting);
+        changed();
+    }
+
+    /** Called after any write to the settings table. */
+    public void changed() {
+        reload();
+        if (listen) {
+            try {
+                jdbcTemplate.execute("NOTIFY " + CHANNEL);
+            } catch (Exception e) {
+                logger.warn("[SettingsRegistry] Could not notify other instances: {}", e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void reload() {
+        List<Settings> rows = settingsRepository.findAll();
+        rows.sort(Comparator.comparing(Settings::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        Map<String, String> values = new HashMap<>();
+        for (Settings row : rows) {
+            // Duplicated keys have happened; the oldest row wins, as it did for the old lookups
+            if (row.getKey() != null && row.getValue() != null) {
+                values.putIfAbsent(row.getKey(), row.getValue());
+            }
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(values), System.currentTimeMillis());
+    }
+
+    // Safety net for missed notifications, and the only propagation when not listening
+    @Scheduled(fixedDelayString = "${lipiprint.settings.refresh-ms:300000}", initialDelayString = "${lipiprint.settings.refresh-ms:300000}")
+    public void refresh() {
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.warn("[SettingsRegistry] Refresh failed, keeping the current snapshot: {}", e.getMessage());
+        }
+    }
+
+    private void listenLoop() {
+        long backoff = 1000;
+        while (running) {
+            // A dedicated connection: a pooled one would be held forever and recycled under us
+            try (Connection connection = DriverManager.getConnection(datasourceUrl, datasourceUsername, datasourcePassword)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // Anything changed while we were not listening
+                reload();
+                backoff = 1000;
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                logger.info("[SettingsRegistry] Listening for setting changes on {}", CHANNEL);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(10_000);
+                    if (notifications != null && notifications.length > 0) {
+                        reload();
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("[SettingsRegistry] Settings listener failed, retrying in {} ms: {}", backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, 60_000);
+            }
+        }
+    }
+}
@@ -12,8 +12,13 @@ public class SettingsService {
     @Autowired
     private SettingsRepository settingsRepository;
 
+    @Autowired
+    private SettingsRegistry settingsRegistry;
+
     public Settings save(Settings settings) {
-        return settingsRepository.save(settings);
+        Settings saved = settingsRepository.save(settings);
+        settingsRegistry.changed();
+        return saved;
     }
 
     public Optional<Settings> findById(Long id) {
@@ -24,26 +29,13 @@ public class SettingsService {
         return settingsRepository.findAll();
     }
 
-    // Get acceptingOrders setting (default true if not set)
+    // Get acceptingOrders setting (default true if not set); served from the in-memory snapshot
     public boolean isAcceptingOrders() {
-        return settingsRepository.findAll().stream()
-            .filter(s -> "acceptingOrders".equals(s.getKey()))
-            .findFirst()
-            .map(s -> Boolean.parseBoolean(s.getValue()))
-            .orElse(true);
+        return settingsRegistry.get(SettingsRegistry.ACCEPTING_ORDERS);
     }
 
     // Set acceptingOrders setting
     public void setAcceptingOrders(boolean accepting) {
-        Settings s = settingsRepository.findAll().stream()
-            .filter(x -> "acceptingOrders".equals(x.getKey()))
-            .findFirst()
-            .orElseGet(() -> {
-                Settings news = new Settings();
-                news.setKey("acceptingOrders");
-                return news;
-            });
-        s.setValue(Boolean.toString(accepting));
-        settingsRepository.save(s);
+        settingsRegistry.set(SettingsRegistry.ACCEPTING_ORDERS, Boolean.toString(accepting));
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,246 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.dto.ShipmentRequest;
+import com.lipiprint.backend.dto.ShipmentResponse;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.entity.UserAddress;
+import com.lipiprint.backend.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates NimbusPost shipments for COMPLETED delivery orders off the admin's request thread.
+ *
+ * Orders are queued by id and flushed through the bulk shipment endpoint once {@code batch-size}
+ * orders are waiting or {@code linger-ms} has passed since the first one arrived. AWBs from a batch
+ * are written back with a single saveAll. A batch of one goes through the regular single-shipment
+ * path. If the bulk request never reached NimbusPost the batch falls back to one call per order; if it
+ * failed after being sent (a timeout, an unreadable response) some shipments may already exist, so the
+ * orders are held as unconfirmed instead of being resubmitted. Unconfirmed orders are not shipped
+ * again by the dispatcher until an admin has looked them up in NimbusPost and retried them.
+ */
+@Service
+public class ShipmentDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShipmentDispatcher.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private NimbusPostService nimbusPostService;
+
+    // Lazy: OrderService enqueues into this dispatcher, and the dispatcher reuses its shipment helpers
+    @Autowired
+    @Lazy
+    private OrderService orderService;
+
+    @Value("${nimbuspost.dispatch.batch-size:25}")
+    private int batchSize;
+
+    @Value("${nimbuspost.dispatch.linger-ms:2000}")
+    private long lingerMs;
+
+    @Value("${nimbuspost.dispatch.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private BlockingQueue<Long> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    // Order id -> order number of orders whose bulk request failed after it was sent
+    private final Map<Long, String> unconfirmed = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        worker = new Thread(this::run, "shipment-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+        if (queue != null && !queue.isEmpty()) {
+            logger.warn("[ShipmentDispatcher] Stopping with {} orders still queued; use shipping retry to resubmit them", queue.size());
+        }
+    }
+
+    /**
+     * Queues an order for shipment creation. Returns false if the queue is full, in which case the
+     * caller should create the shipment itself.
+     */
+    public boolean enqueue(Long orderId) {
+        if (orderId == null || !running) {
+            return false;
+        }
+        boolean accepted = queue.offer(orderId);
+        if (accepted) {
+            logger.info("[ShipmentDispatcher] Order {} queued for shipment ({} waiting)", orderId, queue.size());
+        } else {
+            logger.warn("[ShipmentDispatcher] Queue full, order {} will be shipped inline", orderId);
+        }
+        return accepted;
+    }
+
+    public int getQueuedCount() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /** Orders whose shipment may or may not exist in NimbusPost, by id, with the order number to look up. */
+    public Map<Long, String> getUnconfirmed() {
+        return Collections.unmodifiableMap(unconfirmed);
+    }
+
+    /** Releases an unconfirmed order once an admin has reconciled it, e.g. before retrying its shipment. */
+    public void confirmed(Long orderId) {
+        if (orderId != null && unconfirmed.remove(orderId) != null) {
+            logger.info("[ShipmentDispatcher] Order {} reconciled", orderId);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Long first = queue.take();
+                Set<Long> batch = new LinkedHashSet<>();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Long next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(new ArrayList<>(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("[ShipmentDispatcher] Unexpected error while dispatching shipments: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    void flush(List<Long> orderIds) {
+        if (!nimbusPostService.isEnabled()) {
+            logger.warn("[ShipmentDispatcher] NimbusPost disabled, dropping {} queued orders", orderIds.size());
+            return;
+        }
+
+        List<Order> orders = orderRepository.findAllWithUserByIdIn(orderIds).stream()
+            .filter(Order::canBeShipped)
+            .filter(order -> {
+                boolean held = unconfirmed.containsKey(order.getId());
+                if (held) {
+                    logger.warn("[ShipmentDispatcher] Order {} awaits reconciliation of an earlier bulk request, not resubmitting", order.getId());
+                }
+                return !held;
+            })
+            .toList();
+        if (orders.isEmpty()) {
+            return;
+        }
+
+        if (orders.size() == 1) {
+            orderService.processShipment(orders.get(0));
+            return;
+        }
+
+        logger.info("[ShipmentDispatcher] Flushing {} orders through the bulk shipment API", orders.size());
+
+        Map<String, Order> ordersByNumber = new HashMap<>();
+        List<ShipmentRequest> requests = new ArrayList<>();
+        for (Order order : orders) {
+            try {
+                UserAddress address = orderService.parseDeliveryAddress(order);
+                if (address == null) {
+                    logger.warn("[ShipmentDispatcher] No valid delivery address found for order {}", order.getId());
+                    continue;
+                }
+                String customerName = order.getUser() != null ? order.getUser().getName() : "Customer";
+                String customerEmail = order.getUser() != null ? order.getUser().getEmail() : "customer@lipiprint.com";
+                ShipmentRequest request = nimbusPostService.buildShipmentRequest(order, address, customerName, customerEmail);
+
+                // Served from the quote cache for repeat destinations
+                Map<String, Object> serviceability = nimbusPostService.checkServiceability(
+                    request.getPickupPincode(), request.getDeliveryPincode(), request.getWeight());
+                if (!Boolean.TRUE.equals(serviceability.get("serviceable"))) {
+                    logger.error("[ShipmentDispatcher] Order {} not serviceable: {}", order.getId(), serviceability.get("message"));
+                    continue;
+                }
+
+                requests.add(request);
+                ordersByNumber.put(request.getOrderNumber(), order);
+            } catch (Exception e) {
+                logger.error("[ShipmentDispatcher] Failed to prepare shipment for order {}: {}", order.getId(), e.getMessage());
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        Map<String, ShipmentResponse> responses;
+        try {
+            responses = nimbusPostService.parseBulkShipmentResponse(nimbusPostService.createBulkShipments(requests));
+        } catch (NimbusPostService.ShipmentNotSentException e) {
+            // Nothing was created, so it is safe to fall back to one call per order
+            logger.error("[ShipmentDispatcher] Bulk shipment call not sent, falling back to single shipments: {}", e.getMessage());
+            ordersByNumber.values().forEach(orderService::processShipment);
+            return;
+        } catch (Exception e) {
+            // The courier may have created some or all of these; resubmitting could book a second AWB
+            ordersByNumber.forEach((number, order) -> unconfirmed.put(order.getId(), number));
+            logger.error("[ShipmentDispatcher] Bulk shipment call failed after it was sent: {}. Look up order numbers {} "
+                + "in NimbusPost before retrying them", e.getMessage(), ordersByNumber.keySet());
+            return;
+        }
+
+        List<Order> shipped = new ArrayList<>();
+        for (Map.Entry<String, Order> entry : ordersByNumber.entrySet()) {
+            Order order = entry.getValue();
+            ShipmentResponse response = responses.get(entry.getKey());
+            if (response != null && response.isStatus() && response.getAwbNumber() != null) {
+                orderService.applyShipmentResponse(order, response);
+                shipped.add(order);
+            } else {
+                // Not resubmitted automatically to avoid duplicate shipments; the retry endpoint covers it
+                logger.error("[ShipmentDispatcher] Bulk shipment failed for order {}: {}", order.getId(),
+                    response != null ? response.getMessage() : "No result returned for this order");
+            }
+        }
+
+        if (!shipped.isEmpty()) {
+            orderRepository.saveAll(shipped);
+        }
+        logger.info("[ShipmentDispatcher] Bulk flush done: {} of {} orders shipped", shipped.size(), requests.size());
+    }
+}
@@ -0,0 +1,208 @@
+package com.lipiprint.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded TTL cache for NimbusPost serviceability and rate quotes.
+ *
+ * Entries are keyed by (kind, origin, destination, weight bucket, payment type). A fresh entry is
+ * returned as-is; a stale entry (past refresh-after but before expire-after) is still returned while
+ * one background reload replaces it; a missing or expired entry is loaded once and the result is
+ * shared by every concurrent caller asking for the same key.
+ */
+@Component
+public class ShippingQuoteCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShippingQuoteCache.class);
+
+    // Couriers bill in 500 g slabs, so one quote is valid for every weight inside the slab
+    public static final int WEIGHT_BUCKET_GRAMS = 500;
+
+    public record Key(String kind, String origin, String destination, int weightBucketGrams, String paymentType) {}
+
+    private static final class Entry {
+        final Map<String, Object> value;
+        final long refreshAt;
+        final long expireAt;
+
+        Entry(Map<String, Object> value, long refreshAt, long expireAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refresher;
+    private final LongSupplier clock;
+    private final long refreshAfterMillis;
+    private final long expireAfterMillis;
+    private final int maxEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public ShippingQuoteCache(@Value("${nimbuspost.quote-cache.refresh-after-seconds:900}") long refreshAfterSeconds,
+                              @Value("${nimbuspost.quote-cache.expire-after-seconds:21600}") long expireAfterSeconds,
+                              @Value("${nimbuspost.quote-cache.max-entries:5000}") int maxEntries) {
+        this(refreshAfterSeconds, expireAfterSeconds, maxEntries, System::currentTimeMillis);
+    }
+
+    ShippingQuoteCache(long refreshAfterSeconds, long expireAfterSeconds, int maxEntries, LongSupplier clock) {
+        this.refreshAfterMillis = TimeUnit.SECONDS.toMillis(refreshAfterSeconds);
+        this.expireAfterMillis = TimeUnit.SECONDS.toMillis(Math.max(refreshAfterSeconds, expireAfterSeconds));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.clock = clock;
+        // Refreshes are best effort: if the queue is full the stale value is simply served a bit longer
+        this.refresher = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100), r -> {
+            Thread t = new Thread(r, "shipping-quote-refresh");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public static int weightBucketGrams(double weightKg) {
+        int grams = (int) Math.ceil(weightKg * 1000);
+        int slabs = Math.max(1, (grams + WEIGHT_BUCKET_GRAMS - 1) / WEIGHT_BUCKET_GRAMS);
+        return slabs * WEIGHT_BUCKET_GRAMS;
+    }
+
+    /**
+     * Returns the cached quote for the key, loading it through {@code loader} when needed. Only results
+     * accepted by {@code cacheable} are stored; everything else is returned to the caller and dropped.
+     * Loader exceptions propagate to every caller waiting on the same load and are never cached.
+     */
+    public Map<String, Object> get(Key key, Supplier<Map<String, Object>> loader,
+                                   Predicate<Map<String, Object>> cacheable) {
+        long now = clock.getAsLong();
+        Entry entry = entries.get(key);
+        if (entry != null && now < entry.expireAt) {
+            if (now >= entry.refreshAt) {
+                staleHits.incrementAndGet();
+                refreshAsync(key, loader, cacheable);
+            } else {
+                hits.incrementAndGet();
+            }
+            return new HashMap<>(entry.value);
+        }
+        misses.incrementAndGet();
+        return new HashMap<>(load(key, loader, cacheable));
+    }
+
+    private Map<String, Object> load(Key key, Supplier<Map<String, Object>> loader,
+                                     Predicate<Map<String, Object>> cacheable) {
+        CompletableFuture<Map<String, Object>> own = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        try {
+            Map<String, Object> value = loader.get();
+            if (value != null && cacheable.test(value)) {
+                put(key, value);
+            }
+            own.complete(value != null ? value : Collections.emptyMap());
+            return own.join();
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private void refreshAsync(Key key, Supplier<Map<String, Object>> loader,
+                              Predicate<Map<String, Object>> cacheable) {
+        if (inFlight.containsKey(key)) {
+            return;
+        }
+        refresher.execute(() -> {
+            try {
+                load(key, loader, cacheable);
+            } catch (Exception e) {
+                // Keep serving the stale quote until it hard-expires
+                logger.warn("[ShippingQuoteCache] Background refresh failed for {}: {}", key, e.getMessage());
+            }
+        });
+    }
+
+    private void put(Key key, Map<String, Object> value) {
+        long now = clock.getAsLong();
+        entries.put(key, new Entry(Collections.unmodifiableMap(new HashMap<>(value)),
+            now + refreshAfterMillis, now + expireAfterMillis));
+        if (entries.size() > maxEntries) {
+            evict(now);
+        }
+    }
+
+    // Drops expired entries first, then the oldest ones, down to 90% of capacity so the scan is rare
+    private synchronized void evict(long now) {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        entries.entrySet().removeIf(e -> now >= e.getValue().expireAt);
+        int target = Math.max(1, (int) (maxEntries * 0.9));
+        int excess = entries.size() - target;
+        if (excess > 0) {
+            entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().refreshAt))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+}
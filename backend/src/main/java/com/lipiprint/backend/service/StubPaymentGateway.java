@@ -0,0 +1,145 @@
+package com.lipiprint.backend.service;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process {@link PaymentGateway} for running checkout offline and for load tests
+ * ({@code razorpay.gateway=stub}). Orders get {@code order_stub...} ids, and each one is paid
+ * immediately by a captured {@code pay_stub...} payment, which {@link #fetchPayments} pages through
+ * like the real API. {@code razorpay.stub.latency-ms} adds a fixed delay to every call to mimic the
+ * network round trip. Only the newest {@code razorpay.stub.max-payments} payments are kept, so a long
+ * load test does not grow the heap without bound.
+ */
+@Component
+@ConditionalOnProperty(name = "razorpay.gateway", havingValue = "stub")
+public class StubPaymentGateway implements PaymentGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(StubPaymentGateway.class);
+
+    // Keyed by (created_at, sequence) so listing a time window is a sub-map view
+    private final ConcurrentSkipListMap<Long, JSONObject> payments = new ConcurrentSkipListMap<>();
+    // The skip list's size() walks every entry
+    private final AtomicInteger paymentCount = new AtomicInteger();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final LongSupplier clock;
+    private final long latencyMs;
+    private final int maxPayments;
+
+    @Autowired
+    public StubPaymentGateway(@Value("${razorpay.stub.latency-ms:0}") long latencyMs,
+                              @Value("${razorpay.stub.max-payments:100000}") int maxPayments) {
+        this(latencyMs, maxPayments, System::currentTimeMillis);
+    }
+
+    StubPaymentGateway(long latencyMs, int maxPayments, LongSupplier clock) {
+        this.latencyMs = latencyMs;
+        this.maxPayments = Math.max(1, maxPayments);
+        this.clock = clock;
+        logger.warn("[StubPaymentGateway] Using the in-process payment gateway stub; no real payments will be taken");
+    }
+
+    @Override
+    public JSONObject createOrder(int amountPaise, String currency, String receipt) {
+        long start = System.nanoTime();
+        simulateLatency();
+        long seq = sequence.incrementAndGet();
+        long createdAt = TimeUnit.MILLISECONDS.toSeconds(clock.getAsLong());
+
+        JSONObject order = new JSONObject();
+        order.put("id", "order_stub" + seq);
+        order.put("entity", "order");
+        order.put("amount", amountPaise);
+        order.put("amount_paid", 0);
+        order.put("amount_due", amountPaise);
+        order.put("currency", currency);
+        order.put("receipt", receipt);
+        order.put("status", "created");
+        order.put("attempts", 0);
+        order.put("created_at", createdAt);
+
+        JSONObject payment = new JSONObject();
+        payment.put("id", "pay_stub" + seq);
+        payment.put("entity", "payment");
+        payment.put("order_id", order.getString("id"));
+        payment.put("amount", amountPaise);
+        payment.put("currency", currency);
+        payment.put("status", "captured");
+        payment.put("captured", true);
+        payment.put("created_at", createdAt);
+        recordPayment(payment);
+
+        latency.record("orders.create", start, true);
+        return order;
+    }
+
+    @Override
+    public List<JSONObject> fetchPayments(long fromEpochSeconds, long toEpochSeconds, int skip, int count) {
+        long start = System.nanoTime();
+        simulateLatency();
+        List<JSONObject> page = new ArrayList<>();
+        int index = 0;
+        for (JSONObject payment : payments.subMap(fromEpochSeconds << 20, true, ((toEpochSeconds + 1) << 20) - 1, true).values()) {
+            if (index++ < skip) {
+                continue;
+            }
+            if (page.size() >= count) {
+                break;
+            }
+            page.add(new JSONObject(payment.toString()));
+        }
+        latency.record("payments.list", start, true);
+        return page;
+    }
+
+    /** Adds a payment, e.g. a failed one or one without a local record, for reconciliation tests. */
+    public void recordPayment(JSONObject payment) {
+        long key = (payment.getLong("created_at") << 20) | (sequence.incrementAndGet() & 0xFFFFF);
+        if (payments.put(key, payment) == null) {
+            paymentCount.incrementAndGet();
+        }
+        // Oldest first, as the reconciliation window has long moved past them
+        while (paymentCount.get() > maxPayments && payments.pollFirstEntry() != null) {
+            paymentCount.decrementAndGet();
+            evicted.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("gateway", "stub");
+        stats.put("payments", paymentCount.get());
+        stats.put("evicted", evicted.get());
+        stats.put("operations", latency.snapshot());
+        return stats;
+    }
+
+    private void simulateLatency() {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.lipiprint.backend.entity.User;
 import com.lipiprint.backend.repository.UserRepository;
 import com.lipiprint.backend.repository.OrderRepository;
 import com.lipiprint.backend.repository.PrintJobRepository;
+import com.lipiprint.backend.security.PrincipalCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -22,6 +23,8 @@ public class UserService {
     private OrderRepository orderRepository;
     @Autowired
     private PrintJobRepository printJobRepository;
+    @Autowired
+    private PrincipalCache principalCache;
 
     public User register(User user) {
         // Don't override the role that was set in the controller
@@ -63,7 +66,9 @@ public class UserService {
 
     public User updateProfile(User user) {
         user.setUpdatedAt(java.time.LocalDateTime.now());
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.invalidate(saved.getId());
+        return saved;
     }
 
     public void blockUser(Long userId, boolean blocked) {
@@ -71,6 +76,7 @@ public class UserService {
         user.setBlocked(blocked);
         user.setUpdatedAt(java.time.LocalDateTime.now());
         userRepository.save(user);
+        principalCache.invalidate(userId);
     }
 
     public void assignRole(Long userId, User.Role role) {
@@ -78,6 +84,7 @@ public class UserService {
         user.setRole(role);
         user.setUpdatedAt(java.time.LocalDateTime.now());
         userRepository.save(user);
+        principalCache.invalidate(userId);
     }
 
     public void updateCanEdit(Long userId, boolean canEdit) {
@@ -85,6 +92,7 @@ public class UserService {
         user.setCanEdit(canEdit);
         user.setUpdatedAt(java.time.LocalDateTime.now());
         userRepository.save(user);
+        principalCache.invalidate(userId);
     }
 
     public List<User> getAllUsers() {
@@ -116,6 +124,7 @@ public class UserService {
 
     public void deleteUser(Long userId) {
         userRepository.deleteById(userId);
+        principalCache.invalidate(userId);
     }
 
     public PasswordEncoder getPasswordEncoder() {
@@ -11,4 +11,117 @@ CREATE TABLE payments (
     CONSTRAINT fk_payment_user FOREIGN KEY (user_id) REFERENCES users(id),
     CONSTRAINT fk_payment_order FOREIGN KEY (order_id) REFERENCES orders(id)
 );
-ALTER TABLE files ADD COLUMN deleted BOOLEAN DEFAULT FALSE; 
\ No newline at end of file
+ALTER TABLE files ADD COLUMN deleted BOOLEAN DEFAULT FALSE; 
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS price_breakdown JSONB;
+-- Structured delivery address (DeliveryAddress embedded in Order)
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivery_line1 VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivery_line2 VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivery_city VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivery_state VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivery_pincode VARCHAR(6);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS delivery_phone VARCHAR(255);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_delivery_pincode ON orders (delivery_pincode);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_delivery_state ON orders (delivery_state);
+-- Shared email OTP store (lipiprint.otp.store=jdbc)
+CREATE TABLE IF NOT EXISTS otp_codes (
+    otp_key VARCHAR(255) PRIMARY KEY,
+    code VARCHAR(16) NOT NULL,
+    expires_at BIGINT NOT NULL,
+    attempts INT NOT NULL DEFAULT 0
+);
+-- Durable outbound mail queue (lipiprint.mail.durable=true)
+CREATE TABLE IF NOT EXISTS outbound_mail (
+    id BIGSERIAL PRIMARY KEY,
+    recipient VARCHAR(320) NOT NULL,
+    subject VARCHAR(998),
+    body TEXT,
+    status VARCHAR(16) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    claimed_until BIGINT NOT NULL,
+    last_error VARCHAR(1000),
+    created_at BIGINT NOT NULL
+);
+-- Razorpay webhook inbox and dedup
+CREATE TABLE IF NOT EXISTS razorpay_webhook_events (
+    event_id VARCHAR(64) PRIMARY KEY,
+    event_type VARCHAR(64),
+    razorpay_order_id VARCHAR(64),
+    payload TEXT NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    error VARCHAR(1000),
+    received_at BIGINT NOT NULL,
+    processed_at BIGINT
+);
+-- Payment reconciliation results and checkpoints
+CREATE TABLE IF NOT EXISTS payment_reconciliation (
+    id BIGSERIAL PRIMARY KEY,
+    razorpay_order_id VARCHAR(64) NOT NULL,
+    kind VARCHAR(32) NOT NULL,
+    razorpay_payment_id VARCHAR(64),
+    gateway_status VARCHAR(32),
+    local_status VARCHAR(32),
+    gateway_amount_paise BIGINT,
+    local_amount_paise BIGINT,
+    detected_at TIMESTAMP NOT NULL,
+    resolved BOOLEAN NOT NULL DEFAULT FALSE,
+    UNIQUE (razorpay_order_id, kind)
+);
+CREATE TABLE IF NOT EXISTS reconciliation_checkpoints (
+    job VARCHAR(64) PRIMARY KEY,
+    window_end BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
+-- Per-user unread notification counters and the keyset index of the notification inbox
+CREATE TABLE IF NOT EXISTS notification_unread_counts (
+    user_id BIGINT PRIMARY KEY,
+    unread BIGINT NOT NULL DEFAULT 0
+);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_notifications_user_created ON notifications (user_id, created_at DESC, id DESC);
+-- Push device tokens
+CREATE TABLE IF NOT EXISTS device_tokens (
+    token VARCHAR(512) PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    platform VARCHAR(16),
+    updated_at TIMESTAMP NOT NULL
+);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_device_tokens_user ON device_tokens (user_id);
+-- Daily order stat rollups for the admin dashboard; the index serves the per-order pages lookup
+CREATE TABLE IF NOT EXISTS daily_order_stats (
+    day DATE NOT NULL,
+    status VARCHAR(32) NOT NULL,
+    delivery_type VARCHAR(32) NOT NULL,
+    orders BIGINT NOT NULL DEFAULT 0,
+    revenue DOUBLE PRECISION NOT NULL DEFAULT 0,
+    pages BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (day, status, delivery_type)
+);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_print_jobs_order ON print_jobs (order_id);
+-- Hourly rollups per paper and color for the analytics series
+CREATE TABLE IF NOT EXISTS hourly_order_stats (
+    hour TIMESTAMP NOT NULL,
+    status VARCHAR(32) NOT NULL,
+    delivery_type VARCHAR(32) NOT NULL,
+    paper VARCHAR(64) NOT NULL,
+    color VARCHAR(64) NOT NULL,
+    orders BIGINT NOT NULL DEFAULT 0,
+    revenue DOUBLE PRECISION NOT NULL DEFAULT 0,
+    pages BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (hour, status, delivery_type, paper, color)
+);
+-- Status each order is counted under in the rollups, so increments are idempotent per order
+CREATE TABLE IF NOT EXISTS order_stats_applied (
+    order_id BIGINT PRIMARY KEY,
+    day DATE NOT NULL,
+    status VARCHAR(32) NOT NULL
+);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_order_stats_applied_day ON order_stats_applied (day);
+-- Recent activity feed preload
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_created_at ON orders (created_at);
+-- Billing details captured when an order is placed, for its invoice; older orders take the customer's current details once
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS billing_name VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS billing_email VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS billing_phone VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS billing_gstin VARCHAR(255);
+UPDATE orders o SET billing_name = u.name, billing_email = u.email, billing_phone = u.phone, billing_gstin = u.gstin
+FROM users u
+WHERE u.id = o.user_id AND o.billing_name IS NULL AND o.billing_email IS NULL AND o.billing_phone IS NULL;
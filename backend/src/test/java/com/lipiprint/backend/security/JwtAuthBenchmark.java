@@ -0,0 +1,92 @@
+package com.lipiprint.backend.security;
+
+import com.lipiprint.backend.entity.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of turning a bearer token into a user id.
+ *
+ * <ul>
+ *   <li>{@code perCallParser}: the old path, a new parser and base64 key decode per request, verified twice
+ *       (validateToken, then getUserIdFromToken)</li>
+ *   <li>{@code prebuiltParser}: one verification with the shared parser and decoded key (a memo miss)</li>
+ *   <li>{@code verifiedMemo}: a repeat request answered from the verified-token memo</li>
+ * </ul>
+ *
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.lipiprint.backend.security.JwtAuthBenchmark}, or run main from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class JwtAuthBenchmark {
+
+    private String secret;
+    private String token;
+    private JwtUtils jwtUtils;
+
+    @Setup
+    public void setUp() {
+        byte[] key = new byte[64];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (i * 31 + 7);
+        }
+        secret = Base64.getEncoder().encodeToString(key);
+
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", secret);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 3_600_000);
+        ReflectionTestUtils.setField(jwtUtils, "verifiedCacheMaxEntries", 10_000);
+        jwtUtils.init();
+
+        User user = new User();
+        user.setId(42L);
+        token = jwtUtils.generateToken(user);
+        // Prime the memo for verifiedMemo
+        jwtUtils.getValidatedUserId(token);
+    }
+
+    @Benchmark
+    public Long perCallParser() {
+        Jwts.parser().setSigningKey(secret).parseClaimsJws(token);
+        Claims claims = Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody();
+        return Long.parseLong(claims.getSubject());
+    }
+
+    @Benchmark
+    public Long prebuiltParser() {
+        return jwtUtils.getUserIdFromToken(token);
+    }
+
+    @Benchmark
+    public Long verifiedMemo() {
+        return jwtUtils.getValidatedUserId(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtAuthBenchmark.class.getSimpleName()).build()).run();
+    }
+}
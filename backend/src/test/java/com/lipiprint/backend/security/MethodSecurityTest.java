@@ -0,0 +1,88 @@
+package com.lipiprint.backend.security;
+
+import com.lipiprint.backend.controller.ServiceOptionController;
+import com.lipiprint.backend.exception.GlobalExceptionHandler;
+import com.lipiprint.backend.repository.ServiceOptionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Calls an admin endpoint through the method-security proxy and the app's exception handler, the way
+ * a request reaches it once the JWT filter has set the caller.
+ */
+public class MethodSecurityTest {
+
+    // Same method security setup as SecurityConfig, without its filter chain
+    @Configuration
+    @EnableMethodSecurity
+    static class MethodSecurity {
+    }
+
+    private AnnotationConfigApplicationContext context;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        ServiceOptionRepository repository = (ServiceOptionRepository) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {ServiceOptionRepository.class}, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "findAll" -> List.of();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "ServiceOptionRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        context = new AnnotationConfigApplicationContext();
+        context.register(MethodSecurity.class);
+        context.registerBean(ServiceOptionRepository.class, () -> repository);
+        context.registerBean(ServiceOptionController.class);
+        context.refresh();
+
+        mockMvc = MockMvcBuilders.standaloneSetup(context.getBean(ServiceOptionController.class))
+            .setControllerAdvice(new GlobalExceptionHandler())
+            .build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        context.close();
+    }
+
+    private static void signIn(String role) {
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken("9876543210", null, AuthorityUtils.createAuthorityList(role)));
+    }
+
+    @Test
+    public void securityConfigEnablesMethodSecurity() {
+        assertTrue(SecurityConfig.class.isAnnotationPresent(EnableMethodSecurity.class));
+    }
+
+    @Test
+    public void nonAdminIsForbidden() throws Exception {
+        signIn("ROLE_USER");
+        assertEquals(403, mockMvc.perform(get("/api/services")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void adminIsAllowed() throws Exception {
+        signIn("ROLE_ADMIN");
+        assertEquals(200, mockMvc.perform(get("/api/services")).andReturn().getResponse().getStatus());
+    }
+}
@@ -0,0 +1,71 @@
+package com.lipiprint.backend.security;
+
+import com.lipiprint.backend.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrincipalCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final PrincipalCache cache = new PrincipalCache(60, 100, now::get);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private CustomUserDetails load(Long id) {
+        loads.incrementAndGet();
+        User user = new User();
+        user.setId(id);
+        user.setPhone("98765" + id);
+        user.setRole(User.Role.USER);
+        return new CustomUserDetails(user);
+    }
+
+    @Test
+    public void testRepeatedLookupsHitCache() {
+        CustomUserDetails first = cache.get(1L, this::load);
+        CustomUserDetails second = cache.get(1L, this::load);
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        cache.get(1L, this::load);
+        now.addAndGet(60_000);
+        cache.get(1L, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidateForcesReload() {
+        cache.get(1L, this::load);
+        cache.get(2L, this::load);
+        cache.invalidate(1L);
+        cache.get(1L, this::load);
+        cache.get(2L, this::load);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testInvalidationDuringLoadIsNotOverwritten() {
+        cache.get(1L, id -> {
+            CustomUserDetails stale = load(id);
+            cache.invalidate(id);
+            return stale;
+        });
+        assertEquals(0, cache.size());
+        cache.get(1L, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        for (long id = 1; id <= 500; id++) {
+            cache.get(id, this::load);
+        }
+        assertTrue(cache.size() <= 100);
+    }
+}
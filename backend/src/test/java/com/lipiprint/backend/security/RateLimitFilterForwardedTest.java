@@ -0,0 +1,136 @@
+package com.lipiprint.backend.security;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.autoconfigure.web.embedded.TomcatWebServerFactoryCustomizer;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the rate limit filter in a Tomcat configured from application.properties, so the client address
+ * it keys on is the one the forwarded-headers setup resolves.
+ */
+public class RateLimitFilterForwardedTest {
+
+    private static final String CLIENT = "203.0.113.7";
+
+    // Records the bucket keys the filter charges
+    private static final class RecordingRateLimiter extends RateLimiter {
+        final List<String> keys = new CopyOnWriteArrayList<>();
+
+        RecordingRateLimiter() {
+            super(4, 100);
+        }
+
+        @Override
+        public long tryAcquire(String key, Policy policy) {
+            keys.add(key);
+            return super.tryAcquire(key, policy);
+        }
+    }
+
+    private final RecordingRateLimiter rateLimiter = new RecordingRateLimiter();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private WebServer server;
+
+    private static StandardEnvironment environment(Map<String, Object> overrides) throws Exception {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new ResourcePropertySource("classpath:application.properties"));
+        environment.getPropertySources().addFirst(new MapPropertySource("test", overrides));
+        return environment;
+    }
+
+    private static ServerProperties serverProperties(StandardEnvironment environment) {
+        return Binder.get(environment).bind("server", ServerProperties.class).get();
+    }
+
+    @BeforeEach
+    public void start() throws Exception {
+        // The test client connects from loopback, which stands in for Render's load balancer here
+        StandardEnvironment environment = environment(Map.of(
+            "server.port", "0",
+            "server.tomcat.remoteip.internal-proxies", "127\\.0\\.0\\.1"));
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        new TomcatWebServerFactoryCustomizer(environment, serverProperties(environment)).customize(factory);
+
+        RateLimitFilter filter = new RateLimitFilter();
+        ReflectionTestUtils.setField(filter, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "loginPolicy", "ip:20/5m");
+        ReflectionTestUtils.setField(filter, "signupPolicy", "ip:3/1h");
+        ReflectionTestUtils.setField(filter, "sendOtpPolicy", "ip:10/10m");
+        ReflectionTestUtils.setField(filter, "verifyOtpPolicy", "ip:30/10m");
+        filter.init();
+
+        server = factory.getWebServer(context -> {
+            context.addFilter("rateLimit", filter).addMappingForUrlPatterns(null, false, "/*");
+            context.addServlet("ok", new HttpServlet() {
+                @Override
+                protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+                    response.setStatus(200);
+                }
+            }).addMapping("/*");
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private int signup(String forwardedFor) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/api/auth/signup"))
+            .POST(HttpRequest.BodyPublishers.ofString("{}"))
+            .header("Content-Type", "application/json");
+        if (forwardedFor != null) {
+            request.header("X-Forwarded-For", forwardedFor);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    public void spoofedLeftmostForwardedForDoesNotChangeTheBucket() throws Exception {
+        assertEquals(200, signup("1.1.1.1, " + CLIENT));
+        assertEquals(200, signup("2.2.2.2, " + CLIENT));
+        assertEquals(200, signup(CLIENT));
+        // A fresh forged address each time still lands in the client's bucket, which is now empty
+        assertEquals(429, signup("3.3.3.3, " + CLIENT));
+
+        assertEquals(4, rateLimiter.keys.size());
+        assertTrue(rateLimiter.keys.stream().allMatch(("signup:ip:" + CLIENT)::equals), rateLimiter.keys.toString());
+    }
+
+    @Test
+    public void shippedConfigTrustsOnlyTheLoadBalancerRange() throws Exception {
+        StandardEnvironment environment = environment(Map.of());
+        Pattern proxies = Pattern.compile(serverProperties(environment).getTomcat().getRemoteip().getInternalProxies());
+        assertEquals("native", environment.getProperty("server.forward-headers-strategy"));
+        assertTrue(proxies.matcher("10.204.7.19").matches());
+        assertFalse(proxies.matcher("127.0.0.1").matches());
+        assertFalse(proxies.matcher(CLIENT).matches());
+    }
+}
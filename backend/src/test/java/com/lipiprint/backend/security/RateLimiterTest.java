@@ -0,0 +1,61 @@
+package com.lipiprint.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final RateLimiter limiter = new RateLimiter(4, 100, now::get);
+    private final RateLimiter.Policy threePerMinute = RateLimiter.Policy.parse("3/1m");
+
+    @Test
+    public void testBurstUpToCapacityThenRejects() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("otp:email:a@example.com", threePerMinute));
+        }
+        long wait = limiter.tryAcquire("otp:email:a@example.com", threePerMinute);
+        assertTrue(wait > 0 && wait <= 20_000, "wait was " + wait);
+    }
+
+    @Test
+    public void testTokensRefillOverTime() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("k", threePerMinute);
+        }
+        assertTrue(limiter.tryAcquire("k", threePerMinute) > 0);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(21));
+        assertEquals(0, limiter.tryAcquire("k", threePerMinute));
+        assertTrue(limiter.tryAcquire("k", threePerMinute) > 0);
+    }
+
+    @Test
+    public void testKeysAreIndependent() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("login:ip:10.0.0.1", threePerMinute);
+        }
+        assertTrue(limiter.tryAcquire("login:ip:10.0.0.1", threePerMinute) > 0);
+        assertEquals(0, limiter.tryAcquire("login:ip:10.0.0.2", threePerMinute));
+    }
+
+    @Test
+    public void testKeySprayStaysBounded() {
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire("login:phone:" + i, threePerMinute);
+        }
+        assertTrue(limiter.size() <= 100, "size was " + limiter.size());
+    }
+
+    @Test
+    public void testPolicyParsing() {
+        assertEquals(new RateLimiter.Policy(10, Duration.ofSeconds(30)), RateLimiter.Policy.parse("10/30s"));
+        assertEquals(new RateLimiter.Policy(5, Duration.ofHours(1)), RateLimiter.Policy.parse(" 5/1h "));
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.Policy.parse("5"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.Policy.parse("0/1m"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.lipiprint.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerifiedTokenCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final VerifiedTokenCache cache = new VerifiedTokenCache(100, now::get);
+
+    @Test
+    public void testVerifiedTokenIsRemembered() {
+        assertNull(cache.get("header.payload.signature"));
+        cache.put("header.payload.signature", 42L, now.get() + 60_000);
+        assertEquals(Long.valueOf(42), cache.get("header.payload.signature"));
+        assertNull(cache.get("header.payload.signaturf"));
+    }
+
+    @Test
+    public void testEntryExpiresWithToken() {
+        cache.put("t", 42L, now.get() + 60_000);
+        now.addAndGet(60_000);
+        assertNull(cache.get("t"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiredTokenIsNotStored() {
+        cache.put("t", 42L, now.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeStaysBounded() {
+        for (int i = 0; i < 1000; i++) {
+            cache.put("token-" + i, i, now.get() + 60_000);
+        }
+        assertTrue(cache.size() <= 100);
+    }
+}
@@ -0,0 +1,138 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalyticsSeriesServiceTest {
+
+    // Serves fixed rollup values instead of querying the tables, counting loads
+    private static final class FixedSeries extends AnalyticsSeriesService {
+        final AtomicInteger loads = new AtomicInteger();
+        final Map<String, Map<LocalDateTime, Double>> values = new HashMap<>();
+
+        FixedSeries(int cacheEntries, int maxBuckets) {
+            super(cacheEntries, maxBuckets);
+        }
+
+        @Override
+        protected Map<String, Map<LocalDateTime, Double>> load(Query query) {
+            loads.incrementAndGet();
+            return values;
+        }
+    }
+
+    private static AnalyticsSeriesService.Query query(LocalDate from, LocalDate to, AnalyticsSeriesService.Bucket bucket) {
+        return new AnalyticsSeriesService.Query(from, to, bucket, AnalyticsSeriesService.Metric.ORDERS, AnalyticsSeriesService.GroupBy.STATUS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> series(Map<String, Object> result) {
+        return (List<Map<String, Object>>) result.get("series");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> points(Map<String, Object> series) {
+        return (List<Map<String, Object>>) series.get("points");
+    }
+
+    @Test
+    public void everyGroupHasAPointPerBucketLargestFirst() {
+        FixedSeries service = new FixedSeries(10, 100);
+        // 2026-10-14 is a Wednesday, so the first week bucket starts on Monday the 12th
+        service.values.put("PENDING", Map.of(LocalDateTime.of(2026, 10, 12, 0, 0), 2.0));
+        service.values.put("DELIVERED", Map.of(LocalDateTime.of(2026, 10, 12, 0, 0), 1.0, LocalDateTime.of(2026, 10, 26, 0, 0), 4.0));
+
+        Map<String, Object> result = service.series(query(LocalDate.of(2026, 10, 14), LocalDate.of(2026, 10, 27), AnalyticsSeriesService.Bucket.WEEK));
+
+        List<Map<String, Object>> series = series(result);
+        assertEquals(2, series.size());
+        assertEquals("DELIVERED", series.get(0).get("group"));
+        assertEquals(5L, series.get(0).get("total"));
+        List<Map<String, Object>> points = points(series.get(1));
+        assertEquals(3, points.size());
+        assertEquals(LocalDate.of(2026, 10, 12), points.get(0).get("start"));
+        assertEquals(2L, points.get(0).get("value"));
+        assertEquals(0L, points.get(2).get("value"));
+    }
+
+    @Test
+    public void noGroupingStillReturnsAnEmptySeries() {
+        FixedSeries service = new FixedSeries(10, 100);
+        Map<String, Object> result = service.series(new AnalyticsSeriesService.Query(LocalDate.of(2026, 10, 19), LocalDate.of(2026, 10, 19),
+            AnalyticsSeriesService.Bucket.HOUR, AnalyticsSeriesService.Metric.REVENUE, AnalyticsSeriesService.GroupBy.NONE));
+
+        List<Map<String, Object>> series = series(result);
+        assertEquals(1, series.size());
+        assertEquals(AnalyticsSeriesService.ALL, series.get(0).get("group"));
+        assertEquals(24, points(series.get(0)).size());
+        assertEquals(LocalDateTime.of(2026, 10, 19, 23, 0), points(series.get(0)).get(23).get("start"));
+        assertEquals(0.0, series.get(0).get("total"));
+    }
+
+    @Test
+    public void invalidationOnlyDropsRangesContainingTheDay() {
+        FixedSeries service = new FixedSeries(10, 1000);
+        AnalyticsSeriesService.Query lastYear = query(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), AnalyticsSeriesService.Bucket.MONTH);
+        AnalyticsSeriesService.Query thisMonth = query(LocalDate.of(2026, 10, 1), LocalDate.of(2026, 10, 31), AnalyticsSeriesService.Bucket.DAY);
+
+        service.series(lastYear);
+        service.series(thisMonth);
+        service.series(lastYear);
+        assertEquals(2, service.loads.get());
+        assertEquals(1L, service.stats().get("hits"));
+
+        service.invalidate(LocalDate.of(2026, 10, 19));
+        service.series(lastYear);
+        service.series(thisMonth);
+        assertEquals(3, service.loads.get());
+
+        service.invalidateAll();
+        service.series(lastYear);
+        assertEquals(4, service.loads.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedRangeIsEvicted() {
+        FixedSeries service = new FixedSeries(2, 100);
+        AnalyticsSeriesService.Query a = query(LocalDate.of(2026, 1, 1), LocalDate.of(2026, 1, 31), AnalyticsSeriesService.Bucket.DAY);
+        AnalyticsSeriesService.Query b = query(LocalDate.of(2026, 2, 1), LocalDate.of(2026, 2, 28), AnalyticsSeriesService.Bucket.DAY);
+        AnalyticsSeriesService.Query c = query(LocalDate.of(2026, 3, 1), LocalDate.of(2026, 3, 31), AnalyticsSeriesService.Bucket.DAY);
+
+        service.series(a);
+        service.series(b);
+        service.series(a);
+        service.series(c);
+        assertEquals(3, service.loads.get());
+        service.series(a);
+        assertEquals(3, service.loads.get());
+        service.series(b);
+        assertEquals(4, service.loads.get());
+    }
+
+    @Test
+    public void rejectsInvertedAndOversizedRanges() {
+        FixedSeries service = new FixedSeries(10, 48);
+        assertThrows(IllegalArgumentException.class,
+            () -> service.series(query(LocalDate.of(2026, 10, 2), LocalDate.of(2026, 10, 1), AnalyticsSeriesService.Bucket.DAY)));
+        assertThrows(IllegalArgumentException.class,
+            () -> service.series(query(LocalDate.of(2026, 10, 1), LocalDate.of(2026, 10, 3), AnalyticsSeriesService.Bucket.HOUR)));
+        assertEquals(48, service.buckets(query(LocalDate.of(2026, 10, 1), LocalDate.of(2026, 10, 2), AnalyticsSeriesService.Bucket.HOUR)).size());
+        assertEquals(0, service.loads.get());
+    }
+
+    @Test
+    public void parsesRequestOptionsLoosely() {
+        assertEquals(AnalyticsSeriesService.GroupBy.DELIVERY_TYPE, AnalyticsSeriesService.option(AnalyticsSeriesService.GroupBy.class, "deliveryType"));
+        assertEquals(AnalyticsSeriesService.GroupBy.DELIVERY_TYPE, AnalyticsSeriesService.option(AnalyticsSeriesService.GroupBy.class, "delivery-type"));
+        assertEquals(AnalyticsSeriesService.Bucket.WEEK, AnalyticsSeriesService.option(AnalyticsSeriesService.Bucket.class, "week"));
+        assertThrows(IllegalArgumentException.class, () -> AnalyticsSeriesService.option(AnalyticsSeriesService.Metric.class, "profit"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventBusTest {
+
+    // Delivers on the publishing thread so assertions can follow publish() directly
+    private final EventBus bus = new EventBus(3, Runnable::run, 100);
+
+    @Test
+    public void testSubscribersOnlyReceiveTheirTopics() {
+        List<EventBus.Event> received = new ArrayList<>();
+        bus.subscribe(Set.of(EventBus.userTopic(1L), EventBus.BROADCAST_TOPIC), received::add);
+
+        bus.publish(EventBus.userTopic(1L), "order.status", Map.of("orderId", 10));
+        bus.publish(EventBus.userTopic(2L), "order.status", Map.of("orderId", 20));
+        bus.publish(EventBus.BROADCAST_TOPIC, "notification", Map.of("message", "hi"));
+
+        assertEquals(2, received.size());
+        assertEquals("{\"orderId\":10}", received.get(0).data());
+        assertEquals("notification", received.get(1).type());
+        assertTrue(received.get(0).id() < received.get(1).id());
+    }
+
+    @Test
+    public void testUnsubscribeStopsDelivery() {
+        List<EventBus.Event> received = new ArrayList<>();
+        EventBus.Subscription subscription = bus.subscribe(Set.of(EventBus.ADMIN_TOPIC), received::add);
+        subscription.close();
+        bus.publish(EventBus.ADMIN_TOPIC, "order.status", Map.of("orderId", 1));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testFailingSubscriberIsDropped() {
+        int[] calls = {0};
+        bus.subscribe(Set.of(EventBus.ADMIN_TOPIC), event -> {
+            calls[0]++;
+            throw new java.io.IOException("client went away");
+        });
+        bus.publish(EventBus.ADMIN_TOPIC, "order.status", Map.of("orderId", 1));
+        bus.publish(EventBus.ADMIN_TOPIC, "order.status", Map.of("orderId", 2));
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    public void testReplaySinceLastEventId() {
+        Set<String> topics = Set.of(EventBus.userTopic(1L));
+        bus.publish(EventBus.userTopic(1L), "a", Map.of());
+        bus.publish(EventBus.userTopic(2L), "b", Map.of());
+        bus.publish(EventBus.userTopic(1L), "c", Map.of());
+
+        List<EventBus.Event> replayed = bus.replaySince(101, topics);
+        assertEquals(1, replayed.size());
+        assertEquals("c", replayed.get(0).type());
+        assertTrue(bus.replaySince(103, topics).isEmpty());
+    }
+
+    @Test
+    public void testReplayReportsGapOnceEventsAreEvicted() {
+        Set<String> topics = Set.of(EventBus.userTopic(1L));
+        for (int i = 0; i < 5; i++) {
+            bus.publish(EventBus.userTopic(1L), "e" + i, Map.of());
+        }
+        // Buffer of 3 holds ids 103..105; 102 is still contiguous, 101 is not
+        assertEquals(3, bus.replaySince(102, topics).size());
+        assertNull(bus.replaySince(101, topics));
+        assertNull(bus.replaySince(999, topics));
+    }
+}
@@ -0,0 +1,129 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventStreamServiceTest {
+
+    private static final long FAST = 1L;
+    private static final long SLOW = 2L;
+
+    // Records what is written to the stream; a stalled one blocks every write until released
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean stalled;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            if (stalled) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            sent.add(builder.build().stream().map(part -> part.getData().toString()).collect(Collectors.joining()));
+        }
+
+        List<String> events() {
+            return sent.stream().filter(text -> text.startsWith("id:")).toList();
+        }
+    }
+
+    // Delivers on the publishing thread, so a blocking write would hold up publish() itself
+    private final EventBus bus = new EventBus(10, Runnable::run, 100);
+    private final Map<Long, RecordingEmitter> emitters = new ConcurrentHashMap<>();
+    private final EventStreamService service = new EventStreamService() {
+        @Override
+        SseEmitter createEmitter(Long userId) {
+            RecordingEmitter emitter = new RecordingEmitter();
+            emitters.put(userId, emitter);
+            return emitter;
+        }
+    };
+
+    private void start(long heartbeatMs) {
+        ReflectionTestUtils.setField(service, "eventBus", bus);
+        ReflectionTestUtils.setField(service, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxConnections", 10);
+        ReflectionTestUtils.setField(service, "maxConnectionsPerUser", 5);
+        ReflectionTestUtils.setField(service, "heartbeatMs", heartbeatMs);
+        ReflectionTestUtils.setField(service, "outboxCapacity", 4);
+        ReflectionTestUtils.setField(service, "sendThreads", 2);
+        service.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        emitters.values().forEach(emitter -> emitter.release.countDown());
+        service.stop();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void slowClientDoesNotHoldUpTheOthers() throws Exception {
+        start(60_000);
+        assertNotNull(service.open(FAST, false, null));
+        assertNotNull(service.open(SLOW, false, null));
+        emitters.get(SLOW).stalled = true;
+
+        // The fast client keeps up with each event. The slow one has a write in flight and a full
+        // outbox by the sixth, so it is dropped.
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 6; i++) {
+                bus.publish(EventBus.BROADCAST_TOPIC, "notification", Map.of("n", i));
+                int received = i + 1;
+                await(() -> emitters.get(FAST).events().size() == received);
+            }
+        });
+
+        assertEquals(1, service.stats().get("connections"));
+        assertEquals(1L, service.stats().get("slowClientsClosed"));
+        assertTrue(emitters.get(FAST).events().get(5).contains("{\"n\":5}"));
+    }
+
+    @Test
+    public void reconnectReplaysInOrderWithoutDuplicates() throws Exception {
+        start(60_000);
+        bus.publish(EventBus.userTopic(FAST), "order.status", Map.of("orderId", 1));
+        bus.publish(EventBus.userTopic(FAST), "order.status", Map.of("orderId", 2));
+        bus.publish(EventBus.userTopic(FAST), "order.status", Map.of("orderId", 3));
+
+        service.open(FAST, false, 100L);
+        bus.publish(EventBus.userTopic(FAST), "order.status", Map.of("orderId", 4));
+
+        await(() -> emitters.get(FAST).events().size() == 4);
+        List<String> events = emitters.get(FAST).events();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(events.get(i).startsWith("id:" + (101 + i) + "\n"), events.toString());
+        }
+    }
+
+    @Test
+    public void heartbeatRunsOnItsOwnScheduler() throws Exception {
+        start(20);
+        service.open(FAST, false, null);
+        await(() -> emitters.get(FAST).sent.stream().filter(text -> text.startsWith(":ping")).count() >= 2);
+    }
+}
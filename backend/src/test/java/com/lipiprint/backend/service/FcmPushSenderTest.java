@@ -0,0 +1,26 @@
+package com.lipiprint.backend.service;
+
+import com.google.firebase.ErrorCode;
+import com.google.firebase.messaging.MessagingErrorCode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FcmPushSenderTest {
+
+    @Test
+    public void onlyTokenErrorsPruneTheToken() {
+        assertEquals(PushSender.Outcome.INVALID_TOKEN, FcmPushSender.classify(MessagingErrorCode.UNREGISTERED, ErrorCode.NOT_FOUND));
+        assertEquals(PushSender.Outcome.INVALID_TOKEN, FcmPushSender.classify(MessagingErrorCode.SENDER_ID_MISMATCH, ErrorCode.PERMISSION_DENIED));
+        // A bad message (oversized payload, bad TTL) must not cost the recipients their tokens
+        assertEquals(PushSender.Outcome.FAILED, FcmPushSender.classify(MessagingErrorCode.INVALID_ARGUMENT, ErrorCode.INVALID_ARGUMENT));
+        assertEquals(PushSender.Outcome.FAILED, FcmPushSender.classify(null, ErrorCode.INVALID_ARGUMENT));
+    }
+
+    @Test
+    public void transientErrorsAreRetried() {
+        assertEquals(PushSender.Outcome.RETRY, FcmPushSender.classify(MessagingErrorCode.UNAVAILABLE, ErrorCode.UNAVAILABLE));
+        assertEquals(PushSender.Outcome.RETRY, FcmPushSender.classify(MessagingErrorCode.QUOTA_EXCEEDED, ErrorCode.RESOURCE_EXHAUSTED));
+        assertEquals(PushSender.Outcome.RETRY, FcmPushSender.classify(null, ErrorCode.DEADLINE_EXCEEDED));
+    }
+}
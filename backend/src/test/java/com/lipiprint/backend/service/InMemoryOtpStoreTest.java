@@ -0,0 +1,88 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryOtpStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final InMemoryOtpStore store = new InMemoryOtpStore(now::get, false);
+
+    @Test
+    public void testCodeIsConsumedOnSuccess() {
+        store.put("a@example.com", "123456", Duration.ofMinutes(5));
+        assertEquals(OtpStore.VerifyResult.VALID, store.verify("a@example.com", "123456", 5));
+        assertEquals(OtpStore.VerifyResult.NOT_FOUND, store.verify("a@example.com", "123456", 5));
+    }
+
+    @Test
+    public void testExpiredCodeIsRejected() {
+        store.put("a@example.com", "123456", Duration.ofMinutes(5));
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+        assertEquals(OtpStore.VerifyResult.EXPIRED, store.verify("a@example.com", "123456", 5));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testAttemptLimitDiscardsCode() {
+        store.put("a@example.com", "123456", Duration.ofMinutes(5));
+        assertEquals(OtpStore.VerifyResult.INVALID, store.verify("a@example.com", "000000", 3));
+        assertEquals(OtpStore.VerifyResult.INVALID, store.verify("a@example.com", "000001", 3));
+        assertEquals(OtpStore.VerifyResult.INVALID, store.verify("a@example.com", "000002", 3));
+        // The right code no longer works once the limit is used up
+        assertEquals(OtpStore.VerifyResult.NOT_FOUND, store.verify("a@example.com", "123456", 3));
+    }
+
+    @Test
+    public void testNewCodeResetsAttempts() {
+        store.put("a@example.com", "123456", Duration.ofMinutes(5));
+        store.verify("a@example.com", "000000", 2);
+        store.put("a@example.com", "654321", Duration.ofMinutes(5));
+        assertEquals(OtpStore.VerifyResult.INVALID, store.verify("a@example.com", "123456", 2));
+        assertEquals(OtpStore.VerifyResult.VALID, store.verify("a@example.com", "654321", 2));
+    }
+
+    @Test
+    public void testTimerWheelSweepsExpiredEntries() {
+        store.put("short@example.com", "111111", Duration.ofSeconds(30));
+        store.put("long@example.com", "222222", Duration.ofMinutes(20)); // longer than one wheel revolution
+        now.addAndGet(Duration.ofSeconds(31).toMillis());
+        assertEquals(1, store.purgeExpired());
+        assertEquals(1, store.size());
+
+        for (int minute = 1; minute <= 20; minute++) {
+            now.addAndGet(Duration.ofMinutes(1).toMillis());
+            store.advance();
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testConcurrentVerifiersAcceptCodeOnce() throws Exception {
+        store.put("a@example.com", "123456", Duration.ofMinutes(5));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<OtpStore.VerifyResult>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(pool.submit(() -> store.verify("a@example.com", "123456", 100)));
+        }
+        int valid = 0;
+        for (Future<OtpStore.VerifyResult> result : results) {
+            if (result.get().isValid()) {
+                valid++;
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+        assertEquals(1, valid);
+    }
+}
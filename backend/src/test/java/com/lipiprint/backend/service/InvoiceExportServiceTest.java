@@ -0,0 +1,65 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.BillingDetails;
+import com.lipiprint.backend.entity.DeliveryAddress;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvoiceExportServiceTest {
+
+    private static List<String> fields(String line) {
+        return List.of(line.split(",", -1));
+    }
+
+    @Test
+    public void summaryMatchesTheIssuedInvoiceAfterAProfileEdit() {
+        User user = new User("Asha Traders", "9876543210", "asha@example.com", User.Role.USER);
+        user.setGstin("09AAACA1234A1Z5");
+        Order order = new Order();
+        order.setId(31L);
+        order.setUser(user);
+        order.setCreatedAt(LocalDateTime.of(2026, 10, 1, 11, 30));
+        order.setBilling(BillingDetails.from(user));
+        DeliveryAddress address = new DeliveryAddress();
+        address.setState("Uttar Pradesh");
+        order.setStructuredAddress(address);
+        order.setDiscountedSubtotal(100.0);
+        order.setGrandTotal(118.0);
+
+        // The customer renames the business and changes GSTIN after the invoice was issued
+        user.setName("Asha Enterprises");
+        user.setGstin("09BBBCB5678B1Z5");
+
+        double[] totals = new double[7];
+        List<String> line = fields(InvoiceExportService.summaryLine(order, totals));
+        List<String> header = fields(InvoiceExportService.CSV_HEADER.trim());
+        assertEquals("Asha Traders", line.get(header.indexOf("customer_name")));
+        assertEquals("09AAACA1234A1Z5", line.get(header.indexOf("customer_gstin")));
+        assertEquals("Uttar Pradesh", line.get(header.indexOf("place_of_supply")));
+        assertEquals(118.0, totals[6]);
+
+        // Same customer as on the PDF
+        Map<String, String> invoice = new InvoiceService(new InMemoryInvoiceStore(1), null, 1, 1, 1000).values(order);
+        assertEquals(invoice.get("customerName"), line.get(header.indexOf("customer_name")));
+        assertEquals(invoice.get("customerGSTIN"), line.get(header.indexOf("customer_gstin")));
+    }
+
+    @Test
+    public void orderWithoutASnapshotHasBlankCustomerFields() {
+        Order order = new Order();
+        order.setId(32L);
+        order.setUser(new User("Ravi", "9876500000", "ravi@example.com", User.Role.USER));
+
+        List<String> line = fields(InvoiceExportService.summaryLine(order, new double[7]));
+        List<String> header = fields(InvoiceExportService.CSV_HEADER.trim());
+        assertEquals("", line.get(header.indexOf("customer_name")));
+        assertEquals("", line.get(header.indexOf("customer_gstin")));
+    }
+}
@@ -0,0 +1,216 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.BillingDetails;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvoiceServiceTest {
+
+    private final InMemoryInvoiceStore store = new InMemoryInvoiceStore(100);
+    private CountingService service;
+
+    // Renders the HTML bytes as the "PDF", optionally waiting on a gate first
+    private static final class CountingService extends InvoiceService {
+        final AtomicInteger renders = new AtomicInteger();
+        volatile CountDownLatch gate;
+
+        CountingService(InvoiceStore store, int threads, int queueCapacity, long timeoutMillis) {
+            super(store, InvoiceTemplate.compile("<p>${orderId}</p>"), threads, queueCapacity, timeoutMillis);
+        }
+
+        @Override
+        protected byte[] renderPdf(String html) {
+            renders.incrementAndGet();
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return html.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private void start(int threads, int queueCapacity, long timeoutMillis) throws Exception {
+        service = new CountingService(store, threads, queueCapacity, timeoutMillis);
+        service.start();
+    }
+
+    private static InvoiceService.Invoice invoice(long orderId, String html) {
+        return new InvoiceService.Invoice(orderId, InvoiceService.version(html), html);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void rendersOnceThenServesStoredBytes() throws Exception {
+        start(1, 10, 5000);
+        InvoiceService.Invoice invoice = invoice(7, "<p>7</p>");
+
+        byte[] first = service.pdf(invoice);
+        byte[] second = service.pdf(invoice);
+
+        assertArrayEquals(first, second);
+        assertEquals(1, service.renders.get());
+        assertNotNull(store.get(invoice.key()));
+        assertEquals(1L, service.stats().get("storeHits"));
+    }
+
+    @Test
+    public void changedContentIsANewVersion() throws Exception {
+        start(1, 10, 5000);
+        InvoiceService.Invoice before = invoice(7, "<p>PENDING</p>");
+        InvoiceService.Invoice after = invoice(7, "<p>DELIVERED</p>");
+
+        assertNotEquals(before.version(), after.version());
+        assertNotEquals(before.etag(), after.etag());
+        service.pdf(before);
+        service.pdf(after);
+        assertEquals(2, service.renders.get());
+        // The superseded version is deleted once the new one is stored
+        assertEquals(1, store.size());
+        assertNull(store.get(before.key()));
+        assertNotNull(store.get(after.key()));
+        assertEquals(1L, service.stats().get("superseded"));
+    }
+
+    @Test
+    public void versionIgnoresStatusAndProfileChanges() throws Exception {
+        start(1, 10, 5000);
+        User user = new User("Asha", "9876543210", "asha@example.com", User.Role.USER);
+        Order order = new Order();
+        order.setId(12L);
+        order.setUser(user);
+        order.setStatus(Order.Status.PENDING);
+        order.setBilling(BillingDetails.from(user));
+        Map<String, String> placed = service.values(order);
+
+        order.setStatus(Order.Status.DELIVERED);
+        user.setName("Asha Verma");
+        user.setGstin("09ABCDE1234F1Z5");
+
+        assertEquals(placed, service.values(order));
+        assertEquals("Asha", placed.get("customerName"));
+        assertFalse(placed.containsKey("orderStatus"));
+    }
+
+    @Test
+    public void concurrentRequestsShareOneRender() throws Exception {
+        start(2, 10, 5000);
+        service.gate = new CountDownLatch(1);
+        InvoiceService.Invoice invoice = invoice(9, "<p>9</p>");
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> service.pdf(invoice)));
+            }
+            Thread.sleep(100);
+            service.gate.countDown();
+            for (Future<byte[]> result : results) {
+                assertEquals("<p>9</p>", new String(result.get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, service.renders.get());
+    }
+
+    @Test
+    public void fullPoolIsReportedAsUnavailable() throws Exception {
+        start(1, 1, 5000);
+        service.gate = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // One render running and one waiting fill the pool
+            Future<byte[]> running = callers.submit(() -> service.pdf(invoice(1, "<p>1</p>")));
+            Future<byte[]> queued = callers.submit(() -> service.pdf(invoice(2, "<p>2</p>")));
+            Thread.sleep(200);
+
+            assertThrows(InvoiceService.RenderUnavailableException.class, () -> service.pdf(invoice(3, "<p>3</p>")));
+            assertEquals(1L, service.stats().get("rejected"));
+
+            service.gate.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+        // Nothing is left behind for the rejected key, so a retry renders it
+        service.pdf(invoice(3, "<p>3</p>"));
+        assertEquals(3, service.renders.get());
+    }
+
+    @Test
+    public void slowRenderTimesOutButStillStores() throws Exception {
+        start(1, 10, 50);
+        service.gate = new CountDownLatch(1);
+        InvoiceService.Invoice invoice = invoice(4, "<p>4</p>");
+
+        assertThrows(InvoiceService.RenderUnavailableException.class, () -> service.pdf(invoice));
+        service.gate.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.get(invoice.key()) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(store.get(invoice.key()));
+        service.pdf(invoice);
+        assertEquals(1, service.renders.get());
+    }
+
+    @Test
+    public void bulkRendersOnCallerThreadsOutsideThePool() throws Exception {
+        // A pool with no spare room would reject anything submitted to it
+        start(1, 1, 5000);
+        service.gate = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            callers.submit(() -> service.pdf(invoice(1, "<p>1</p>")));
+            callers.submit(() -> service.pdf(invoice(2, "<p>2</p>")));
+            Thread.sleep(200);
+
+            List<Future<byte[]>> bulk = new ArrayList<>();
+            bulk.add(callers.submit(() -> service.pdfOnCaller(invoice(3, "<p>3</p>"))));
+            bulk.add(callers.submit(() -> service.pdfOnCaller(invoice(4, "<p>4</p>"))));
+            service.gate.countDown();
+            assertEquals("<p>3</p>", new String(bulk.get(0).get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+            assertEquals("<p>4</p>", new String(bulk.get(1).get(5, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(0L, service.stats().get("rejected"));
+        assertNotNull(store.get(invoice(3, "<p>3</p>").key()));
+    }
+
+    @Test
+    public void templateFillsPlaceholdersInOnePass() {
+        InvoiceTemplate template = InvoiceTemplate.compile("${a}-${b}${a} ${missing}!");
+        assertEquals(List.of("a", "b", "missing"), new ArrayList<>(template.placeholders()));
+        assertEquals("1-21 ?!", template.render(Map.of("a", "1", "b", "2"), "?"));
+        // A value that looks like a placeholder is not expanded again
+        assertEquals("${b}-2${b} ?!", template.render(Map.of("a", "${b}", "b", "2"), "?"));
+        assertEquals("no placeholders", InvoiceTemplate.compile("no placeholders").render(Map.of(), "?"));
+    }
+}
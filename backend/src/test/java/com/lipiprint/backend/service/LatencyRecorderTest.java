@@ -0,0 +1,49 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyRecorderTest {
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stats(LatencyRecorder recorder, String operation) {
+        return (Map<String, Object>) recorder.snapshot().get(operation);
+    }
+
+    @Test
+    public void percentilesSeparateTheTailFromTheTypicalCall() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int i = 0; i < 98; i++) {
+            recorder.recordElapsed("orders.create", TimeUnit.MILLISECONDS.toNanos(40), true);
+        }
+        recorder.recordElapsed("orders.create", TimeUnit.MILLISECONDS.toNanos(2_000), false);
+        recorder.recordElapsed("orders.create", TimeUnit.MILLISECONDS.toNanos(2_000), false);
+
+        Map<String, Object> stats = stats(recorder, "orders.create");
+        assertEquals(100L, stats.get("calls"));
+        assertEquals(2L, stats.get("errors"));
+        // The mean hides both: no call took 79 ms
+        assertEquals(79L, stats.get("avgMillis"));
+        long p50 = (Long) stats.get("p50Millis");
+        assertTrue(p50 >= 40 && p50 <= 45, "p50 " + p50);
+        assertEquals(2_000L, stats.get("p99Millis"));
+        assertEquals(2_000L, stats.get("maxMillis"));
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithBoundedError() {
+        int previous = -1;
+        for (long micros = 0; micros < 50_000_000L; micros = micros < 64 ? micros + 1 : micros + micros / 7) {
+            int bucket = LatencyRecorder.bucket(micros);
+            assertTrue(bucket >= previous, "buckets increase with the value");
+            long upper = LatencyRecorder.upperBound(bucket);
+            assertTrue(upper >= micros && upper <= micros + micros / 8, micros + " -> " + upper);
+            previous = bucket;
+        }
+        assertEquals(LatencyRecorder.BUCKETS - 1, LatencyRecorder.bucket(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,202 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MailQueueTest {
+
+    private FakeSmtpServer server;
+    private MailQueue queue;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new FakeSmtpServer();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (queue != null) {
+            queue.stop();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testSenderReusesConnection() throws Exception {
+        queue = start(1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.enqueue("user" + i + "@example.com", "Subject " + i, "Body " + i));
+        }
+        server.awaitMessages(5);
+        // The server sees the message before the sender records it as sent
+        awaitStat("sent", 5L);
+        assertEquals(1, server.connections.get());
+        assertEquals(1L, queue.stats().get("connectionsOpened"));
+    }
+
+    @Test
+    public void testTransientFailureIsRetried() throws Exception {
+        server.failNextData.set(2);
+        queue = start(1);
+        assertTrue(queue.enqueue("user@example.com", "OTP", "123456"));
+        server.awaitMessages(1);
+        assertTrue(server.messages.get(0).contains("123456"));
+        awaitStat("sent", 1L);
+        assertEquals(2L, queue.stats().get("retried"));
+        assertEquals(0L, queue.stats().get("failed"));
+    }
+
+    @Test
+    public void testRejectedRecipientIsNotRetried() throws Exception {
+        queue = start(1);
+        assertTrue(queue.enqueue("bounce@example.com", "OTP", "123456"));
+        assertTrue(queue.enqueue("user@example.com", "OTP", "654321"));
+        server.awaitMessages(1);
+        awaitStat("failed", 1L);
+        assertEquals(0L, queue.stats().get("retried"));
+    }
+
+    @Test
+    public void testEnqueueDoesNotWaitForSmtp() throws Exception {
+        server.greetingDelayMillis = 1000;
+        queue = start(1);
+        long start = System.nanoTime();
+        assertTrue(queue.enqueue("user@example.com", "OTP", "123456"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+        server.awaitMessages(1);
+    }
+
+    private MailQueue start(int senders) {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(server.port());
+        MailQueue mailQueue = new MailQueue(sender, null, 10, senders, 5, 10, 5000, false);
+        mailQueue.start();
+        return mailQueue;
+    }
+
+    private void awaitStat(String name, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Long.valueOf(expected).equals(queue.stats().get(name))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + name + "=" + expected + ", stats: " + queue.stats());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Just enough SMTP for JavaMail without auth or TLS. Rejects recipients starting with "bounce"
+     * and answers DATA with 451 while {@code failNextData} is positive.
+     */
+    private static final class FakeSmtpServer {
+        final ServerSocket socket;
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger failNextData = new AtomicInteger();
+        volatile long greetingDelayMillis;
+
+        FakeSmtpServer() throws IOException {
+            socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::acceptLoop, "fake-smtp");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+
+        void awaitMessages(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (messages.size() < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Timed out waiting for " + count + " messages, got " + messages.size());
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        private void acceptLoop() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    connections.incrementAndGet();
+                    Thread handler = new Thread(() -> handle(client), "fake-smtp-session");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket client) {
+            try (client;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+                 OutputStream out = client.getOutputStream()) {
+                if (greetingDelayMillis > 0) {
+                    Thread.sleep(greetingDelayMillis);
+                }
+                reply(out, "220 localhost fake SMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (command) {
+                        case "EHLO", "HELO" -> reply(out, "250 localhost");
+                        case "MAIL", "RSET", "NOOP" -> reply(out, "250 OK");
+                        case "RCPT" -> reply(out, line.toLowerCase().contains("<bounce") ? "550 No such user" : "250 OK");
+                        case "DATA" -> {
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            StringBuilder data = new StringBuilder();
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                data.append(line).append('\n');
+                            }
+                            if (failNextData.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                                reply(out, "451 Try again later");
+                            } else {
+                                messages.add(data.toString());
+                                reply(out, "250 Queued");
+                            }
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> reply(out, "502 Command not implemented");
+                    }
+                }
+            } catch (IOException e) {
+                // Client went away
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.lipiprint.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lipiprint.backend.dto.ShipmentResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NimbusPostBulkResponseTest {
+
+    private final NimbusPostService nimbusPostService = new NimbusPostService();
+
+    private static Map<String, Object> fixture(String name) throws IOException {
+        try (InputStream in = NimbusPostBulkResponseTest.class.getResourceAsStream("/nimbuspost/" + name)) {
+            assertNotNull(in, name);
+            return new ObjectMapper().readValue(in, new TypeReference<Map<String, Object>>() {});
+        }
+    }
+
+    @Test
+    public void splitsResultsByOrderNumber() throws Exception {
+        Map<String, ShipmentResponse> results = nimbusPostService.parseBulkShipmentResponse(fixture("bulk-shipment-response.json"));
+
+        // The entry without an order number and the non-object entry are skipped
+        assertEquals(3, results.size());
+
+        ShipmentResponse shipped = results.get("LP101");
+        assertTrue(shipped.isStatus());
+        assertEquals("1234567890123", shipped.getAwbNumber());
+        assertEquals("Delhivery Surface", shipped.getCourierName());
+        assertEquals("55120", shipped.getShipmentId());
+        assertEquals("6", shipped.getCourierId());
+        assertEquals("2026-10-23", shipped.getExpectedDeliveryDate());
+    }
+
+    @Test
+    public void rejectedAndIncompleteEntriesAreNotShipments() throws Exception {
+        Map<String, ShipmentResponse> results = nimbusPostService.parseBulkShipmentResponse(fixture("bulk-shipment-response.json"));
+
+        ShipmentResponse rejected = results.get("LP102");
+        assertFalse(rejected.isStatus());
+        assertEquals("Delivery pincode 999999 is not serviceable", rejected.getMessage());
+
+        // Accepted without an AWB: the dispatcher must not treat it as shipped
+        ShipmentResponse noAwb = results.get("LP103");
+        assertNull(noAwb.getAwbNumber());
+        assertEquals("AWB number not provided by courier service", noAwb.getMessage());
+    }
+
+    @Test
+    public void responseWithoutPerShipmentDataIsEmpty() {
+        assertTrue(nimbusPostService.parseBulkShipmentResponse(null).isEmpty());
+        assertTrue(nimbusPostService.parseBulkShipmentResponse(Map.of("status", false, "message", "Invalid token")).isEmpty());
+    }
+}
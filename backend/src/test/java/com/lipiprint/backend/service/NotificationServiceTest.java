@@ -0,0 +1,209 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.controller.NotificationController;
+import com.lipiprint.backend.entity.Notification;
+import com.lipiprint.backend.entity.User;
+import com.lipiprint.backend.security.CustomUserDetails;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationServiceTest {
+
+    private static final long ASHA = 1L;
+    private static final long RAVI = 2L;
+
+    // One notifications row
+    private static final class Row {
+        final long id;
+        final long userId;
+        boolean read;
+
+        Row(long id, long userId, boolean read) {
+            this.id = id;
+            this.userId = userId;
+            this.read = read;
+        }
+    }
+
+    // Runs the service's notification statements against a list of rows
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        final List<Row> rows = new ArrayList<>();
+
+        @Override
+        public int update(String sql, Object... args) {
+            int changed = 0;
+            switch (sql) {
+                case "UPDATE notifications SET read = TRUE WHERE id = ? AND user_id = ? AND read = FALSE" -> {
+                    for (Row row : rows) {
+                        if (row.id == (Long) args[0] && row.userId == (Long) args[1] && !row.read) {
+                            row.read = true;
+                            changed++;
+                        }
+                    }
+                }
+                case "UPDATE notifications SET read = TRUE WHERE user_id = ? AND read = FALSE" -> {
+                    for (Row row : rows) {
+                        if (row.userId == (Long) args[0] && !row.read) {
+                            row.read = true;
+                            changed++;
+                        }
+                    }
+                }
+                case "DELETE FROM notifications WHERE user_id = ? AND read = FALSE" -> {
+                    int before = rows.size();
+                    rows.removeIf(row -> row.userId == (Long) args[0] && !row.read);
+                    changed = before - rows.size();
+                }
+                case "DELETE FROM notifications WHERE user_id = ?" -> {
+                    int before = rows.size();
+                    rows.removeIf(row -> row.userId == (Long) args[0]);
+                    changed = before - rows.size();
+                }
+                default -> fail("Unexpected statement: " + sql);
+            }
+            return changed;
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            assertEquals("SELECT COUNT(*) FROM notifications WHERE id = ? AND user_id = ?", sql);
+            long owned = rows.stream().filter(row -> row.id == (Long) args[0] && row.userId == (Long) args[1]).count();
+            return requiredType.cast((int) owned);
+        }
+    }
+
+    // Keeps the counters in memory; the deltas are what the service applies
+    private static final class FakeUnreadCounts extends NotificationUnreadCounts {
+        final Map<Long, Long> unread = new HashMap<>();
+
+        @Override
+        public long get(Long userId) {
+            return unread.getOrDefault(userId, 0L);
+        }
+
+        @Override
+        public void increment(Long userId, long delta) {
+            if (delta != 0) {
+                unread.merge(userId, delta, Long::sum);
+            }
+        }
+    }
+
+    private static final class NoopTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    private final FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+    private final FakeUnreadCounts unreadCounts = new FakeUnreadCounts();
+    private final NotificationService service = new NotificationService();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "unreadCounts", unreadCounts);
+        ReflectionTestUtils.setField(service, "transactionManager", new NoopTransactionManager());
+        service.init();
+
+        // Asha: 10 and 11 unread, 12 read; Ravi: 20 unread
+        jdbcTemplate.rows.add(new Row(10, ASHA, false));
+        jdbcTemplate.rows.add(new Row(11, ASHA, false));
+        jdbcTemplate.rows.add(new Row(12, ASHA, true));
+        jdbcTemplate.rows.add(new Row(20, RAVI, false));
+        unreadCounts.unread.put(ASHA, 2L);
+        unreadCounts.unread.put(RAVI, 1L);
+    }
+
+    @Test
+    public void cursorRoundTrips() {
+        Notification last = new Notification();
+        last.setId(42L);
+        last.setCreatedAt(LocalDateTime.of(2026, 10, 19, 10, 15, 30, 123_456_000));
+
+        NotificationService.Cursor cursor = NotificationService.Cursor.parse(NotificationService.Cursor.of(last).encode());
+        assertEquals(last.getCreatedAt(), cursor.createdAt());
+        assertEquals(42L, cursor.id());
+
+        // Whole seconds print without a fraction and still parse
+        last.setCreatedAt(LocalDateTime.of(2026, 10, 19, 10, 15));
+        assertEquals(last.getCreatedAt(), NotificationService.Cursor.parse(NotificationService.Cursor.of(last).encode()).createdAt());
+    }
+
+    @Test
+    public void malformedCursorsAreRejected() {
+        for (String cursor : List.of("garbage", "_42", "2026-10-19T10:15_", "2026-10-19T10:15_abc", "yesterday_42")) {
+            assertThrows(IllegalArgumentException.class, () -> NotificationService.Cursor.parse(cursor), cursor);
+        }
+    }
+
+    @Test
+    public void invalidCursorIsABadRequest() {
+        NotificationController controller = new NotificationController();
+        ReflectionTestUtils.setField(controller, "notificationService", service);
+        User user = new User("Asha", "9876543210", "asha@example.com", User.Role.USER);
+        user.setId(ASHA);
+
+        assertEquals(HttpStatus.BAD_REQUEST,
+            controller.listNotifications(new CustomUserDetails(user), "garbage", 20).getStatusCode());
+    }
+
+    @Test
+    public void markReadCountsOnlyAnUnreadChange() {
+        assertTrue(service.markRead(ASHA, 10L));
+        assertEquals(1L, service.countUnread(ASHA));
+
+        // Already read, and someone else's: no change, and only the own one is found
+        assertTrue(service.markRead(ASHA, 10L));
+        assertTrue(service.markRead(ASHA, 12L));
+        assertFalse(service.markRead(ASHA, 20L));
+        assertEquals(1L, service.countUnread(ASHA));
+        assertEquals(1L, service.countUnread(RAVI));
+    }
+
+    @Test
+    public void markAllReadSubtractsWhatChanged() {
+        assertEquals(2, service.markAllRead(ASHA));
+        assertEquals(0L, service.countUnread(ASHA));
+        assertEquals(0, service.markAllRead(ASHA));
+        assertEquals(0L, service.countUnread(ASHA));
+        assertEquals(1L, service.countUnread(RAVI));
+    }
+
+    @Test
+    public void clearForUserSubtractsTheUnreadRows() {
+        service.markRead(ASHA, 10L);
+
+        assertEquals(3, service.clearForUser(ASHA));
+        assertEquals(0L, service.countUnread(ASHA));
+        assertTrue(jdbcTemplate.rows.stream().noneMatch(row -> row.userId == ASHA));
+        assertEquals(1L, service.countUnread(RAVI));
+    }
+}
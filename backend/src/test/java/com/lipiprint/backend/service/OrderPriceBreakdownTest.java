@@ -0,0 +1,134 @@
+package com.lipiprint.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lipiprint.backend.entity.DeliveryAddress;
+import com.lipiprint.backend.entity.Order;
+import com.lipiprint.backend.entity.PrintJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderPriceBreakdownTest {
+
+    private static final String BACKFILL = "UPDATE orders SET price_breakdown = CAST(? AS jsonb) WHERE id = ? AND price_breakdown IS NULL";
+
+    // Prices every job at today's rate and counts how often it is asked to
+    private static final class CountingPricingService extends PricingService {
+        int calls;
+        double rate = 2.0;
+
+        @Override
+        public PriceSummary calculatePriceSummaryForPrintJobs(List<PrintJob> printJobs, String deliveryAddress) {
+            return summary(printJobs);
+        }
+
+        @Override
+        public PriceSummary calculatePriceSummaryForPrintJobs(List<PrintJob> printJobs, DeliveryAddress deliveryAddress) {
+            return summary(printJobs);
+        }
+
+        private PriceSummary summary(List<PrintJob> printJobs) {
+            calls++;
+            List<BreakdownItem> items = new ArrayList<>();
+            for (int i = 0; i < printJobs.size(); i++) {
+                items.add(new BreakdownItem("File " + i, 10, "4911", rate, rate * 10, 0, rate * 10, "{}"));
+            }
+            double subtotal = rate * 10 * printJobs.size();
+            return new PriceSummary(subtotal, 0, subtotal, 0, subtotal, items);
+        }
+    }
+
+    // The price_breakdown column, applying the backfill's IS NULL guard
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        final Map<Long, String> priceBreakdown = new HashMap<>();
+        int updates;
+
+        @Override
+        public int update(String sql, Object... args) {
+            assertEquals(BACKFILL, sql);
+            updates++;
+            return priceBreakdown.putIfAbsent((Long) args[1], (String) args[0]) == null ? 1 : 0;
+        }
+    }
+
+    private final CountingPricingService pricingService = new CountingPricingService();
+    private final FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate();
+    private final OrderService orderService = new OrderService();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(orderService, "pricingService", pricingService);
+        ReflectionTestUtils.setField(orderService, "jdbcTemplate", jdbcTemplate);
+    }
+
+    private static Order legacyOrder() {
+        Order order = new Order();
+        order.setId(5L);
+        order.setDeliveryAddress("12 Court Road, Saharanpur, Uttar Pradesh 247001");
+        order.setPrintJobs(new ArrayList<>(List.of(new PrintJob(), new PrintJob())));
+        return order;
+    }
+
+    // What JPA would load for the order once the backfill is committed
+    private Order reload() throws Exception {
+        Order order = legacyOrder();
+        String stored = jdbcTemplate.priceBreakdown.get(order.getId());
+        if (stored != null) {
+            order.setBreakdown(new ObjectMapper().readValue(stored, new TypeReference<List<PricingService.BreakdownItem>>() {}));
+        }
+        return order;
+    }
+
+    @Test
+    public void legacyOrderIsPricedOnceAndStored() throws Exception {
+        List<PricingService.BreakdownItem> first = orderService.priceBreakdown(legacyOrder());
+
+        assertEquals(2, first.size());
+        assertEquals(1, pricingService.calls);
+        assertEquals(1, jdbcTemplate.updates);
+        assertTrue(jdbcTemplate.priceBreakdown.containsKey(5L));
+
+        // Rates change, but the next read serves the stored snapshot without repricing
+        pricingService.rate = 3.0;
+        List<PricingService.BreakdownItem> second = orderService.priceBreakdown(reload());
+        assertEquals(1, pricingService.calls);
+        assertEquals(1, jdbcTemplate.updates);
+        assertEquals(20.0, second.get(0).getTotal());
+        assertEquals("4911", second.get(0).getHsn());
+    }
+
+    @Test
+    public void backfillNeverOverwritesASnapshot() {
+        // Two readers of the same legacy order race; the second's UPDATE matches no row
+        orderService.priceBreakdown(legacyOrder());
+        String stored = jdbcTemplate.priceBreakdown.get(5L);
+        pricingService.rate = 3.0;
+        orderService.priceBreakdown(legacyOrder());
+
+        assertEquals(2, jdbcTemplate.updates);
+        assertEquals(stored, jdbcTemplate.priceBreakdown.get(5L));
+    }
+
+    @Test
+    public void snapshotOrJobFreeOrderIsNotRepriced() {
+        Order snapshot = legacyOrder();
+        snapshot.setBreakdown(List.of(new PricingService.BreakdownItem("File", 1, "4911", 2.0, 2.0, 0, 2.0, "{}")));
+        assertSame(snapshot.getBreakdown(), orderService.priceBreakdown(snapshot));
+
+        Order empty = legacyOrder();
+        empty.setPrintJobs(new ArrayList<>());
+        assertNull(orderService.priceBreakdown(empty));
+
+        assertEquals(0, pricingService.calls);
+        assertEquals(0, jdbcTemplate.updates);
+    }
+}
@@ -0,0 +1,310 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.entity.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderStatsRollupTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 19);
+
+    // Committed order statuses, daily_order_stats counts per status and order_stats_applied, all on DAY
+    private static final class Database {
+        final Map<Long, String> orders = new HashMap<>();
+        final Map<String, Long> daily = new HashMap<>();
+        final Map<Long, String> applied = new HashMap<>();
+
+        long count(Order.Status status) {
+            return daily.getOrDefault(status.name(), 0L);
+        }
+    }
+
+    // Uncommitted writes of one transaction, bound to the thread like a connection
+    private static final class Connection {
+        final Map<Long, String> orders = new HashMap<>();
+        final Map<String, Long> daily = new HashMap<>();
+        // Null values are deleted ledger rows; cleared drops the committed rollup and ledger first
+        final Map<Long, String> applied = new HashMap<>();
+        boolean cleared;
+    }
+
+    /**
+     * Binds a connection per transaction and applies its writes on commit. Like a pooled connection
+     * being rolled back on release, writes made after the commit but before cleanup (from afterCommit)
+     * are discarded.
+     */
+    private static final class FakeTransactionManager extends AbstractPlatformTransactionManager {
+        private final Database db;
+
+        FakeTransactionManager(Database db) {
+            this.db = db;
+        }
+
+        private static final class TxObject {
+            Connection connection;
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            TxObject tx = new TxObject();
+            tx.connection = (Connection) TransactionSynchronizationManager.getResource(db);
+            return tx;
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return ((TxObject) transaction).connection != null;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            TxObject tx = (TxObject) transaction;
+            tx.connection = new Connection();
+            TransactionSynchronizationManager.bindResource(db, tx.connection);
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            ((TxObject) transaction).connection = null;
+            return TransactionSynchronizationManager.unbindResource(db);
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+            TransactionSynchronizationManager.bindResource(db, suspendedResources);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            Connection connection = ((TxObject) status.getTransaction()).connection;
+            if (connection.cleared) {
+                db.daily.clear();
+                db.applied.clear();
+            }
+            db.orders.putAll(connection.orders);
+            connection.daily.forEach((s, n) -> db.daily.merge(s, n, Long::sum));
+            connection.applied.forEach((id, s) -> {
+                if (s != null) {
+                    db.applied.put(id, s);
+                } else {
+                    db.applied.remove(id);
+                }
+            });
+            connection.orders.clear();
+            connection.daily.clear();
+            connection.applied.clear();
+            connection.cleared = false;
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            TransactionSynchronizationManager.unbindResource(db);
+        }
+    }
+
+    // Runs the rollup's daily and ledger statements against the database through the bound connection, if any;
+    // ignores the hourly ones
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        private final Database db;
+
+        FakeJdbcTemplate(Database db) {
+            this.db = db;
+        }
+
+        void saveOrder(long id, Order.Status status) {
+            Connection connection = (Connection) TransactionSynchronizationManager.getResource(db);
+            (connection != null ? connection.orders : db.orders).put(id, status.name());
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            assertTrue(sql.startsWith("INSERT INTO " + OrderStatsRollup.TABLE), sql);
+            // Args: status, sign, sign, sign, orderId, status; the SELECT only sees committed orders
+            String status = args[0] != null ? (String) args[0] : db.orders.get((Long) args[4]);
+            if (status == null) {
+                return;
+            }
+            Connection connection = (Connection) TransactionSynchronizationManager.getResource(db);
+            (connection != null ? connection.daily : db.daily).merge(status, ((Integer) args[1]).longValue(), Long::sum);
+            try {
+                rch.processRow((ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, methodArgs) -> method.getName().equals("getDate") ? Date.valueOf(DAY) : null));
+            } catch (java.sql.SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private Connection connection() {
+            Connection connection = (Connection) TransactionSynchronizationManager.getResource(db);
+            assertNotNull(connection, "rollup statements run in a transaction");
+            return connection;
+        }
+
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            Long orderId = (Long) args[0];
+            String status;
+            if (sql.startsWith("SELECT status FROM orders ")) {
+                status = db.orders.get(orderId);
+            } else {
+                assertTrue(sql.startsWith("SELECT status FROM " + OrderStatsRollup.APPLIED_TABLE), sql);
+                Connection connection = connection();
+                status = connection.applied.containsKey(orderId) ? connection.applied.get(orderId) : db.applied.get(orderId);
+            }
+            return status != null ? List.of(elementType.cast(status)) : List.of();
+        }
+
+        @Override
+        public void execute(String sql) {
+            assertTrue(sql.startsWith("LOCK TABLE "), sql);
+        }
+
+        @Override
+        public int update(String sql) {
+            return update(sql, new Object[0]);
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.startsWith("INSERT INTO " + OrderStatsRollup.HOURLY_TABLE) || sql.startsWith("DELETE FROM " + OrderStatsRollup.HOURLY_TABLE)) {
+                return 0;
+            }
+            Connection connection = connection();
+            if (sql.equals("DELETE FROM " + OrderStatsRollup.TABLE) || sql.equals("DELETE FROM " + OrderStatsRollup.APPLIED_TABLE)) {
+                connection.cleared = true;
+                return 0;
+            }
+            if (sql.startsWith("INSERT INTO " + OrderStatsRollup.TABLE)) {
+                // The rebuild: every committed order under its status
+                db.orders.values().forEach(s -> connection.daily.merge(s, 1L, Long::sum));
+                return connection.daily.size();
+            }
+            if (sql.startsWith("INSERT INTO " + OrderStatsRollup.APPLIED_TABLE) && args.length == 0) {
+                connection.applied.putAll(db.orders);
+                return db.orders.size();
+            }
+            if (sql.startsWith("INSERT INTO " + OrderStatsRollup.APPLIED_TABLE)) {
+                connection.applied.put((Long) args[0], db.orders.get((Long) args[0]));
+                return 1;
+            }
+            assertTrue(sql.startsWith("DELETE FROM " + OrderStatsRollup.APPLIED_TABLE + " WHERE order_id"), sql);
+            connection.applied.put((Long) args[0], null);
+            return 1;
+        }
+    }
+
+    private final Database db = new Database();
+    private final FakeJdbcTemplate jdbcTemplate = new FakeJdbcTemplate(db);
+    private final FakeTransactionManager transactionManager = new FakeTransactionManager(db);
+    private final AnalyticsSeriesService series = new AnalyticsSeriesService(10, 100);
+    private final OrderStatsRollup rollup = new OrderStatsRollup(jdbcTemplate, transactionManager, series, 60);
+    private final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    @Test
+    public void orderSavedInATransactionIsCountedOnceItCommits() {
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PENDING);
+            rollup.orderCreated(1L);
+            assertEquals(0, db.count(Order.Status.PENDING));
+        });
+
+        assertEquals(1, db.count(Order.Status.PENDING));
+        assertEquals(1L, series.stats().get("invalidations"));
+    }
+
+    @Test
+    public void statusChangeMovesTheOrderBetweenRows() {
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PENDING);
+            rollup.orderCreated(1L);
+        });
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PROCESSING);
+            rollup.statusChanged(1L, Order.Status.PENDING, Order.Status.PROCESSING);
+        });
+
+        assertEquals(0, db.count(Order.Status.PENDING));
+        assertEquals(1, db.count(Order.Status.PROCESSING));
+    }
+
+    @Test
+    public void rolledBackOrderIsNotCounted() {
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PENDING);
+            rollup.orderCreated(1L);
+            status.setRollbackOnly();
+        });
+
+        assertTrue(db.daily.isEmpty());
+        assertEquals(0L, series.stats().get("invalidations"));
+    }
+
+    @Test
+    public void writesOnTheCommittedConnectionAreLost() {
+        // What the increments did before running in their own transaction
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PENDING);
+            AfterCommit.run(() -> jdbcTemplate.query("INSERT INTO " + OrderStatsRollup.TABLE, (RowCallbackHandler) rs -> {}, null, 1, 1, 1, 1L, null));
+        });
+
+        assertEquals(0, db.count(Order.Status.PENDING));
+    }
+
+    @Test
+    public void repeatedIncrementsCountTheOrderOnce() {
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PENDING);
+            rollup.orderCreated(1L);
+            rollup.orderCreated(1L);
+        });
+        rollup.statusChanged(1L, null, Order.Status.PENDING);
+
+        assertEquals(1, db.count(Order.Status.PENDING));
+        assertEquals(Map.of(1L, "PENDING"), db.applied);
+    }
+
+    @Test
+    public void incrementAfterARebuildThatSawTheOrderDoesNothing() {
+        // Order 1 commits, and the rebuild snapshot includes it before its increment gets to run
+        db.orders.put(1L, Order.Status.PENDING.name());
+        db.orders.put(2L, Order.Status.PROCESSING.name());
+        rollup.reconcile(null);
+        assertEquals(1, db.count(Order.Status.PENDING));
+
+        rollup.orderCreated(1L);
+        assertEquals(1, db.count(Order.Status.PENDING));
+        assertEquals(1, db.count(Order.Status.PROCESSING));
+
+        // A change committed after the snapshot still moves the order
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.saveOrder(1L, Order.Status.PROCESSING);
+            rollup.statusChanged(1L, Order.Status.PENDING, Order.Status.PROCESSING);
+        });
+        assertEquals(0, db.count(Order.Status.PENDING));
+        assertEquals(2, db.count(Order.Status.PROCESSING));
+    }
+}
@@ -0,0 +1,79 @@
+package com.lipiprint.backend.service;
+
+import com.lipiprint.backend.service.PaymentReconciliationService.GatewayOrder;
+import com.lipiprint.backend.service.PaymentReconciliationService.Kind;
+import com.lipiprint.backend.service.PaymentReconciliationService.LocalPayment;
+import com.lipiprint.backend.service.PaymentReconciliationService.Merger;
+import com.lipiprint.backend.service.PaymentReconciliationService.Mismatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentReconciliationServiceTest {
+
+    private static final long START = 10_000;
+    private static final long END = 13_600;
+    private static final long LOOKBACK = 1_800;
+
+    private final List<Mismatch> mismatches = new ArrayList<>();
+
+    private Merger merger(GatewayOrder... gateway) {
+        return new Merger(List.of(gateway).iterator(), START, END, LOOKBACK, mismatches::add);
+    }
+
+    @Test
+    public void testMatchingPaymentsProduceNoMismatch() {
+        Merger merger = merger(new GatewayOrder("order_a", "pay_a", "captured", 5000, START + 100));
+        merger.onLocal(new LocalPayment("order_a", "pay_a", "SUCCESS", 5000, START + 50));
+        merger.finish();
+        assertTrue(mismatches.isEmpty());
+    }
+
+    @Test
+    public void testEachMismatchKindIsDetected() {
+        Merger merger = merger(
+            new GatewayOrder("order_a", "pay_a", "captured", 5000, START + 100),
+            new GatewayOrder("order_b", "pay_b", "captured", 7000, START + 200),
+            new GatewayOrder("order_c", "pay_c", "captured", 9900, START + 300),
+            new GatewayOrder("order_e", "pay_e", "captured", 1200, START + 400));
+        merger.onLocal(new LocalPayment("order_b", null, "PENDING", 7000, START + 150));
+        merger.onLocal(new LocalPayment("order_c", "pay_c", "SUCCESS", 9000, START + 250));
+        merger.onLocal(new LocalPayment("order_d", "pay_d", "SUCCESS", 3000, START - 600));
+        merger.finish();
+
+        assertEquals(5, mismatches.size());
+        assertEquals(Kind.MISSING_LOCAL, mismatches.get(0).kind());
+        assertEquals("order_a", mismatches.get(0).orderId());
+        assertEquals(Kind.NOT_MARKED_PAID, mismatches.get(1).kind());
+        assertEquals(Kind.AMOUNT_MISMATCH, mismatches.get(2).kind());
+        assertEquals(Long.valueOf(9000), mismatches.get(2).localAmountPaise());
+        assertEquals(Kind.NOT_CAPTURED, mismatches.get(3).kind());
+        assertEquals("order_d", mismatches.get(3).orderId());
+        // order_e sorts after the last local row and is only reported by finish()
+        assertEquals(Kind.MISSING_LOCAL, mismatches.get(4).kind());
+        assertEquals("order_e", mismatches.get(4).orderId());
+    }
+
+    @Test
+    public void testRowsOutsideTheirOwningWindowAreNotJudged() {
+        // Captured in the lookback overlap: judged by the previous window
+        Merger merger = merger(new GatewayOrder("order_a", "pay_a", "captured", 5000, START - 100));
+        // Created too recently for its payment to be due yet: judged by the next window
+        merger.onLocal(new LocalPayment("order_b", null, "SUCCESS", 5000, END - 60));
+        merger.finish();
+        assertTrue(mismatches.isEmpty());
+    }
+
+    @Test
+    public void testFailedGatewayAttemptIsNotACapture() {
+        Merger merger = merger(new GatewayOrder("order_a", "pay_a", "failed", 5000, START + 100));
+        merger.onLocal(new LocalPayment("order_a", "pay_a", "SUCCESS", 5000, START - 1_000));
+        merger.finish();
+        assertEquals(1, mismatches.size());
+        assertEquals(Kind.NOT_CAPTURED, mismatches.get(0).kind());
+        assertEquals("failed", mismatches.get(0).gatewayStatus());
+    }
+}
@@ -0,0 +1,86 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PincodeDirectoryTest {
+
+    private static final String CSV =
+        "circlename,regionname,divisionname,officename,pincode,officetype,delivery,district,statename\n"
+        + "UP Circle,Bareilly,Saharanpur,Saharanpur H.O,247001,H.O,Delivery,SAHARANPUR,UTTAR PRADESH\n"
+        + "UP Circle,Bareilly,Saharanpur,Court Road S.O,247001,S.O,Delivery,SAHARANPUR,UTTAR PRADESH\n"
+        + "Delhi Circle,Delhi,New Delhi,\"Connaught Place, S.O\",110001,S.O,Delivery,NEW DELHI,DELHI\n"
+        + "Maharashtra Circle,Mumbai,Mumbai,Fort S.O,400001,S.O,Delivery,MUMBAI,MAHARASHTRA\n"
+        + "J&K Circle,Jammu,Jammu,Jammu H.O,180001,H.O,Delivery,JAMMU,JAMMU AND KASHMIR\n";
+
+    private PincodeDirectory buildDirectory() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(4, PincodeDirectoryBuilder.build(new StringReader(CSV), out));
+        PincodeDirectory directory = new PincodeDirectory();
+        directory.load(ByteBuffer.wrap(out.toByteArray()));
+        return directory;
+    }
+
+    @Test
+    public void testLookupReturnsDistrictAndState() throws Exception {
+        PincodeDirectory directory = buildDirectory();
+        assertTrue(directory.isLoaded());
+
+        Optional<PincodeDirectory.Location> location = directory.lookup("247001");
+        assertTrue(location.isPresent());
+        assertEquals("Saharanpur", location.get().district());
+        assertEquals("Uttar Pradesh", location.get().state());
+
+        assertEquals(Optional.of("Delhi"), directory.stateOf("110001"));
+        assertEquals(Optional.of("Maharashtra"), directory.stateOf(" 400001 "));
+        assertEquals(Optional.of("Jammu and Kashmir"), directory.stateOf("180001"));
+    }
+
+    @Test
+    public void testUnknownOrMalformedPincodes() throws Exception {
+        PincodeDirectory directory = buildDirectory();
+        assertFalse(directory.lookup("247002").isPresent());
+        assertFalse(directory.lookup("100000").isPresent());
+        assertFalse(directory.lookup("99999").isPresent());
+        assertFalse(directory.lookup("24700a").isPresent());
+        assertFalse(directory.lookup(null).isPresent());
+    }
+
+    @Test
+    public void testEmptyDirectoryReturnsNothing() {
+        PincodeDirectory directory = new PincodeDirectory();
+        assertFalse(directory.isLoaded());
+        assertFalse(directory.stateOf("247001").isPresent());
+    }
+
+    @Test
+    public void testShippedDirectoryLoads() {
+        // The resource packaged into the jar, found on the classpath as at runtime
+        PincodeDirectory directory = new PincodeDirectory();
+        directory.load();
+        assertTrue(directory.isLoaded());
+        assertEquals(Optional.of(new PincodeDirectory.Location("247001", "Saharanpur", "Uttar Pradesh")),
+            directory.lookup("247001"));
+        assertEquals(Optional.of("Karnataka"), directory.stateOf("560001"));
+    }
+
+    @Test
+    public void testShippedDirectoryIsBuiltFromTheSeed() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Reader seed = Files.newBufferedReader(Paths.get("data/pincode-seed.csv"), StandardCharsets.UTF_8)) {
+            PincodeDirectoryBuilder.build(seed, out);
+        }
+        assertArrayEquals(out.toByteArray(), Files.readAllBytes(Paths.get("src/main/resources/pincode-directory.bin")),
+            "Rebuild pincode-directory.bin from data/pincode-seed.csv");
+    }
+}
@@ -0,0 +1,140 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PushDispatcherTest {
+
+    private final InMemoryPushSender sender = new InMemoryPushSender();
+    private final FakeTokenStore tokens = new FakeTokenStore();
+    private PushDispatcher dispatcher;
+
+    private static final class FakeTokenStore extends DeviceTokenStore {
+        final Map<Long, List<String>> byUser = new ConcurrentHashMap<>();
+
+        void add(Long userId, String token) {
+            byUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(token);
+        }
+
+        @Override
+        public Map<Long, List<String>> tokensFor(Collection<Long> userIds) {
+            Map<Long, List<String>> result = new HashMap<>();
+            for (Long userId : userIds) {
+                if (byUser.containsKey(userId)) {
+                    result.put(userId, new ArrayList<>(byUser.get(userId)));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int remove(Collection<String> removed) {
+            int count = 0;
+            for (List<String> list : byUser.values()) {
+                for (String token : removed) {
+                    if (list.remove(token)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    private void start(long lingerMillis) {
+        dispatcher = new PushDispatcher(sender, tokens, 10_000, lingerMillis, 3, 10);
+        dispatcher.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for push delivery");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long stat(PushDispatcher dispatcher, String name) {
+        return ((Number) dispatcher.stats().get(name)).longValue();
+    }
+
+    @Test
+    public void testBurstIsSentInFewBatches() throws Exception {
+        for (long userId = 1; userId <= 600; userId++) {
+            tokens.add(userId, "token-" + userId);
+        }
+        start(300);
+        for (long userId = 1; userId <= 600; userId++) {
+            dispatcher.enqueue(userId, new PushSender.PushMessage("LipiPrint", "Order " + userId + " is out for delivery", Map.of()));
+        }
+        await(() -> sender.sent().size() == 600);
+        // 600 deliveries fit in two FCM-sized batches, not 600 calls
+        assertEquals(2, sender.calls());
+    }
+
+    @Test
+    public void testEveryDeviceOfAUserIsReachedAndDuplicatesCollapse() throws Exception {
+        tokens.add(1L, "phone");
+        tokens.add(1L, "tablet");
+        start(100);
+        PushSender.PushMessage message = new PushSender.PushMessage("LipiPrint", "Hello", Map.of("type", "notification"));
+        dispatcher.enqueue(1L, message);
+        dispatcher.enqueue(1L, message);
+        await(() -> sender.sent().size() == 2);
+        Thread.sleep(200);
+        assertEquals(2, sender.sent().size());
+    }
+
+    @Test
+    public void testTransientFailuresAreRetried() throws Exception {
+        tokens.add(1L, "flaky");
+        sender.failTransiently("flaky", 2);
+        start(0);
+        dispatcher.enqueue(1L, new PushSender.PushMessage("LipiPrint", "Hello", Map.of()));
+        await(() -> sender.sent().size() == 1);
+        assertEquals(Long.valueOf(2), Long.valueOf(stat(dispatcher, "retried")));
+        assertEquals(3, sender.calls());
+    }
+
+    @Test
+    public void testInvalidTokensArePruned() throws Exception {
+        tokens.add(1L, "stale");
+        tokens.add(1L, "fresh");
+        sender.markInvalid("stale");
+        start(0);
+        dispatcher.enqueue(1L, new PushSender.PushMessage("LipiPrint", "Hello", Map.of()));
+        await(() -> stat(dispatcher, "prunedTokens") == 1);
+        assertEquals(List.of("fresh"), tokens.byUser.get(1L));
+        assertEquals(1, sender.sent().size());
+    }
+
+    @Test
+    public void testRetriesStopAtMaxAttempts() throws Exception {
+        tokens.add(1L, "down");
+        sender.failTransiently("down", 10);
+        start(0);
+        dispatcher.enqueue(1L, new PushSender.PushMessage("LipiPrint", "Hello", Map.of()));
+        await(() -> stat(dispatcher, "failed") == 1);
+        assertEquals(3, sender.calls());
+        assertTrue(sender.sent().isEmpty());
+    }
+}
@@ -0,0 +1,104 @@
+package com.lipiprint.backend.service;
+
+import com.razorpay.RazorpayException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RazorpayHttpGatewayTest {
+
+    private HttpServer server;
+    private RazorpayHttpGateway gateway;
+
+    private final AtomicInteger orderCalls = new AtomicInteger();
+    private final AtomicInteger paymentCalls = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicReference<String> authorization = new AtomicReference<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/orders", exchange -> {
+            orderCalls.incrementAndGet();
+            authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            if (failuresLeft.getAndDecrement() > 0) {
+                respond(exchange, 502, "{\"error\":{\"code\":\"SERVER_ERROR\",\"description\":\"Bad gateway\"}}");
+            } else {
+                respond(exchange, 200, "{\"id\":\"order_test1\",\"amount\":5000,\"status\":\"created\"}");
+            }
+        });
+        server.createContext("/v1/payments", exchange -> {
+            paymentCalls.incrementAndGet();
+            if (failuresLeft.getAndDecrement() > 0) {
+                respond(exchange, 503, "");
+            } else {
+                respond(exchange, 200, "{\"count\":1,\"items\":[{\"id\":\"pay_1\",\"order_id\":\"order_test1\"}]}");
+            }
+        });
+        server.start();
+
+        gateway = new RazorpayHttpGateway();
+        ReflectionTestUtils.setField(gateway, "keyId", "rzp_test_key");
+        ReflectionTestUtils.setField(gateway, "keySecret", "secret");
+        ReflectionTestUtils.setField(gateway, "baseUrl", "http://localhost:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(gateway, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(gateway, "responseTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(gateway, "maxConnections", 4);
+        ReflectionTestUtils.setField(gateway, "maxRetries", 2);
+        gateway.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        gateway.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testCreateOrderSendsBasicAuth() throws Exception {
+        JSONObject order = gateway.createOrder(5000, "INR", "receipt#1");
+        assertEquals("order_test1", order.getString("id"));
+        assertEquals("Basic cnpwX3Rlc3Rfa2V5OnNlY3JldA==", authorization.get());
+    }
+
+    @Test
+    public void testCreateOrderIsNotRetriedOnServerError() {
+        failuresLeft.set(1);
+        RazorpayException e = assertThrows(RazorpayException.class, () -> gateway.createOrder(5000, "INR", "receipt#1"));
+        assertTrue(e.getMessage().contains("Bad gateway"));
+        assertEquals(1, orderCalls.get());
+    }
+
+    @Test
+    public void testPaymentListIsRetried() throws Exception {
+        failuresLeft.set(2);
+        List<JSONObject> payments = gateway.fetchPayments(0, 100, 0, 10);
+        assertEquals(1, payments.size());
+        assertEquals(3, paymentCalls.get());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentActivityFeedTest {
+
+    private static RecentActivityFeed.Activity activity(long orderId, String action) {
+        return new RecentActivityFeed.Activity(0, RecentActivityFeed.ORDER_STATUS, orderId, "order", action, "Asha", 120.0,
+            "DELIVERY", "ONLINE", LocalDateTime.of(2026, 10, 19, 10, 0), null, null, null, null);
+    }
+
+    @Test
+    public void returnsNewestFirstUpToTheLimit() {
+        RecentActivityFeed feed = new RecentActivityFeed(10);
+        feed.append(activity(1, "PENDING"));
+        feed.append(activity(2, "PENDING"));
+        feed.append(activity(1, "PROCESSING"));
+
+        List<RecentActivityFeed.Activity> recent = feed.recent(2);
+        assertEquals(2, recent.size());
+        assertEquals("PROCESSING", recent.get(0).action());
+        assertEquals(Long.valueOf(2), recent.get(1).orderId());
+        assertEquals(3, feed.recent(50).size());
+        assertTrue(feed.recent(-1).isEmpty());
+    }
+
+    @Test
+    public void overwritesTheOldestOnceFull() {
+        RecentActivityFeed feed = new RecentActivityFeed(3);
+        for (long id = 1; id <= 7; id++) {
+            feed.append(activity(id, "PENDING"));
+        }
+
+        List<RecentActivityFeed.Activity> recent = feed.recent(10);
+        assertEquals(3, recent.size());
+        assertEquals(List.of(7L, 6L, 5L), recent.stream().map(RecentActivityFeed.Activity::orderId).toList());
+        // Sequence numbers keep growing, so they stay unique even for the same order
+        assertEquals(7L, recent.get(0).seq());
+        assertEquals(5L, recent.get(2).seq());
+    }
+
+    @Test
+    public void mapKeepsTheDashboardKeys() {
+        RecentActivityFeed feed = new RecentActivityFeed(2);
+        Map<String, Object> map = feed.append(new RecentActivityFeed.Activity(0, RecentActivityFeed.PAYMENT_CAPTURED, 9L, "payment",
+            "PAID", null, null, null, null, null, null, null, null, null)).toMap();
+
+        assertEquals(9L, map.get("id"));
+        assertEquals("PAID", map.get("action"));
+        assertEquals("Unknown", map.get("user"));
+        assertEquals("UNKNOWN", map.get("delivery_type"));
+        assertEquals("", map.get("time"));
+        assertEquals(1L, map.get("seq"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.lipiprint.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShippingQuoteCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final ShippingQuoteCache cache = new ShippingQuoteCache(60, 600, 100, now::get);
+    private final ShippingQuoteCache.Key key = new ShippingQuoteCache.Key("serviceability", "247001", "110001", 500, "prepaid");
+
+    @Test
+    public void testWeightBucketRoundsUpToSlab() {
+        assertEquals(500, ShippingQuoteCache.weightBucketGrams(0.2));
+        assertEquals(500, ShippingQuoteCache.weightBucketGrams(0.5));
+        assertEquals(1000, ShippingQuoteCache.weightBucketGrams(0.501));
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map<String, Object>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> cache.get(key, () -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Map.of("serviceable", true);
+                }, r -> true)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Map<String, Object>> f : results) {
+                assertEquals(true, f.get(5, TimeUnit.SECONDS).get("serviceable"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testStaleEntryIsServedWhileRefreshing() throws Exception {
+        cache.get(key, () -> Map.of("count", 1), r -> true);
+        now.addAndGet(TimeUnit.SECONDS.toMillis(120));
+
+        CountDownLatch refreshed = new CountDownLatch(1);
+        Map<String, Object> stale = cache.get(key, () -> {
+            refreshed.countDown();
+            return Map.of("count", 2);
+        }, r -> true);
+
+        assertEquals(1, stale.get("count"));
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(2, cache.get(key, () -> Map.of("count", 3), r -> true).get("count"));
+    }
+
+    @Test
+    public void testUncacheableResultIsNotStored() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            cache.get(key, () -> {
+                loads.incrementAndGet();
+                return Map.of("serviceable", false);
+            }, r -> Boolean.TRUE.equals(r.get("serviceable")));
+        }
+        assertEquals(3, loads.get());
+        assertEquals(0, cache.size());
+    }
+}
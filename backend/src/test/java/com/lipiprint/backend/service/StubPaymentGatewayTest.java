@@ -0,0 +1,31 @@
+package com.lipiprint.backend.service;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StubPaymentGatewayTest {
+
+    @Test
+    public void keepsOnlyTheNewestPayments() throws Exception {
+        AtomicLong now = new AtomicLong(1_760_000_000_000L);
+        StubPaymentGateway gateway = new StubPaymentGateway(0, 3, now::get);
+        for (int i = 0; i < 5; i++) {
+            gateway.createOrder(100 * (i + 1), "INR", "rcpt_" + i);
+            now.addAndGet(1_000);
+        }
+
+        assertEquals(3, gateway.stats().get("payments"));
+        assertEquals(2L, gateway.stats().get("evicted"));
+        List<Integer> amounts = new ArrayList<>();
+        for (JSONObject payment : gateway.fetchPayments(0, now.get() / 1000, 0, 10)) {
+            amounts.add(payment.getInt("amount"));
+        }
+        assertEquals(List.of(300, 400, 500), amounts);
+    }
+}
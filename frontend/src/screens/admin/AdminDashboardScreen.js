@@ -276,7 +276,7 @@ export default function AdminDashboardScreen({ navigation }) {
               </View>
           ) : (
             recentActivities.map((activity, index) => (
-                <View key={activity.id || index} style={styles.timelineItem}>
+                <View key={activity.seq || activity.id || index} style={styles.timelineItem}>
                   <View style={[styles.timelineDot, { backgroundColor: getActivityColor(activity.action) }]} />
                   <View style={styles.timelineCard}>
                     <View style={styles.timelineCardHeader}>